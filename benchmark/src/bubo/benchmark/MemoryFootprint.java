@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.benchmark;
+
+import bubo.benchmark.clouds.CloudBenchmarkData;
+import bubo.benchmark.maps.BenchmarkOctreeGridMap;
+import bubo.clouds.detect.alg.ApproximateSurfaceNormals;
+import bubo.clouds.detect.alg.PointVectorNN;
+import bubo.construct.ConstructOctreeNumPoints_F64;
+import bubo.maps.d3.grid.impl.OctreeGridMap_F64;
+import georegression.struct.point.Point3D_F64;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.List;
+
+/**
+ * JMH does not measure how much memory a data structure holds on to, so this application estimates it instead.
+ * Each structure is built from the same synthetic clouds used by the benchmarks and the increase in used heap
+ * after a garbage collection is printed.  The input cloud is created before the first measurement, so it is
+ * only included in the 'cloud' rows.  The values are approximate, run with a large fixed heap, e.g. -Xms4g
+ * -Xmx4g, for more consistent results.
+ *
+ * @author Peter Abeles
+ */
+public class MemoryFootprint {
+
+	public static int SIZES[] = new int[]{10000, 100000, 1000000};
+
+	public static void main(String[] args) {
+		System.out.printf("%-28s %10s %14s %12s\n", "structure", "points", "bytes", "bytes/point");
+
+		for (final int numPoints : SIZES) {
+			// it's created here so that the cloud is not included in the other measurements
+			final List<Point3D_F64> cloud = CloudBenchmarkData.createCloud(numPoints, 234);
+
+			print("cloud List<Point3D_F64>", numPoints, new Structure() {
+				@Override
+				public Object create() {
+					return CloudBenchmarkData.createCloud(numPoints, 234);
+				}
+			});
+
+			print("cloud PackedCloud3D_F64", numPoints, new Structure() {
+				@Override
+				public Object create() {
+					return CloudBenchmarkData.createPacked(numPoints, 234);
+				}
+			});
+
+			print("ApproximateSurfaceNormals", numPoints, new Structure() {
+				@Override
+				public Object create() {
+					ApproximateSurfaceNormals alg = new ApproximateSurfaceNormals(10, 0.2);
+					FastQueue<PointVectorNN> output = new FastQueue<PointVectorNN>(PointVectorNN.class, false);
+					alg.process(cloud, output);
+					return new Object[]{alg, output};
+				}
+			});
+
+			print("ConstructOctreeNumPoints_F64", numPoints, new Structure() {
+				@Override
+				public Object create() {
+					ConstructOctreeNumPoints_F64 alg = new ConstructOctreeNumPoints_F64(20);
+					alg.initialize(CloudBenchmarkData.bounds());
+					for (int i = 0; i < cloud.size(); i++) {
+						alg.addPoint(cloud.get(i), null);
+					}
+					return alg;
+				}
+			});
+
+			print("OctreeGridMap_F64", numPoints, new Structure() {
+				@Override
+				public Object create() {
+					double cellSize = BenchmarkOctreeGridMap.CELL_SIZE;
+					int length = (int) (11 / cellSize);
+					OctreeGridMap_F64 map = new OctreeGridMap_F64(length, length, length);
+					for (int i = 0; i < cloud.size(); i++) {
+						Point3D_F64 p = cloud.get(i);
+						map.set((int) ((p.x + 0.5) / cellSize), (int) ((p.y + 0.5) / cellSize),
+								(int) ((p.z + 0.5) / cellSize), 0.8);
+					}
+					return map;
+				}
+			});
+		}
+	}
+
+	private static void print(String name, int numPoints, Structure structure) {
+		long bytes = retainedBytes(structure);
+		System.out.printf("%-28s %10d %14d %12.1f\n", name, numPoints, bytes, bytes / (double) numPoints);
+	}
+
+	/**
+	 * Estimates the number of bytes which are retained by the object that's created
+	 */
+	public static long retainedBytes(Structure structure) {
+		long before = usedMemory();
+		Object o = structure.create();
+		long after = usedMemory();
+
+		// make sure the object isn't collected before the memory has been measured
+		if (o.hashCode() == 0)
+			System.out.print("");
+
+		return after - before;
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Creates the data structure which is to be measured
+	 */
+	public interface Structure {
+		Object create();
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.benchmark.clouds;
+
+import bubo.clouds.FactoryFitting;
+import bubo.clouds.fit.MatchCloudToCloud;
+import bubo.struct.StoppingCondition;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.struct.se.SpecialEuclideanOps_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link bubo.clouds.fit.c2c.MatchCloudToCloudIcp.SE3}.  The source cloud is the destination
+ * cloud after a small rigid body motion.  Since ICP modifies the source points they are restored before each
+ * operation, which is excluded from the measurement.
+ *
+ * @author Peter Abeles
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkCloudIcp3D {
+
+	@Param({"10000", "100000", "1000000"})
+	public int numPoints;
+
+	List<Point3D_F64> original = new ArrayList<Point3D_F64>();
+	List<Point3D_F64> source = new ArrayList<Point3D_F64>();
+
+	MatchCloudToCloud<Se3_F64, Point3D_F64> alg;
+
+	@Setup(Level.Trial)
+	public void setupTrial() {
+		List<Point3D_F64> destination = CloudBenchmarkData.createCloud(numPoints, 234);
+
+		Se3_F64 motion = SpecialEuclideanOps_F64.setEulerXYZ(0.01, -0.02, 0.03, 0.05, 0.02, -0.03, null);
+		original.clear();
+		source.clear();
+		for (int i = 0; i < destination.size(); i++) {
+			original.add(SePointOps_F64.transform(motion, destination.get(i), null));
+			source.add(new Point3D_F64());
+		}
+
+		alg = FactoryFitting.cloudIcp3D(0.5, new StoppingCondition(20, 1e-6));
+		alg.setDestination(destination);
+	}
+
+	@Setup(Level.Invocation)
+	public void setupInvocation() {
+		for (int i = 0; i < original.size(); i++) {
+			source.get(i).set(original.get(i));
+		}
+	}
+
+	@Benchmark
+	public boolean compute() {
+		alg.setSource(source);
+		return alg.compute();
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.benchmark.clouds;
+
+import bubo.clouds.FactoryPointCloudShape;
+import bubo.clouds.detect.PointCloudShapeFinder;
+import bubo.clouds.detect.alg.ConfigSchnabel2007;
+import bubo.clouds.detect.wrapper.ConfigMultiShapeRansac;
+import bubo.clouds.detect.wrapper.ConfigRemoveFalseShapes;
+import bubo.clouds.detect.wrapper.ConfigSurfaceNormals;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the {@link PointCloudShapeFinder} created by {@link FactoryPointCloudShape}.  'Schnabel2007'
+ * is {@link bubo.clouds.detect.alg.PointCloudShapeDetectionSchnabel2007}.  Each operation includes computing
+ * the surface normals.  A new finder is created for every trial so that its random seed is always the same.
+ *
+ * @author Peter Abeles
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkPointCloudShapeFinder {
+
+	@Param({"Schnabel2007", "RansacSingle", "RansacSingleAll"})
+	public String finder;
+
+	@Param({"10000", "100000", "1000000"})
+	public int numPoints;
+
+	List<Point3D_F64> cloud;
+	Box3D_F64 bounds = CloudBenchmarkData.bounds();
+	PointCloudShapeFinder alg;
+
+	@Setup
+	public void setup() {
+		cloud = CloudBenchmarkData.createCloud(numPoints, 234);
+		alg = createFinder(finder);
+	}
+
+	@Benchmark
+	public List<PointCloudShapeFinder.Shape> process() {
+		alg.process(cloud, bounds);
+		return alg.getFound();
+	}
+
+	/**
+	 * Creates the finders using the same settings as their unit tests
+	 */
+	public static PointCloudShapeFinder createFinder(String name) {
+		if (name.equals("Schnabel2007")) {
+			ConfigSchnabel2007 configRansac = ConfigSchnabel2007.createDefault(100, 0.5, 0.1);
+			configRansac.minModelAccept = 50;
+			configRansac.octreeSplit = 60;
+
+			return FactoryPointCloudShape.ransacOctree(new ConfigSurfaceNormals(20, 3),
+					configRansac, new ConfigRemoveFalseShapes(0.7));
+		} else if (name.equals("RansacSingle")) {
+			ConfigMultiShapeRansac configRansac = ConfigMultiShapeRansac.createDefault(100, 0.6, 0.1);
+			configRansac.minimumPoints = 20;
+
+			return FactoryPointCloudShape.ransacSingle(new ConfigSurfaceNormals(6, 3), configRansac);
+		} else if (name.equals("RansacSingleAll")) {
+			ConfigMultiShapeRansac configRansac = ConfigMultiShapeRansac.createDefault(100, 0.6, 0.1);
+			configRansac.minimumPoints = 20;
+
+			return FactoryPointCloudShape.ransacSingleAll(new ConfigSurfaceNormals(6, 3), configRansac);
+		} else {
+			throw new IllegalArgumentException("Unknown finder " + name);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.benchmark.clouds;
+
+import bubo.clouds.detect.alg.ApproximateSurfaceNormals;
+import bubo.clouds.detect.alg.PointVectorNN;
+import georegression.struct.point.Point3D_F64;
+import org.ddogleg.struct.FastQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link ApproximateSurfaceNormals}, which includes building the nearest-neighbor graph
+ *
+ * @author Peter Abeles
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkSurfaceNormals {
+
+	@Param({"10000", "100000", "1000000"})
+	public int numPoints;
+
+	@Param({"1"})
+	public int numThreads;
+
+	List<Point3D_F64> cloud;
+	ApproximateSurfaceNormals alg;
+	FastQueue<PointVectorNN> output = new FastQueue<PointVectorNN>(PointVectorNN.class, false);
+
+	@Setup
+	public void setup() {
+		cloud = CloudBenchmarkData.createCloud(numPoints, 234);
+		alg = new ApproximateSurfaceNormals(10, 0.2);
+		alg.setNumThreads(numThreads);
+	}
+
+	@Benchmark
+	public FastQueue<PointVectorNN> process() {
+		output.reset();
+		alg.process(cloud, output);
+		return output;
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.benchmark.clouds;
+
+import bubo.clouds.PackedCloud3D_F64;
+import bubo.clouds.filter.UniformDensityCloudOctree;
+import georegression.struct.point.Point3D_F64;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link UniformDensityCloudOctree} for clouds stored as a list of points and as a
+ * {@link PackedCloud3D_F64}
+ *
+ * @author Peter Abeles
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkUniformDensityCloudOctree {
+
+	@Param({"10000", "100000", "1000000"})
+	public int numPoints;
+
+	List<Point3D_F64> cloud;
+	List<Point3D_F64> output = new ArrayList<Point3D_F64>();
+
+	PackedCloud3D_F64 packed;
+	PackedCloud3D_F64 packedOutput = new PackedCloud3D_F64();
+
+	UniformDensityCloudOctree alg;
+
+	@Setup
+	public void setup() {
+		cloud = CloudBenchmarkData.createCloud(numPoints, 234);
+		packed = CloudBenchmarkData.createPacked(numPoints, 234);
+		alg = new UniformDensityCloudOctree(20, 0.1, 234);
+	}
+
+	@Benchmark
+	public List<Point3D_F64> list() {
+		output.clear();
+		alg.process(cloud, output);
+		return output;
+	}
+
+	@Benchmark
+	public PackedCloud3D_F64 packed() {
+		packedOutput.reset();
+		alg.process(packed, packedOutput);
+		return packedOutput;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.benchmark.clouds;
+
+import bubo.clouds.PackedCloud3D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates synthetic point clouds for benchmarks.  The same number of points and seed always produces the same
+ * cloud.  Points are sampled from the floor and walls of a 10x10x3 room which contains a sphere and a
+ * cylinder, and Gaussian noise is added to each point.
+ *
+ * @author Peter Abeles
+ */
+public class CloudBenchmarkData {
+
+	// standard deviation of noise added to each point
+	public static final double NOISE = 0.005;
+
+	/**
+	 * Bounding box which contains every point in a synthetic cloud
+	 */
+	public static Box3D_F64 bounds() {
+		return new Box3D_F64(-0.1, -0.1, -0.1, 10.1, 10.1, 3.1);
+	}
+
+	/**
+	 * Creates a cloud with the specified number of points
+	 */
+	public static List<Point3D_F64> createCloud(int numPoints, long seed) {
+		Random rand = new Random(seed);
+		List<Point3D_F64> cloud = new ArrayList<Point3D_F64>(numPoints);
+
+		for (int i = 0; i < numPoints; i++) {
+			Point3D_F64 p = new Point3D_F64();
+			double u = rand.nextDouble(), v = rand.nextDouble();
+			switch (i % 5) {
+				case 0: // floor
+					p.set(10 * u, 10 * v, 0);
+					break;
+
+				case 1: // wall along the x-axis
+					p.set(10 * u, 0, 3 * v);
+					break;
+
+				case 2: // wall along the y-axis
+					p.set(0, 10 * u, 3 * v);
+					break;
+
+				case 3: { // sphere
+					double theta = 2 * Math.PI * u;
+					double phi = Math.acos(2 * v - 1);
+					p.set(6 + Math.cos(theta) * Math.sin(phi), 4 + Math.sin(theta) * Math.sin(phi), 1.5 + Math.cos(phi));
+				}
+				break;
+
+				default: { // vertical cylinder
+					double theta = 2 * Math.PI * u;
+					p.set(3 + 0.5 * Math.cos(theta), 7 + 0.5 * Math.sin(theta), 0.1 + 2.8 * v);
+				}
+				break;
+			}
+			p.x += rand.nextGaussian() * NOISE;
+			p.y += rand.nextGaussian() * NOISE;
+			p.z += rand.nextGaussian() * NOISE;
+			cloud.add(p);
+		}
+
+		return cloud;
+	}
+
+	/**
+	 * Same as {@link #createCloud(int, long)} but packed
+	 */
+	public static PackedCloud3D_F64 createPacked(int numPoints, long seed) {
+		List<Point3D_F64> cloud = createCloud(numPoints, seed);
+		PackedCloud3D_F64 ret = new PackedCloud3D_F64(numPoints);
+		for (int i = 0; i < cloud.size(); i++) {
+			Point3D_F64 p = cloud.get(i);
+			ret.add(p.x, p.y, p.z);
+		}
+		return ret;
+	}
+}
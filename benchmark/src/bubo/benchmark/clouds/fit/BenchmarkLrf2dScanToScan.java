@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.benchmark.clouds.fit;
+
+import bubo.clouds.fit.Lrf2dScanToScan;
+import bubo.clouds.fit.s2s.Lrf2dScanToScan_Correlative;
+import bubo.clouds.fit.s2s.Lrf2dScanToScan_GenericICP;
+import bubo.clouds.fit.s2s.Lrf2dScanToScan_IDC;
+import bubo.clouds.fit.s2s.Lrf2dScanToScan_LocalICP;
+import bubo.struct.StoppingCondition;
+import georegression.metric.UtilAngle;
+import georegression.struct.se.Se2_F64;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Measures how long it takes each {@link Lrf2dScanToScan} to match a pair of consecutive scans.  Each operation
+ * specifies the destination and source scans then estimates the motion, cycling through all the pairs in the
+ * sequence.  Run with the 'gc' profiler to record the allocation rate.
+ * </p>
+ *
+ * <p>
+ * The hint is the true motion with odometry noise added to it, using the same noise model and base noise
+ * levels as {@link bubo.validation.clouds.motion.BaseNoiseScanMotionValidation}.  'odometryNoise' scales the
+ * noise and a fixed seed is used, so every run sees the same hints.  The true motion is a hint which the
+ * matchers would never see in practice and lets them converge in fewer iterations.
+ * </p>
+ *
+ * <p>
+ * By default the scans are simulated.  Set 'dataSet' to a directory which contains the same 'observations.txt'
+ * and 'lrf.xml' files used by validation, e.g. data/mapping2d/sim02, to use recorded data instead.  Scans
+ * with more range measurements than 'scanSize' are decimated.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkLrf2dScanToScan {
+
+	@Param({"LocalICP", "GenericICP", "IDC", "Correlative"})
+	public String algorithm;
+
+	@Param({"180", "360", "720", "1080"})
+	public int scanSize;
+
+	// standard deviation of noise added to each range measurement
+	@Param({"0", "0.01", "0.03"})
+	public double rangeNoise;
+
+	// scale factor of the noise added to the hint.  0 for the true motion
+	@Param({"1"})
+	public double odometryNoise;
+
+	@Param({"simulated"})
+	public String dataSet;
+
+	// maximum number of scans which are read from a data set
+	@Param({"500"})
+	public int maxScans;
+
+	Lrf2dScanToScan estimator;
+
+	List<double[]> scans;
+	List<Se2_F64> hints = new ArrayList<Se2_F64>();
+
+	// index of the source scan in the next pair
+	int next;
+
+	@Setup
+	public void setup() throws IOException {
+		Lrf2dBenchmarkData data;
+		if (dataSet.equals("simulated")) {
+			data = Lrf2dBenchmarkData.simulate(scanSize, 200);
+		} else {
+			data = Lrf2dBenchmarkData.load(dataSet, maxScans);
+			data.decimate(scanSize);
+		}
+		if (data.scans.size() < 2)
+			throw new IllegalArgumentException("Data set must have at least two scans");
+
+		data.addRangeNoise(rangeNoise, new Random(234));
+
+		scans = data.scans;
+		hints.clear();
+		hints.add(new Se2_F64());
+		Random rand = new Random(345);
+		for (int i = 1; i < scans.size(); i++) {
+			hints.add(data.noisyMotion(i, 0.02 * odometryNoise, 0.002 * odometryNoise, 0.05 * odometryNoise, rand));
+		}
+
+		estimator = createEstimator(algorithm);
+		estimator.setSensorParam(data.param);
+		next = 1;
+	}
+
+	@Benchmark
+	public boolean match() {
+		int i = next;
+		next = next + 1 == scans.size() ? 1 : next + 1;
+
+		estimator.setDestination(scans.get(i - 1));
+		estimator.setSource(scans.get(i));
+		return estimator.process(hints.get(i));
+	}
+
+	/**
+	 * Creates the estimators using the same settings as validation and the unit tests
+	 */
+	public static Lrf2dScanToScan createEstimator(String name) {
+		StoppingCondition stop = new StoppingCondition(20, 0.0001);
+
+		if (name.equals("LocalICP")) {
+			return new Lrf2dScanToScan_LocalICP(stop, 200, 0.20);
+		} else if (name.equals("GenericICP")) {
+			return new Lrf2dScanToScan_GenericICP();
+		} else if (name.equals("IDC")) {
+			return new Lrf2dScanToScan_IDC(stop, UtilAngle.degreeToRadian(20), 0.2, 0.1);
+		} else if (name.equals("Correlative")) {
+			return new Lrf2dScanToScan_Correlative(0.02, 0.5, 0.3, 0.3, 5);
+		} else {
+			throw new IllegalArgumentException("Unknown algorithm " + name);
+		}
+	}
+}
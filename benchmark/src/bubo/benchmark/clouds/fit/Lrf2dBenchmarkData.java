@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.benchmark.clouds.fit;
+
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.io.serialization.SerializationDefinitionManager;
+import bubo.io.text.ReadCsvObjectSmart;
+import bubo.maps.d2.lines.LineSegmentMap;
+import bubo.simulation.d2.sensors.SimulateLrf2D;
+import bubo.validation.clouds.motion.RobotLrfObservations;
+import com.thoughtworks.xstream.XStream;
+import georegression.struct.line.LineSegment2D_F64;
+import georegression.struct.se.Se2_F64;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A sequence of LRF scans and the sensor's location when each scan was collected, for use in benchmarks.  The
+ * sequence is either read from a data set in the same format used by
+ * {@link bubo.validation.clouds.motion.ScanMotionValidation} or simulated.
+ *
+ * @author Peter Abeles
+ */
+public class Lrf2dBenchmarkData {
+
+	public Lrf2dParam param;
+	public List<double[]> scans = new ArrayList<double[]>();
+	public List<Se2_F64> sensorToWorld = new ArrayList<Se2_F64>();
+
+	/**
+	 * Reads in a data set.
+	 *
+	 * @param directory Directory containing 'observations.txt' and 'lrf.xml'
+	 * @param maxScans  The maximum number of scans which are read
+	 */
+	public static Lrf2dBenchmarkData load(String directory, int maxScans) throws IOException {
+		Lrf2dBenchmarkData ret = new Lrf2dBenchmarkData();
+
+		ret.param = (Lrf2dParam) new XStream().fromXML(new FileReader(new File(directory, "lrf.xml")));
+
+		SerializationDefinitionManager def = new SerializationDefinitionManager();
+		def.loadDefinition(RobotLrfObservations.class, "timeStamp", "scanToWorld", "range");
+		def.loadDefinition(Se2_F64.class, "x", "y", "yaw");
+
+		FileInputStream in = new FileInputStream(new File(directory, "observations.txt"));
+		try {
+			ReadCsvObjectSmart<RobotLrfObservations> reader = new ReadCsvObjectSmart<RobotLrfObservations>(in, def,
+					RobotLrfObservations.class.getSimpleName());
+			reader.setComment('#');
+			reader.setIgnoreUnparsedData(true);
+
+			RobotLrfObservations data = new RobotLrfObservations(ret.param.getNumberOfScans());
+			while (ret.scans.size() < maxScans && reader.nextObject(data) != null) {
+				ret.scans.add(data.getRange().clone());
+				ret.sensorToWorld.add(data.getScanToWorld().copy());
+			}
+		} finally {
+			in.close();
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Simulates a sensor with a 270 degree field of view driving around inside a room with a few obstacles.
+	 *
+	 * @param numberOfScans Number of range measurements in each scan
+	 * @param length        Number of scans in the sequence
+	 */
+	public static Lrf2dBenchmarkData simulate(int numberOfScans, int length) {
+		Lrf2dBenchmarkData ret = new Lrf2dBenchmarkData();
+		ret.param = new Lrf2dParam("Simulated", -3 * Math.PI / 4, 3 * Math.PI / 2, numberOfScans, 20, 0, 0);
+
+		LineSegmentMap world = new LineSegmentMap();
+		world.lines.add(new LineSegment2D_F64(-6, -4, 6, -4));
+		world.lines.add(new LineSegment2D_F64(6, -4, 6, 4));
+		world.lines.add(new LineSegment2D_F64(6, 4, -6, 4));
+		world.lines.add(new LineSegment2D_F64(-6, 4, -6, -4));
+		world.lines.add(new LineSegment2D_F64(-2, 2, -1, 1));
+		world.lines.add(new LineSegment2D_F64(2, -3, 3, -1.5));
+		world.lines.add(new LineSegment2D_F64(3, 2, 4.5, 2));
+
+		SimulateLrf2D model = new SimulateLrf2D(ret.param);
+		for (int i = 0; i < length; i++) {
+			// drive along an ellipse
+			double t = 2 * Math.PI * i / length;
+			Se2_F64 pose = new Se2_F64(3 * Math.cos(t), 1.5 * Math.sin(t), t + Math.PI / 2);
+			model.update(pose, world);
+
+			ret.scans.add(model.getMeasurement().meas.clone());
+			ret.sensorToWorld.add(pose);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Reduces the number of range measurements in each scan by only keeping every N-th one.  If the scans
+	 * already have the same or fewer measurements then nothing is changed.
+	 *
+	 * @param numberOfScans The desired number of range measurements in each scan
+	 */
+	public void decimate(int numberOfScans) {
+		int period = param.getNumberOfScans() / numberOfScans;
+		if (period <= 1)
+			return;
+
+		int N = param.getNumberOfScans() / period;
+		double sweep = param.getAngleIncrement() * period * (N - 1);
+		param = new Lrf2dParam(param.getSensorType(), param.getStartAngle(), sweep, N,
+				param.getMaxRange(), param.getBeamAperture(), param.getRangeAccuracy());
+
+		for (int i = 0; i < scans.size(); i++) {
+			double original[] = scans.get(i);
+			double reduced[] = new double[N];
+			for (int j = 0; j < N; j++) {
+				reduced[j] = original[j * period];
+			}
+			scans.set(i, reduced);
+		}
+	}
+
+	/**
+	 * Adds Gaussian noise to all the valid range measurements
+	 */
+	public void addRangeNoise(double sigma, Random rand) {
+		if (sigma <= 0)
+			return;
+
+		for (double scan[] : scans) {
+			for (int j = 0; j < scan.length; j++) {
+				if (param.isValidRange(scan[j]))
+					scan[j] = Math.max(0, scan[j] + rand.nextGaussian() * sigma);
+			}
+		}
+	}
+
+	/**
+	 * Computes the motion from scan 'index' to scan 'index-1'
+	 */
+	public Se2_F64 motion(int index) {
+		return sensorToWorld.get(index).concat(sensorToWorld.get(index - 1).invert(null), null);
+	}
+
+	/**
+	 * Computes the motion from scan 'index' to scan 'index-1' with odometry noise added to it.  The noise
+	 * model is the same as {@link bubo.validation.clouds.motion.BaseNoiseScanMotionValidation}, where the
+	 * error grows with the distance traveled and the angle turned.
+	 *
+	 * @param index            Index of the scan
+	 * @param travelSigma      Location error per distance traveled
+	 * @param travelAngleSigma Angle error per distance traveled
+	 * @param angleSigma       Angle error per radian turned
+	 * @param rand             Random number generator
+	 */
+	public Se2_F64 noisyMotion(int index, double travelSigma, double travelAngleSigma, double angleSigma,
+							   Random rand) {
+		Se2_F64 motion = motion(index);
+
+		double T = motion.T.norm();
+		double deltaAngle = Math.abs(motion.getYaw());
+
+		double noiseAngle = rand.nextGaussian() * (travelAngleSigma * T + angleSigma * deltaAngle);
+		motion.T.x += rand.nextGaussian() * travelSigma * T;
+		motion.T.y += rand.nextGaussian() * travelSigma * T;
+		motion.setYaw(motion.getYaw() + noiseAngle);
+
+		return motion;
+	}
+}
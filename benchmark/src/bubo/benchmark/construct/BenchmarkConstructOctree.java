@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.benchmark.construct;
+
+import bubo.benchmark.clouds.CloudBenchmarkData;
+import bubo.construct.ConstructOctreeNumPoints_F64;
+import bubo.construct.Octree_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of building an Octree with {@link ConstructOctreeNumPoints_F64}.  The construction is recycled
+ * between operations, like it is when the same instance processes a sequence of clouds.
+ *
+ * @author Peter Abeles
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkConstructOctree {
+
+	@Param({"10000", "100000", "1000000"})
+	public int numPoints;
+
+	@Param({"20"})
+	public int divideThreshold;
+
+	List<Point3D_F64> cloud;
+	Box3D_F64 bounds = CloudBenchmarkData.bounds();
+	ConstructOctreeNumPoints_F64 alg;
+
+	@Setup
+	public void setup() {
+		cloud = CloudBenchmarkData.createCloud(numPoints, 234);
+		alg = new ConstructOctreeNumPoints_F64(divideThreshold);
+	}
+
+	@Benchmark
+	public Octree_F64 construct() {
+		alg.initialize(bounds);
+		for (int i = 0; i < cloud.size(); i++) {
+			alg.addPoint(cloud.get(i), null);
+		}
+		return alg.getTree();
+	}
+}
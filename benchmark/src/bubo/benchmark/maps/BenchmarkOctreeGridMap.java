@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.benchmark.maps;
+
+import bubo.benchmark.clouds.CloudBenchmarkData;
+import bubo.maps.d3.grid.impl.OctreeGridMap_F64;
+import georegression.struct.point.Point3D_F64;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of reading and writing individual cells in {@link OctreeGridMap_F64}.  The cells are found by
+ * discretizing a synthetic cloud, so they are concentrated on surfaces like in a real map, and each operation
+ * is a single cell.
+ *
+ * @author Peter Abeles
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchmarkOctreeGridMap {
+
+	// size of a cell in world units
+	public static final double CELL_SIZE = 0.05;
+	// number of cells accessed in each invocation
+	public static final int BLOCK = 1000;
+
+	@Param({"10000", "100000", "1000000"})
+	public int numPoints;
+
+	int cellX[], cellY[], cellZ[];
+	// first cell in the next block
+	int next;
+
+	// map which is written to
+	OctreeGridMap_F64 mapSet;
+	// map which has all the cells already written to and is read from
+	OctreeGridMap_F64 mapGet;
+
+	@Setup
+	public void setup() {
+		List<Point3D_F64> cloud = CloudBenchmarkData.createCloud(numPoints, 234);
+
+		cellX = new int[numPoints];
+		cellY = new int[numPoints];
+		cellZ = new int[numPoints];
+		// shift it so that all the coordinates are positive
+		for (int i = 0; i < numPoints; i++) {
+			Point3D_F64 p = cloud.get(i);
+			cellX[i] = (int) ((p.x + 0.5) / CELL_SIZE);
+			cellY[i] = (int) ((p.y + 0.5) / CELL_SIZE);
+			cellZ[i] = (int) ((p.z + 0.5) / CELL_SIZE);
+		}
+
+		int length = (int) (11 / CELL_SIZE);
+		mapSet = new OctreeGridMap_F64(length, length, length);
+		mapGet = new OctreeGridMap_F64(length, length, length);
+		for (int i = 0; i < numPoints; i++) {
+			mapGet.set(cellX[i], cellY[i], cellZ[i], 0.8);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BLOCK)
+	public void set() {
+		// the map is cleared after every cell has been written to, so both new and existing cells are written
+		if (next == 0)
+			mapSet.clear();
+		for (int i = next; i < next + BLOCK; i++) {
+			mapSet.set(cellX[i], cellY[i], cellZ[i], 0.7);
+		}
+		next = nextBlock(next);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BLOCK)
+	public void get(Blackhole bh) {
+		for (int i = next; i < next + BLOCK; i++) {
+			bh.consume(mapGet.get(cellX[i], cellY[i], cellZ[i]));
+		}
+		next = nextBlock(next);
+	}
+
+	private int nextBlock(int start) {
+		return start + 2 * BLOCK > numPoints ? 0 : start + BLOCK;
+	}
+}
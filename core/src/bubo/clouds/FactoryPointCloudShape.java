@@ -61,6 +61,7 @@ public class FactoryPointCloudShape {
 		PointCloudShapeDetectionSchnabel2007 alg = new PointCloudShapeDetectionSchnabel2007(configRansac);
 
 		ApproximateSurfaceNormals surface = new ApproximateSurfaceNormals(configNormal.numNeighbors, configNormal.maxDistanceNeighbor);
+		surface.setNumThreads(configNormal.numThreads);
 
 //		PostProcessShapes postProcess = new MergeShapesPointVectorNN(
 //				configMerge.commonMembershipFraction,configMerge.commonMembershipFraction);
@@ -99,6 +100,7 @@ public class FactoryPointCloudShape {
 
 		ApproximateSurfaceNormals surface = new ApproximateSurfaceNormals(
 				configNormal.numNeighbors, configNormal.maxDistanceNeighbor);
+		surface.setNumThreads(configNormal.numThreads);
 
 		RansacMulti<PointVectorNN> ransac = new RansacMulti<PointVectorNN>(
 				configRansac.randSeed, configRansac.maxIterations, configRansac.models, PointVectorNN.class);
@@ -122,6 +124,7 @@ public class FactoryPointCloudShape {
 
 		ApproximateSurfaceNormals surface = new ApproximateSurfaceNormals(
 				configNormal.numNeighbors, configNormal.maxDistanceNeighbor);
+		surface.setNumThreads(configNormal.numThreads);
 
 		RansacMulti<PointVectorNN> ransac = new RansacMulti<PointVectorNN>(
 				configRansac.randSeed, configRansac.maxIterations, configRansac.models, PointVectorNN.class);
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds;
+
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+
+import java.util.List;
+
+/**
+ * Point cloud which stores each attribute of the points in its own primitive array (structure of arrays).
+ * Compared to a List of {@link Point3D_F64} this avoids declaring an object for each point, which
+ * improves cache locality and reduces the load on the garbage collector for large clouds.
+ * <p></p>
+ * The location of each point is always stored.  Normals, color, and intensity are optional columns which are
+ * only declared after they have been enabled.  All the arrays can be longer than the number of points, only
+ * the first {@link #size} elements are valid.  Arrays are only grown and are recycled after {@link #reset()}.
+ *
+ * @author Peter Abeles
+ */
+public class PackedCloud3D_F64 {
+	/**
+	 * Number of points in the cloud
+	 */
+	public int size;
+
+	/**
+	 * Location of each point
+	 */
+	public double x[], y[], z[];
+
+	/**
+	 * (Optional) Normal of the surface at each point.  null if not enabled.
+	 */
+	public float normalX[], normalY[], normalZ[];
+
+	/**
+	 * (Optional) Color of each point encoded as 0xRRGGBB.  null if not enabled.
+	 */
+	public int rgb[];
+
+	/**
+	 * (Optional) Intensity of each point, e.g. lidar return strength.  null if not enabled.
+	 */
+	public float intensity[];
+
+	/**
+	 * Creates a cloud with storage for the specified number of points.
+	 *
+	 * @param initialCapacity Number of points storage is initially declared for.
+	 */
+	public PackedCloud3D_F64(int initialCapacity) {
+		initialCapacity = Math.max(1, initialCapacity);
+		x = new double[initialCapacity];
+		y = new double[initialCapacity];
+		z = new double[initialCapacity];
+	}
+
+	public PackedCloud3D_F64() {
+		this(10);
+	}
+
+	/**
+	 * Creates a new cloud and copies the points from the list into it
+	 */
+	public static PackedCloud3D_F64 wrap(List<Point3D_F64> points) {
+		PackedCloud3D_F64 cloud = new PackedCloud3D_F64(points.size());
+		cloud.setTo(points);
+		return cloud;
+	}
+
+	/**
+	 * Declares storage for normals
+	 */
+	public void enableNormals() {
+		if (normalX == null) {
+			normalX = new float[x.length];
+			normalY = new float[x.length];
+			normalZ = new float[x.length];
+		}
+	}
+
+	/**
+	 * Declares storage for color
+	 */
+	public void enableColor() {
+		if (rgb == null)
+			rgb = new int[x.length];
+	}
+
+	/**
+	 * Declares storage for intensity
+	 */
+	public void enableIntensity() {
+		if (intensity == null)
+			intensity = new float[x.length];
+	}
+
+	public boolean hasNormals() {
+		return normalX != null;
+	}
+
+	public boolean hasColor() {
+		return rgb != null;
+	}
+
+	public boolean hasIntensity() {
+		return intensity != null;
+	}
+
+	/**
+	 * Discards all points.  Storage and enabled columns are kept.
+	 */
+	public void reset() {
+		size = 0;
+	}
+
+	/**
+	 * Changes the number of points.  If needed the storage is grown and existing values are copied.
+	 * The value of any new points is undefined.
+	 *
+	 * @param N New number of points.
+	 */
+	public void resize(int N) {
+		reserve(N);
+		size = N;
+	}
+
+	/**
+	 * Ensures that there is storage for at least N points, preserving the existing values.
+	 */
+	public void reserve(int N) {
+		if (N <= x.length)
+			return;
+
+		int length = Math.max(N, x.length * 2);
+		x = grow(x, length, size);
+		y = grow(y, length, size);
+		z = grow(z, length, size);
+		if (normalX != null) {
+			normalX = grow(normalX, length, size);
+			normalY = grow(normalY, length, size);
+			normalZ = grow(normalZ, length, size);
+		}
+		if (rgb != null) {
+			int tmp[] = new int[length];
+			System.arraycopy(rgb, 0, tmp, 0, size);
+			rgb = tmp;
+		}
+		if (intensity != null)
+			intensity = grow(intensity, length, size);
+	}
+
+	/**
+	 * Adds a new point to the end of the cloud.  Values in optional columns are undefined.
+	 *
+	 * @return index of the new point
+	 */
+	public int add(double x, double y, double z) {
+		if (size == this.x.length)
+			reserve(size + 1);
+
+		this.x[size] = x;
+		this.y[size] = y;
+		this.z[size] = z;
+		return size++;
+	}
+
+	/**
+	 * Adds a copy of a point in another cloud to the end of this cloud.  Optional columns which are enabled in
+	 * both clouds are copied.
+	 *
+	 * @param src   The cloud the point is copied from
+	 * @param index Index of the point in src
+	 * @return index of the new point
+	 */
+	public int add(PackedCloud3D_F64 src, int index) {
+		int i = add(src.x[index], src.y[index], src.z[index]);
+		if (normalX != null && src.normalX != null) {
+			normalX[i] = src.normalX[index];
+			normalY[i] = src.normalY[index];
+			normalZ[i] = src.normalZ[index];
+		}
+		if (rgb != null && src.rgb != null)
+			rgb[i] = src.rgb[index];
+		if (intensity != null && src.intensity != null)
+			intensity[i] = src.intensity[index];
+		return i;
+	}
+
+	public void set(int index, double x, double y, double z) {
+		this.x[index] = x;
+		this.y[index] = y;
+		this.z[index] = z;
+	}
+
+	/**
+	 * Copies the location of a point into the provided storage.
+	 */
+	public void get(int index, Point3D_F64 output) {
+		output.set(x[index], y[index], z[index]);
+	}
+
+	/**
+	 * Sets the normal of a point.  Normals must be enabled.
+	 */
+	public void setNormal(int index, double nx, double ny, double nz) {
+		normalX[index] = (float) nx;
+		normalY[index] = (float) ny;
+		normalZ[index] = (float) nz;
+	}
+
+	/**
+	 * Replaces the points in this cloud with the ones in the list.  Optional columns are left unchanged and their
+	 * values are undefined.
+	 */
+	public void setTo(List<Point3D_F64> points) {
+		int N = points.size();
+		size = 0;
+		reserve(N);
+		for (int i = 0; i < N; i++) {
+			Point3D_F64 p = points.get(i);
+			x[i] = p.x;
+			y[i] = p.y;
+			z[i] = p.z;
+		}
+		size = N;
+	}
+
+	/**
+	 * Makes this cloud into a copy of the provided cloud, including all of its enabled optional columns.
+	 */
+	public void setTo(PackedCloud3D_F64 src) {
+		size = 0;
+		if (src.hasNormals()) enableNormals();
+		if (src.hasColor()) enableColor();
+		if (src.hasIntensity()) enableIntensity();
+		reserve(src.size);
+
+		int N = src.size;
+		System.arraycopy(src.x, 0, x, 0, N);
+		System.arraycopy(src.y, 0, y, 0, N);
+		System.arraycopy(src.z, 0, z, 0, N);
+		if (src.normalX != null) {
+			System.arraycopy(src.normalX, 0, normalX, 0, N);
+			System.arraycopy(src.normalY, 0, normalY, 0, N);
+			System.arraycopy(src.normalZ, 0, normalZ, 0, N);
+		}
+		if (src.rgb != null)
+			System.arraycopy(src.rgb, 0, rgb, 0, N);
+		if (src.intensity != null)
+			System.arraycopy(src.intensity, 0, intensity, 0, N);
+		size = N;
+	}
+
+	/**
+	 * Copies the location of each point into the list.  Existing points in the list are reused and new ones
+	 * are only declared if the list is too short.  Extra points are removed from the list.
+	 *
+	 * @param output Storage for the points.
+	 */
+	public void toList(List<Point3D_F64> output) {
+		while (output.size() > size) {
+			output.remove(output.size() - 1);
+		}
+		for (int i = 0; i < size; i++) {
+			if (i < output.size())
+				output.get(i).set(x[i], y[i], z[i]);
+			else
+				output.add(new Point3D_F64(x[i], y[i], z[i]));
+		}
+	}
+
+	/**
+	 * Computes the axis aligned bounding box of all the points.
+	 */
+	public void boundingBox(Box3D_F64 bounds) {
+		if (size == 0) {
+			bounds.p0.set(0, 0, 0);
+			bounds.p1.set(0, 0, 0);
+			return;
+		}
+
+		double x0 = x[0], y0 = y[0], z0 = z[0];
+		double x1 = x0, y1 = y0, z1 = z0;
+
+		for (int i = 1; i < size; i++) {
+			double vx = x[i], vy = y[i], vz = z[i];
+			if (vx < x0) x0 = vx; else if (vx > x1) x1 = vx;
+			if (vy < y0) y0 = vy; else if (vy > y1) y1 = vy;
+			if (vz < z0) z0 = vz; else if (vz > z1) z1 = vz;
+		}
+
+		bounds.p0.set(x0, y0, z0);
+		bounds.p1.set(x1, y1, z1);
+	}
+
+	private static double[] grow(double[] a, int length, int size) {
+		double tmp[] = new double[length];
+		System.arraycopy(a, 0, tmp, 0, size);
+		return tmp;
+	}
+
+	private static float[] grow(float[] a, int length, int size) {
+		float tmp[] = new float[length];
+		System.arraycopy(a, 0, tmp, 0, size);
+		return tmp;
+	}
+}
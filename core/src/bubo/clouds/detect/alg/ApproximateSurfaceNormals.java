@@ -18,7 +18,7 @@
 
 package bubo.clouds.detect.alg;
 
-import georegression.fitting.plane.FitPlane3D_F64;
+import bubo.struct.ConcurrentBlocks;
 import georegression.struct.point.Point3D_F64;
 import org.ddogleg.nn.FactoryNearestNeighbor;
 import org.ddogleg.nn.NearestNeighbor;
@@ -40,6 +40,10 @@ import java.util.List;
  * The number of NN used to compute the plane must be more than 2 and the number computed total must be >=
  * the number used to compute the plane.  The points used to compute the plane are the ones closest to the point.
  * <p></p>
+ * The plane is fit using {@link FitNormalCovariance3D_F64}.  If more than one thread is specified then the
+ * nearest-neighbor graph and the normals are both computed concurrently.  See {@link ApproximateSurfaceNormalsPacked}
+ * if only the normals are needed and not the graph.
+ * <p></p>
  * [1] Hoppe, H., DeRose, T., Duchamp, T., McDonald, J., & Stuetzle, W. "Surface reconstruction from unorganized
  * points" 1992, Vol. 26, No. 2, pp. 71-78. ACM.
  *
@@ -51,12 +55,10 @@ public class ApproximateSurfaceNormals {
 	private PointCloudToGraphNN createGraph;
 
 	// the local plane computed using neighbors
-	private FitPlane3D_F64 fitPlane = new FitPlane3D_F64();
-	// array to store points used to compute plane
-	private List<Point3D_F64> fitList = new ArrayList<Point3D_F64>();
+	private FitNormalCovariance3D_F64 fitPlane = new FitNormalCovariance3D_F64();
 
-	// storage for the center point when computing the local surface normal
-	private Point3D_F64 center = new Point3D_F64();
+	// one plane fitter for each block of points when computed concurrently
+	private List<FitNormalCovariance3D_F64> blockFitters = new ArrayList<FitNormalCovariance3D_F64>();
 
 	/**
 	 * Configures approximation algorithm
@@ -80,6 +82,15 @@ public class ApproximateSurfaceNormals {
 		this.createGraph = new PointCloudToGraphNN((NearestNeighbor)FactoryNearestNeighbor.kdtree(),numNeighbors,maxDistanceNeighbor);
 	}
 
+	/**
+	 * Specifies the number of threads used to construct the nearest-neighbor graph.
+	 *
+	 * @see PointCloudToGraphNN#setNumThreads(int)
+	 */
+	public void setNumThreads(int numThreads) {
+		createGraph.setNumThreads(numThreads);
+	}
+
 	/**
 	 * Process point cloud and finds the shape's normals.  If a normal could not be estimated for the point
 	 * its vector is set to (0,0,0).  A normal cannot be found for points with 1 or less neighbors.
@@ -92,31 +103,51 @@ public class ApproximateSurfaceNormals {
 		// convert the point cloud into a format that the NN algorithm can recognize
 		createGraph.process(cloud);
 
-		FastQueue<PointVectorNN> listPointVector = createGraph.getListPointVector();
+		final FastQueue<PointVectorNN> listPointVector = createGraph.getListPointVector();
+
+		ConcurrentBlocks concurrent = createGraph.getConcurrent();
+		if (concurrent == null) {
+			// compute surface normal for each point using their neighbors
+			for (int i = 0; i < listPointVector.size; i++) {
+				computeSurfaceNormal(listPointVector.get(i), fitPlane);
+			}
+		} else {
+			while (blockFitters.size() < concurrent.getNumThreads()) {
+				blockFitters.add(new FitNormalCovariance3D_F64());
+			}
+
+			// each point only writes to its own normal, so the blocks are independent
+			concurrent.process(listPointVector.size, new ConcurrentBlocks.Block() {
+				@Override
+				public void process(int index, int start, int end) {
+					FitNormalCovariance3D_F64 fitter = blockFitters.get(index);
+					for (int i = start; i < end; i++) {
+						computeSurfaceNormal(listPointVector.get(i), fitter);
+					}
+				}
+			});
+		}
 
-		// compute surface normal for each point using their neighbors
 		for (int i = 0; i < listPointVector.size; i++) {
-			PointVectorNN p = listPointVector.get(i);
-			computeSurfaceNormal(p);
-			output.add(p);
+			output.add(listPointVector.get(i));
 		}
 	}
 
 	/**
 	 * Fits a plane to the nearest neighbors around the point and sets point.normal.
 	 */
-	protected void computeSurfaceNormal(PointVectorNN point) {
+	protected static void computeSurfaceNormal(PointVectorNN point, FitNormalCovariance3D_F64 fitPlane) {
 		// need 3 points to compute a plane.  which means you need two neighbors and 'point'
 		if (point.neighbors.size >= 2) {
-			fitList.clear();
+			fitPlane.reset();
 
-			fitList.add(point.p);
+			fitPlane.add(point.p.x, point.p.y, point.p.z);
 			for (int i = 0; i < point.neighbors.size; i++) {
-				PointVectorNN n = point.neighbors.get(i);
-				fitList.add(n.p);
+				Point3D_F64 n = point.neighbors.get(i).p;
+				fitPlane.add(n.x, n.y, n.z);
 			}
 
-			fitPlane.svd(fitList, center, point.normal);
+			fitPlane.computeNormal(point.normal);
 		} else {
 			point.normal.set(0, 0, 0);
 		}
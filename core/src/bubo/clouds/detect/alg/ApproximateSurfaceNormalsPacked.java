@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.detect.alg;
+
+import bubo.clouds.PackedCloud3D_F64;
+import bubo.clouds.nn.SharedKdTreeNN;
+import bubo.struct.ConcurrentBlocks;
+import georegression.struct.point.Point3D_F64;
+import org.ddogleg.nn.NnData;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Estimates the surface normal at each point in a cloud and writes the results into a packed array
+ * with the format (nx,ny,nz) for each point, or into the normal columns of a {@link PackedCloud3D_F64}.
+ * The normal is found the same way as {@link ApproximateSurfaceNormals} but the nearest-neighbor graph is
+ * not saved and no object is declared for each point.  The points are split into blocks which are processed concurrently, with each block
+ * having its own search storage and {@link FitNormalCovariance3D_F64}.
+ * <p></p>
+ * If a normal could not be estimated for a point then it is set to (0,0,0).
+ *
+ * @author Peter Abeles
+ */
+public class ApproximateSurfaceNormalsPacked {
+
+	// number of nearest-neighbors it will search for
+	private int numNeighbors;
+	// the maximum distance a neighbor can be
+	private double maxDistanceNeighbor;
+
+	// K-D tree which is searched by all the threads
+	private SharedKdTreeNN<double[]> nn = new SharedKdTreeNN<double[]>(3);
+
+	// storage for points in the format NN understands.  recycled between calls
+	private List<double[]> storage = new ArrayList<double[]>();
+	private List<double[]> points = new ArrayList<double[]>();
+
+	private ConcurrentBlocks concurrent = new ConcurrentBlocks(1);
+	private List<BlockStorage> blocks = new ArrayList<BlockStorage>();
+
+	// where the normals are written to.  Only one is used at a time
+	private double[] outputArray;
+	private PackedCloud3D_F64 outputCloud;
+
+	/**
+	 * Configures approximation algorithm
+	 *
+	 * @param numNeighbors        Number of neighbors it will use to approximate normal
+	 * @param maxDistanceNeighbor The maximum distance two points can be from each other to be considered a neighbor
+	 */
+	public ApproximateSurfaceNormalsPacked(int numNeighbors, double maxDistanceNeighbor) {
+		this.numNeighbors = numNeighbors;
+		this.maxDistanceNeighbor = maxDistanceNeighbor;
+	}
+
+	/**
+	 * Specifies the number of threads used to compute the normals.
+	 *
+	 * @param numThreads Number of threads.  Must be &ge; 1.  Default is 1.
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads == concurrent.getNumThreads())
+			return;
+		ConcurrentBlocks c = new ConcurrentBlocks(numThreads);
+		concurrent.shutdown();
+		concurrent = c;
+	}
+
+	public int getNumThreads() {
+		return concurrent.getNumThreads();
+	}
+
+	/**
+	 * Computes the surface normal for each point in the cloud.
+	 *
+	 * @param cloud   Input: 3D point cloud
+	 * @param normals Output: Storage for normals.  If null or too small a new array is declared.
+	 * @return Array containing the normals.  Point i's normal is stored in elements 3*i to 3*i+2.
+	 */
+	public double[] process(List<Point3D_F64> cloud, double[] normals) {
+		final int N = cloud.size();
+
+		if (normals == null || normals.length < N * 3)
+			normals = new double[N * 3];
+
+		// convert the point cloud into the NN format
+		declarePoints(N);
+		for (int i = 0; i < N; i++) {
+			Point3D_F64 p = cloud.get(i);
+			double[] d = points.get(i);
+			d[0] = p.x;
+			d[1] = p.y;
+			d[2] = p.z;
+		}
+
+		outputArray = normals;
+		computeNormals(N);
+		outputArray = null;
+
+		return normals;
+	}
+
+	/**
+	 * Computes the surface normal for each point in the cloud and writes it into the cloud's normal columns,
+	 * which are enabled if needed.
+	 *
+	 * @param cloud Input/Output: 3D point cloud.  The location of points is not modified.
+	 */
+	public void process(PackedCloud3D_F64 cloud) {
+		final int N = cloud.size;
+
+		cloud.enableNormals();
+
+		declarePoints(N);
+		for (int i = 0; i < N; i++) {
+			double[] d = points.get(i);
+			d[0] = cloud.x[i];
+			d[1] = cloud.y[i];
+			d[2] = cloud.z[i];
+		}
+
+		outputCloud = cloud;
+		computeNormals(N);
+		outputCloud = null;
+	}
+
+	/**
+	 * Fills the list of points with N recycled arrays
+	 */
+	private void declarePoints(int N) {
+		while (storage.size() < N) {
+			storage.add(new double[3]);
+		}
+		points.clear();
+		for (int i = 0; i < N; i++) {
+			points.add(storage.get(i));
+		}
+	}
+
+	/**
+	 * Constructs the NN tree and computes the normal for all the points
+	 */
+	private void computeNormals(int N) {
+		nn.setPoints(points, points);
+
+		while (blocks.size() < concurrent.getNumThreads()) {
+			blocks.add(new BlockStorage());
+		}
+
+		concurrent.process(N, new ConcurrentBlocks.Block() {
+			@Override
+			public void process(int index, int start, int end) {
+				computeNormals(blocks.get(index), start, end);
+			}
+		});
+	}
+
+	/**
+	 * Computes the normals for points inside the range [start,end)
+	 */
+	private void computeNormals(BlockStorage block, int start, int end) {
+		if (block.searcher == null)
+			block.searcher = nn.createSearcher();
+
+		for (int i = start; i < end; i++) {
+			block.results.reset();
+			// numNeighbors+1 since the point itself will also be returned
+			block.searcher.findNearest(points.get(i), maxDistanceNeighbor, numNeighbors + 1, block.results);
+
+			block.fitter.reset();
+			for (int j = 0; j < block.results.size; j++) {
+				double[] p = block.results.get(j).point;
+				block.fitter.add(p[0], p[1], p[2]);
+			}
+
+			if (outputArray != null) {
+				block.fitter.computeNormal(outputArray, i * 3);
+			} else {
+				block.fitter.computeNormal(block.normal, 0);
+				outputCloud.setNormal(i, block.normal[0], block.normal[1], block.normal[2]);
+			}
+		}
+	}
+
+	/**
+	 * Storage for one block of points.  Only used by one thread at a time and recycled between calls.
+	 */
+	private static class BlockStorage {
+		SharedKdTreeNN.Searcher<double[]> searcher;
+		FastQueue<NnData<double[]>> results = new FastQueue<NnData<double[]>>((Class) NnData.class, true);
+		FitNormalCovariance3D_F64 fitter = new FitNormalCovariance3D_F64();
+		double[] normal = new double[3];
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.detect.alg;
+
+import georegression.struct.point.Vector3D_F64;
+
+/**
+ * Estimates the normal of a plane which best fits a set of points.  The points are added one at a time to
+ * a covariance accumulator and the normal is found as the eigenvector with the smallest eigenvalue.  Since
+ * the covariance matrix is a symmetric 3x3 matrix its eigenvalues are found in closed form, which is
+ * much faster than a general purpose SVD and doesn't declare any memory.  The solution is the same
+ * as the one found by {@link georegression.fitting.plane.FitPlane3D_F64#svd}, up to the sign.
+ * <p></p>
+ * To reduce numerical issues when the points are far from the origin, the points are accumulated relative
+ * to the first point added.  Instances are not thread safe, but are cheap to create.
+ *
+ * @author Peter Abeles
+ */
+public class FitNormalCovariance3D_F64 {
+
+	// number of points added
+	private int N;
+
+	// origin of the shifted coordinate system
+	private double ox, oy, oz;
+
+	// sums of the shifted points and their products
+	private double sx, sy, sz;
+	private double sxx, sxy, sxz, syy, syz, szz;
+
+	// the found normal
+	private double nx, ny, nz;
+
+	/**
+	 * Discards all the points which have been added
+	 */
+	public void reset() {
+		N = 0;
+		sx = sy = sz = 0;
+		sxx = sxy = sxz = syy = syz = szz = 0;
+	}
+
+	/**
+	 * Adds a point to the set of points which the plane is fit to
+	 */
+	public void add(double x, double y, double z) {
+		if (N == 0) {
+			ox = x;
+			oy = y;
+			oz = z;
+		}
+
+		x -= ox;
+		y -= oy;
+		z -= oz;
+
+		sx += x;
+		sy += y;
+		sz += z;
+		sxx += x * x;
+		sxy += x * y;
+		sxz += x * z;
+		syy += y * y;
+		syz += y * z;
+		szz += z * z;
+
+		N++;
+	}
+
+	/**
+	 * Computes the normal of the plane and writes it into the vector.  The normal has a length of one.
+	 *
+	 * @param normal (Output) normal of the plane.  Set to (0,0,0) if the normal can't be found.
+	 * @return true if the normal could be found or false if there are too few points or they are degenerate
+	 */
+	public boolean computeNormal(Vector3D_F64 normal) {
+		boolean success = computeNormal();
+		normal.set(nx, ny, nz);
+		return success;
+	}
+
+	/**
+	 * Computes the normal of the plane and writes it into the array at elements offset to offset+2.
+	 *
+	 * @see #computeNormal(Vector3D_F64)
+	 */
+	public boolean computeNormal(double[] normal, int offset) {
+		boolean success = computeNormal();
+		normal[offset] = nx;
+		normal[offset + 1] = ny;
+		normal[offset + 2] = nz;
+		return success;
+	}
+
+	private boolean computeNormal() {
+		nx = ny = nz = 0;
+
+		// need 3 points to define a plane
+		if (N < 3)
+			return false;
+
+		double mx = sx / N, my = sy / N, mz = sz / N;
+
+		double a00 = sxx / N - mx * mx;
+		double a01 = sxy / N - mx * my;
+		double a02 = sxz / N - mx * mz;
+		double a11 = syy / N - my * my;
+		double a12 = syz / N - my * mz;
+		double a22 = szz / N - mz * mz;
+
+		double lambda = smallestEigenvalue(a00, a01, a02, a11, a12, a22);
+		if (Double.isNaN(lambda))
+			return false;
+
+		return eigenvector(a00 - lambda, a01, a02, a11 - lambda, a12, a22 - lambda);
+	}
+
+	/**
+	 * Computes the smallest eigenvalue of a symmetric 3x3 matrix using a closed form trigonometric solution.
+	 *
+	 * @return The smallest eigenvalue or NaN if all the eigenvalues are identical.
+	 */
+	static double smallestEigenvalue(double a00, double a01, double a02,
+									 double a11, double a12, double a22) {
+		double q = (a00 + a11 + a22) / 3.0;
+
+		double b00 = a00 - q, b11 = a11 - q, b22 = a22 - q;
+		double p2 = b00 * b00 + b11 * b11 + b22 * b22 + 2.0 * (a01 * a01 + a02 * a02 + a12 * a12);
+		double p = Math.sqrt(p2 / 6.0);
+
+		if (p == 0)
+			return Double.NaN;
+
+		// determinant of (A - q*I)/p divided by two
+		double det = b00 * (b11 * b22 - a12 * a12) - a01 * (a01 * b22 - a12 * a02) + a02 * (a01 * a12 - b11 * a02);
+		double r = det / (2.0 * p * p * p);
+
+		double phi;
+		if (r <= -1)
+			phi = Math.PI / 3.0;
+		else if (r >= 1)
+			phi = 0;
+		else
+			phi = Math.acos(r) / 3.0;
+
+		return q + 2.0 * p * Math.cos(phi + 2.0 * Math.PI / 3.0);
+	}
+
+	/**
+	 * Finds the null space of the symmetric matrix (A - lambda*I), which is passed in.  If the null space is
+	 * one dimensional it's found using the cross product of two rows.  If it's two dimensional then any vector
+	 * which is perpendicular to the rows is selected.
+	 */
+	private boolean eigenvector(double b00, double b01, double b02, double b11, double b12, double b22) {
+		// cross products of each pair of rows
+		double c0x = b01 * b12 - b02 * b11, c0y = b02 * b01 - b00 * b12, c0z = b00 * b11 - b01 * b01;
+		double c1x = b01 * b22 - b02 * b12, c1y = b02 * b02 - b00 * b22, c1z = b00 * b12 - b01 * b02;
+		double c2x = b11 * b22 - b12 * b12, c2y = b12 * b02 - b01 * b22, c2z = b01 * b12 - b11 * b02;
+
+		double n0 = c0x * c0x + c0y * c0y + c0z * c0z;
+		double n1 = c1x * c1x + c1y * c1y + c1z * c1z;
+		double n2 = c2x * c2x + c2y * c2y + c2z * c2z;
+
+		double scale = Math.max(Math.max(Math.max(Math.abs(b00), Math.abs(b01)), Math.max(Math.abs(b02), Math.abs(b11))),
+				Math.max(Math.abs(b12), Math.abs(b22)));
+
+		if (scale == 0)
+			return false;
+
+		double best = Math.max(n0, Math.max(n1, n2));
+		// the cross products have units of scale^2, so their squared norm has units of scale^4
+		double tol = 1e-24 * scale * scale * scale * scale;
+
+		if (best > tol) {
+			if (best == n0) {
+				nx = c0x; ny = c0y; nz = c0z;
+			} else if (best == n1) {
+				nx = c1x; ny = c1y; nz = c1z;
+			} else {
+				nx = c2x; ny = c2y; nz = c2z;
+			}
+			best = Math.sqrt(best);
+		} else {
+			// The points lie along a line.  Select the row with the largest norm and find a vector perpendicular
+			// to it by crossing it with the axis it is least aligned with
+			double r0 = b00 * b00 + b01 * b01 + b02 * b02;
+			double r1 = b01 * b01 + b11 * b11 + b12 * b12;
+			double r2 = b02 * b02 + b12 * b12 + b22 * b22;
+
+			double rx, ry, rz;
+			if (r0 >= r1 && r0 >= r2) {
+				rx = b00; ry = b01; rz = b02;
+			} else if (r1 >= r2) {
+				rx = b01; ry = b11; rz = b12;
+			} else {
+				rx = b02; ry = b12; rz = b22;
+			}
+
+			double ax = Math.abs(rx), ay = Math.abs(ry), az = Math.abs(rz);
+			if (ax <= ay && ax <= az) {
+				// cross with (1,0,0)
+				nx = 0; ny = rz; nz = -ry;
+			} else if (ay <= az) {
+				// cross with (0,1,0)
+				nx = -rz; ny = 0; nz = rx;
+			} else {
+				// cross with (0,0,1)
+				nx = ry; ny = -rx; nz = 0;
+			}
+			best = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		}
+
+		nx /= best;
+		ny /= best;
+		nz /= best;
+
+		return true;
+	}
+
+	/**
+	 * Number of points which have been added
+	 */
+	public int getNumberOfPoints() {
+		return N;
+	}
+}
@@ -18,16 +18,26 @@
 
 package bubo.clouds.detect.alg;
 
+import bubo.clouds.nn.SharedKdTreeNN;
+import bubo.struct.ConcurrentBlocks;
 import georegression.struct.point.Point3D_F64;
 import org.ddogleg.nn.NearestNeighbor;
 import org.ddogleg.nn.NnData;
 import org.ddogleg.struct.FastQueue;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
 
 /**
  * Creates a nearest-neighbor graph out of a point cloud
+ * <p></p>
+ * By default the graph is created using a single thread and the provided {@link NearestNeighbor}.  If more
+ * than one thread is specified with {@link #setNumThreads(int)} then the search is split into blocks of points
+ * which are processed by {@link ConcurrentBlocks}.  In that mode a K-D tree in {@link SharedKdTreeNN} is
+ * constructed once and searched by all the threads, each with its own result storage, and the
+ * {@link NearestNeighbor} passed to the constructor is not used.  The neighbor lists are the same
+ * as when a K-D tree is used in single threaded mode.
  *
  * @author Peter Abeles
  */
@@ -51,6 +61,15 @@ public class PointCloudToGraphNN {
 	// results of NN search
 	private FastQueue<NnData<PointVectorNN>> resultsNN = new FastQueue<NnData<PointVectorNN>>((Class) NnData.class, true);
 
+	// processes blocks of points concurrently. null if single threaded
+	private ConcurrentBlocks concurrent;
+	// K-D tree which is searched by all the threads
+	private SharedKdTreeNN<PointVectorNN> sharedNN;
+	// storage used by each block of points when searching concurrently
+	private List<BlockStorage> blocks = new ArrayList<BlockStorage>();
+	// copy of usedNnData which can be read without synchronization
+	private List<double[]> targets = new ArrayList<double[]>();
+
 	public PointCloudToGraphNN(NearestNeighbor<PointVectorNN> nn,
 							   int numNeighbors ,
 							   double maxDistanceNeighbor ) {
@@ -104,6 +123,11 @@ public class PointCloudToGraphNN {
 	}
 
 	private void findNeighbors() {
+		if (concurrent != null) {
+			findNeighborsConcurrent();
+			return;
+		}
+
 		// find the nearest-neighbor for each point in the cloud
 		nn.setPoints(usedNnData, listPointVector.toList());
 
@@ -115,22 +139,105 @@ public class PointCloudToGraphNN {
 			// numNeighbors+1 since the target node will also be returned and is removed
 			nn.findNearest(targetPt, maxDistanceNeighbor, numNeighbors + 1, resultsNN);
 
-			PointVectorNN p = listPointVector.get(i);
+			saveNeighbors(listPointVector.get(i), targetPt, resultsNN);
+		}
+	}
+
+	/**
+	 * Splits the points into one block per thread and searches for the neighbors of each block in parallel.
+	 * Each point is only written to by the block which contains it, so no synchronization is needed.
+	 */
+	private void findNeighborsConcurrent() {
+		if (sharedNN == null)
+			sharedNN = new SharedKdTreeNN<PointVectorNN>(3);
+
+		targets.clear();
+		targets.addAll(usedNnData);
+		sharedNN.setPoints(targets, listPointVector.toList());
+
+		while (blocks.size() < concurrent.getNumThreads()) {
+			blocks.add(new BlockStorage());
+		}
+
+		concurrent.process(listPointVector.size, new ConcurrentBlocks.Block() {
+			@Override
+			public void process(int index, int start, int end) {
+				findNeighbors(blocks.get(index), start, end);
+			}
+		});
+	}
+
+	/**
+	 * Finds the neighbors for points inside the range [start,end)
+	 */
+	private void findNeighbors(BlockStorage storage, int start, int end) {
+		if (storage.searcher == null)
+			storage.searcher = sharedNN.createSearcher();
+
+		for (int i = start; i < end; i++) {
+			storage.results.reset();
+
+			double[] targetPt = targets.get(i);
+			// numNeighbors+1 since the target node will also be returned and is removed
+			storage.searcher.findNearest(targetPt, maxDistanceNeighbor, numNeighbors + 1, storage.results);
 
-			// save the results
-			p.neighbors.reset();
-			for (int j = 0; j < resultsNN.size; j++) {
-				NnData<PointVectorNN> n = resultsNN.get(j);
+			saveNeighbors(listPointVector.get(i), targetPt, storage.results);
+		}
+	}
 
-				// don't add the point to its own list of neighbors list
-				if (n.point != targetPt) {
-					p.neighbors.add(n.data);
-				}
+	/**
+	 * Saves the found neighbors into the point, skipping the point itself
+	 */
+	private static void saveNeighbors(PointVectorNN p, double[] targetPt, FastQueue<NnData<PointVectorNN>> results) {
+		p.neighbors.reset();
+		for (int j = 0; j < results.size; j++) {
+			NnData<PointVectorNN> n = results.get(j);
+
+			// don't add the point to its own list of neighbors list
+			if (n.point != targetPt) {
+				p.neighbors.add(n.data);
 			}
 		}
 	}
 
+	/**
+	 * Specifies the number of threads used to find the neighbors.  If more than one then the neighbors
+	 * are found concurrently using a K-D tree.
+	 *
+	 * @param numThreads Number of threads.  Must be &ge; 1.  Default is 1.
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be at least one");
+
+		if (numThreads == getNumThreads())
+			return;
+
+		if (concurrent != null)
+			concurrent.shutdown();
+		concurrent = numThreads > 1 ? new ConcurrentBlocks(numThreads) : null;
+	}
+
+	public int getNumThreads() {
+		return concurrent == null ? 1 : concurrent.getNumThreads();
+	}
+
+	/**
+	 * Returns the thread pool used to process points concurrently or null if single threaded
+	 */
+	ConcurrentBlocks getConcurrent() {
+		return concurrent;
+	}
+
 	public FastQueue<PointVectorNN> getListPointVector() {
 		return listPointVector;
 	}
+
+	/**
+	 * Storage for one block of points.  Only used by one thread at a time and recycled between calls.
+	 */
+	private class BlockStorage {
+		SharedKdTreeNN.Searcher<PointVectorNN> searcher;
+		FastQueue<NnData<PointVectorNN>> results = new FastQueue<NnData<PointVectorNN>>((Class) NnData.class, true);
+	}
 }
@@ -34,6 +34,11 @@ public class ConfigSurfaceNormals {
 	 * {@link Double#MAX_VALUE}.
 	 */
 	public double maxDistanceNeighbor = Double.MAX_VALUE;
+	/**
+	 * Number of threads used to find the nearest-neighbors.  If more than one then a K-D tree is
+	 * searched concurrently.  By default this is set to 1.
+	 */
+	public int numThreads = 1;
 
 	public ConfigSurfaceNormals(int numNeighbors, double maxDistanceNeighbor) {
 		this.numNeighbors = numNeighbors;
@@ -41,6 +46,8 @@ public class ConfigSurfaceNormals {
 	}
 
 	public void checkConfig() {
+		if (numThreads < 1)
+			throw new IllegalArgumentException("numThreads must be at least one");
 	}
 }
 
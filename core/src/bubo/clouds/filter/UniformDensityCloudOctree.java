@@ -18,6 +18,7 @@
 
 package bubo.clouds.filter;
 
+import bubo.clouds.PackedCloud3D_F64;
 import bubo.construct.ConstructOctreeLeaf_I32;
 import bubo.construct.Octree_I32;
 import georegression.geometry.UtilPoint3D_F64;
@@ -28,6 +29,7 @@ import georegression.struct.shapes.Box3D_F64;
 import georegression.struct.shapes.Box3D_I32;
 import georegression.transform.se.SePointOps_F64;
 import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_I32;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -60,6 +62,10 @@ public class UniformDensityCloudOctree {
 
 	Point3D_F64 local = new Point3D_F64();
 
+	// indexes of the points inside each leaf when processing a packed cloud.  Saved in the leaf's userData
+	FastQueue<GrowQueue_I32> leafIndexes = new FastQueue<GrowQueue_I32>(GrowQueue_I32.class,true);
+	Point3D_I32 gridPoint = new Point3D_I32();
+
 	public UniformDensityCloudOctree(int desiredCount, double desiredWidth , long randSeed ) {
 		this.desiredCount = desiredCount;
 		this.desiredWidth = desiredWidth;
@@ -112,4 +118,68 @@ public class UniformDensityCloudOctree {
 			}
 		}
 	}
+
+	/**
+	 * Same as {@link #process(List, List)} but for a {@link PackedCloud3D_F64}.  The indexes of points inside
+	 * each cell are stored instead of references so no object is declared for each point.  Optional columns
+	 * which are enabled in both clouds are copied into the output.
+	 *
+	 * @param input Input cloud.  Not modified.
+	 * @param output Output cloud.  The selected points are added to the end of it.
+	 */
+	public void process( PackedCloud3D_F64 input , PackedCloud3D_F64 output ) {
+		input.boundingBox(bounds);
+
+		int sizeX = (int)Math.ceil(bounds.getLengthX()/desiredWidth);
+		int sizeY = (int)Math.ceil(bounds.getLengthY()/desiredWidth);
+		int sizeZ = (int)Math.ceil(bounds.getLengthZ()/desiredWidth);
+
+		octree.initialize(new Box3D_I32(0,0,0,sizeX,sizeY,sizeZ));
+
+		leafIndexes.reset();
+
+		for (int i = 0; i < input.size; i++) {
+			gridPoint.set((int)((input.x[i]-bounds.p0.x)/desiredWidth),
+					(int)((input.y[i]-bounds.p0.y)/desiredWidth),
+					(int)((input.z[i]-bounds.p0.z)/desiredWidth));
+
+			Octree_I32 leaf = octree.addLeaf(gridPoint);
+			if( leaf == null )
+				continue;
+
+			GrowQueue_I32 indexes = leaf.getUserData();
+			if( indexes == null ) {
+				indexes = leafIndexes.grow();
+				indexes.reset();
+				leaf.setUserData(indexes);
+			}
+			indexes.add(i);
+		}
+
+		FastQueue<Octree_I32> nodes = octree.getAllNodes();
+
+		// Go through each node and only grab up to N points
+		for (int i = 0; i < nodes.size(); i++) {
+			Octree_I32 o = nodes.get(i);
+			GrowQueue_I32 indexes = o.getUserData();
+			if( !o.isSmallest() || indexes == null )
+				continue;
+
+			int N = indexes.size;
+			if( N <= desiredCount ) {
+				for (int j = 0; j < N; j++) {
+					output.add(input,indexes.data[j]);
+				}
+			} else {
+				// partial Fisher-Yates shuffle to randomly select points without replacement
+				for (int j = 0; j < desiredCount; j++) {
+					int k = j + rand.nextInt(N-j);
+					int tmp = indexes.data[k];
+					indexes.data[k] = indexes.data[j];
+					indexes.data[j] = tmp;
+					output.add(input,tmp);
+				}
+			}
+		}
+	}
 }
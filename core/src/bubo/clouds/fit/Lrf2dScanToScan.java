@@ -45,7 +45,9 @@ public interface Lrf2dScanToScan {
 	public Se2_F64 getSourceToDestination();
 
 	/**
-	 * Specifies range measurements for the destination scan.
+	 * Specifies range measurements for the destination scan.  Any information which only depends on the
+	 * destination scan should be computed here and reused by each call to {@link #process} until the
+	 * destination is changed, since the same destination is often matched against many source scans.
 	 *
 	 * NOTE: A local copy of input array is made.  The data can be modified any time after the function
 	 * has exited.
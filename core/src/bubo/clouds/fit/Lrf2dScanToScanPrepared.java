@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.fit;
+
+/**
+ * <p>
+ * A {@link Lrf2dScanToScan} which can compute everything it needs to know about a source scan, such as the location
+ * of each end point, before the scan is specified.  {@link #prepareSource} only depends on the sensor description,
+ * so a sequence of scans can be prepared in one thread while the previous scan is being matched in another.
+ * </p>
+ *
+ * <p>
+ * The storage for a prepared scan is created by the algorithm and its type is implementation dependent.  Ownership
+ * is exchanged in {@link #setPreparedSource} so that no data needs to be copied.
+ * </p>
+ *
+ * @param <T> Storage for a prepared source scan
+ * @author Peter Abeles
+ */
+public interface Lrf2dScanToScanPrepared<T> extends Lrf2dScanToScan {
+
+	/**
+	 * Creates storage for a prepared source scan.  Must be called after {@link #setSensorParam}.
+	 *
+	 * @return New storage
+	 */
+	public T createPreparedSource();
+
+	/**
+	 * Computes all the information about the source scan which doesn't depend on the destination scan.  Can be
+	 * called from a different thread than the other functions, but not at the same time as {@link #setSensorParam}
+	 * or with storage that the algorithm currently owns.
+	 *
+	 * @param scan     range measurements
+	 * @param prepared (Output) The prepared scan
+	 */
+	public void prepareSource(double[] scan, T prepared);
+
+	/**
+	 * Specifies the source scan using a scan computed by {@link #prepareSource}.  Same as calling
+	 * {@link #setSource(double[])} with the range measurements.  The algorithm takes ownership of the prepared
+	 * scan and returns storage which it no longer needs.
+	 *
+	 * @param prepared The prepared source scan.  Must not be used after this function is called.
+	 * @return Storage which can be passed to {@link #prepareSource}
+	 */
+	public T setPreparedSource(T prepared);
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.fit.algs;
+
+import georegression.struct.GeoTuple;
+
+import java.util.List;
+
+/**
+ * Extension of {@link ClosestPointToModel} where the closest point is found for an entire set of points in
+ * one call.  This allows implementations to process the points in parallel.  If a model passed to
+ * {@link IterativeClosestPoint} implements this interface then this function is used instead
+ * of looking up one point at a time.
+ *
+ * @author Peter Abeles
+ */
+public interface ClosestPointToModelBatch<T extends GeoTuple> extends ClosestPointToModel<T> {
+
+	/**
+	 * Searches the model for the closest point to each target.
+	 *
+	 * @param targets Points which the closest point on the model is being searched for
+	 * @param matches Output.  Cleared then the closest model point to each target is added in the same order.
+	 *                null is added if no match was found.  Same restrictions as
+	 *                {@link ClosestPointToModel#findClosestPoint} apply to the returned points.
+	 */
+	public void findClosestPoints(List<T> targets, List<T> matches);
+}
@@ -27,6 +27,8 @@ import georegression.struct.point.Point3D_F64;
 import georegression.struct.se.Se2_F64;
 import georegression.struct.se.Se3_F64;
 import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.struct.GrowQueue_F64;
+import org.ddogleg.struct.GrowQueue_I32;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -36,7 +38,8 @@ import java.util.List;
  * A straight forward implementation of the Iterative Closest Point (ICP) algorithm for 2D or 3D objects.  ICP
  * works by finding a locally optimal rigid body transform that minimizes the error between a set of points
  * and a model.  The model can be described in several different formats and is implement as an interface
- * {@link ClosestPointToModel}.
+ * {@link ClosestPointToModel}.  If the model implements {@link ClosestPointToModelBatch} then all the
+ * correspondences in an iteration are found with a single call.
  * </p>
  * <p/>
  * <p>
@@ -44,6 +47,10 @@ import java.util.List;
  * be primarily determined by the efficiency of the ClosestPointToModel provided to it.  This is especially
  * true for complex models with large number of points.
  * </p>
+ * <p>
+ * All the storage used to find correspondences and combine the motion is declared once and recycled,
+ * so repeatedly calling {@link #process} does not create any garbage.
+ * </p>
  *
  * @author Peter Abeles
  */
@@ -57,6 +64,8 @@ public class IterativeClosestPoint<SE extends InvertibleTransform, P extends Geo
 	private double foundError;
 
 	private ClosestPointToModel<P> model;
+	// reference to the model if it can look up points in a batch. null otherwise
+	private ClosestPointToModelBatch<P> modelBatch;
 	private MotionTransformPoint<SE, P> motion;
 
 	// transform from the original point location to their current one
@@ -65,11 +74,25 @@ public class IterativeClosestPoint<SE extends InvertibleTransform, P extends Geo
 	// number of points which were matched
 	private int totalMatched;
 
+	// storage for the correspondences.  Recycled between calls
+	private List<P> matchSrc = new ArrayList<P>();
+	private List<P> matchDst = new ArrayList<P>();
+	// closest model point to every point when a batch model is used
+	private List<P> matchAll = new ArrayList<P>();
+	// index of each matched point in the input list
+	private GrowQueue_I32 matchIndex = new GrowQueue_I32();
+	// distance squared of each matched pair
+	private GrowQueue_F64 matchDistSq = new GrowQueue_F64();
+
+	// storage for the transform when combining motions
+	private SE work;
+
 	public IterativeClosestPoint(StoppingCondition stop,
 								 MotionTransformPoint<SE, P> motion) {
 		this.stop = stop.copy();
 		this.motion = motion;
 		foundModelToPoints = (SE)motion.getTransformSrcToDst().createInstance();
+		work = (SE)motion.getTransformSrcToDst().createInstance();
 	}
 
 	/**
@@ -91,6 +114,7 @@ public class IterativeClosestPoint<SE extends InvertibleTransform, P extends Geo
 	 */
 	public void setModel(ClosestPointToModel model) {
 		this.model = model;
+		this.modelBatch = model instanceof ClosestPointToModelBatch ? (ClosestPointToModelBatch) model : null;
 	}
 
 	/**
@@ -106,28 +130,30 @@ public class IterativeClosestPoint<SE extends InvertibleTransform, P extends Geo
 
 		int dof = points.get(0).getDimension();
 
-		List<P> modelPts = new ArrayList<P>();
-		List<P> dstPts = new ArrayList<P>();
-
 		boolean first = true;
 		stop.reset();
 		totalMatched = 0;
 		while (true) {
 			// find correspondences
-			modelPts.clear();
-			dstPts.clear();
-			for (P p : points) {
-				P match = model.findClosestPoint(p);
+			matchSrc.clear();
+			matchDst.clear();
+			matchIndex.reset();
+			if (modelBatch != null)
+				modelBatch.findClosestPoints(points, matchAll);
+			for (int i = 0; i < points.size(); i++) {
+				P p = points.get(i);
+				P match = modelBatch != null ? matchAll.get(i) : model.findClosestPoint(p);
 				if (match != null) {
-					modelPts.add(p);
-					dstPts.add(match);
+					matchSrc.add(p);
+					matchDst.add(match);
+					matchIndex.add(i);
 				}
 			}
 
 			totalMatched = points.size();
 
 			// from the optimal transform
-			if( !motion.process(modelPts, dstPts) ) {
+			if( !motion.process(matchSrc, matchDst) ) {
 				return false;
 			}
 
@@ -145,11 +171,12 @@ public class IterativeClosestPoint<SE extends InvertibleTransform, P extends Geo
 				foundModelToPoints.set(motion.getTransformSrcToDst());
 			} else {
 				// the returned transform is the result of the sequence of transforms.
-				foundModelToPoints = (SE) motion.getTransformSrcToDst().concat(foundModelToPoints, null);
+				motion.getTransformSrcToDst().concat(foundModelToPoints, work);
+				foundModelToPoints.set(work);
 			}
 
 			// compute mean squared error
-			foundError = computeMeanSquaredError(modelPts, dstPts);
+			foundError = computeMeanSquaredError();
 
 			if (stop.isFinished(foundError))
 				break;
@@ -158,22 +185,26 @@ public class IterativeClosestPoint<SE extends InvertibleTransform, P extends Geo
 		return true;
 	}
 
-	private double computeMeanSquaredError(List<P> fromPts, List<P> toPts) {
+	/**
+	 * Computes the mean squared error and saves the distance of each pair
+	 */
+	private double computeMeanSquaredError() {
+		matchDistSq.reset();
 		double error = 0;
-		for (int i = 0; i < fromPts.size(); i++) {
-			P a = fromPts.get(i);
-			P b = toPts.get(i);
-
-			error += a.distance2(b);
+		for (int i = 0; i < matchSrc.size(); i++) {
+			double d = matchSrc.get(i).distance2(matchDst.get(i));
+			matchDistSq.add(d);
+			error += d;
 		}
-		error /= fromPts.size();
+		error /= matchSrc.size();
 		return error;
 	}
 
 	private void transform3D(List<Point3D_F64> points) {
 		Se3_F64 m = (Se3_F64) motion.getTransformSrcToDst();
 
-		for (Point3D_F64 p : points) {
+		for (int i = 0; i < points.size(); i++) {
+			Point3D_F64 p = points.get(i);
 			SePointOps_F64.transform(m, p, p);
 		}
 	}
@@ -181,11 +212,27 @@ public class IterativeClosestPoint<SE extends InvertibleTransform, P extends Geo
 	private void transform2D(List<Point2D_F64> points) {
 		Se2_F64 m = (Se2_F64) motion.getTransformSrcToDst();
 
-		for (Point2D_F64 p : points) {
+		for (int i = 0; i < points.size(); i++) {
+			Point2D_F64 p = points.get(i);
 			SePointOps_F64.transform(m, p, p);
 		}
 	}
 
+	/**
+	 * Index of each point which was matched in the final iteration.  Do not modify.
+	 */
+	public GrowQueue_I32 getMatchIndexes() {
+		return matchIndex;
+	}
+
+	/**
+	 * Distance squared between each matched point and the model after the final iteration.  Same order
+	 * as {@link #getMatchIndexes()}.  Do not modify.
+	 */
+	public GrowQueue_F64 getMatchDistanceSq() {
+		return matchDistSq;
+	}
+
 	public int getTotalMatched() {
 		return totalMatched;
 	}
@@ -18,9 +18,13 @@
 
 package bubo.clouds.fit.c2c;
 
+import bubo.clouds.PackedCloud3D_F64;
 import bubo.clouds.fit.MatchCloudToCloud;
-import bubo.clouds.fit.algs.ClosestPointToModel;
+import bubo.clouds.fit.algs.ClosestPointToModelBatch;
 import bubo.clouds.fit.algs.IterativeClosestPoint;
+import bubo.clouds.nn.IncrementalKdTreeNN;
+import bubo.clouds.nn.SharedKdTreeNN;
+import bubo.struct.ConcurrentBlocks;
 import bubo.struct.StoppingCondition;
 import georegression.fitting.MotionTransformPoint;
 import georegression.fitting.se.MotionSe2PointSVD_F64;
@@ -35,11 +39,24 @@ import org.ddogleg.nn.NearestNeighbor;
 import org.ddogleg.nn.NnData;
 import org.ddogleg.struct.FastQueue;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Abstract implementation of ICP for point cloud fitting using an
  * {@link georegression.struct.InvertibleTransform arbitrary transform}.
+ * <p></p>
+ * Most of the time is spent finding the closest destination point to each source point.  If more than one
+ * thread is specified with {@link #setNumThreads(int)} then the source points are split into blocks which are
+ * searched concurrently using {@link ConcurrentBlocks}.  In that mode a K-D tree in {@link SharedKdTreeNN}
+ * is searched by all the threads, each with its own query storage, and the {@link NearestNeighbor} passed
+ * to the constructor is not used.  Correspondences are saved by the index of the source point, so the
+ * solution is the same as when a K-D tree is used in single threaded mode.
+ * <p></p>
+ * When matching against a map which only changes slightly between calls, points can be added to the destination
+ * with {@link #addDestination(List)} instead of specifying all of them with {@link #setDestination(List)}.
+ * The destination is then stored in an {@link IncrementalKdTreeNN}, so the cost of updating it is proportional
+ * to the number of points added or removed instead of the size of the map.
  *
  * @see bubo.clouds.fit.algs.IterativeClosestPoint
  *
@@ -70,6 +87,24 @@ public abstract class MatchCloudToCloudIcp<SE extends InvertibleTransform, P ext
 	// total number of matched points
 	int totalMatched;
 
+	// reference to the destination points
+	List<P> destination;
+	// true if the nearest-neighbor search needs to be initialized with the destination points
+	boolean modifiedDst;
+	// true if the destination points were last given to the shared tree
+	boolean preparedShared;
+
+	// destination which is updated incrementally.  Only used if useIncremental is true
+	IncrementalKdTreeNN<P> incremental;
+	boolean useIncremental;
+
+	// processes blocks of points concurrently. null if single threaded
+	ConcurrentBlocks concurrent;
+	// K-D tree which is searched by all the threads
+	SharedKdTreeNN<P> sharedNN;
+	// storage used by each block of points when searching concurrently
+	List<BlockStorage> blocks = new ArrayList<BlockStorage>();
+
 	/**
 	 * Configures ICP
 	 *
@@ -111,21 +146,121 @@ public abstract class MatchCloudToCloudIcp<SE extends InvertibleTransform, P ext
 			assign(destination.get(i), pointsDst.grow());
 		}
 
-		nn.init(dimen);
-		nn.setPoints(pointsDst.toList(),destination);
+		this.destination = destination;
+		modifiedDst = true;
+		useIncremental = false;
+	}
+
+	/**
+	 * <p>
+	 * Adds points to the destination.  The first time this is called after {@link #setDestination} the
+	 * destination is moved into an {@link IncrementalKdTreeNN}, which is then searched instead of the
+	 * {@link NearestNeighbor} passed to the constructor.  Points can be removed from the destination or a
+	 * sliding window specified using {@link #getDestinationIndex()}.  Calling {@link #setDestination}
+	 * discards all the points in the index.
+	 * </p>
+	 *
+	 * @param points Points which are added.  References to the points are saved.
+	 * @return ID of the first point which was added.  The other points are assigned the IDs which follow it.
+	 */
+	public long addDestination(List<P> points) {
+		IncrementalKdTreeNN<P> index = getDestinationIndex();
+
+		long first = -1;
+		for (int i = 0; i < points.size(); i++) {
+			P p = points.get(i);
+			double d[] = new double[dimen];
+			assign(p, d);
+			long id = index.add(d, p);
+			if (i == 0)
+				first = id;
+		}
+		return first;
+	}
+
+	/**
+	 * Returns the index which contains the destination points when they are added incrementally.  If the
+	 * destination was specified by {@link #setDestination} then those points are first added to it.
+	 */
+	public IncrementalKdTreeNN<P> getDestinationIndex() {
+		if (!useIncremental) {
+			if (incremental == null)
+				incremental = new IncrementalKdTreeNN<P>(dimen);
+			else
+				incremental.reset();
+			useIncremental = true;
+
+			if (destination != null) {
+				for (int i = 0; i < destination.size(); i++) {
+					P p = destination.get(i);
+					double d[] = new double[dimen];
+					assign(p, d);
+					incremental.add(d, p);
+				}
+				destination = null;
+			}
+		}
+		return incremental;
 	}
 
 	@Override
 	public boolean compute() {
+		prepareDestination();
 		return icp.process(source);
 	}
 
+	/**
+	 * Gives the destination points to the nearest-neighbor search which is used by the current number
+	 * of threads.
+	 */
+	void prepareDestination() {
+		if (useIncremental)
+			return;
+
+		boolean shared = concurrent != null;
+		if (!modifiedDst && preparedShared == shared)
+			return;
+
+		if (shared) {
+			if (sharedNN == null)
+				sharedNN = new SharedKdTreeNN<P>(dimen);
+			sharedNN.setPoints(pointsDst.toList(), destination);
+		} else {
+			nn.init(dimen);
+			nn.setPoints(pointsDst.toList(), destination);
+		}
+		modifiedDst = false;
+		preparedShared = shared;
+	}
+
+	/**
+	 * Specifies the number of threads used to find correspondences.  If more than one then they
+	 * are found concurrently using a K-D tree.
+	 *
+	 * @param numThreads Number of threads.  Must be &ge; 1.  Default is 1.
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be at least one");
+
+		if (numThreads == getNumThreads())
+			return;
+
+		if (concurrent != null)
+			concurrent.shutdown();
+		concurrent = numThreads > 1 ? new ConcurrentBlocks(numThreads) : null;
+	}
+
+	public int getNumThreads() {
+		return concurrent == null ? 1 : concurrent.getNumThreads();
+	}
+
 	@Override
 	public SE getSourceToDestination() {
 		return icp.getPointsToModel();
 	}
 
-	private class Model implements ClosestPointToModel<P> {
+	private class Model implements ClosestPointToModelBatch<P> {
 
 		double srcPt[] = new double[3];
 
@@ -133,12 +268,80 @@ public abstract class MatchCloudToCloudIcp<SE extends InvertibleTransform, P ext
 		public P findClosestPoint(P target) {
 			assign(target, srcPt);
 
-			if( nn.findNearest(srcPt, maxDistanceSq, storageNN) ) {
+			boolean found;
+			if (useIncremental)
+				found = incremental.findNearest(srcPt, maxDistanceSq, storageNN);
+			else
+				found = nn.findNearest(srcPt, maxDistanceSq, storageNN);
+
+			if( found ) {
 				return storageNN.data;
 			} else {
 				return null;
 			}
 		}
+
+		@Override
+		public void findClosestPoints(final List<P> targets, final List<P> matches) {
+			matches.clear();
+			if (concurrent == null) {
+				for (int i = 0; i < targets.size(); i++) {
+					matches.add(findClosestPoint(targets.get(i)));
+				}
+				return;
+			}
+
+			// each block only writes to the elements of its own points, so no synchronization is needed
+			for (int i = 0; i < targets.size(); i++) {
+				matches.add(null);
+			}
+			while (blocks.size() < concurrent.getNumThreads()) {
+				blocks.add(new BlockStorage());
+			}
+
+			concurrent.process(targets.size(), new ConcurrentBlocks.Block() {
+				@Override
+				public void process(int index, int start, int end) {
+					searchBlock(blocks.get(index), targets, matches, start, end);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Finds the closest destination point to source points inside the range [start,end)
+	 */
+	private void searchBlock(BlockStorage storage, List<P> targets, List<P> matches, int start, int end) {
+		if (useIncremental) {
+			if (storage.incrementalSearcher == null)
+				storage.incrementalSearcher = incremental.createSearcher();
+		} else if (storage.searcher == null) {
+			storage.searcher = sharedNN.createSearcher();
+		}
+
+		for (int i = start; i < end; i++) {
+			assign(targets.get(i), storage.point);
+
+			boolean found;
+			if (useIncremental)
+				found = storage.incrementalSearcher.findNearest(storage.point, maxDistanceSq, storage.result);
+			else
+				found = storage.searcher.findNearest(storage.point, maxDistanceSq, storage.result);
+
+			if (found) {
+				matches.set(i, storage.result.data);
+			}
+		}
+	}
+
+	/**
+	 * Storage for one block of points.  Only used by one thread at a time and recycled between calls.
+	 */
+	private class BlockStorage {
+		SharedKdTreeNN.Searcher<P> searcher;
+		IncrementalKdTreeNN.Searcher<P> incrementalSearcher;
+		double point[] = new double[dimen];
+		NnData<P> result = new NnData<P>();
 	}
 
 	@Override
@@ -172,10 +375,46 @@ public abstract class MatchCloudToCloudIcp<SE extends InvertibleTransform, P ext
 	 */
 	public static class SE3 extends MatchCloudToCloudIcp<Se3_F64,Point3D_F64> {
 
+		// storage for points when a packed cloud is passed in.  Recycled between calls
+		FastQueue<Point3D_F64> packedSrc = new FastQueue<Point3D_F64>(Point3D_F64.class,true);
+		FastQueue<Point3D_F64> packedDst = new FastQueue<Point3D_F64>(Point3D_F64.class,true);
+
 		public SE3(NearestNeighbor<Point3D_F64> nn,double maxDistanceSq, StoppingCondition stop) {
 			super(3, new MotionSe3PointSVD_F64(),nn, maxDistanceSq, stop);
 		}
 
+		/**
+		 * Specifies the source cloud using a packed cloud.  The points are copied into internal storage which
+		 * is recycled, so the cloud is not modified and can be changed after this call.
+		 */
+		public void setSource( PackedCloud3D_F64 cloud ) {
+			packedSrc.reset();
+			for (int i = 0; i < cloud.size; i++) {
+				packedSrc.grow().set(cloud.x[i],cloud.y[i],cloud.z[i]);
+			}
+			setSource(packedSrc.toList());
+		}
+
+		/**
+		 * Specifies the destination cloud using a packed cloud.  The points are copied into internal storage which
+		 * is recycled, so the cloud is not modified and can be changed after this call.
+		 */
+		public void setDestination( PackedCloud3D_F64 cloud ) {
+			packedDst.reset();
+			pointsDst.reset();
+			for (int i = 0; i < cloud.size; i++) {
+				packedDst.grow().set(cloud.x[i],cloud.y[i],cloud.z[i]);
+				double[] d = pointsDst.grow();
+				d[0] = cloud.x[i];
+				d[1] = cloud.y[i];
+				d[2] = cloud.z[i];
+			}
+
+			destination = packedDst.toList();
+			modifiedDst = true;
+			useIncremental = false;
+		}
+
 		@Override
 		protected void assign(Point3D_F64 src, double[] dst) {
 			dst[0] = src.x;
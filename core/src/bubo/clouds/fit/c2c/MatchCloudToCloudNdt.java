@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.fit.MatchCloudToCloud;
+import bubo.struct.StoppingCondition;
+import georegression.geometry.RotationMatrixGenerator;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.struct.so.Rodrigues_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.LinearSolverFactory;
+import org.ejml.interfaces.linsol.LinearSolver;
+import org.ejml.ops.CommonOps;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Registers a 3D point cloud against a destination cloud using the Normal Distributions Transform (NDT).  The
+ * destination is represented by a {@link NdtVoxelGrid}, where the points inside each voxel are approximated by
+ * a Gaussian.  The transform is found by maximizing the sum of the likelihood of each source point using
+ * Newton's method with analytic gradients and Hessians.  Looking up a source point's Gaussian takes constant
+ * time, so the cost of each iteration is independent of the destination's size and no search tree needs to be
+ * built.
+ * </p>
+ *
+ * <p>
+ * {@link #setDestination} discards the previous destination.  Points can be added to the existing destination
+ * without reprocessing old points through {@link #getDestinationGrid()}, which makes it suitable for scan to map
+ * registration against an accumulated map.  If a Newton step doesn't improve the score then the Hessian is
+ * damped, as in Levenberg-Marquardt.  The source points are not modified.
+ * </p>
+ *
+ * <p>
+ * Magnusson, Martin. "The three-dimensional normal-distributions transform: an efficient representation for
+ * registration, surface analysis, and loop detection." PhD thesis, Orebro universitet, 2009.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class MatchCloudToCloudNdt implements MatchCloudToCloud<Se3_F64, Point3D_F64> {
+
+	// Gaussian approximation of the destination cloud
+	private NdtVoxelGrid grid;
+
+	// scales the Mahalanobis distance in the likelihood function
+	private double d2;
+
+	// decides when to stop iterating
+	private StoppingCondition stop;
+
+	// reference to the source points
+	private List<Point3D_F64> source;
+
+	// found transform from source to destination
+	private Se3_F64 sourceToDestination = new Se3_F64();
+	// storage for the change in transform each iteration
+	private Se3_F64 delta = new Se3_F64();
+	private Se3_F64 candidate = new Se3_F64();
+	private Rodrigues_F64 rodrigues = new Rodrigues_F64();
+
+	// gradient and Hessian of the cost function
+	private DenseMatrix64F gradient = new DenseMatrix64F(6, 1);
+	private DenseMatrix64F hessian = new DenseMatrix64F(6, 6);
+	private DenseMatrix64F damped = new DenseMatrix64F(6, 6);
+	private DenseMatrix64F step = new DenseMatrix64F(6, 1);
+	private LinearSolver<DenseMatrix64F> solver = LinearSolverFactory.symmPosDef(6);
+	// Levenberg-Marquardt damping
+	private double lambda;
+
+	// storage for a single point
+	private Point3D_F64 p = new Point3D_F64();
+	private double q[] = new double[3];
+	// inverse covariance times q
+	private double cq[] = new double[3];
+	// Jacobian of the transformed point
+	private double J[][] = new double[6][3];
+	// inverse covariance times each column in the Jacobian
+	private double CJ[][] = new double[6][3];
+	private double a[] = new double[6];
+
+	// 1 minus the average likelihood of the source points
+	private double foundError;
+	// number of source points inside a voxel with a valid Gaussian
+	private int totalMatched;
+
+	/**
+	 * Configures NDT
+	 *
+	 * @param cellSize Length of a side of each voxel in the destination grid.
+	 * @param outlierRatio Expected fraction of source points which are outliers.  Used to tune the likelihood
+	 *                     function.  Try 0.55
+	 * @param stop Iteration stopping criteria.  Applied to 1 minus the average likelihood.
+	 */
+	public MatchCloudToCloudNdt(double cellSize, double outlierRatio, StoppingCondition stop) {
+		if (outlierRatio <= 0 || outlierRatio >= 1)
+			throw new IllegalArgumentException("outlierRatio must be between 0 and 1, exclusive");
+
+		this.grid = new NdtVoxelGrid(cellSize);
+		this.stop = stop.copy();
+
+		// fit a Gaussian to a mixture of a normal and uniform distribution. Eq. 6.8 in Magnusson
+		double c1 = 10 * (1 - outlierRatio);
+		double c2 = outlierRatio / (cellSize * cellSize * cellSize);
+		double d3 = -Math.log(c2);
+		double d1 = -Math.log(c1 + c2) - d3;
+		d2 = -2 * Math.log((-Math.log(c1 * Math.exp(-0.5) + c2) - d3) / d1);
+	}
+
+	@Override
+	public void setSource(List<Point3D_F64> points) {
+		this.source = points;
+	}
+
+	/**
+	 * Discards the previous destination and adds all the points to the grid
+	 */
+	@Override
+	public void setDestination(List<Point3D_F64> points) {
+		grid.reset();
+		grid.addPoints(points);
+	}
+
+	@Override
+	public boolean compute() {
+		sourceToDestination.reset();
+		stop.reset();
+		lambda = 0;
+
+		double cost = linearize(sourceToDestination, true);
+		if (totalMatched == 0)
+			return false;
+
+		while (true) {
+			// find a step which reduces the cost, increasing the damping until one is found
+			boolean improved = false;
+			for (int trial = 0; trial < 10 && !improved; trial++) {
+				damped.set(hessian);
+				for (int i = 0; i < 6; i++) {
+					damped.data[i * 7] += lambda;
+				}
+
+				if (solver.setA(damped)) {
+					CommonOps.scale(-1, gradient);
+					solver.solve(gradient, step);
+					CommonOps.scale(-1, gradient);
+
+					computeDelta(step);
+					sourceToDestination.concat(delta, candidate);
+
+					double candidateCost = linearize(candidate, false);
+					if (candidateCost < cost) {
+						improved = true;
+						lambda /= 10;
+						if (lambda < 1e-8)
+							lambda = 0;
+						continue;
+					}
+				}
+
+				lambda = lambda == 0 ? 1e-3 * maxDiagonal() : lambda * 10;
+			}
+
+			if (!improved)
+				break;
+
+			sourceToDestination.set(candidate);
+			cost = linearize(sourceToDestination, true);
+
+			if (stop.isFinished(foundError))
+				break;
+		}
+
+		// make sure the results describe the final solution
+		linearize(sourceToDestination, false);
+
+		return true;
+	}
+
+	private double maxDiagonal() {
+		double max = 1e-12;
+		for (int i = 0; i < 6; i++) {
+			max = Math.max(max, Math.abs(hessian.data[i * 7]));
+		}
+		return max;
+	}
+
+	/**
+	 * Converts the linearized step into a transform.  Rotation is in Rodrigues coordinates.
+	 */
+	private void computeDelta(DenseMatrix64F step) {
+		double rx = step.data[0], ry = step.data[1], rz = step.data[2];
+		double theta = Math.sqrt(rx * rx + ry * ry + rz * rz);
+		if (theta > 0) {
+			rodrigues.theta = theta;
+			rodrigues.unitAxisRotation.set(rx / theta, ry / theta, rz / theta);
+			RotationMatrixGenerator.rodriguesToMatrix(rodrigues, delta.getR());
+		} else {
+			CommonOps.setIdentity(delta.getR());
+		}
+		delta.getT().set(step.data[3], step.data[4], step.data[5]);
+	}
+
+	/**
+	 * Computes the cost function and optionally its gradient and Hessian with respect to a change in rotation
+	 * and translation applied after the transform.
+	 *
+	 * @return The cost.  Negative sum of the likelihood of all the points.
+	 */
+	private double linearize(Se3_F64 transform, boolean derivatives) {
+		if (derivatives) {
+			gradient.zero();
+			hessian.zero();
+		}
+		double cost = 0;
+		totalMatched = 0;
+
+		for (int i = 0; i < source.size(); i++) {
+			SePointOps_F64.transform(transform, source.get(i), p);
+
+			int voxel = grid.findVoxel(p.x, p.y, p.z);
+			if (voxel < 0)
+				continue;
+			totalMatched++;
+
+			double g[] = grid.gauss;
+			int k = voxel * NdtVoxelGrid.GAUSS;
+			q[0] = p.x - g[k];
+			q[1] = p.y - g[k + 1];
+			q[2] = p.z - g[k + 2];
+			double cxx = g[k + 3], cxy = g[k + 4], cxz = g[k + 5], cyy = g[k + 6], cyz = g[k + 7], czz = g[k + 8];
+
+			cq[0] = cxx * q[0] + cxy * q[1] + cxz * q[2];
+			cq[1] = cxy * q[0] + cyy * q[1] + cyz * q[2];
+			cq[2] = cxz * q[0] + cyz * q[1] + czz * q[2];
+
+			double mahalanobis = q[0] * cq[0] + q[1] * cq[1] + q[2] * cq[2];
+			double e = Math.exp(-0.5 * d2 * mahalanobis);
+			cost -= e;
+
+			if (!derivatives)
+				continue;
+
+			// derivative of the point with respect to rotation is e_k cross p and translation is e_k
+			setColumn(J[0], 0, -p.z, p.y);
+			setColumn(J[1], p.z, 0, -p.x);
+			setColumn(J[2], -p.y, p.x, 0);
+			setColumn(J[3], 1, 0, 0);
+			setColumn(J[4], 0, 1, 0);
+			setColumn(J[5], 0, 0, 1);
+
+			for (int col = 0; col < 6; col++) {
+				double j[] = J[col];
+				double cj[] = CJ[col];
+				cj[0] = cxx * j[0] + cxy * j[1] + cxz * j[2];
+				cj[1] = cxy * j[0] + cyy * j[1] + cyz * j[2];
+				cj[2] = cxz * j[0] + cyz * j[1] + czz * j[2];
+				a[col] = q[0] * cj[0] + q[1] * cj[1] + q[2] * cj[2];
+				gradient.data[col] += d2 * e * a[col];
+			}
+
+			// Eq. 6.13 in Magnusson
+			double scale = d2 * e;
+			for (int row = 0; row < 6; row++) {
+				double j[] = J[row];
+				for (int col = row; col < 6; col++) {
+					double cj[] = CJ[col];
+					double value = -d2 * a[row] * a[col] + j[0] * cj[0] + j[1] * cj[1] + j[2] * cj[2];
+					if (row < 3 && col < 3)
+						value += secondDerivative(row, col, cq);
+					hessian.data[row * 6 + col] += scale * value;
+				}
+			}
+		}
+
+		if (derivatives) {
+			for (int row = 1; row < 6; row++) {
+				for (int col = 0; col < row; col++) {
+					hessian.data[row * 6 + col] = hessian.data[col * 6 + row];
+				}
+			}
+		}
+
+		if (totalMatched > 0)
+			foundError = 1.0 + cost / totalMatched;
+		return cost;
+	}
+
+	/**
+	 * Computes cq' * d^2 p / (dw_i dw_j) where the second derivative of the rotated point is
+	 * 0.5*(e_i x (e_j x p) + e_j x (e_i x p))
+	 */
+	private double secondDerivative(int i, int j, double cq[]) {
+		// e_i x (e_j x p) = e_j (e_i . p) - p (e_i . e_j)
+		double pi = i == 0 ? p.x : i == 1 ? p.y : p.z;
+		double pj = j == 0 ? p.x : j == 1 ? p.y : p.z;
+		double pDotCq = p.x * cq[0] + p.y * cq[1] + p.z * cq[2];
+
+		double value = 0.5 * (cq[j] * pi + cq[i] * pj);
+		if (i == j)
+			value -= pDotCq;
+		return value;
+	}
+
+	private static void setColumn(double column[], double x, double y, double z) {
+		column[0] = x;
+		column[1] = y;
+		column[2] = z;
+	}
+
+	@Override
+	public Se3_F64 getSourceToDestination() {
+		return sourceToDestination;
+	}
+
+	@Override
+	public boolean isModifiedSource() {
+		return false;
+	}
+
+	/**
+	 * Number of source points which were inside a voxel with a valid Gaussian
+	 */
+	@Override
+	public int getMatchedSourcePoints() {
+		return totalMatched;
+	}
+
+	/**
+	 * 1 minus the average likelihood of matched source points.  0 is a perfect fit.
+	 */
+	public double getFoundError() {
+		return foundError;
+	}
+
+	/**
+	 * The grid which represents the destination.  Points can be added to it to incrementally update the
+	 * destination.
+	 */
+	public NdtVoxelGrid getDestinationGrid() {
+		return grid;
+	}
+}
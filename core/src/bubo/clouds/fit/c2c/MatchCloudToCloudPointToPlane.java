@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.detect.alg.ApproximateSurfaceNormals;
+import bubo.clouds.detect.alg.PointVectorNN;
+import bubo.clouds.fit.MatchCloudToCloud;
+import bubo.struct.StoppingCondition;
+import georegression.geometry.RotationMatrixGenerator;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.point.Vector3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.struct.so.Rodrigues_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.nn.FactoryNearestNeighbor;
+import org.ddogleg.nn.NearestNeighbor;
+import org.ddogleg.nn.NnData;
+import org.ddogleg.struct.FastQueue;
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.LinearSolverFactory;
+import org.ejml.interfaces.linsol.LinearSolver;
+import org.ejml.ops.CommonOps;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Point-to-plane variant of ICP for 3D point clouds.  Instead of minimizing the distance between each source point
+ * and its closest destination point, the distance between the source point and the plane tangent to the
+ * destination surface at the closest point is minimized.  Sliding along a flat surface isn't penalized,
+ * which allows it to converge in far fewer iterations than point-to-point ICP on scenes made of planar
+ * structures, such as indoors.
+ * </p>
+ *
+ * <p>
+ * Each iteration the error is linearized about the current estimate using a small angle approximation of the
+ * rotation and the resulting 6x6 system of normal equations is solved.  The normal of each destination point
+ * is either computed from the destination cloud using {@link ApproximateSurfaceNormals} or provided by the user
+ * with {@link #setDestinationNormals}.  Destination points without a normal, i.e. its normal is (0,0,0), are
+ * ignored.  The source points are not modified.
+ * </p>
+ *
+ * <p>
+ * Chen, Yang, and Gerard Medioni. "Object modelling by registration of multiple range images."
+ * Image and vision computing 10.3 (1992): 145-155.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class MatchCloudToCloudPointToPlane implements MatchCloudToCloud<Se3_F64, Point3D_F64> {
+
+	// estimates the normal of destination points
+	private ApproximateSurfaceNormals approximateNormals;
+	// storage for the normals computed from the destination cloud
+	private FastQueue<PointVectorNN> computedNormals = new FastQueue<PointVectorNN>(PointVectorNN.class, false);
+
+	// nearest-neighbor search of destination points
+	private NearestNeighbor<PointVectorNN> nn = FactoryNearestNeighbor.kdtree();
+	private NnData<PointVectorNN> storageNN = new NnData<PointVectorNN>();
+	// destination points in a format the NN understands
+	private FastQueue<double[]> pointsDst = new FastQueue<double[]>(double[].class, true) {
+		@Override
+		protected double[] createInstance() {
+			return new double[3];
+		}
+	};
+	// destination points which have a valid normal
+	private List<PointVectorNN> validDst = new ArrayList<PointVectorNN>();
+
+	// maximum distance apart two points can be.  Euclidean squared
+	private double maxDistanceSq;
+	// decides when to stop iterating
+	private StoppingCondition stop;
+
+	// reference to the source points
+	private List<Point3D_F64> source;
+
+	// found transform from source to destination
+	private Se3_F64 sourceToDestination = new Se3_F64();
+	// storage for the change in transform each iteration
+	private Se3_F64 delta = new Se3_F64();
+	private Se3_F64 temp = new Se3_F64();
+	private Rodrigues_F64 rodrigues = new Rodrigues_F64();
+
+	// normal equations
+	private DenseMatrix64F A = new DenseMatrix64F(6, 6);
+	private DenseMatrix64F b = new DenseMatrix64F(6, 1);
+	private DenseMatrix64F x = new DenseMatrix64F(6, 1);
+	private LinearSolver<DenseMatrix64F> solver = LinearSolverFactory.symmPosDef(6);
+	// Jacobian of a single residual
+	private double J[] = new double[6];
+
+	// storage for a transformed source point
+	private Point3D_F64 p = new Point3D_F64();
+	private double query[] = new double[3];
+
+	// mean squared point-to-plane error and number of matched points in the last iteration
+	private double foundError;
+	private int totalMatched;
+
+	/**
+	 * Configures the algorithm.
+	 *
+	 * @param numNeighbors Number of neighbors used to estimate the normal of destination points.  Try 10.
+	 * @param maxDistanceNeighbor Maximum distance two points can be apart to be considered neighbors when
+	 *                            estimating the normal.
+	 * @param maxDistance Maximum Euclidean distance a source point can be from the closest destination point
+	 *                    for it to be matched.
+	 * @param stop Iteration stopping criteria.  Applied to the mean squared point-to-plane distance.
+	 */
+	public MatchCloudToCloudPointToPlane(int numNeighbors, double maxDistanceNeighbor,
+										 double maxDistance, StoppingCondition stop) {
+		this.approximateNormals = new ApproximateSurfaceNormals(numNeighbors, maxDistanceNeighbor);
+		this.maxDistanceSq = maxDistance * maxDistance;
+		this.stop = stop.copy();
+	}
+
+	@Override
+	public void setSource(List<Point3D_F64> points) {
+		this.source = points;
+	}
+
+	/**
+	 * Estimates the normal of each destination point then calls {@link #setDestinationNormals}.
+	 */
+	@Override
+	public void setDestination(List<Point3D_F64> points) {
+		computedNormals.reset();
+		approximateNormals.process(points, computedNormals);
+		setDestinationNormals(computedNormals.toList());
+	}
+
+	/**
+	 * Specifies the destination cloud using points which already have their normal estimated, such as the output
+	 * of {@link ApproximateSurfaceNormals}.  Only {@link PointVectorNN#p} and {@link PointVectorNN#normal} are used.
+	 *
+	 * @param points Points with normals.  Not modified.
+	 */
+	public void setDestinationNormals(List<PointVectorNN> points) {
+		validDst.clear();
+		pointsDst.reset();
+		for (int i = 0; i < points.size(); i++) {
+			PointVectorNN v = points.get(i);
+			if (v.normal.x == 0 && v.normal.y == 0 && v.normal.z == 0)
+				continue;
+			validDst.add(v);
+			double d[] = pointsDst.grow();
+			d[0] = v.p.x;
+			d[1] = v.p.y;
+			d[2] = v.p.z;
+		}
+
+		nn.init(3);
+		nn.setPoints(pointsDst.toList(), validDst);
+	}
+
+	@Override
+	public boolean compute() {
+		sourceToDestination.reset();
+		stop.reset();
+
+		while (true) {
+			if (!linearize())
+				return false;
+
+			// solve for the change in motion
+			if (!solver.setA(A))
+				return false;
+			solver.solve(b, x);
+
+			// convert the linearized rotation into a rotation matrix
+			double rx = x.data[0], ry = x.data[1], rz = x.data[2];
+			double theta = Math.sqrt(rx * rx + ry * ry + rz * rz);
+			if (theta > 0) {
+				rodrigues.theta = theta;
+				rodrigues.unitAxisRotation.set(rx / theta, ry / theta, rz / theta);
+				RotationMatrixGenerator.rodriguesToMatrix(rodrigues, delta.getR());
+			} else {
+				CommonOps.setIdentity(delta.getR());
+			}
+			delta.getT().set(x.data[3], x.data[4], x.data[5]);
+
+			sourceToDestination.concat(delta, temp);
+			sourceToDestination.set(temp);
+
+			if (stop.isFinished(foundError))
+				break;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Finds correspondences using the current estimate and computes the normal equations
+	 *
+	 * @return true if there are enough correspondences
+	 */
+	private boolean linearize() {
+		A.zero();
+		b.zero();
+		double error = 0;
+		totalMatched = 0;
+
+		for (int i = 0; i < source.size(); i++) {
+			SePointOps_F64.transform(sourceToDestination, source.get(i), p);
+
+			query[0] = p.x;
+			query[1] = p.y;
+			query[2] = p.z;
+			if (!nn.findNearest(query, maxDistanceSq, storageNN))
+				continue;
+
+			Point3D_F64 q = storageNN.data.p;
+			Vector3D_F64 n = storageNN.data.normal;
+
+			// distance from the tangent plane
+			double r = (p.x - q.x) * n.x + (p.y - q.y) * n.y + (p.z - q.z) * n.z;
+
+			// derivative with respect to rotation is p cross n and with respect to translation is n
+			J[0] = p.y * n.z - p.z * n.y;
+			J[1] = p.z * n.x - p.x * n.z;
+			J[2] = p.x * n.y - p.y * n.x;
+			J[3] = n.x;
+			J[4] = n.y;
+			J[5] = n.z;
+
+			// only compute the upper triangle since it's symmetric
+			for (int row = 0; row < 6; row++) {
+				double v = J[row];
+				int index = row * 6;
+				for (int col = row; col < 6; col++) {
+					A.data[index + col] += v * J[col];
+				}
+				b.data[row] -= v * r;
+			}
+
+			error += r * r;
+			totalMatched++;
+		}
+
+		// the motion is not constrained with fewer matches
+		if (totalMatched < 6)
+			return false;
+
+		for (int row = 1; row < 6; row++) {
+			for (int col = 0; col < row; col++) {
+				A.data[row * 6 + col] = A.data[col * 6 + row];
+			}
+		}
+
+		foundError = error / totalMatched;
+		return true;
+	}
+
+	@Override
+	public Se3_F64 getSourceToDestination() {
+		return sourceToDestination;
+	}
+
+	@Override
+	public boolean isModifiedSource() {
+		return false;
+	}
+
+	@Override
+	public int getMatchedSourcePoints() {
+		return totalMatched;
+	}
+
+	/**
+	 * Mean squared point-to-plane distance of matched points in the final iteration before the last update
+	 */
+	public double getFoundError() {
+		return foundError;
+	}
+
+	/**
+	 * Number of iterations performed in the most recent call to {@link #compute()}
+	 */
+	public int getIterations() {
+		return stop.getIteration();
+	}
+
+	/**
+	 * Specifies the number of threads used to estimate the normal of destination points
+	 *
+	 * @see ApproximateSurfaceNormals#setNumThreads(int)
+	 */
+	public void setNumThreads(int numThreads) {
+		approximateNormals.setNumThreads(numThreads);
+	}
+}
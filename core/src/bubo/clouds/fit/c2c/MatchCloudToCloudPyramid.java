@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.filter.UniformDensityCloudOctree;
+import bubo.clouds.fit.MatchCloudToCloud;
+import bubo.struct.StoppingCondition;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.nn.FactoryNearestNeighbor;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Coarse-to-fine registration of 3D point clouds using ICP.  A pyramid of each cloud is created by
+ * down sampling it with {@link UniformDensityCloudOctree} so that there is at most one point in each
+ * cell.  Registration starts at the coarsest level, where there are only a few points and a large matching
+ * distance can be used to correct a poor initial guess.  The solution found at each level is used to seed
+ * the next finer level, which then only needs a few iterations with a small matching distance.
+ * </p>
+ *
+ * <p>
+ * Levels are specified with {@link #addLevel} from coarsest to finest and each has its own matching distance
+ * and stopping condition.  A level with a cell width of zero uses every point.  The source points are
+ * copied before being registered, so unlike {@link MatchCloudToCloudIcp} the source list is not modified.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class MatchCloudToCloudPyramid implements MatchCloudToCloud<Se3_F64, Point3D_F64> {
+
+	// levels in the pyramid, from coarsest to finest
+	List<Level> levels = new ArrayList<Level>();
+
+	// seed used when randomly selecting which points to keep in each cell
+	long randSeed;
+	// number of threads used by ICP at each level
+	int numThreads = 1;
+
+	// reference to the input source cloud
+	List<Point3D_F64> source;
+
+	// working copy of the source points at the current level.  Recycled
+	FastQueue<Point3D_F64> working = new FastQueue<Point3D_F64>(Point3D_F64.class, true);
+
+	// found transform from source to destination
+	Se3_F64 sourceToDestination = new Se3_F64();
+	Se3_F64 temp = new Se3_F64();
+
+	// number of points matched at the finest level
+	int totalMatched;
+
+	/**
+	 * Creates a pyramid with no levels.
+	 *
+	 * @param randSeed Seed for the random number generator used to select points when down sampling.
+	 */
+	public MatchCloudToCloudPyramid(long randSeed) {
+		this.randSeed = randSeed;
+	}
+
+	/**
+	 * Adds a new level to the pyramid which is finer than all the previously added levels.
+	 *
+	 * @param cellWidth   Width of the cells the clouds are down sampled with.  If 0 then all the points are used.
+	 * @param maxDistance Maximum Euclidean distance two points will be matched up.
+	 * @param stop        Iteration stopping criteria for ICP at this level
+	 */
+	public void addLevel(double cellWidth, double maxDistance, StoppingCondition stop) {
+		if (cellWidth < 0)
+			throw new IllegalArgumentException("cellWidth can't be negative");
+		if (!levels.isEmpty()) {
+			double previous = levels.get(levels.size() - 1).cellWidth;
+			if (previous == 0 || (cellWidth != 0 && cellWidth >= previous))
+				throw new IllegalArgumentException("Levels must be added from coarsest to finest");
+		}
+
+		Level level = new Level(cellWidth, maxDistance, stop, randSeed + levels.size());
+		level.icp.setNumThreads(numThreads);
+		levels.add(level);
+	}
+
+	@Override
+	public void setSource(List<Point3D_F64> points) {
+		this.source = points;
+		for (int i = 0; i < levels.size(); i++) {
+			levels.get(i).downSample(points, true);
+		}
+	}
+
+	@Override
+	public void setDestination(List<Point3D_F64> points) {
+		for (int i = 0; i < levels.size(); i++) {
+			Level level = levels.get(i);
+			level.downSample(points, false);
+			level.icp.setDestination(level.cellWidth == 0 ? points : level.sampledDst);
+		}
+	}
+
+	@Override
+	public boolean compute() {
+		if (levels.isEmpty())
+			throw new IllegalArgumentException("No levels have been added");
+
+		sourceToDestination.reset();
+		totalMatched = 0;
+
+		for (int i = 0; i < levels.size(); i++) {
+			Level level = levels.get(i);
+			List<Point3D_F64> src = level.cellWidth == 0 ? source : level.sampledSrc;
+
+			// apply the solution from the coarser levels to a copy of the source points
+			working.reset();
+			for (int j = 0; j < src.size(); j++) {
+				SePointOps_F64.transform(sourceToDestination, src.get(j), working.grow());
+			}
+
+			level.icp.setSource(working.toList());
+			if (!level.icp.compute())
+				return false;
+
+			sourceToDestination.concat(level.icp.getSourceToDestination(), temp);
+			sourceToDestination.set(temp);
+			totalMatched = level.icp.getMatchedSourcePoints();
+		}
+
+		return true;
+	}
+
+	@Override
+	public Se3_F64 getSourceToDestination() {
+		return sourceToDestination;
+	}
+
+	@Override
+	public boolean isModifiedSource() {
+		return false;
+	}
+
+	/**
+	 * Number of source points matched at the finest level
+	 */
+	@Override
+	public int getMatchedSourcePoints() {
+		return totalMatched;
+	}
+
+	/**
+	 * Specifies the number of threads used to find correspondences at each level.
+	 *
+	 * @see MatchCloudToCloudIcp#setNumThreads(int)
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be at least one");
+		this.numThreads = numThreads;
+		for (int i = 0; i < levels.size(); i++) {
+			levels.get(i).icp.setNumThreads(numThreads);
+		}
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public int getNumLevels() {
+		return levels.size();
+	}
+
+	/**
+	 * Down sampled clouds and ICP for a single level in the pyramid
+	 */
+	static class Level {
+		double cellWidth;
+
+		MatchCloudToCloudIcp.SE3 icp;
+
+		UniformDensityCloudOctree filter;
+		// down sampled clouds.  Contain references to the input points
+		List<Point3D_F64> sampledSrc = new ArrayList<Point3D_F64>();
+		List<Point3D_F64> sampledDst = new ArrayList<Point3D_F64>();
+
+		Level(double cellWidth, double maxDistance, StoppingCondition stop, long randSeed) {
+			this.cellWidth = cellWidth;
+			icp = new MatchCloudToCloudIcp.SE3(FactoryNearestNeighbor.<Point3D_F64>kdtree(),
+					maxDistance * maxDistance, stop);
+			if (cellWidth > 0)
+				filter = new UniformDensityCloudOctree(1, cellWidth, randSeed);
+		}
+
+		void downSample(List<Point3D_F64> input, boolean source) {
+			if (filter == null)
+				return;
+			List<Point3D_F64> output = source ? sampledSrc : sampledDst;
+			output.clear();
+			if (!input.isEmpty())
+				filter.process(input, output);
+		}
+	}
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.fit.c2c;
+
+import georegression.struct.point.Point3D_F64;
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.factory.DecompositionFactory;
+import org.ejml.interfaces.decomposition.EigenDecomposition;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Sparse voxel grid where each voxel contains a Gaussian distribution of the points inside of it, as used by
+ * the Normal Distributions Transform (NDT).  Voxels are stored in a hash table keyed by their coordinate, so
+ * finding the voxel which contains a point takes constant time and the grid can cover any region.
+ * </p>
+ *
+ * <p>
+ * Each voxel stores the number of points, their sum, and the sum of their outer products.  This allows points
+ * to be added to an existing grid incrementally without revisiting old points.  The mean and inverse covariance
+ * of a voxel are only computed when it is looked up after being modified.  To prevent the covariance of
+ * planar or linear structures from being singular, its eigenvalues are inflated to be at least a fraction of
+ * the largest eigenvalue.  Voxels with too few points are ignored.
+ * </p>
+ *
+ * <p>
+ * No objects are declared for each voxel.  This class is not thread safe, even for look ups.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class NdtVoxelGrid {
+
+	// number of elements in the statistics for each voxel
+	// count, sum of x,y,z, and the sum of xx,xy,xz,yy,yz,zz
+	static final int STATS = 10;
+	// number of elements in the Gaussian for each voxel.  mean x,y,z, and the inverse covariance xx,xy,xz,yy,yz,zz
+	static final int GAUSS = 9;
+
+	// state of a voxel's Gaussian
+	static final byte MODIFIED = 0;
+	static final byte VALID = 1;
+	static final byte INVALID = 2;
+
+	// offset applied to voxel coordinates so that negative values can be packed into a key
+	private static final int OFFSET = 1 << 20;
+	private static final int EMPTY = -1;
+
+	// length of a side of a voxel
+	private double cellSize;
+	// minimum number of points for a Gaussian to be computed
+	private int minPoints = 5;
+	// smallest allowed ratio between the smallest and largest eigenvalue of a covariance
+	private double minEigenRatio = 0.01;
+
+	// hash table.  The voxel's key and index of the voxel in each slot
+	private long tableKeys[];
+	private int tableVoxels[];
+	private int tableMask;
+
+	// number of voxels which have been declared
+	private int numVoxels;
+	// key of each voxel
+	private long voxelKeys[];
+	// statistics of each voxel.  Points are relative to the voxel's lower corner to reduce numerical errors
+	double stats[];
+	// Gaussian of each voxel in world coordinates
+	double gauss[];
+	// state of each voxel's Gaussian
+	byte state[];
+
+	// storage for computing the Gaussian
+	private DenseMatrix64F covariance = new DenseMatrix64F(3, 3);
+	private EigenDecomposition<DenseMatrix64F> eigen = DecompositionFactory.eig(3, true, true);
+
+	/**
+	 * Creates an empty grid
+	 *
+	 * @param cellSize Length of a side of each voxel
+	 */
+	public NdtVoxelGrid(double cellSize) {
+		if (cellSize <= 0)
+			throw new IllegalArgumentException("cellSize must be positive");
+		this.cellSize = cellSize;
+
+		declareTable(64);
+		voxelKeys = new long[16];
+		stats = new double[16 * STATS];
+		gauss = new double[16 * GAUSS];
+		state = new byte[16];
+	}
+
+	/**
+	 * Adds all the points to the grid
+	 */
+	public void addPoints(List<Point3D_F64> points) {
+		for (int i = 0; i < points.size(); i++) {
+			Point3D_F64 p = points.get(i);
+			addPoint(p.x, p.y, p.z);
+		}
+	}
+
+	/**
+	 * Adds a single point to the voxel which contains it
+	 */
+	public void addPoint(double x, double y, double z) {
+		// checked before the cast since a huge value is clamped to Integer.MIN_VALUE.  Also rejects NaN
+		if (!isInside(x, y, z))
+			throw new IllegalArgumentException("Point is too far from the origin: " + x + " " + y + " " + z);
+
+		int cx = (int) Math.floor(x / cellSize);
+		int cy = (int) Math.floor(y / cellSize);
+		int cz = (int) Math.floor(z / cellSize);
+
+		long key = key(cx, cy, cz);
+		int voxel = lookup(key);
+		if (voxel == EMPTY)
+			voxel = addVoxel(key);
+
+		// relative to the voxel's corner
+		x -= cx * cellSize;
+		y -= cy * cellSize;
+		z -= cz * cellSize;
+
+		int index = voxel * STATS;
+		stats[index] += 1;
+		stats[index + 1] += x;
+		stats[index + 2] += y;
+		stats[index + 3] += z;
+		stats[index + 4] += x * x;
+		stats[index + 5] += x * y;
+		stats[index + 6] += x * z;
+		stats[index + 7] += y * y;
+		stats[index + 8] += y * z;
+		stats[index + 9] += z * z;
+		state[voxel] = MODIFIED;
+	}
+
+	/**
+	 * Finds the voxel which contains the point and has a valid Gaussian.  The Gaussian is computed if the voxel
+	 * has been modified.
+	 *
+	 * @return Index of the voxel or -1 if there is no voxel or it doesn't have a valid Gaussian
+	 */
+	public int findVoxel(double x, double y, double z) {
+		// points far outside the grid can't be packed into a key
+		if (!isInside(x, y, z))
+			return -1;
+
+		int cx = (int) Math.floor(x / cellSize);
+		int cy = (int) Math.floor(y / cellSize);
+		int cz = (int) Math.floor(z / cellSize);
+
+		int voxel = lookup(key(cx, cy, cz));
+		if (voxel == EMPTY)
+			return -1;
+
+		if (state[voxel] == MODIFIED)
+			computeGaussian(voxel);
+
+		return state[voxel] == VALID ? voxel : -1;
+	}
+
+	/**
+	 * Computes the mean and inverse covariance of the voxel's points
+	 */
+	private void computeGaussian(int voxel) {
+		int index = voxel * STATS;
+		double n = stats[index];
+		if (n < minPoints) {
+			state[voxel] = INVALID;
+			return;
+		}
+
+		double mx = stats[index + 1] / n, my = stats[index + 2] / n, mz = stats[index + 3] / n;
+
+		// unbiased sample covariance
+		double scale = 1.0 / (n - 1);
+		double xx = (stats[index + 4] - n * mx * mx) * scale;
+		double xy = (stats[index + 5] - n * mx * my) * scale;
+		double xz = (stats[index + 6] - n * mx * mz) * scale;
+		double yy = (stats[index + 7] - n * my * my) * scale;
+		double yz = (stats[index + 8] - n * my * mz) * scale;
+		double zz = (stats[index + 9] - n * mz * mz) * scale;
+
+		covariance.set(0, 0, xx);
+		covariance.set(0, 1, xy);
+		covariance.set(0, 2, xz);
+		covariance.set(1, 0, xy);
+		covariance.set(1, 1, yy);
+		covariance.set(1, 2, yz);
+		covariance.set(2, 0, xz);
+		covariance.set(2, 1, yz);
+		covariance.set(2, 2, zz);
+
+		if (!eigen.decompose(covariance)) {
+			state[voxel] = INVALID;
+			return;
+		}
+
+		double largest = 0;
+		for (int i = 0; i < 3; i++) {
+			largest = Math.max(largest, eigen.getEigenvalue(i).real);
+		}
+		if (largest <= 0) {
+			state[voxel] = INVALID;
+			return;
+		}
+
+		// inverse = V*diag(1/lambda)*V'
+		double minEigen = largest * minEigenRatio;
+		double ixx = 0, ixy = 0, ixz = 0, iyy = 0, iyz = 0, izz = 0;
+		for (int i = 0; i < 3; i++) {
+			double lambda = Math.max(minEigen, eigen.getEigenvalue(i).real);
+			DenseMatrix64F v = eigen.getEigenVector(i);
+			double vx = v.data[0], vy = v.data[1], vz = v.data[2];
+			double inv = 1.0 / (lambda * (vx * vx + vy * vy + vz * vz));
+			ixx += vx * vx * inv;
+			ixy += vx * vy * inv;
+			ixz += vx * vz * inv;
+			iyy += vy * vy * inv;
+			iyz += vy * vz * inv;
+			izz += vz * vz * inv;
+		}
+
+		long key = voxelKeys[voxel];
+		int g = voxel * GAUSS;
+		gauss[g] = mx + ((int) (key & 0x1FFFFF) - OFFSET) * cellSize;
+		gauss[g + 1] = my + ((int) ((key >>> 21) & 0x1FFFFF) - OFFSET) * cellSize;
+		gauss[g + 2] = mz + ((int) (key >>> 42) - OFFSET) * cellSize;
+		gauss[g + 3] = ixx;
+		gauss[g + 4] = ixy;
+		gauss[g + 5] = ixz;
+		gauss[g + 6] = iyy;
+		gauss[g + 7] = iyz;
+		gauss[g + 8] = izz;
+		state[voxel] = VALID;
+	}
+
+	/**
+	 * Copies the mean of the voxel's Gaussian into the point.  Voxel must have been returned by
+	 * {@link #findVoxel}.
+	 */
+	public void getMean(int voxel, Point3D_F64 mean) {
+		int g = voxel * GAUSS;
+		mean.set(gauss[g], gauss[g + 1], gauss[g + 2]);
+	}
+
+	/**
+	 * Copies the inverse covariance of the voxel's Gaussian into the 3x3 matrix.  Voxel must have been returned
+	 * by {@link #findVoxel}.
+	 */
+	public void getInverseCovariance(int voxel, DenseMatrix64F inverse) {
+		int g = voxel * GAUSS;
+		inverse.reshape(3, 3);
+		inverse.set(0, 0, gauss[g + 3]);
+		inverse.set(0, 1, gauss[g + 4]);
+		inverse.set(0, 2, gauss[g + 5]);
+		inverse.set(1, 0, gauss[g + 4]);
+		inverse.set(1, 1, gauss[g + 6]);
+		inverse.set(1, 2, gauss[g + 7]);
+		inverse.set(2, 0, gauss[g + 5]);
+		inverse.set(2, 1, gauss[g + 7]);
+		inverse.set(2, 2, gauss[g + 8]);
+	}
+
+	/**
+	 * Number of points which have been added to the voxel
+	 */
+	public int getPointCount(int voxel) {
+		return (int) stats[voxel * STATS];
+	}
+
+	/**
+	 * Discards all the voxels.  Memory is saved and reused.
+	 */
+	public void reset() {
+		Arrays.fill(tableVoxels, EMPTY);
+		numVoxels = 0;
+	}
+
+	/**
+	 * Returns true if the point is close enough to the origin for its voxel to be packed into a key.  False
+	 * if any coordinate is NaN.
+	 */
+	private boolean isInside(double x, double y, double z) {
+		double limit = (OFFSET - 1) * cellSize;
+		return Math.abs(x) < limit && Math.abs(y) < limit && Math.abs(z) < limit;
+	}
+
+	private static long key(int x, int y, int z) {
+		return (long) (x + OFFSET) | ((long) (y + OFFSET) << 21) | ((long) (z + OFFSET) << 42);
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & tableMask;
+	}
+
+	private int lookup(long key) {
+		int i = slot(key);
+		while (true) {
+			int voxel = tableVoxels[i];
+			if (voxel == EMPTY || tableKeys[i] == key)
+				return voxel;
+			i = (i + 1) & tableMask;
+		}
+	}
+
+	private int addVoxel(long key) {
+		if (numVoxels == voxelKeys.length) {
+			int size = numVoxels * 2;
+			voxelKeys = Arrays.copyOf(voxelKeys, size);
+			stats = Arrays.copyOf(stats, size * STATS);
+			gauss = Arrays.copyOf(gauss, size * GAUSS);
+			state = Arrays.copyOf(state, size);
+		}
+
+		int voxel = numVoxels++;
+		voxelKeys[voxel] = key;
+		Arrays.fill(stats, voxel * STATS, (voxel + 1) * STATS, 0);
+
+		// keep the load factor at or below 0.5
+		if (numVoxels * 2 > tableKeys.length) {
+			declareTable(tableKeys.length * 2);
+			for (int i = 0; i < numVoxels - 1; i++) {
+				insert(voxelKeys[i], i);
+			}
+		}
+		insert(key, voxel);
+		return voxel;
+	}
+
+	private void declareTable(int size) {
+		tableKeys = new long[size];
+		tableVoxels = new int[size];
+		tableMask = size - 1;
+		Arrays.fill(tableVoxels, EMPTY);
+	}
+
+	private void insert(long key, int voxel) {
+		int i = slot(key);
+		while (tableVoxels[i] != EMPTY) {
+			i = (i + 1) & tableMask;
+		}
+		tableKeys[i] = key;
+		tableVoxels[i] = voxel;
+	}
+
+	/**
+	 * Number of voxels which contain at least one point
+	 */
+	public int getNumVoxels() {
+		return numVoxels;
+	}
+
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	public int getMinPoints() {
+		return minPoints;
+	}
+
+	/**
+	 * Specifies the minimum number of points a voxel must have for its Gaussian to be used.  Must be at least 3.
+	 */
+	public void setMinPoints(int minPoints) {
+		if (minPoints < 3)
+			throw new IllegalArgumentException("At least 3 points are needed to compute a covariance");
+		this.minPoints = minPoints;
+		Arrays.fill(state, 0, numVoxels, MODIFIED);
+	}
+
+	public double getMinEigenRatio() {
+		return minEigenRatio;
+	}
+
+	/**
+	 * Specifies the smallest allowed ratio between the smallest and largest eigenvalue of a voxel's covariance.
+	 */
+	public void setMinEigenRatio(double minEigenRatio) {
+		this.minEigenRatio = minEigenRatio;
+		Arrays.fill(state, 0, numVoxels, MODIFIED);
+	}
+}
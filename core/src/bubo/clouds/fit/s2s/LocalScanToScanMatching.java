@@ -18,7 +18,9 @@
 
 package bubo.clouds.fit.s2s;
 
-import bubo.clouds.fit.Lrf2dScanToScan;
+import bubo.clouds.fit.Lrf2dScanToScanPrepared;
+import bubo.clouds.fit.s2s.general.BearingLookupTable;
+import bubo.clouds.fit.s2s.general.ScanKernels;
 import bubo.desc.sensors.lrf2d.Lrf2dParam;
 import bubo.desc.sensors.lrf2d.Lrf2dPrecomputedTrig;
 import bubo.struct.StoppingCondition;
@@ -26,7 +28,7 @@ import georegression.fitting.se.MotionSe2PointSVD_F64;
 import georegression.metric.UtilAngle;
 import georegression.struct.point.Point2D_F64;
 import georegression.struct.se.Se2_F64;
-import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.struct.GrowQueue_I32;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -37,9 +39,22 @@ import java.util.List;
  * Base class for scan to scan matching that only considers scans that have an index close to each other.
  * </p>
  *
+ * <p>
+ * If projective association is turned on with {@link #setProjectiveRadius(int)} then instead of searching
+ * a window of indexes, each point is only compared against reference points with a similar bearing.  The
+ * reference points are binned by bearing once per destination scan, using a {@link BearingLookupTable},
+ * making association effectively O(N) instead of O(N*W).
+ * </p>
+ *
+ * <p>
+ * The destination scan's points, visibility, and lookup table are computed when it's specified and are reused
+ * by every call to {@link #process} until the destination changes.  The end points of the source scan are computed
+ * when it's specified, which can be done in a different thread using {@link #prepareSource}.
+ * </p>
+ *
  * @author Peter Abeles
  */
-public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
+public abstract class LocalScanToScanMatching implements Lrf2dScanToScanPrepared<LocalScanToScanMatching.ScanInfo> {
 
 	// description of the sensor
 	protected Lrf2dParam param;
@@ -48,6 +63,8 @@ public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
 	// various bits of information related to each scan
 	protected ScanInfo first;
 	protected ScanInfo second;
+	// the second scan's measured ranges and end points in its own reference frame
+	private ScanInfo preparedSecond;
 	// computed angles after transform has been applied
 	protected double ang[];
 	protected double scan[];
@@ -70,6 +87,15 @@ public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
 	// the maximum separation between two points for them to be connected
 	private double maxSeparationSq;
 
+	// number of bearing bins on each side which are searched.  If < 0 then projective association is off
+	private int projectiveRadius = -1;
+	// reference points sorted by bearing
+	private BearingLookupTable table;
+	// storage for candidate matches
+	private GrowQueue_I32 candidates = new GrowQueue_I32();
+	// true if the table contains the current destination scan
+	private boolean tableValid;
+
 	public LocalScanToScanMatching(StoppingCondition stop, int searchNeighborhood, double maxSeparation) {
 		this.searchNeighborhood = searchNeighborhood;
 		this.maxSeparationSq = maxSeparation * maxSeparation;
@@ -84,7 +110,9 @@ public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
 		ang = new double[param.getNumberOfScans()];
 		first = new ScanInfo(param.getNumberOfScans());
 		second = new ScanInfo(param.getNumberOfScans());
+		preparedSecond = new ScanInfo(param.getNumberOfScans());
 		scan = new double[param.getNumberOfScans()];
+		table = new BearingLookupTable(Math.abs(param.getAngleIncrement()));
 	}
 
 	@Override
@@ -95,11 +123,30 @@ public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
 	@Override
 	public void setDestination(double[] scan) {
 		System.arraycopy(scan, 0, first.scan, 0, param.getNumberOfScans());
+		prepareDestination();
 	}
 
 	@Override
 	public void setSource(double[] scan) {
-		System.arraycopy(scan, 0, second.scan, 0, param.getNumberOfScans());
+		prepareSource(scan, preparedSecond);
+	}
+
+	@Override
+	public ScanInfo createPreparedSource() {
+		return new ScanInfo(param.getNumberOfScans());
+	}
+
+	@Override
+	public void prepareSource(double[] scan, ScanInfo prepared) {
+		System.arraycopy(scan, 0, prepared.scan, 0, param.getNumberOfScans());
+		lrf2pt.computeEndPoints(prepared.scan, prepared.x, prepared.y);
+	}
+
+	@Override
+	public ScanInfo setPreparedSource(ScanInfo prepared) {
+		ScanInfo old = preparedSecond;
+		preparedSecond = prepared;
+		return old;
 	}
 
 	public void computeScan(double scan[], Point2D_F64 pts[]) {
@@ -117,29 +164,46 @@ public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
 	@Override
 	public void assignSourceToDestination() {
 		ScanInfo temp = first;
-		first = second;
-		second = temp;
+		first = preparedSecond;
+		preparedSecond = temp;
+		// the end points have already been computed
+		first.updatePoints();
+		setVisibleByRange(first);
+		tableValid = false;
+	}
+
+	/**
+	 * Computes information about the destination scan which doesn't change until a new destination is
+	 * specified, allowing it to be reused by multiple calls to {@link #process}.
+	 */
+	private void prepareDestination() {
+		lrf2pt.computeEndPoints(first.scan, first.x, first.y);
+		first.updatePoints();
+		setVisibleByRange(first);
+		tableValid = false;
 	}
 
 	@Override
 	public boolean process(Se2_F64 hintSrcToDst) {
 //        System.out.println("-----------------------------------------------------");
-		computeScan(second.scan, second.pts);
-		computeScan(first.scan, first.pts);
-
-		if (hintSrcToDst != null) {
-			transform(hintSrcToDst, second);
+		// apply the hint, if any.  The prepared end points are left unmodified so that process can be called again
+		if (hintSrcToDst != null)
 			motion.set(hintSrcToDst);
-		} else
+		else
 			motion.set(0, 0, 0);
+		ScanKernels.transform(motion, preparedSecond.x, preparedSecond.y, second.x, second.y, param.getNumberOfScans());
+		second.updatePoints();
 
-		setVisibleByRange(first);
+		if (projectiveRadius >= 0 && !tableValid) {
+			table.process(first.pts, first.vis, param.getNumberOfScans());
+			tableValid = true;
+		}
 
 		stop.reset();
 		while (true) {
 //            System.out.println();
 			// compute the angle of each point in the current view
-			computePointAngles(second);
+			computePointAngles(preparedSecond.scan, second);
 
 //            UtilDouble.print(first.scan,"%5.2f");
 //            UtilDouble.print(scan,"%5.2f");
@@ -178,16 +242,16 @@ public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
 	/**
 	 * Computes the angle of each scan and flags visible based on measured range
 	 */
-	private void computePointAngles(ScanInfo info) {
+	private void computePointAngles(double measuredRange[], ScanInfo info) {
 		final int N = param.getNumberOfScans();
 		final double maxRange = param.getMaxRange();
+
+		ScanKernels.computePolar(info.x, info.y, scan, ang, N);
+
 		for (int i = 0; i < N; i++) {
-			double r = info.scan[i];
-			Point2D_F64 p = info.pts[i];
+			double r = measuredRange[i];
 
 			if (r <= maxRange) {
-				ang[i] = Math.atan2(p.y, p.x);
-				scan[i] = Math.sqrt(p.y * p.y + p.x * p.x); // todo push outside
 				info.vis[i] = true;
 			} else {
 				scan[i] = maxRange;
@@ -249,25 +313,44 @@ public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
 			if (!second.vis[i])
 				continue;
 
-			int min = i - searchNeighborhood;
-			int max = i + searchNeighborhood;
-			if (min < 0) min = 0;
-			if (max > N) max = N;
-
 			int bestIndex = -1;
 			double bestDistance = Double.MAX_VALUE;
 
 			funcDist.setReference(i);
 
-			for (int j = min; j < max; j++) {
-				if (!first.vis[j] || j == i)
-					continue;
+			if (projectiveRadius >= 0) {
+				// only reference points with a similar bearing are considered
+				candidates.reset();
+				table.lookup(ang[i], projectiveRadius, candidates);
+
+				for (int k = 0; k < candidates.size; k++) {
+					int j = candidates.data[k];
+					if (j == i)
+						continue;
+
+					double dist = funcDist.dist(j);
+
+					if (dist < bestDistance) {
+						bestDistance = dist;
+						bestIndex = j;
+					}
+				}
+			} else {
+				int min = i - searchNeighborhood;
+				int max = i + searchNeighborhood;
+				if (min < 0) min = 0;
+				if (max > N) max = N;
+
+				for (int j = min; j < max; j++) {
+					if (!first.vis[j] || j == i)
+						continue;
 
-				double dist = funcDist.dist(j);
+					double dist = funcDist.dist(j);
 
-				if (dist < bestDistance) {
-					bestDistance = dist;
-					bestIndex = j;
+					if (dist < bestDistance) {
+						bestDistance = dist;
+						bestIndex = j;
+					}
 				}
 			}
 
@@ -304,10 +387,12 @@ public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
 		}
 	}
 
+	/**
+	 * Applies the transform to the points in the scan and updates the points used for association
+	 */
 	private void transform(Se2_F64 m, ScanInfo scan) {
-		for (Point2D_F64 p : scan.pts) {
-			SePointOps_F64.transform(m, p, p);
-		}
+		ScanKernels.transform(m, scan.x, scan.y, scan.x, scan.y, param.getNumberOfScans());
+		scan.updatePoints();
 	}
 
 	private double computeMeanSquaredError() {
@@ -336,6 +421,21 @@ public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
 		this.searchNeighborhood = searchNeighborhood;
 	}
 
+	public int getProjectiveRadius() {
+		return projectiveRadius;
+	}
+
+	/**
+	 * Turns projective association on or off.
+	 *
+	 * @param projectiveRadius Number of bearing bins on either side of a point's bearing which are searched.
+	 *                         Each bin is the width of the angle between two beams.  If &lt; 0 then
+	 *                         projective association is turned off.
+	 */
+	public void setProjectiveRadius(int projectiveRadius) {
+		this.projectiveRadius = projectiveRadius;
+	}
+
 	public static interface Distance {
 		/**
 		 * The scan in the first set of observations that distance is being computed in reference to
@@ -354,10 +454,14 @@ public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
 	}
 
 	/**
-	 * Information on a LRF scan
+	 * Information on a LRF scan.  The per point calculations are done on {@link #x} and {@link #y} and
+	 * {@link #pts} is a copy of them which is used for association.
 	 */
 	public static class ScanInfo {
 		// location of points in 2D cartesian space
+		public double x[];
+		public double y[];
+		// copy of x and y for association
 		public Point2D_F64 pts[];
 		// if the points are "visible"
 		public boolean vis[];
@@ -365,6 +469,8 @@ public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
 		public double scan[];
 
 		public ScanInfo(int N) {
+			x = new double[N];
+			y = new double[N];
 			pts = new Point2D_F64[N];
 			vis = new boolean[N];
 			scan = new double[N];
@@ -373,5 +479,14 @@ public abstract class LocalScanToScanMatching implements Lrf2dScanToScan {
 				pts[i] = new Point2D_F64();
 			}
 		}
+
+		/**
+		 * Copies the location of each point from {@link #x} and {@link #y} into {@link #pts}
+		 */
+		public void updatePoints() {
+			for (int i = 0; i < pts.length; i++) {
+				pts[i].set(x[i], y[i]);
+			}
+		}
 	}
 }
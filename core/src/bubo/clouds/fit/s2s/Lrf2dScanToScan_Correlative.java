@@ -0,0 +1,566 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.fit.s2s;
+
+import bubo.clouds.fit.Lrf2dScanToScan;
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.desc.sensors.lrf2d.Lrf2dPrecomputedTrig;
+import georegression.struct.se.Se2_F64;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * <p>
+ * Scan matching using correlation between the source scan and a likelihood grid computed from the destination
+ * scan.  Every motion inside of a search window around the hint is considered, which allows large errors in
+ * the hint to be corrected and makes the running time independent of how close the hint is to the solution.
+ * Motion is discretized by the size of a grid cell and by an angular step which moves the farthest point in
+ * the source scan by about one cell.  The motion which maximizes the sum of the likelihood of each source
+ * point is returned.
+ * </p>
+ *
+ * <p>
+ * To avoid evaluating every motion in the window, branch-and-bound is used on translation.  After the
+ * likelihood grid has been computed, coarser grids are precomputed where each cell contains the maximum
+ * likelihood in a 2<sup>k</sup> by 2<sup>k</sup> region.  Scoring a block of translations with a coarse grid
+ * gives an upper bound on the score of every translation in the block, so blocks which can't beat the best
+ * solution found so far are discarded without being evaluated.  Since the search is exhaustive, the worst
+ * case cost is bounded by the size of the search window and is independent of the scene.
+ * </p>
+ *
+ * <p>
+ * The likelihood grid is only recomputed when the destination scan changes.  Adjacent points in the
+ * destination scan which are close to each other are connected by a line, so that sparse scans can
+ * still be matched accurately.  The solution can be further refined using a local method, such as
+ * {@link Lrf2dScanToScan_LocalICP}.
+ * </p>
+ *
+ * <p>
+ * Olson, Edwin B. "Real-time correlative scan matching." ICRA 2009
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class Lrf2dScanToScan_Correlative implements Lrf2dScanToScan {
+
+	// size of a cell in the likelihood grid
+	private double cellSize;
+	// standard deviation of the likelihood function
+	private double sigma;
+	// points in the destination scan which are closer than this are connected by a line
+	private double maxGap;
+	// size of the search window around the hint
+	private double windowXY;
+	private double windowYaw;
+	// number of levels in the multi-resolution grid
+	private int numLevels;
+	// minimum average likelihood for a solution to be accepted
+	private double minScore = 0.5;
+
+	// description of the sensor
+	private Lrf2dParam param;
+	private Lrf2dPrecomputedTrig trig;
+
+	// range measurements for each scan
+	private double rangesDst[];
+	private double rangesSrc[];
+	// true if the likelihood grid needs to be recomputed
+	private boolean modifiedDst;
+
+	// shape of the likelihood grids.  Each level has the same shape
+	private int gridWidth, gridHeight;
+	// location of the lower extent of the grids in the destination's reference frame
+	private double originX, originY;
+	// the likelihood grid at each level.  level 0 is full resolution
+	private float levels[][] = new float[0][];
+	// distance of each cell in the full resolution grid to the destination scan
+	private float distance[] = new float[0];
+
+	// valid points in the source scan in the sensor's reference frame
+	private double srcX[], srcY[];
+	private int numSrc;
+
+	// location of each source point in the grid for each angle.  index = angle*numSrc + point
+	private int cellX[] = new int[0];
+	private int cellY[] = new int[0];
+
+	// candidate solutions at the coarsest level
+	private FastQueue<Candidate> candidates = new FastQueue<Candidate>(Candidate.class, true);
+	// storage for children candidates at each level
+	private Candidate children[][];
+	private Comparator<Candidate> sorter = new Comparator<Candidate>() {
+		@Override
+		public int compare(Candidate a, Candidate b) {
+			return Float.compare(b.score, a.score);
+		}
+	};
+
+	// range of translations being searched, in cells
+	private int windowCells;
+	// the best solution found so far
+	private float bestScore;
+	private int bestAngle, bestX, bestY;
+
+	// found motion
+	private Se2_F64 motion = new Se2_F64();
+	// mean squared distance of matched source points
+	private double foundError;
+	// number of source points which were matched
+	private int numMatched;
+
+	/**
+	 * Configures the scan matcher
+	 *
+	 * @param cellSize  Size of a cell in the likelihood grid.  Determines the resolution of the solution.
+	 * @param maxGap    Adjacent points in the destination scan which are closer than this are connected by a line.
+	 * @param windowXY  Translational size of the search window around the hint.  Searches +- this value.
+	 * @param windowYaw Angular size of the search window around the hint, in radians.  Searches +- this value.
+	 * @param numLevels Number of levels in the multi-resolution grid.  The coarsest level considers blocks of
+	 *                  2<sup>numLevels-1</sup> cells.  Try 5.
+	 */
+	public Lrf2dScanToScan_Correlative(double cellSize, double maxGap,
+									   double windowXY, double windowYaw, int numLevels) {
+		if (cellSize <= 0)
+			throw new IllegalArgumentException("cellSize must be positive");
+		if (windowXY < 0 || windowYaw < 0)
+			throw new IllegalArgumentException("The search window can't be negative");
+		if (numLevels < 1 || numLevels > 16)
+			throw new IllegalArgumentException("numLevels must be from 1 to 16");
+
+		this.cellSize = cellSize;
+		this.sigma = cellSize;
+		this.maxGap = maxGap;
+		this.windowXY = windowXY;
+		this.windowYaw = windowYaw;
+		this.numLevels = numLevels;
+
+		children = new Candidate[numLevels][4];
+		for (int i = 0; i < numLevels; i++) {
+			for (int j = 0; j < 4; j++) {
+				children[i][j] = new Candidate();
+			}
+		}
+	}
+
+	@Override
+	public void setSensorParam(Lrf2dParam param) {
+		this.param = param;
+		this.trig = new Lrf2dPrecomputedTrig(param);
+
+		int N = param.getNumberOfScans();
+		rangesDst = new double[N];
+		rangesSrc = new double[N];
+		srcX = new double[N];
+		srcY = new double[N];
+	}
+
+	@Override
+	public Se2_F64 getSourceToDestination() {
+		return motion;
+	}
+
+	@Override
+	public void setDestination(double[] scan) {
+		System.arraycopy(scan, 0, rangesDst, 0, param.getNumberOfScans());
+		modifiedDst = true;
+	}
+
+	@Override
+	public void setSource(double[] scan) {
+		System.arraycopy(scan, 0, rangesSrc, 0, param.getNumberOfScans());
+	}
+
+	@Override
+	public void assignSourceToDestination() {
+		double temp[] = rangesDst;
+		rangesDst = rangesSrc;
+		rangesSrc = temp;
+		modifiedDst = true;
+	}
+
+	@Override
+	public boolean process(Se2_F64 hintSrcToDst) {
+		if (modifiedDst) {
+			computeLikelihoodGrid();
+			modifiedDst = false;
+		}
+
+		numMatched = 0;
+		foundError = Double.MAX_VALUE;
+
+		double maxRange = computeSourcePoints();
+		if (numSrc == 0 || gridWidth == 0)
+			return false;
+
+		double yaw0 = 0, tranX0 = 0, tranY0 = 0;
+		if (hintSrcToDst != null) {
+			yaw0 = hintSrcToDst.getYaw();
+			tranX0 = hintSrcToDst.getX();
+			tranY0 = hintSrcToDst.getY();
+		}
+
+		// step in yaw which moves the farthest point by about one cell
+		double angleStep = Math.acos(1.0 - cellSize * cellSize / (2 * maxRange * maxRange));
+		int numSteps = angleStep > 0 ? (int) Math.ceil(windowYaw / angleStep) : 0;
+		int numAngles = 2 * numSteps + 1;
+
+		projectSource(yaw0, tranX0, tranY0, angleStep, numSteps, numAngles);
+
+		windowCells = (int) Math.ceil(windowXY / cellSize);
+		bestScore = (float) (minScore * numSrc);
+		bestAngle = -1;
+
+		// score all the candidates at the coarsest level and search the most promising first
+		int top = numLevels - 1;
+		int length = 1 << top;
+		candidates.reset();
+		for (int angle = 0; angle < numAngles; angle++) {
+			for (int y = -windowCells; y <= windowCells; y += length) {
+				for (int x = -windowCells; x <= windowCells; x += length) {
+					Candidate c = candidates.grow();
+					c.angle = angle;
+					c.x = x;
+					c.y = y;
+					c.score = score(top, angle, x, y);
+				}
+			}
+		}
+		Arrays.sort(candidates.data, 0, candidates.size, sorter);
+
+		for (int i = 0; i < candidates.size; i++) {
+			Candidate c = candidates.get(i);
+			if (c.score <= bestScore)
+				break;
+			branch(top, c);
+		}
+
+		if (bestAngle < 0)
+			return false;
+
+		double yaw = yaw0 + (bestAngle - numSteps) * angleStep;
+		motion.set(tranX0 + bestX * cellSize, tranY0 + bestY * cellSize, yaw);
+
+		computeError();
+
+		return true;
+	}
+
+	/**
+	 * Searches all the translations inside the candidate's block.
+	 */
+	private void branch(int level, Candidate parent) {
+		if (level == 0) {
+			// the score at the lowest level is exact
+			bestScore = parent.score;
+			bestAngle = parent.angle;
+			bestX = parent.x;
+			bestY = parent.y;
+			return;
+		}
+
+		int child = level - 1;
+		int half = 1 << child;
+		Candidate list[] = children[child];
+		int total = 0;
+		for (int i = 0; i < 2; i++) {
+			int y = parent.y + i * half;
+			if (y > windowCells)
+				break;
+			for (int j = 0; j < 2; j++) {
+				int x = parent.x + j * half;
+				if (x > windowCells)
+					break;
+				Candidate c = list[total++];
+				c.angle = parent.angle;
+				c.x = x;
+				c.y = y;
+				c.score = score(child, parent.angle, x, y);
+			}
+		}
+		Arrays.sort(list, 0, total, sorter);
+
+		for (int i = 0; i < total; i++) {
+			Candidate c = list[i];
+			if (c.score <= bestScore)
+				break;
+			branch(child, c);
+		}
+	}
+
+	/**
+	 * Sum of the likelihood of each source point with the specified motion.  At coarser levels this is an upper
+	 * bound on the score of every translation in the block with its lower corner at (x,y).
+	 */
+	private float score(int level, int angle, int x, int y) {
+		float grid[] = levels[level];
+		int offset = angle * numSrc;
+		float total = 0;
+		for (int i = 0; i < numSrc; i++) {
+			int cx = cellX[offset + i] + x;
+			int cy = cellY[offset + i] + y;
+			if (cx < 0 || cy < 0 || cx >= gridWidth || cy >= gridHeight)
+				continue;
+			total += grid[cy * gridWidth + cx];
+		}
+		return total;
+	}
+
+	/**
+	 * Finds the location of valid points in the source scan
+	 *
+	 * @return Range of the farthest point
+	 */
+	private double computeSourcePoints() {
+		int N = param.getNumberOfScans();
+		numSrc = 0;
+		double maxRange = cellSize;
+		for (int i = 0; i < N; i++) {
+			double r = rangesSrc[i];
+			if (!param.isValidRange(r))
+				continue;
+			trig.computeEndPoint(i, r);
+			srcX[numSrc] = trig.x;
+			srcY[numSrc] = trig.y;
+			numSrc++;
+			maxRange = Math.max(maxRange, r);
+		}
+		return maxRange;
+	}
+
+	/**
+	 * Computes the grid cell that each source point falls inside of for each angle
+	 */
+	private void projectSource(double yaw0, double tranX0, double tranY0,
+							   double angleStep, int numSteps, int numAngles) {
+		int total = numAngles * numSrc;
+		if (cellX.length < total) {
+			cellX = new int[total];
+			cellY = new int[total];
+		}
+
+		for (int angle = 0; angle < numAngles; angle++) {
+			double yaw = yaw0 + (angle - numSteps) * angleStep;
+			double c = Math.cos(yaw), s = Math.sin(yaw);
+			int offset = angle * numSrc;
+			for (int i = 0; i < numSrc; i++) {
+				double x = c * srcX[i] - s * srcY[i] + tranX0;
+				double y = s * srcX[i] + c * srcY[i] + tranY0;
+				cellX[offset + i] = (int) Math.floor((x - originX) / cellSize);
+				cellY[offset + i] = (int) Math.floor((y - originY) / cellSize);
+			}
+		}
+	}
+
+	/**
+	 * Computes the error and number of matched points using the best solution
+	 */
+	private void computeError() {
+		int offset = bestAngle * numSrc;
+		float maxDistance = (float) (3 * sigma);
+		double sum = 0;
+		for (int i = 0; i < numSrc; i++) {
+			int cx = cellX[offset + i] + bestX;
+			int cy = cellY[offset + i] + bestY;
+			if (cx < 0 || cy < 0 || cx >= gridWidth || cy >= gridHeight)
+				continue;
+			float d = distance[cy * gridWidth + cx];
+			if (d < maxDistance) {
+				sum += d * d;
+				numMatched++;
+			}
+		}
+		foundError = numMatched > 0 ? sum / numMatched : Double.MAX_VALUE;
+	}
+
+	/**
+	 * Computes the likelihood grid and its lower resolution versions from the destination scan
+	 */
+	private void computeLikelihoodGrid() {
+		int N = param.getNumberOfScans();
+		double radius = 3 * sigma;
+
+		// find the extent of the scan
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < N; i++) {
+			double r = rangesDst[i];
+			if (!param.isValidRange(r))
+				continue;
+			trig.computeEndPoint(i, r);
+			minX = Math.min(minX, trig.x);
+			minY = Math.min(minY, trig.y);
+			maxX = Math.max(maxX, trig.x);
+			maxY = Math.max(maxY, trig.y);
+		}
+
+		if (minX > maxX) {
+			gridWidth = gridHeight = 0;
+			return;
+		}
+
+		// pad the lower extent by the largest block so that coarse levels are correct next to the border
+		int pad = (int) Math.ceil(radius / cellSize) + 1;
+		int padLow = pad + (1 << (numLevels - 1));
+		originX = minX - padLow * cellSize;
+		originY = minY - padLow * cellSize;
+		gridWidth = (int) Math.ceil((maxX - minX) / cellSize) + padLow + pad;
+		gridHeight = (int) Math.ceil((maxY - minY) / cellSize) + padLow + pad;
+
+		int size = gridWidth * gridHeight;
+		if (distance.length < size) {
+			distance = new float[size];
+			levels = new float[numLevels][size];
+		}
+		Arrays.fill(distance, 0, size, Float.MAX_VALUE);
+
+		// sample points along the scan and find the distance of each cell to the nearest one
+		double step = cellSize / 2;
+		double prevX = 0, prevY = 0;
+		boolean prevValid = false;
+		for (int i = 0; i < N; i++) {
+			double r = rangesDst[i];
+			if (!param.isValidRange(r)) {
+				prevValid = false;
+				continue;
+			}
+			trig.computeEndPoint(i, r);
+			double x = trig.x, y = trig.y;
+
+			double dx = x - prevX, dy = y - prevY;
+			double length = Math.sqrt(dx * dx + dy * dy);
+			if (prevValid && length <= maxGap) {
+				int numSamples = (int) Math.ceil(length / step);
+				for (int j = 1; j <= numSamples; j++) {
+					double t = j / (double) numSamples;
+					addSample(prevX + t * dx, prevY + t * dy, radius);
+				}
+			} else {
+				addSample(x, y, radius);
+			}
+
+			prevX = x;
+			prevY = y;
+			prevValid = true;
+		}
+
+		// convert distance into likelihood
+		float level0[] = levels[0];
+		double scale = -0.5 / (sigma * sigma);
+		for (int i = 0; i < size; i++) {
+			float d = distance[i];
+			level0[i] = d <= radius ? (float) Math.exp(scale * d * d) : 0f;
+		}
+
+		// each cell in level k is the maximum of a 2^k by 2^k block starting at that cell
+		for (int level = 1; level < numLevels; level++) {
+			float prev[] = levels[level - 1];
+			float curr[] = levels[level];
+			int half = 1 << (level - 1);
+			for (int y = 0; y < gridHeight; y++) {
+				int index = y * gridWidth;
+				boolean insideY = y + half < gridHeight;
+				for (int x = 0; x < gridWidth; x++, index++) {
+					float value = prev[index];
+					if (x + half < gridWidth) {
+						value = Math.max(value, prev[index + half]);
+						if (insideY)
+							value = Math.max(value, prev[index + half * gridWidth + half]);
+					}
+					if (insideY)
+						value = Math.max(value, prev[index + half * gridWidth]);
+					curr[index] = value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates the distance of cells near the sample point
+	 */
+	private void addSample(double x, double y, double radius) {
+		int x0 = (int) Math.floor((x - radius - originX) / cellSize);
+		int x1 = (int) Math.floor((x + radius - originX) / cellSize);
+		int y0 = (int) Math.floor((y - radius - originY) / cellSize);
+		int y1 = (int) Math.floor((y + radius - originY) / cellSize);
+
+		for (int cy = y0; cy <= y1; cy++) {
+			double dy = originY + (cy + 0.5) * cellSize - y;
+			for (int cx = x0; cx <= x1; cx++) {
+				double dx = originX + (cx + 0.5) * cellSize - x;
+				float d = (float) Math.sqrt(dx * dx + dy * dy);
+				int index = cy * gridWidth + cx;
+				if (d < distance[index])
+					distance[index] = d;
+			}
+		}
+	}
+
+	/**
+	 * Mean squared distance between matched source points and the destination scan.
+	 */
+	@Override
+	public double getError() {
+		return foundError;
+	}
+
+	/**
+	 * Number of source points which are within 3 standard deviations of the destination scan
+	 */
+	@Override
+	public int totalScansMatched() {
+		return numMatched;
+	}
+
+	public double getSigma() {
+		return sigma;
+	}
+
+	/**
+	 * Specifies the standard deviation of the likelihood function.  Changes will take effect the next
+	 * time the destination scan is modified.  By default it is the size of a cell.
+	 */
+	public void setSigma(double sigma) {
+		this.sigma = sigma;
+	}
+
+	public double getMinScore() {
+		return minScore;
+	}
+
+	/**
+	 * Specifies the minimum average likelihood of source points for a solution to be accepted.  0 to 1.
+	 */
+	public void setMinScore(double minScore) {
+		this.minScore = minScore;
+	}
+
+	/**
+	 * A set of translations and a single angle being considered
+	 */
+	public static class Candidate {
+		// index of the angle
+		int angle;
+		// lower corner of the block of translations
+		int x, y;
+		// upper bound of the score
+		float score;
+	}
+}
@@ -65,8 +65,11 @@ public class Lrf2dScanToScan_GenericICP implements Lrf2dScanToScan {
 	// maximum assumed distance that the robot can move between scans
 	private double maxPointDistance = 0.2;
 
+	// model which ICP is matched against
+	private PointModel<Point2D_F64> model = new PointModel<Point2D_F64>(reference, maxPointDistance);
+
 	public Lrf2dScanToScan_GenericICP() {
-		icp.setModel(new PointModel<Point2D_F64>(reference, maxPointDistance));
+		icp.setModel(model);
 	}
 
 	@Override
@@ -134,7 +137,7 @@ public class Lrf2dScanToScan_GenericICP implements Lrf2dScanToScan {
 		reference = match;
 		match = temp;
 
-		icp.setModel(new PointModel<Point2D_F64>(reference, maxPointDistance));
+		model.setPoints(reference);
 	}
 
 	/**
@@ -144,7 +147,8 @@ public class Lrf2dScanToScan_GenericICP implements Lrf2dScanToScan {
 		savedPts.addAll(working);
 		working.clear();
 
-		for (Point2D_F64 p : match) {
+		for (int i = 0; i < match.size(); i++) {
+			Point2D_F64 p = match.get(i);
 			Point2D_F64 w = savedPts.remove(savedPts.size() - 1);
 			w.x = p.x;
 			w.y = p.y;
@@ -33,6 +33,11 @@ import georegression.struct.point.Point2D_F64;
  * scan based on its index.  No interpolation is performed.
  * </p>
  *
+ * <p>
+ * Searching a large window around each index is expensive.  Projective association, turned on with
+ * {@link #setProjectiveRadius(int)}, instead only considers points with a similar bearing.
+ * </p>
+ *
  * @author Peter Abeles
  */
 public class Lrf2dScanToScan_LocalICP extends GeneralizedScanToScan {
@@ -60,6 +65,24 @@ public class Lrf2dScanToScan_LocalICP extends GeneralizedScanToScan {
 		assoc.setParam(param);
 	}
 
+	/**
+	 * Turns projective association on or off.
+	 *
+	 * @see LocalAssociateDiscrete#setProjectiveRadius(int)
+	 */
+	public void setProjectiveRadius(int projectiveRadius) {
+		assoc.setProjectiveRadius(projectiveRadius);
+	}
+
+	public int getProjectiveRadius() {
+		return assoc.getProjectiveRadius();
+	}
+
+	@Override
+	protected void prepareDestination(ScanInfo scanDst) {
+		assoc.setDestination(scanDst);
+	}
+
 	@Override
 	public int totalScansMatched() {
 		return assoc.getListSource().size();
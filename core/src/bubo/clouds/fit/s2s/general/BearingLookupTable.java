@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.s2s.general;
+
+import georegression.struct.point.Point2D_F64;
+import org.ddogleg.struct.GrowQueue_I32;
+
+
+/**
+ * <p>
+ * Lookup table which bins the points in a LRF scan by their bearing.  Used to perform projective association,
+ * where a point is only compared against the points in the reference scan which are along nearly the same
+ * line of sight.  The table is built once for each reference scan in O(N) using a counting sort, after which
+ * finding candidates for a point only requires looking at a few bins, independent of the number of points.
+ * </p>
+ *
+ * <p>
+ * Bins cover the full circle from -&pi; to &pi; and wrap around, so scans with a field of view of
+ * 360 degrees are handled correctly.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class BearingLookupTable {
+
+	// width of a bin in radians
+	private double binWidth;
+	private int numBins;
+
+	// indexes of points in bin i are stored in indexes[binStart[i]] to indexes[binStart[i+1]-1]
+	private int binStart[];
+	private int indexes[] = new int[0];
+
+	// bin of each point.  -1 if it isn't in the table
+	private int pointBin[] = new int[0];
+
+	/**
+	 * Specifies the size of each bin
+	 *
+	 * @param binWidth Angular width of a bin in radians.  Typically the angle between two beams.
+	 */
+	public BearingLookupTable(double binWidth) {
+		if (binWidth <= 0)
+			throw new IllegalArgumentException("binWidth must be positive");
+
+		this.binWidth = binWidth;
+		numBins = Math.max(1, (int) Math.ceil(2 * Math.PI / binWidth));
+		binStart = new int[numBins + 1];
+	}
+
+	/**
+	 * Adds all the visible points to the table.  The bearing of each point is computed relative to the origin.
+	 *
+	 * @param pts Location of each point in the scan
+	 * @param vis If a point is visible.  Only visible points are added.
+	 * @param N   Number of points in the scan
+	 */
+	public void process(Point2D_F64 pts[], boolean vis[], int N) {
+		if (pointBin.length < N) {
+			pointBin = new int[N];
+			indexes = new int[N];
+		}
+
+		// count how many points are in each bin
+		for (int i = 0; i <= numBins; i++) {
+			binStart[i] = 0;
+		}
+		for (int i = 0; i < N; i++) {
+			if (vis[i]) {
+				Point2D_F64 p = pts[i];
+				int bin = bin(ScanKernels.atan2(p.y, p.x));
+				pointBin[i] = bin;
+				binStart[bin + 1]++;
+			} else {
+				pointBin[i] = -1;
+			}
+		}
+		for (int i = 0; i < numBins; i++) {
+			binStart[i + 1] += binStart[i];
+		}
+
+		// place the points into their bins, preserving their order
+		for (int i = 0; i < N; i++) {
+			int bin = pointBin[i];
+			if (bin >= 0)
+				indexes[binStart[bin]++] = i;
+		}
+		// the start of each bin was shifted to the start of the next one
+		for (int i = numBins; i > 0; i--) {
+			binStart[i] = binStart[i - 1];
+		}
+		binStart[0] = 0;
+	}
+
+	/**
+	 * Adds the index of every point which is inside a bin which is within 'radius' bins of the bin the bearing
+	 * belongs to.
+	 *
+	 * @param theta  Bearing in radians.  From -&pi; to &pi;
+	 * @param radius Number of bins on either side that are searched
+	 * @param found  (Output) Indexes of the points are added to it.  Not reset.
+	 */
+	public void lookup(double theta, int radius, GrowQueue_I32 found) {
+		int center = bin(theta);
+
+		int first, last;
+		if (2 * radius + 1 >= numBins) {
+			first = 0;
+			last = numBins - 1;
+		} else {
+			first = center - radius;
+			last = center + radius;
+		}
+
+		for (int b = first; b <= last; b++) {
+			int bin = b < 0 ? b + numBins : (b >= numBins ? b - numBins : b);
+			for (int i = binStart[bin]; i < binStart[bin + 1]; i++) {
+				found.add(indexes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the bin which the bearing belongs to
+	 */
+	public int bin(double theta) {
+		int bin = (int) ((theta + Math.PI) / binWidth);
+		if (bin < 0)
+			return 0;
+		if (bin >= numBins)
+			return numBins - 1;
+		return bin;
+	}
+
+	public double getBinWidth() {
+		return binWidth;
+	}
+
+	public int getNumBins() {
+		return numBins;
+	}
+}
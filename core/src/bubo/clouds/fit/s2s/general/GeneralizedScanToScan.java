@@ -18,7 +18,7 @@
 
 package bubo.clouds.fit.s2s.general;
 
-import bubo.clouds.fit.Lrf2dScanToScan;
+import bubo.clouds.fit.Lrf2dScanToScanPrepared;
 import bubo.desc.sensors.lrf2d.Lrf2dParam;
 import bubo.desc.sensors.lrf2d.Lrf2dPrecomputedTrig;
 import bubo.struct.StoppingCondition;
@@ -26,7 +26,6 @@ import georegression.fitting.se.MotionSe2PointSVD_F64;
 import georegression.metric.UtilAngle;
 import georegression.struct.point.Point2D_F64;
 import georegression.struct.se.Se2_F64;
-import georegression.transform.se.SePointOps_F64;
 
 import java.util.List;
 
@@ -38,19 +37,26 @@ import java.util.List;
  * for global or local association as well as interpolation.
  * </p>
  *
+ * <p>
+ * Information about the destination scan is computed when it is specified and is then reused by every call to
+ * {@link #process}, which is the common case when matching several scans against the same key frame.  The end
+ * points of the source scan are computed when it is specified, which can be done in a different thread using
+ * {@link #prepareSource}.
+ * </p>
+ *
  * @author Peter Abeles
  */
-public abstract class GeneralizedScanToScan implements Lrf2dScanToScan {
+public abstract class GeneralizedScanToScan implements Lrf2dScanToScanPrepared<ScanInfo> {
 
 	// description of the sensor
 	protected Lrf2dParam param;
 	// decides when to stop iterating
 	protected StoppingCondition stop;
-	// original scan measurements
-	protected double rangesSrc[];
 	// various bits of information related to each scan
 	protected ScanInfo scanDst; // the reference scan being registered to
 	protected ScanInfo scanSrc; // the scan which is being registered
+	// the source scan's measured ranges and end points in its own reference frame
+	private ScanInfo preparedSrc;
 	// speeds up calculations
 	private Lrf2dPrecomputedTrig lrf2pt;
 	// the found total motion
@@ -75,7 +81,7 @@ public abstract class GeneralizedScanToScan implements Lrf2dScanToScan {
 
 		scanDst = new ScanInfo(param.getNumberOfScans());
 		scanSrc = new ScanInfo(param.getNumberOfScans());
-		rangesSrc = new double[param.getNumberOfScans()];
+		preparedSrc = new ScanInfo(param.getNumberOfScans());
 	}
 
 	@Override
@@ -86,11 +92,30 @@ public abstract class GeneralizedScanToScan implements Lrf2dScanToScan {
 	@Override
 	public void setDestination(double[] scan) {
 		System.arraycopy(scan, 0, scanDst.range, 0, param.getNumberOfScans());
+		computeDestination();
 	}
 
 	@Override
 	public void setSource(double[] scan) {
-		System.arraycopy(scan, 0, scanSrc.range, 0, param.getNumberOfScans());
+		prepareSource(scan, preparedSrc);
+	}
+
+	@Override
+	public ScanInfo createPreparedSource() {
+		return new ScanInfo(param.getNumberOfScans());
+	}
+
+	@Override
+	public void prepareSource(double[] scan, ScanInfo prepared) {
+		System.arraycopy(scan, 0, prepared.range, 0, param.getNumberOfScans());
+		lrf2pt.computeEndPoints(prepared.range, prepared.x, prepared.y);
+	}
+
+	@Override
+	public ScanInfo setPreparedSource(ScanInfo prepared) {
+		ScanInfo old = preparedSrc;
+		preparedSrc = prepared;
+		return old;
 	}
 
 	public void computeScanEndPoint(double scan[], Point2D_F64 pts[]) {
@@ -107,26 +132,37 @@ public abstract class GeneralizedScanToScan implements Lrf2dScanToScan {
 	@Override
 	public void assignSourceToDestination() {
 		ScanInfo temp = scanDst;
-		scanDst = scanSrc;
-		scanSrc = temp;
+		scanDst = preparedSrc;
+		preparedSrc = temp;
+		// the end points have already been computed
+		scanDst.updatePoints();
+		setVisibleByRange(scanDst);
+		prepareDestination(scanDst);
+	}
+
+	/**
+	 * Computes information about the destination scan which doesn't change until a new destination is
+	 * specified, allowing it to be reused by multiple calls to {@link #process}.
+	 */
+	private void computeDestination() {
+		lrf2pt.computeEndPoints(scanDst.range, scanDst.x, scanDst.y);
+		scanDst.updatePoints();
+		setVisibleByRange(scanDst); // todo could just do this when end point is computed
+		prepareDestination(scanDst);
 	}
 
 	@Override
 	public boolean process(Se2_F64 hintSrcToDst) {
-		// save the original ranges
-		System.arraycopy(scanSrc.range, 0, rangesSrc, 0, param.getNumberOfScans());
-		// find the obstacle location
-		computeScanEndPoint(scanSrc.range, scanSrc.pts);
-		computeScanEndPoint(scanDst.range, scanDst.pts);
-
-		// apply the hint, if any
-		if (hintSrcToDst != null) {
-			applyMotion(hintSrcToDst, scanSrc);
+		final int N = param.getNumberOfScans();
+		final double rangesSrc[] = preparedSrc.range;
+
+		// apply the hint, if any.  The prepared end points are left unmodified so that process can be called again
+		if (hintSrcToDst != null)
 			motion.set(hintSrcToDst);
-		} else
+		else
 			motion.set(0, 0, 0);
-
-		setVisibleByRange(scanDst); // todo could just do this when end point is computed
+		ScanKernels.transform(motion, preparedSrc.x, preparedSrc.y, scanSrc.x, scanSrc.y, N);
+		scanSrc.updatePoints();
 
 		stop.reset();
 		while (true) {
@@ -148,12 +184,17 @@ public abstract class GeneralizedScanToScan implements Lrf2dScanToScan {
 				break;
 		}
 
-		// undo the recomputed ranges
-		System.arraycopy(rangesSrc, 0, scanSrc.range, 0, param.getNumberOfScans());
-
 		return true;
 	}
 
+	/**
+	 * Called once the points and visibility of the destination scan have been computed, which is when the
+	 * destination is specified.  Child classes can override it to precompute information about the destination
+	 * scan, which is then reused until the destination changes.
+	 */
+	protected void prepareDestination( ScanInfo scanDst ) {
+	}
+
 	/**
 	 * Inner function for estimating the motion between the current incarnations of the scans
 	 */
@@ -167,7 +208,7 @@ public abstract class GeneralizedScanToScan implements Lrf2dScanToScan {
 		final double maxRange = param.getMaxRange();
 		for (int i = 0; i < N; i++) {
 			double r = info.range[i];
-			scanDst.vis[i] = r > 0 && info.range[i] <= maxRange;
+			info.vis[i] = r > 0 && r <= maxRange;
 		}
 	}
 
@@ -178,13 +219,12 @@ public abstract class GeneralizedScanToScan implements Lrf2dScanToScan {
 		final int N = param.getNumberOfScans();
 		final double maxRange = param.getMaxRange();
 
+		ScanKernels.computePolar(info.x, info.y, info.range, info.theta, N);
+
 		for (int i = 0; i < N; i++) {
 			double r = measuredRange[i];
 
 			if (r > 0 && r <= maxRange) {
-				Point2D_F64 p = info.pts[i];
-				info.theta[i] = Math.atan2(p.y, p.x);
-				info.range[i] = p.norm();
 				info.vis[i] = true;
 			} else {
 				info.range[i] = 0;
@@ -241,11 +281,12 @@ public abstract class GeneralizedScanToScan implements Lrf2dScanToScan {
 		return motionAlg.getTransformSrcToDst();
 	}
 
+	/**
+	 * Applies the motion to the points in the scan and updates the points used for association
+	 */
 	protected static void applyMotion(Se2_F64 motion, ScanInfo scan) {
-		for (int i = 0; i < scan.pts.length; i++) {
-			Point2D_F64 p = scan.pts[i];
-			SePointOps_F64.transform(motion, p, p);
-		}
+		ScanKernels.transform(motion, scan.x, scan.y, scan.x, scan.y, scan.x.length);
+		scan.updatePoints();
 	}
 
 	protected static double computeMeanSqError(AssociateLrfMeas associate ) {
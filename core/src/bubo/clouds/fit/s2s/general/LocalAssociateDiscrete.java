@@ -20,14 +20,25 @@ package bubo.clouds.fit.s2s.general;
 
 import bubo.desc.sensors.lrf2d.Lrf2dParam;
 import georegression.struct.point.Point2D_F64;
+import org.ddogleg.struct.GrowQueue_I32;
 
 import java.util.ArrayList;
 import java.util.List;
 
 
 /**
+ * <p>
  * Association is done to the LRF sample points with no interpolation.  Child classes
  * are given the index of the scan being considered.
+ * </p>
+ *
+ * <p>
+ * By default each point is compared against the points in the destination scan which have an index within
+ * the search neighborhood, which is O(N*W).  If projective association is turned on with
+ * {@link #setProjectiveRadius(int)} then only destination points which have nearly the same bearing as the
+ * point are considered.  These are found using a {@link BearingLookupTable} which is built once for each
+ * destination scan by {@link #setDestination(ScanInfo)}, making association effectively O(N).
+ * </p>
  *
  * @author Peter Abeles
  */
@@ -46,6 +57,15 @@ public abstract class LocalAssociateDiscrete implements AssociateLrfMeas {
 	// the maximum distance away two points can be to be associated
 	private double maxSeparation;
 
+	// number of bearing bins on each side which are searched.  If < 0 then projective association is off
+	private int projectiveRadius = -1;
+	// destination points sorted by bearing
+	private BearingLookupTable table;
+	// the destination scan which the table was built from
+	private ScanInfo tableDst;
+	// storage for candidate matches
+	private GrowQueue_I32 candidates = new GrowQueue_I32();
+
 	protected LocalAssociateDiscrete(int searchNeighborhood,
 									 double maxSeparation) {
 		this.searchNeighborhood = searchNeighborhood;
@@ -54,6 +74,22 @@ public abstract class LocalAssociateDiscrete implements AssociateLrfMeas {
 
 	public void setParam(Lrf2dParam param) {
 		this.param = param;
+		table = new BearingLookupTable(Math.abs(param.getAngleIncrement()));
+		tableDst = null;
+	}
+
+	/**
+	 * Used to inform it that the destination scan has changed.  Only needs to be called when projective
+	 * association is used, in which case the bearing lookup table is built.
+	 *
+	 * @param scanDst The destination scan with its points and visibility already computed
+	 */
+	public void setDestination(ScanInfo scanDst) {
+		if (projectiveRadius < 0)
+			return;
+
+		table.process(scanDst.pts, scanDst.vis, param.getNumberOfScans());
+		tableDst = scanDst;
 	}
 
 	@Override
@@ -70,7 +106,11 @@ public abstract class LocalAssociateDiscrete implements AssociateLrfMeas {
 				continue;
 			}
 
-			int bestIndex = findBestMatch(scanDst, i);
+			int bestIndex;
+			if (projectiveRadius >= 0)
+				bestIndex = findBestMatchProjective(scanSrc.pts[i], i);
+			else
+				bestIndex = findBestMatch(scanDst, i);
 
 			if (bestIndex != -1 ) {
 				srcPts.add(scanSrc.pts[i]);
@@ -104,6 +144,46 @@ public abstract class LocalAssociateDiscrete implements AssociateLrfMeas {
 		return bestIndex;
 	}
 
+	private int findBestMatchProjective(Point2D_F64 p, int target) {
+		if (tableDst != scanDst)
+			setDestination(scanDst);
+
+		candidates.reset();
+		table.lookup(ScanKernels.atan2(p.y, p.x), projectiveRadius, candidates);
+
+		int bestIndex = -1;
+		double bestDistance = maxSeparation;
+
+		setTarget(target);
+
+		for (int k = 0; k < candidates.size; k++) {
+			int j = candidates.data[k];
+			double dist = distToTarget(j);
+
+			if (dist < bestDistance) {
+				bestDistance = dist;
+				bestIndex = j;
+			}
+		}
+		return bestIndex;
+	}
+
+	public int getProjectiveRadius() {
+		return projectiveRadius;
+	}
+
+	/**
+	 * Turns projective association on or off.
+	 *
+	 * @param projectiveRadius Number of bearing bins on either side of a point's bearing which are searched.
+	 *                         Each bin is the width of the angle between two beams.  If &lt; 0 then
+	 *                         projective association is turned off.
+	 */
+	public void setProjectiveRadius(int projectiveRadius) {
+		this.projectiveRadius = projectiveRadius;
+		tableDst = null;
+	}
+
 	@Override
 	public List<Point2D_F64> getListSource() {
 		return srcPts;
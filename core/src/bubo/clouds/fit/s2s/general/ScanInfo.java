@@ -22,13 +22,25 @@ import georegression.struct.point.Point2D_F64;
 
 
 /**
+ * <p>
  * Contains information of a LRF scan.  The measured ranges as well as information derived
  * from the scan is stored.
+ * </p>
+ *
+ * <p>
+ * The location of each point is stored in the primitive arrays {@link #x} and {@link #y}, which are what the per
+ * point calculations operate on.  {@link #pts} are views of the same points which are used when associating
+ * scans, since the associated points are returned as references.  They are only valid after
+ * {@link #updatePoints()} has been called.
+ * </p>
  *
  * @author Peter Abeles
  */
 public class ScanInfo {
 	// location of points in 2D cartesian space
+	public double x[];
+	public double y[];
+	// copy of x and y for association
 	public Point2D_F64 pts[];
 	// if the points are "visible"
 	public boolean vis[];
@@ -39,6 +51,8 @@ public class ScanInfo {
 	public double theta[];
 
 	public ScanInfo(int N) {
+		x = new double[N];
+		y = new double[N];
 		pts = new Point2D_F64[N];
 		vis = new boolean[N];
 		range = new double[N];
@@ -48,4 +62,13 @@ public class ScanInfo {
 			pts[i] = new Point2D_F64();
 		}
 	}
+
+	/**
+	 * Copies the location of each point from {@link #x} and {@link #y} into {@link #pts}
+	 */
+	public void updatePoints() {
+		for (int i = 0; i < pts.length; i++) {
+			pts[i].set(x[i], y[i]);
+		}
+	}
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.s2s.general;
+
+import georegression.struct.se.Se2_F64;
+
+
+/**
+ * <p>
+ * Kernels for operations which are applied to every point in a LRF scan during each iteration of scan matching.
+ * They operate on primitive arrays and the constants are hoisted out of the loops so that the JIT only has to deal
+ * with the loads and arithmetic.
+ * </p>
+ *
+ * <p>
+ * {@link #atan2(double, double)} is a replacement for {@link Math#atan2(double, double)} which is about twice as
+ * fast.  The angle is reduced to the range [0,tan(&pi;/8)] and then approximated with an odd polynomial.  Its
+ * maximum error is less than 1e-9 radians, which is much smaller than the angular resolution of any LRF.  The
+ * octant reduction requires a few branches, so loops which call it are not vectorized.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class ScanKernels {
+
+	private static final double PI_2 = Math.PI / 2.0;
+	private static final double PI_4 = Math.PI / 4.0;
+	private static final double TAN_PI_8 = Math.tan(Math.PI / 8.0);
+
+	// coefficients of the polynomial which approximates atan(t)/t in t^2 for t in [0,tan(pi/8)]
+	private static final double A0 = 0.9999999962723929;
+	private static final double A1 = -0.3333327110396399;
+	private static final double A2 = 0.19997022777268839;
+	private static final double A3 = -0.142241539230366;
+	private static final double A4 = 0.10480549130052821;
+	private static final double A5 = -0.05837681798669245;
+
+	/**
+	 * Fast approximation of {@link Math#atan2(double, double)}.  Maximum error is less than 1e-9 radians.
+	 *
+	 * @return angle from -&pi; to &pi;
+	 */
+	public static double atan2(double y, double x) {
+		double ax = Math.abs(x), ay = Math.abs(y);
+
+		// compute the angle in the first octant
+		boolean swap = ay > ax;
+		double max = swap ? ay : ax;
+		if (max == 0)
+			return y >= 0 ? (x >= 0 ? 0.0 : Math.PI) : (x >= 0 ? -0.0 : -Math.PI);
+		double t = (swap ? ax : ay) / max;
+
+		double base = 0;
+		if (t > TAN_PI_8) {
+			t = (t - 1.0) / (t + 1.0);
+			base = PI_4;
+		}
+		double u = t * t;
+		double angle = base + t * (A0 + u * (A1 + u * (A2 + u * (A3 + u * (A4 + u * A5)))));
+
+		if (swap)
+			angle = PI_2 - angle;
+		if (x < 0)
+			angle = Math.PI - angle;
+		return y < 0 ? -angle : angle;
+	}
+
+	/**
+	 * Converts points in cartesian coordinates into polar coordinates.
+	 *
+	 * @param x     x-coordinate of each point
+	 * @param y     y-coordinate of each point
+	 * @param range (Output) distance of each point from the origin
+	 * @param theta (Output) angle of each point
+	 * @param N     Number of points
+	 */
+	public static void computePolar(double x[], double y[], double range[], double theta[], int N) {
+		// two loops so that the branches inside of atan2 don't prevent the first one from being vectorized
+		for (int i = 0; i < N; i++) {
+			range[i] = Math.sqrt(x[i] * x[i] + y[i] * y[i]);
+		}
+		for (int i = 0; i < N; i++) {
+			theta[i] = atan2(y[i], x[i]);
+		}
+	}
+
+	/**
+	 * Applies the transform to each point.  The input and output arrays can be the same.
+	 *
+	 * @param m    Transform being applied
+	 * @param srcX x-coordinate of each point
+	 * @param srcY y-coordinate of each point
+	 * @param dstX (Output) x-coordinate of each transformed point
+	 * @param dstY (Output) y-coordinate of each transformed point
+	 * @param N    Number of points
+	 */
+	public static void transform(Se2_F64 m, double srcX[], double srcY[], double dstX[], double dstY[], int N) {
+		final double c = m.c, s = m.s;
+		final double tx = m.T.x, ty = m.T.y;
+
+		for (int i = 0; i < N; i++) {
+			double px = srcX[i], py = srcY[i];
+			dstX[i] = c * px - s * py + tx;
+			dstY[i] = s * px + c * py + ty;
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.motion;
+
+import bubo.clouds.fit.Lrf2dScanToScan;
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.struct.ConcurrentBlocks;
+import georegression.struct.se.Se2_F64;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Estimates the trajectory of a sensor from an entire log of scans, e.g. when reprocessing old data.  The motion
+ * between each pair of consecutive scans is found using {@link Lrf2dScanToScan}, with the change in odometry as
+ * the initial hint.  Given the hint each pair is independent of all the others, so the pairs are split into
+ * contiguous blocks which are matched concurrently by {@link ConcurrentBlocks}.  Each block has its own
+ * estimator, which is reused for every pair in the block.  Once all the pairs have been matched the motions are
+ * chained together into a trajectory on the caller's thread.
+ * </p>
+ *
+ * <p>
+ * If a pair can't be matched, because one of its scans has no valid ranges or the estimator failed, then the
+ * motion from odometry is used instead.  The results are the same no matter how many threads are used.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class Lrf2dBatchOdometry {
+
+	// creates a new estimator for each block
+	EstimatorFactory factory;
+	Lrf2dParam param;
+
+	ConcurrentBlocks concurrent;
+	// estimator for each block
+	List<Lrf2dScanToScan> estimators = new ArrayList<Lrf2dScanToScan>();
+
+	// motion from scan i to scan i-1.  Element 0 is the identity
+	FastQueue<Se2_F64> motions = new FastQueue<Se2_F64>(Se2_F64.class, true);
+	// location of each scan in the world frame
+	FastQueue<Se2_F64> trajectory = new FastQueue<Se2_F64>(Se2_F64.class, true);
+	// true if the motion came from the scans and false if it came from odometry
+	boolean matched[] = new boolean[0];
+	// error reported by the estimator for each pair
+	double errors[] = new double[0];
+
+	/**
+	 * @param factory    Creates the scan matching algorithm.  One instance is created for each thread.
+	 * @param numThreads Number of threads which scans are matched in.  &ge; 1.
+	 */
+	public Lrf2dBatchOdometry(EstimatorFactory factory, int numThreads) {
+		this.factory = factory;
+		this.concurrent = new ConcurrentBlocks(numThreads);
+	}
+
+	/**
+	 * Specifies the sensor's characteristics and creates the estimators
+	 */
+	public void init(Lrf2dParam param) {
+		this.param = param;
+		estimators.clear();
+		for (int i = 0; i < concurrent.getNumThreads(); i++) {
+			Lrf2dScanToScan estimator = factory.create();
+			estimator.setSensorParam(param);
+			estimators.add(estimator);
+		}
+	}
+
+	/**
+	 * Estimates the sensor's location for every scan in the log.
+	 *
+	 * @param scans    Range measurements from each scan in the order they were collected.  Not modified.
+	 * @param odometry Location of the sensor according to odometry for each scan.  If null then no hint is
+	 *                 used and the trajectory will start at the origin.  Not modified.
+	 */
+	public void process(final List<double[]> scans, final List<Se2_F64> odometry) {
+		if (param == null)
+			throw new IllegalArgumentException("init() must be called first");
+		if (odometry != null && odometry.size() != scans.size())
+			throw new IllegalArgumentException("Number of odometry and scan measurements must be the same");
+
+		final int N = scans.size();
+		motions.reset();
+		trajectory.reset();
+		if (N == 0)
+			return;
+
+		motions.growArray(N);
+		for (int i = 0; i < N; i++) {
+			motions.grow().reset();
+		}
+		if (matched.length < N) {
+			matched = new boolean[N];
+			errors = new double[N];
+		}
+		matched[0] = false;
+		errors[0] = 0;
+
+		// pairs are identified by the index of their source scan, which is from 1 to N-1
+		concurrent.process(N - 1, new ConcurrentBlocks.Block() {
+			@Override
+			public void process(int index, int start, int end) {
+				matchBlock(estimators.get(index), scans, odometry, start + 1, end + 1);
+			}
+		});
+
+		// chain the motions together
+		Se2_F64 first = trajectory.grow();
+		if (odometry != null)
+			first.set(odometry.get(0));
+		else
+			first.reset();
+		for (int i = 1; i < N; i++) {
+			motions.get(i).concat(trajectory.get(i - 1), trajectory.grow());
+		}
+	}
+
+	/**
+	 * Matches the pairs with source scans from start to end-1.  Consecutive pairs share a scan, so the source
+	 * scan is assigned to be the destination of the next pair instead of being recomputed.
+	 */
+	private void matchBlock(Lrf2dScanToScan estimator, List<double[]> scans, List<Se2_F64> odometry,
+							int start, int end) {
+		Se2_F64 odomWorldToPrev = new Se2_F64();
+		Se2_F64 hint = new Se2_F64();
+
+		// index of the scan which was last passed in as the source.  -1 if none
+		int source = -1;
+		boolean validPrev = countValidScans(scans.get(start - 1)) > 0;
+
+		for (int i = start; i < end; i++) {
+			boolean validCurr = countValidScans(scans.get(i)) > 0;
+
+			if (odometry != null) {
+				odometry.get(i - 1).invert(odomWorldToPrev);
+				odometry.get(i).concat(odomWorldToPrev, hint);
+			}
+
+			Se2_F64 motion = motions.get(i);
+			matched[i] = false;
+			errors[i] = 0;
+
+			if (validPrev && validCurr) {
+				if (source == i - 1)
+					estimator.assignSourceToDestination();
+				else
+					estimator.setDestination(scans.get(i - 1));
+				estimator.setSource(scans.get(i));
+				source = i;
+
+				if (estimator.process(hint)) {
+					motion.set(estimator.getSourceToDestination());
+					matched[i] = true;
+					errors[i] = estimator.getError();
+				}
+			}
+
+			if (!matched[i])
+				motion.set(hint);
+
+			validPrev = validCurr;
+		}
+	}
+
+	private int countValidScans(double scan[]) {
+		int total = 0;
+		for (int i = 0; i < param.getNumberOfScans(); i++) {
+			if (param.isValidRange(scan[i]))
+				total++;
+		}
+		return total;
+	}
+
+	/**
+	 * Location of each scan in the world frame, as found by the most recent call to {@link #process}
+	 */
+	public List<Se2_F64> getTrajectory() {
+		return trajectory.toList();
+	}
+
+	/**
+	 * Motion from scan 'index' to scan 'index-1'.  The motion for scan 0 is the identity.
+	 */
+	public Se2_F64 getMotion(int index) {
+		return motions.get(index);
+	}
+
+	/**
+	 * Returns true if the motion to scan 'index' was found by matching scans and false if it is from odometry
+	 */
+	public boolean isMatched(int index) {
+		return matched[index];
+	}
+
+	/**
+	 * Error reported by {@link Lrf2dScanToScan#getError()} for the pair ending at scan 'index', or zero if it
+	 * wasn't matched
+	 */
+	public double getError(int index) {
+		return errors[index];
+	}
+
+	/**
+	 * Shuts down the thread pool
+	 */
+	public void shutdown() {
+		concurrent.shutdown();
+	}
+
+	/**
+	 * Creates a new instance of the scan matching algorithm
+	 */
+	public interface EstimatorFactory {
+		Lrf2dScanToScan create();
+	}
+}
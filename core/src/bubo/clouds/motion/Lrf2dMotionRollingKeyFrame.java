@@ -20,6 +20,8 @@ package bubo.clouds.motion;
 
 import bubo.clouds.fit.Lrf2dScanToScan;
 import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.metrics.Metrics;
+import bubo.metrics.MetricsRegistry;
 import georegression.struct.se.Se2_F64;
 import org.ddogleg.struct.CircularQueue;
 
@@ -92,8 +94,17 @@ public class Lrf2dMotionRollingKeyFrame {
 
 
 	public void process( Se2_F64 odometrySensorToWorld , double[] scan ) {
-		int totalValid = countValidScans(scan);
+		process(odometrySensorToWorld, scan, countValidScans(scan), false);
+	}
 
+	/**
+	 * Same as {@link #process(Se2_F64, double[])} but the number of valid ranges has already been computed and
+	 * the scan might have already been passed to the estimator as its source.
+	 *
+	 * @param totalValid Number of valid ranges in the scan
+	 * @param sourceSet true if the estimator's source has already been set to this scan
+	 */
+	void process( Se2_F64 odometrySensorToWorld , double[] scan , int totalValid , boolean sourceSet ) {
 		updateFromOdometry = true;
 		ScanInfo key = history.head();
 		if( key == null ) {
@@ -101,21 +112,32 @@ public class Lrf2dMotionRollingKeyFrame {
 		} else if( !key.validScan ) {
 			handleKeyNoScan(odometrySensorToWorld, scan, totalValid, key);
 		} else {
-			handleKeyWithScan(odometrySensorToWorld, scan, totalValid, key);
+			handleKeyWithScan(odometrySensorToWorld, scan, totalValid, sourceSet, key);
 		}
 	}
 
 	/**
 	 * Key-frame has a valid scan
 	 */
-	private void handleKeyWithScan(Se2_F64 odometrySensorToWorld, double[] scan, int totalValid, ScanInfo key) {
+	private void handleKeyWithScan(Se2_F64 odometrySensorToWorld, double[] scan, int totalValid,
+								   boolean sourceSet, ScanInfo key) {
 		if( totalValid >0 ) {
-			key.odometrySensorToWorld.invert(odomWorldToKey);
-			odometrySensorToWorld.concat(odomWorldToKey, odomCurrToKey);
-
-			estimator.setSource(scan);
-			if (!estimator.process(odomCurrToKey))
-				throw new RuntimeException("Crap it failed.  I should something smart here");
+			MetricsRegistry metrics = Metrics.get();
+			MetricsRegistry.Timer timer = metrics != null ? metrics.startTimer(Metrics.MOTION_MATCH) : null;
+
+			try {
+				key.odometrySensorToWorld.invert(odomWorldToKey);
+				odometrySensorToWorld.concat(odomWorldToKey, odomCurrToKey);
+
+				if( !sourceSet )
+					estimator.setSource(scan);
+				if (!estimator.process(odomCurrToKey))
+					throw new RuntimeException("Crap it failed.  I should something smart here");
+			} finally {
+				// a failed match is still recorded
+				if( timer != null )
+					timer.stop();
+			}
 
 			ScanInfo curr = history.grow();
 			curr.init(scan, odometrySensorToWorld);
@@ -126,13 +148,7 @@ public class Lrf2dMotionRollingKeyFrame {
 			// if too few scans are matched or there are too many new scans change the key-frame
 			if (estimator.totalScansMatched() < keyValidScans * keyFraction ||
 					totalValid > keyValidScans/keyFraction ) {
-				while (history.size() > 1) {
-					history.removeHead();
-				}
-
-				key = history.head();
-				estimator.setDestination(key.scan);
-				keyValidScans = totalValid;
+				changeKeyFrame(totalValid);
 			}
 			updateFromOdometry = false;
 		} else {
@@ -144,10 +160,7 @@ public class Lrf2dMotionRollingKeyFrame {
 			odometrySensorToWorld.concat(odomWorldToKey, odomCurrToKey);
 			odomCurrToKey.concat(key.sensorToWorld, curr.sensorToWorld);
 
-			// discard its past history to make the current frame the key-frame
-			while (history.size() > 1) {
-				history.removeHead();
-			}
+			changeKeyFrame(totalValid);
 		}
 	}
 
@@ -165,13 +178,7 @@ public class Lrf2dMotionRollingKeyFrame {
 			odometrySensorToWorld.concat(odomWorldToKey, odomCurrToKey);
 			odomCurrToKey.concat(key.sensorToWorld, curr.sensorToWorld);
 
-			estimator.setDestination(curr.scan);
-			keyValidScans = totalValid;
-
-			// discard its past history to make the current frame the key-frame
-			while (history.size() > 1) {
-				history.removeHead();
-			}
+			changeKeyFrame(totalValid);
 		} else {
 			// There is no new scan information, so just update odometry information
 			key.odometrySensorToWorld.invert(odomWorldToKey);
@@ -182,6 +189,31 @@ public class Lrf2dMotionRollingKeyFrame {
 		}
 	}
 
+	/**
+	 * Discards the past history to make the current frame the key-frame.  If the current frame has a valid
+	 * scan then the estimator will match against it.
+	 */
+	private void changeKeyFrame( int totalValid ) {
+		MetricsRegistry metrics = Metrics.get();
+		MetricsRegistry.Timer timer = metrics != null ? metrics.startTimer(Metrics.MOTION_KEY_FRAME) : null;
+
+		try {
+			while (history.size() > 1) {
+				history.removeHead();
+			}
+
+			if( totalValid > 0 ) {
+				estimator.setDestination(history.head().scan);
+				keyValidScans = totalValid;
+			}
+		} finally {
+			if( timer != null ) {
+				timer.stop();
+				metrics.increment(Metrics.MOTION_KEY_FRAME_COUNT, 1);
+			}
+		}
+	}
+
 	/**
 	 * This is the very first scan which has been seen
 	 */
@@ -202,7 +234,7 @@ public class Lrf2dMotionRollingKeyFrame {
 		}
 	}
 
-	private int countValidScans( double scan[]) {
+	int countValidScans( double scan[]) {
 		int total = 0;
 		for (int i = 0; i < param.getNumberOfScans(); i++) {
 			if( param.isValidRange(scan[i]))
@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.motion;
+
+import bubo.clouds.fit.Lrf2dScanToScanPrepared;
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import georegression.struct.se.Se2_F64;
+
+import java.util.ArrayDeque;
+
+/**
+ * <p>
+ * Runs {@link Lrf2dMotionRollingKeyFrame} asynchronously so that the thread which acquires the sensor data is
+ * never stalled by scan matching.  Frames passed to {@link #submit} are copied into a bounded queue and processed
+ * by a two stage pipeline.  The first stage counts the valid ranges and, if the scan matching algorithm implements
+ * {@link Lrf2dScanToScanPrepared}, computes the scan's end points.  The second stage performs scan matching and
+ * key-frame maintenance.  Each stage has its own thread, so preprocessing of frame k+1 overlaps with matching of
+ * frame k.
+ * </p>
+ *
+ * <p>
+ * Frames are processed strictly in the order they were submitted and the estimated pose of each frame is passed
+ * to the {@link Listener}, from the matching thread, in the same order.  When the queue is full the
+ * {@link Policy} decides whether {@link #submit} blocks until there is room or the oldest frame which has not been
+ * processed yet is discarded.
+ * </p>
+ *
+ * <p>
+ * If matching throws an exception then processing stops and the exception is rethrown by the next call to
+ * {@link #submit} or {@link #flush}.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class Lrf2dMotionRollingKeyFrameAsync {
+
+	// the algorithm which is being run
+	Lrf2dMotionRollingKeyFrame motion;
+	Lrf2dParam param;
+	// the scan matching algorithm if it can prepare source scans.  null if it can't
+	Lrf2dScanToScanPrepared<Object> preparer;
+
+	// what to do when the queue is full
+	Policy policy;
+	// maximum number of frames waiting to be preprocessed
+	int maxQueue;
+
+	// Lock for all the fields below.  Frames which have been submitted but not preprocessed
+	private final ArrayDeque<Frame> queue = new ArrayDeque<Frame>();
+	// frame which has been preprocessed and is waiting to be matched.  null if none
+	private Frame preprocessed;
+	// frames which can be recycled
+	private final ArrayDeque<Frame> unused = new ArrayDeque<Frame>();
+	// number of frames which have been submitted and have not been finished or discarded
+	private int totalPending;
+
+	// sequence number of the next submitted frame
+	private long nextSequence;
+	// number of frames which have been discarded because the queue was full
+	private long totalDropped;
+	// number of frames which have been processed
+	private long totalProcessed;
+	// latency, in nanoseconds, from when a frame was submitted until its pose was available
+	private long latencyLast, latencyMax, latencySum;
+
+	// the exception which stopped processing.  null if none
+	private RuntimeException failure;
+	private boolean shutdown;
+	// true once the preprocessing thread has exited
+	private boolean preprocessFinished;
+	// true once the matching thread has exited
+	private boolean finished;
+
+	private Listener listener;
+
+	private Thread threadPreprocess;
+	private Thread threadMatch;
+
+	/**
+	 * Configures the pipeline.
+	 *
+	 * @param motion   The algorithm which is run asynchronously.  Must not be used directly after this.
+	 * @param maxQueue Maximum number of frames which are waiting to be preprocessed.  &ge; 1
+	 * @param policy   What to do when a frame is submitted and the queue is full
+	 */
+	@SuppressWarnings("unchecked")
+	public Lrf2dMotionRollingKeyFrameAsync(Lrf2dMotionRollingKeyFrame motion, int maxQueue, Policy policy) {
+		if (maxQueue < 1)
+			throw new IllegalArgumentException("maxQueue must be at least one");
+
+		this.motion = motion;
+		this.maxQueue = maxQueue;
+		this.policy = policy;
+
+		if (motion.estimator instanceof Lrf2dScanToScanPrepared)
+			preparer = (Lrf2dScanToScanPrepared<Object>) motion.estimator;
+	}
+
+	/**
+	 * Initializes the algorithm and starts the processing threads.
+	 *
+	 * @param param Description of the sensor
+	 */
+	public void init(Lrf2dParam param) {
+		if (threadPreprocess != null)
+			throw new IllegalArgumentException("Already initialized");
+
+		this.param = param;
+		motion.init(param);
+
+		threadPreprocess = new Thread("Lrf2dMotion preprocess") {
+			@Override
+			public void run() {
+				runPreprocess();
+			}
+		};
+		threadMatch = new Thread("Lrf2dMotion match") {
+			@Override
+			public void run() {
+				runMatch();
+			}
+		};
+		threadPreprocess.setDaemon(true);
+		threadMatch.setDaemon(true);
+		threadPreprocess.start();
+		threadMatch.start();
+	}
+
+	/**
+	 * Adds a frame to the queue.  The scan and odometry are copied, so they can be modified after this returns.
+	 * If the calling thread is interrupted while waiting for room in the queue then the frame is not added and
+	 * the thread's interrupt status is set.
+	 *
+	 * @param odometrySensorToWorld Sensor to world transform from odometry
+	 * @param scan                  Range measurements
+	 * @return Sequence number of the frame or -1 if it was not added
+	 */
+	public long submit(Se2_F64 odometrySensorToWorld, double[] scan) {
+		synchronized (queue) {
+			checkFailure();
+			if (shutdown)
+				throw new IllegalArgumentException("Has been shutdown");
+
+			while (queue.size() >= maxQueue) {
+				if (policy == Policy.DROP_OLDEST) {
+					unused.add(queue.removeFirst());
+					totalDropped++;
+					totalPending--;
+				} else {
+					if (!waitOn(queue))
+						return -1;
+					checkFailure();
+				}
+			}
+
+			Frame frame = unused.isEmpty() ? createFrame() : unused.removeFirst();
+			System.arraycopy(scan, 0, frame.scan, 0, frame.scan.length);
+			frame.odometrySensorToWorld.set(odometrySensorToWorld);
+			frame.sequence = nextSequence++;
+			frame.timeSubmitted = System.nanoTime();
+
+			queue.add(frame);
+			totalPending++;
+			queue.notifyAll();
+			return frame.sequence;
+		}
+	}
+
+	/**
+	 * Blocks until all the frames which have been submitted have been processed.  If the calling thread is
+	 * interrupted then it returns early with the thread's interrupt status set.
+	 */
+	public void flush() {
+		synchronized (queue) {
+			while (totalPending > 0 && failure == null && !finished) {
+				if (!waitOn(queue))
+					return;
+			}
+			checkFailure();
+		}
+	}
+
+	/**
+	 * Stops the processing threads after the frames already in the queue have been processed.  Blocks until
+	 * the threads have stopped.
+	 */
+	public void shutdown() {
+		synchronized (queue) {
+			shutdown = true;
+			queue.notifyAll();
+		}
+		try {
+			if (threadPreprocess != null) {
+				threadPreprocess.join();
+				threadMatch.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Frame createFrame() {
+		Frame frame = new Frame(param.getNumberOfScans());
+		if (preparer != null)
+			frame.prepared = preparer.createPreparedSource();
+		return frame;
+	}
+
+	private void runPreprocess() {
+		try {
+			preprocessFrames();
+		} finally {
+			synchronized (queue) {
+				preprocessFinished = true;
+				queue.notifyAll();
+			}
+		}
+	}
+
+	private void runMatch() {
+		try {
+			matchFrames();
+		} finally {
+			synchronized (queue) {
+				finished = true;
+				queue.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * First stage.  Takes frames from the queue and computes everything which doesn't depend on the key-frame.
+	 * Returns after a shutdown once the queue is empty or when processing fails.
+	 */
+	private void preprocessFrames() {
+		while (true) {
+			Frame frame;
+			synchronized (queue) {
+				while (queue.isEmpty() && !shutdown && failure == null) {
+					if (!waitOn(queue)) {
+						failure = new RuntimeException("Preprocessing thread was interrupted");
+						return;
+					}
+				}
+				if (queue.isEmpty() || failure != null)
+					return;
+				frame = queue.removeFirst();
+				// there is now room in the queue
+				queue.notifyAll();
+			}
+
+			try {
+				frame.totalValid = motion.countValidScans(frame.scan);
+				if (preparer != null)
+					preparer.prepareSource(frame.scan, frame.prepared);
+			} catch (RuntimeException e) {
+				synchronized (queue) {
+					failure = e;
+				}
+				return;
+			}
+
+			synchronized (queue) {
+				while (preprocessed != null && failure == null) {
+					if (!waitOn(queue)) {
+						failure = new RuntimeException("Preprocessing thread was interrupted");
+						return;
+					}
+				}
+				if (failure != null)
+					return;
+				preprocessed = frame;
+				queue.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Second stage.  Performs scan matching on each preprocessed frame and passes on the found pose.  Returns
+	 * once the first stage has exited and there are no more frames or when processing fails.
+	 */
+	private void matchFrames() {
+		while (true) {
+			Frame frame;
+			synchronized (queue) {
+				while (preprocessed == null && !preprocessFinished) {
+					if (!waitOn(queue)) {
+						failure = new RuntimeException("Matching thread was interrupted");
+						return;
+					}
+				}
+				if (preprocessed == null)
+					return;
+				frame = preprocessed;
+				preprocessed = null;
+				queue.notifyAll();
+			}
+
+			try {
+				// the estimator takes the prepared scan and gives back storage the frame can reuse
+				if (preparer != null)
+					frame.prepared = preparer.setPreparedSource(frame.prepared);
+				motion.process(frame.odometrySensorToWorld, frame.scan, frame.totalValid, preparer != null);
+				if (listener != null)
+					listener.poseAvailable(frame.sequence, motion.getSensorToWorld(), motion.isUpdateFromOdometry());
+			} catch (RuntimeException e) {
+				synchronized (queue) {
+					failure = e;
+				}
+				return;
+			}
+
+			long latency = System.nanoTime() - frame.timeSubmitted;
+			synchronized (queue) {
+				latencyLast = latency;
+				latencyMax = Math.max(latencyMax, latency);
+				latencySum += latency;
+				totalProcessed++;
+				totalPending--;
+				unused.add(frame);
+				queue.notifyAll();
+			}
+		}
+	}
+
+	private void checkFailure() {
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Waits until the lock is notified.  If interrupted the thread's interrupt status is restored.
+	 *
+	 * @return true if notified or false if interrupted
+	 */
+	private static boolean waitOn(Object lock) {
+		try {
+			lock.wait();
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Specifies the listener which is notified when the pose of a frame has been estimated
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Number of frames which have been submitted but have not been processed or discarded yet
+	 */
+	public int getQueueDepth() {
+		synchronized (queue) {
+			return totalPending;
+		}
+	}
+
+	/**
+	 * Number of frames which have been discarded because the queue was full
+	 */
+	public long getTotalDropped() {
+		synchronized (queue) {
+			return totalDropped;
+		}
+	}
+
+	/**
+	 * Number of frames which have been processed
+	 */
+	public long getTotalProcessed() {
+		synchronized (queue) {
+			return totalProcessed;
+		}
+	}
+
+	/**
+	 * Time in nanoseconds from when the most recently processed frame was submitted until its pose was available
+	 */
+	public long getLatencyLast() {
+		synchronized (queue) {
+			return latencyLast;
+		}
+	}
+
+	/**
+	 * Largest latency of any frame in nanoseconds
+	 */
+	public long getLatencyMax() {
+		synchronized (queue) {
+			return latencyMax;
+		}
+	}
+
+	/**
+	 * Average latency of all the processed frames in nanoseconds
+	 */
+	public double getLatencyMean() {
+		synchronized (queue) {
+			return totalProcessed == 0 ? 0 : latencySum / (double) totalProcessed;
+		}
+	}
+
+	/**
+	 * Specifies what happens when a frame is submitted and the queue is full
+	 */
+	public static enum Policy {
+		/**
+		 * Wait until there is room in the queue
+		 */
+		BLOCK,
+		/**
+		 * Discard the oldest frame which has not been processed yet
+		 */
+		DROP_OLDEST
+	}
+
+	/**
+	 * Receives the estimated pose of each frame.  Called from the matching thread.
+	 */
+	public static interface Listener {
+		/**
+		 * @param sequence      Sequence number of the frame which was returned by {@link Lrf2dMotionRollingKeyFrameAsync#submit}
+		 * @param sensorToWorld Estimated pose of the sensor.  Internal storage, copy if saved.
+		 * @param fromOdometry  true if the pose was found using only odometry
+		 */
+		public void poseAvailable(long sequence, Se2_F64 sensorToWorld, boolean fromOdometry);
+	}
+
+	/**
+	 * Data for a single frame
+	 */
+	private static class Frame {
+		double scan[];
+		Se2_F64 odometrySensorToWorld = new Se2_F64();
+		int totalValid;
+		// scan prepared by the scan matching algorithm.  null if not supported
+		Object prepared;
+		long sequence;
+		long timeSubmitted;
+
+		Frame(int numScans) {
+			scan = new double[numScans];
+		}
+	}
+}
@@ -0,0 +1,615 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.nn;
+
+import org.ddogleg.nn.NearestNeighbor;
+import org.ddogleg.nn.NnData;
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_I32;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Nearest-neighbor search which allows points to be added and removed individually, without reconstructing
+ * the whole search structure.  This is intended for scan-to-map matching where only a small fraction of the
+ * map changes between frames.
+ * </p>
+ *
+ * <p>
+ * Internally the points are stored in a small buffer, which is searched exhaustively, and a set of static
+ * K-D trees.  When the buffer fills up it is merged with all the trees which are no larger than it into a
+ * single new tree, so there are at most O(log N) trees and each point is inserted into O(log N) trees
+ * over its lifetime.  A removed point is only marked as removed and is skipped by the search.  A tree is
+ * lazily rebuilt once half of its points have been removed.
+ * </p>
+ *
+ * <p>
+ * Each point is identified by the ID returned by {@link #add}.  IDs are assigned in increasing order, which
+ * allows the oldest points to be discarded.  IDs are 64-bit so that they never wrap around, even when the
+ * map is run as a sliding window over a very long sequence.  If a maximum size has been specified with {@link #setMaxSize}
+ * then the oldest points are automatically removed, turning the map into a sliding window.
+ * </p>
+ *
+ * <p>
+ * Modifying the points must not be done while a search is in progress.  Searches do not modify the
+ * structure, so several threads can search at the same time if each one uses its own {@link Searcher}.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class IncrementalKdTreeNN<D> implements NearestNeighbor<D> {
+
+	// number of elements in each point
+	private int N;
+
+	// maximum number of points in the buffer before it's turned into a tree
+	private int bufferSize = 32;
+	// maximum number of points.  If <= 0 then there is no limit
+	private int maxSize = 0;
+
+	// Information on each point.  A point's index is its ID minus firstId.  The trees and the buffer only
+	// store the lower 32-bits of each ID, see indexOf()
+	double points[][] = new double[0][];
+	Object data[] = new Object[0];
+	// the tree which contains each point.  null if removed
+	Tree owner[] = new Tree[0];
+	// ID of the point at index 0
+	long firstId;
+	// ID which will be assigned to the next point
+	private long nextId;
+	// ID of the oldest point which has not been removed
+	private long oldestId;
+	// number of points which have not been removed
+	private int size;
+
+	// points which have not been added to a tree yet
+	Tree buffer = new Tree();
+	GrowQueue_I32 bufferIds = new GrowQueue_I32();
+	// all the K-D trees
+	List<Tree> trees = new ArrayList<Tree>();
+
+	// storage for the IDs of points in a tree being constructed
+	private GrowQueue_I32 work = new GrowQueue_I32();
+
+	// used when this class is searched directly through the NearestNeighbor interface
+	private Searcher<D> searcher = new Searcher<D>(this);
+
+	/**
+	 * Specifies the dimension of the points
+	 *
+	 * @param N Number of elements in each point
+	 */
+	public IncrementalKdTreeNN(int N) {
+		init(N);
+	}
+
+	public IncrementalKdTreeNN() {
+	}
+
+	@Override
+	public void init(int N) {
+		this.N = N;
+		reset();
+	}
+
+	/**
+	 * Removes all the points
+	 */
+	public void reset() {
+		int used = (int) (nextId - firstId);
+		for (int i = 0; i < used; i++) {
+			points[i] = null;
+			data[i] = null;
+			owner[i] = null;
+		}
+		firstId = nextId = oldestId = 0;
+		size = 0;
+		buffer.alive = 0;
+		bufferIds.reset();
+		trees.clear();
+	}
+
+	/**
+	 * Removes all the points and specifies the ID which will be assigned to the next point.  Used for testing.
+	 */
+	void setInitialId(long id) {
+		reset();
+		firstId = nextId = oldestId = id;
+	}
+
+	/**
+	 * Discards all the points and adds the new set of points.
+	 *
+	 * @param points Points which are to be searched.  The array references are saved.
+	 * @param data   Data associated with each point.
+	 */
+	@Override
+	public void setPoints(List<double[]> points, List<D> data) {
+		reset();
+		for (int i = 0; i < points.size(); i++) {
+			add(points.get(i), data.get(i));
+		}
+	}
+
+	/**
+	 * Adds a point.  If a maximum size has been specified and exceeded then the oldest point is removed.
+	 *
+	 * @param point The point.  The array reference is saved and must not be modified.
+	 * @param d     Data associated with the point
+	 * @return ID of the point
+	 */
+	public long add(double[] point, D d) {
+		if (point.length != N)
+			throw new IllegalArgumentException("Point has the wrong dimension");
+
+		if (nextId - firstId == points.length)
+			growStorage();
+
+		long id = nextId++;
+		int index = (int) (id - firstId);
+		points[index] = point;
+		data[index] = d;
+		owner[index] = buffer;
+		bufferIds.add((int) id);
+		buffer.alive++;
+		size++;
+
+		if (bufferIds.size >= bufferSize)
+			flushBuffer();
+
+		if (maxSize > 0) {
+			while (size > maxSize) {
+				if (!remove(oldestId))
+					break;
+			}
+		}
+
+		return id;
+	}
+
+	/**
+	 * Removes the point with the specified ID
+	 *
+	 * @param id ID of the point
+	 * @return true if it was removed or false if there is no such point
+	 */
+	public boolean remove(long id) {
+		if (id < firstId || id >= nextId)
+			return false;
+		int index = (int) (id - firstId);
+
+		Tree tree = owner[index];
+		if (tree == null)
+			return false;
+
+		// the coordinate is still referenced by the tree, but the point is never returned again
+		owner[index] = null;
+		data[index] = null;
+		size--;
+		tree.alive--;
+
+		if (tree != buffer && tree.alive * 2 < tree.ids.length)
+			rebuild(tree);
+
+		while (oldestId < nextId && owner[(int) (oldestId - firstId)] == null)
+			oldestId++;
+
+		return true;
+	}
+
+	/**
+	 * Removes all the points which were added before the specified ID
+	 *
+	 * @param id Points with an ID less than this are removed
+	 */
+	public void removeOlderThan(long id) {
+		while (oldestId < id && size > 0) {
+			if (!remove(oldestId))
+				break;
+		}
+	}
+
+	/**
+	 * Returns true if the point has been added and has not been removed
+	 */
+	public boolean contains(long id) {
+		return id >= firstId && id < nextId && owner[(int) (id - firstId)] != null;
+	}
+
+	/**
+	 * Converts the lower 32-bits of an ID, as stored in the trees and buffer, into the point's index.  The
+	 * subtraction is done with 32-bit overflow, which gives the correct index since every stored ID is within
+	 * the storage's length of firstId.  A negative index means the point was discarded by growStorage().
+	 */
+	static int indexOf(int id, long firstId) {
+		return id - (int) firstId;
+	}
+
+	/**
+	 * Turns the buffer into a tree, merging it with all the trees which are the same size or smaller.
+	 */
+	private void flushBuffer() {
+		work.reset();
+		for (int i = 0; i < bufferIds.size; i++) {
+			int id = bufferIds.data[i];
+			int index = indexOf(id, firstId);
+			if (index >= 0 && owner[index] == buffer)
+				work.add(id);
+		}
+		bufferIds.reset();
+		buffer.alive = 0;
+
+		while (true) {
+			Tree smallest = null;
+			for (int i = 0; i < trees.size(); i++) {
+				Tree t = trees.get(i);
+				if (smallest == null || t.alive < smallest.alive)
+					smallest = t;
+			}
+			if (smallest == null || smallest.alive > work.size)
+				break;
+
+			addAlive(smallest);
+			trees.remove(smallest);
+		}
+
+		if (work.size > 0)
+			trees.add(build());
+	}
+
+	/**
+	 * Reconstructs the tree from its points which have not been removed
+	 */
+	private void rebuild(Tree tree) {
+		work.reset();
+		addAlive(tree);
+		trees.remove(tree);
+		if (work.size > 0)
+			trees.add(build());
+	}
+
+	/**
+	 * Adds the points in the tree which have not been removed to 'work'
+	 */
+	private void addAlive(Tree tree) {
+		for (int i = 0; i < tree.ids.length; i++) {
+			int index = indexOf(tree.ids[i], firstId);
+			if (index >= 0 && owner[index] == tree)
+				work.add(tree.ids[i]);
+		}
+	}
+
+	/**
+	 * Constructs a tree from the points in 'work'
+	 */
+	private Tree build() {
+		Tree tree = new Tree();
+		tree.ids = new int[work.size];
+		tree.axis = new byte[work.size];
+		tree.split = new double[work.size];
+		tree.alive = work.size;
+		System.arraycopy(work.data, 0, tree.ids, 0, work.size);
+
+		for (int i = 0; i < tree.ids.length; i++) {
+			owner[indexOf(tree.ids[i], firstId)] = tree;
+		}
+
+		buildBranch(tree, 0, tree.ids.length);
+		return tree;
+	}
+
+	/**
+	 * Recursively splits the points in the range [lo,hi) along the axis with the largest spread.  The median
+	 * becomes the node, which is stored at the middle of the range.
+	 */
+	private void buildBranch(Tree tree, int lo, int hi) {
+		while (hi - lo > 0) {
+			int ids[] = tree.ids;
+
+			int axis = 0;
+			double bestSpread = -1;
+			for (int k = 0; k < N; k++) {
+				double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+				for (int i = lo; i < hi; i++) {
+					double v = points[indexOf(ids[i], firstId)][k];
+					if (v < min) min = v;
+					if (v > max) max = v;
+				}
+				if (max - min > bestSpread) {
+					bestSpread = max - min;
+					axis = k;
+				}
+			}
+
+			int mid = (lo + hi) >>> 1;
+			select(ids, lo, hi, mid, axis);
+			tree.axis[mid] = (byte) axis;
+			tree.split[mid] = points[indexOf(ids[mid], firstId)][axis];
+
+			buildBranch(tree, lo, mid);
+			lo = mid + 1;
+		}
+	}
+
+	/**
+	 * Partially sorts the IDs in the range [lo,hi) so that the element at 'k' has the value it would have
+	 * if fully sorted along the axis.
+	 */
+	private void select(int ids[], int lo, int hi, int k, int axis) {
+		hi--;
+		while (hi > lo) {
+			double pivot = points[indexOf(ids[(lo + hi) >>> 1], firstId)][axis];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (points[indexOf(ids[i], firstId)][axis] < pivot) i++;
+				while (points[indexOf(ids[j], firstId)][axis] > pivot) j--;
+				if (i <= j) {
+					int tmp = ids[i];
+					ids[i] = ids[j];
+					ids[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	/**
+	 * Makes room for more points.  If most of the storage is taken by removed points at the start then
+	 * they are discarded, otherwise the storage is enlarged.
+	 */
+	private void growStorage() {
+		int used = (int) (nextId - firstId);
+		int discard = (int) (oldestId - firstId);
+
+		if (discard * 2 >= used && discard > 0) {
+			System.arraycopy(points, discard, points, 0, used - discard);
+			System.arraycopy(data, discard, data, 0, used - discard);
+			System.arraycopy(owner, discard, owner, 0, used - discard);
+			for (int i = used - discard; i < used; i++) {
+				points[i] = null;
+				data[i] = null;
+				owner[i] = null;
+			}
+			firstId = oldestId;
+		} else {
+			int length = Math.max(16, points.length * 2);
+			double[][] points = new double[length][];
+			Object[] data = new Object[length];
+			Tree[] owner = new Tree[length];
+			System.arraycopy(this.points, 0, points, 0, used);
+			System.arraycopy(this.data, 0, data, 0, used);
+			System.arraycopy(this.owner, 0, owner, 0, used);
+			this.points = points;
+			this.data = data;
+			this.owner = owner;
+		}
+	}
+
+	@Override
+	public boolean findNearest(double[] point, double maxDistance, NnData<D> result) {
+		return searcher.findNearest(point, maxDistance, result);
+	}
+
+	@Override
+	public void findNearest(double[] point, double maxDistance, int numNeighbors, FastQueue<NnData<D>> result) {
+		searcher.findNearest(point, maxDistance, numNeighbors, result);
+	}
+
+	/**
+	 * Creates a new searcher.  A searcher can only be used by one thread at a time.
+	 */
+	public Searcher<D> createSearcher() {
+		return new Searcher<D>(this);
+	}
+
+	/**
+	 * Number of points which have not been removed
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * ID of the oldest point which has not been removed.  If there are no points then it's the ID which
+	 * will be assigned to the next point.
+	 */
+	public long getOldestId() {
+		return oldestId;
+	}
+
+	/**
+	 * Number of K-D trees the points are stored in, excluding the buffer
+	 */
+	public int getNumTrees() {
+		return trees.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Specifies the maximum number of points.  When exceeded the oldest points are removed.
+	 *
+	 * @param maxSize Maximum number of points.  If &le; 0 then there is no limit.
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		if (maxSize > 0) {
+			while (size > maxSize) {
+				if (!remove(oldestId))
+					break;
+			}
+		}
+	}
+
+	/**
+	 * A static K-D tree.  The node for the range [lo,hi) of the arrays is at the middle of the range.
+	 */
+	static class Tree {
+		// lower 32-bits of the ID of the point at each node
+		int ids[];
+		// axis the node splits along
+		byte axis[];
+		// value the node splits at.  Saved so that the node can be searched after its point is removed
+		double split[];
+		// number of points which have not been removed
+		int alive;
+	}
+
+	/**
+	 * Searches for the nearest neighbors.  The interface mirrors {@link NearestNeighbor}.
+	 */
+	public static class Searcher<D> {
+		IncrementalKdTreeNN<D> owner;
+
+		// the point being searched for
+		double target[];
+		// maximum number of neighbors being searched for
+		int maxFound;
+		// indexes of the best points found so far and their distance, sorted by distance
+		int foundIndex[] = new int[1];
+		double foundDistance[] = new double[1];
+		int numFound;
+		// maximum distance a point can be and be added
+		double bound;
+
+		protected Searcher(IncrementalKdTreeNN<D> owner) {
+			this.owner = owner;
+		}
+
+		/**
+		 * Searches for the nearest neighbor to the target.
+		 *
+		 * @see NearestNeighbor#findNearest(double[], double, NnData)
+		 */
+		public boolean findNearest(double[] point, double maxDistance, NnData<D> result) {
+			search(point, maxDistance, 1);
+			if (numFound == 0)
+				return false;
+
+			int index = foundIndex[0];
+			result.point = owner.points[index];
+			result.data = (D) owner.data[index];
+			result.distance = foundDistance[0];
+			return true;
+		}
+
+		/**
+		 * Searches for the N nearest neighbors to the target.  Results are added to 'results'.
+		 *
+		 * @see NearestNeighbor#findNearest(double[], double, int, FastQueue)
+		 */
+		public void findNearest(double[] point, double maxDistance, int numNeighbors, FastQueue<NnData<D>> results) {
+			search(point, maxDistance <= 0 ? -1 : maxDistance, numNeighbors);
+			for (int i = 0; i < numFound; i++) {
+				int index = foundIndex[i];
+				NnData<D> r = results.grow();
+				r.point = owner.points[index];
+				r.data = (D) owner.data[index];
+				r.distance = foundDistance[i];
+			}
+		}
+
+		private void search(double[] point, double maxDistance, int numNeighbors) {
+			if (foundIndex.length < numNeighbors) {
+				foundIndex = new int[numNeighbors];
+				foundDistance = new double[numNeighbors];
+			}
+			target = point;
+			maxFound = numNeighbors;
+			numFound = 0;
+			bound = maxDistance < 0 ? Double.MAX_VALUE : maxDistance;
+
+			// exhaustively search the buffer
+			long firstId = owner.firstId;
+			GrowQueue_I32 bufferIds = owner.bufferIds;
+			for (int i = 0; i < bufferIds.size; i++) {
+				int index = indexOf(bufferIds.data[i], firstId);
+				if (index >= 0 && owner.owner[index] != null)
+					consider(index);
+			}
+
+			List<Tree> trees = owner.trees;
+			for (int i = 0; i < trees.size(); i++) {
+				Tree t = trees.get(i);
+				searchBranch(t, 0, t.ids.length);
+			}
+		}
+
+		private void searchBranch(Tree tree, int lo, int hi) {
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				int index = indexOf(tree.ids[mid], owner.firstId);
+				if (index >= 0 && owner.owner[index] != null)
+					consider(index);
+
+				double diff = target[tree.axis[mid]] - tree.split[mid];
+				if (diff <= 0) {
+					searchBranch(tree, lo, mid);
+					if (diff * diff > bound)
+						return;
+					lo = mid + 1;
+				} else {
+					searchBranch(tree, mid + 1, hi);
+					if (diff * diff > bound)
+						return;
+					hi = mid;
+				}
+			}
+		}
+
+		/**
+		 * Adds the point to the list of best points if it's close enough
+		 */
+		private void consider(int index) {
+			double p[] = owner.points[index];
+			double d = 0;
+			for (int k = 0; k < p.length; k++) {
+				double a = p[k] - target[k];
+				d += a * a;
+			}
+			if (d > bound)
+				return;
+
+			// insert it into the sorted list
+			int i = numFound < maxFound ? numFound++ : maxFound - 1;
+			while (i > 0 && foundDistance[i - 1] > d) {
+				foundDistance[i] = foundDistance[i - 1];
+				foundIndex[i] = foundIndex[i - 1];
+				i--;
+			}
+			foundDistance[i] = d;
+			foundIndex[i] = index;
+
+			if (numFound == maxFound)
+				bound = foundDistance[maxFound - 1];
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.nn;
+
+import org.ddogleg.nn.NnData;
+import org.ddogleg.nn.alg.*;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.List;
+
+/**
+ * K-D tree which can be searched by several threads at the same time.  The tree is constructed once by
+ * {@link #setPoints} and is then treated as read only.  All the state used during a search is stored inside
+ * of a {@link Searcher}, which each thread must request for itself using {@link #createSearcher()}.
+ * <p></p>
+ * The tree is constructed and searched using the same algorithms as
+ * {@link org.ddogleg.nn.FactoryNearestNeighbor#kdtree()}, so the results are identical to what the
+ * single threaded version produces.
+ *
+ * @author Peter Abeles
+ */
+public class SharedKdTreeNN<D> {
+
+	// recycles tree nodes between calls to setPoints
+	private KdTreeMemory memory = new KdTreeMemory();
+	private KdTreeConstructor<D> constructor;
+
+	// the tree which is shared between all the searchers
+	private KdTree tree;
+
+	/**
+	 * Specifies the dimension of the points
+	 *
+	 * @param N Number of elements in each point
+	 */
+	public SharedKdTreeNN(int N) {
+		constructor = new KdTreeConstructor<D>(memory, N, new AxisSplitterMedian<D>());
+	}
+
+	/**
+	 * Constructs the tree.  Must not be called while a search is in progress.
+	 *
+	 * @param points Points which are to be searched.  The array references are saved.
+	 * @param data   Data associated with each point.
+	 */
+	public void setPoints(List<double[]> points, List<D> data) {
+		if (tree != null)
+			memory.recycleGraph(tree);
+		tree = constructor.construct(points, data);
+	}
+
+	/**
+	 * Creates a new searcher for the tree.  A searcher can only be used by one thread at a time.  Searchers
+	 * can be reused after {@link #setPoints} has been called again.
+	 */
+	public Searcher<D> createSearcher() {
+		return new Searcher<D>(this);
+	}
+
+	/**
+	 * Performs nearest-neighbor searches against the shared tree.  The interface mirrors
+	 * {@link org.ddogleg.nn.NearestNeighbor}.
+	 */
+	public static class Searcher<D> {
+		SharedKdTreeNN<D> owner;
+
+		KdTreeSearch1 search = new KdTreeSearch1Standard();
+		KdTreeSearchN searchN = new KdTreeSearchNStandard();
+
+		// storage for the results from the N-nearest search
+		FastQueue<KdTreeResult> found = new FastQueue<KdTreeResult>(KdTreeResult.class, true);
+
+		// the tree which the search algorithms are currently configured for
+		KdTree tree;
+
+		protected Searcher(SharedKdTreeNN<D> owner) {
+			this.owner = owner;
+		}
+
+		/**
+		 * Searches for the nearest neighbor to the target.
+		 *
+		 * @see org.ddogleg.nn.NearestNeighbor#findNearest(double[], double, NnData)
+		 */
+		public boolean findNearest(double[] point, double maxDistance, NnData<D> result) {
+			checkTree();
+			if (maxDistance < 0)
+				search.setMaxDistance(Double.MAX_VALUE);
+			else
+				search.setMaxDistance(maxDistance);
+
+			KdTree.Node found = search.findNeighbor(point);
+			if (found == null)
+				return false;
+
+			result.point = found.point;
+			result.data = (D) found.data;
+			result.distance = search.getDistance();
+
+			return true;
+		}
+
+		/**
+		 * Searches for the N nearest neighbors to the target.  Results are added to 'results'.
+		 *
+		 * @see org.ddogleg.nn.NearestNeighbor#findNearest(double[], double, int, FastQueue)
+		 */
+		public void findNearest(double[] point, double maxDistance, int numNeighbors, FastQueue<NnData<D>> results) {
+			checkTree();
+			if (maxDistance <= 0)
+				searchN.setMaxDistance(Double.MAX_VALUE);
+			else
+				searchN.setMaxDistance(maxDistance);
+
+			found.reset();
+			searchN.findNeighbor(point, numNeighbors, found);
+
+			for (int i = 0; i < found.size; i++) {
+				KdTreeResult k = found.get(i);
+				NnData<D> r = results.grow();
+				r.point = k.node.point;
+				r.data = (D) k.node.data;
+				r.distance = k.distance;
+			}
+		}
+
+		/**
+		 * If the tree has been rebuilt since the last search, update the search algorithms
+		 */
+		private void checkTree() {
+			if (tree != owner.tree) {
+				tree = owner.tree;
+				search.setTree(tree);
+				searchN.setTree(tree);
+			}
+		}
+	}
+}
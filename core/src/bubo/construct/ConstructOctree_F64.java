@@ -20,6 +20,7 @@ package bubo.construct;
 
 import georegression.struct.point.Point3D_F64;
 import georegression.struct.shapes.Box3D_F64;
+import org.ddogleg.struct.FastQueue;
 
 /**
  * Base class for constructing {@link bubo.construct.Octree_F64}.
@@ -28,10 +29,38 @@ import georegression.struct.shapes.Box3D_F64;
  */
 public abstract class ConstructOctree_F64 extends ConstructOctree<Octree_F64,Point3D_F64>{
 
+	// storage for points which are added from packed arrays.  Recycled when reset is called
+	protected FastQueue<Point3D_F64> storagePacked = new FastQueue<Point3D_F64>(Point3D_F64.class, true);
+
 	public ConstructOctree_F64() {
 		super(Octree_F64.class);
 	}
 
+	@Override
+	public void reset() {
+		super.reset();
+		storagePacked.reset();
+	}
+
+	/**
+	 * Adds points which are stored in a structure of arrays format, e.g. {@link bubo.clouds.PackedCloud3D_F64}.
+	 * The points are copied into storage owned by this class, which is recycled when {@link #reset} is called.
+	 * The user data of each point is set to null.  Points are added in order, so point 'i' can be found
+	 * at index 'offset + i' in {@link #getAllPoints()}, where 'offset' is the number of points before this call.
+	 *
+	 * @param x x-coordinate of each point
+	 * @param y y-coordinate of each point
+	 * @param z z-coordinate of each point
+	 * @param N number of points
+	 */
+	public void addPoints(double[] x, double[] y, double[] z, int N) {
+		for (int i = 0; i < N; i++) {
+			Point3D_F64 p = storagePacked.grow();
+			p.set(x[i], y[i], z[i]);
+			addPoint(p, null);
+		}
+	}
+
 	/**
 	 * Initializes the Octree.  The space contained by the Octree is specified by the passed in cube.
 	 * {@link #reset} is automatically called by this function
@@ -0,0 +1,716 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.construct;
+
+import bubo.struct.ConcurrentBlocks;
+import georegression.metric.Intersection3D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.ddogleg.struct.GrowQueue_I32;
+import org.ddogleg.struct.GrowQueue_I64;
+import org.ddogleg.struct.GrowQueue_I8;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Linear octree where each point is encoded using a Morton (Z-order) key and the tree is defined implicitly by
+ * the points sorted by their key.  All the points inside of a node have the same key prefix and are contiguous
+ * in the sorted list, so a node is fully described by its depth, key, and range in the sorted list.  Only the
+ * leaves are explicitly stored.  Compared to {@link ConstructOctreeNumPoints_F64} no objects are declared
+ * for nodes or points, and points are not referenced by every node along the path to their leaf, which
+ * reduces memory by a large factor.
+ * </p>
+ *
+ * <p>
+ * The tree is split using the same rules as {@link ConstructOctreeNumPoints_F64}, i.e. a node is split at the
+ * center of its space if it has more than 'divideThreshold' points in it, unless all its points are
+ * identical.  Points are quantized into 2<sup>maxDepth</sup> cells along each axis, so at most 'maxDepth'
+ * splits can be done and two points in the same cell are considered identical.  Each 3-bit group in the key
+ * is the same as the child index in {@link Octree}, e.g. child 2 has x &ge; divider.x, y &lt; divider.y, and
+ * z &lt; divider.z.
+ * </p>
+ *
+ * <p>
+ * The tree is constructed by computing the key of each point, sorting the points by key with a radix sort,
+ * and then scanning the sorted keys for leaves.  Computing the keys and sorting is done concurrently if more
+ * than one thread is specified.  The first radix pass splits the points by their first two levels in the
+ * tree into 64 buckets, which are then sorted independently.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class LinearOctree_F64 {
+	/**
+	 * The maximum depth of the tree.  Each axis is encoded with 21-bits for a total of 63 bits.
+	 */
+	public static final int MAX_DEPTH = 21;
+
+	// number of points it takes to divide a node
+	private int divideThreshold;
+	// maximum depth of the tree.  number of bits used to encode each axis
+	private int maxDepth;
+
+	// space which the tree occupies
+	private Box3D_F64 space = new Box3D_F64();
+	// conversion from distance to cells at the maximum depth
+	private double scaleX, scaleY, scaleZ;
+
+	// references to the coordinates of each point
+	private double[] x, y, z;
+	// number of points inside the tree
+	private int numPoints;
+	// number of points which were passed in but are outside of the tree's space
+	private int numOutside;
+
+	// Morton key of each point and the index of the point in the input arrays. Sorted by key after construction
+	private long[] keys = new long[0];
+	private int[] order = new int[0];
+	// work space for sorting
+	private long[] workKeys = new long[0];
+	private int[] workOrder = new int[0];
+	// start of each bucket after the first radix pass.
+	private int[] bucketStart;
+
+	// Description of each leaf.  The key is the smallest key inside the leaf's space
+	private GrowQueue_I64 leafKey = new GrowQueue_I64();
+	private GrowQueue_I8 leafDepth = new GrowQueue_I8();
+	// Index of the first point in each leaf.  Has one more element than the number of leaves
+	private GrowQueue_I32 leafStart = new GrowQueue_I32();
+
+	private ConcurrentBlocks concurrent = new ConcurrentBlocks(1);
+	// histogram used by each block when sorting
+	private int[][] blockCounts = new int[0][];
+
+	// storage for points passed in as a list
+	private double[] listX = new double[0], listY = new double[0], listZ = new double[0];
+
+	// storage for the space of nodes at each depth during a search
+	private Box3D_F64[] workSpace = new Box3D_F64[MAX_DEPTH + 1];
+	private GrowQueue_I32 workLeaves = new GrowQueue_I32();
+
+	/**
+	 * Specifies construction parameters
+	 *
+	 * @param divideThreshold Create a new node when the number of points exceeds this threshold
+	 * @param maxDepth        Maximum depth of the tree.  1 to {@link #MAX_DEPTH}, inclusive.
+	 */
+	public LinearOctree_F64(int divideThreshold, int maxDepth) {
+		if (maxDepth < 1 || maxDepth > MAX_DEPTH)
+			throw new IllegalArgumentException("maxDepth must be from 1 to " + MAX_DEPTH);
+
+		this.divideThreshold = divideThreshold;
+		this.maxDepth = maxDepth;
+
+		for (int i = 0; i < workSpace.length; i++) {
+			workSpace[i] = new Box3D_F64();
+		}
+	}
+
+	/**
+	 * Creates a tree with the maximum possible depth.
+	 *
+	 * @param divideThreshold Create a new node when the number of points exceeds this threshold
+	 */
+	public LinearOctree_F64(int divideThreshold) {
+		this(divideThreshold, MAX_DEPTH);
+	}
+
+	/**
+	 * Specifies the number of threads used to construct the tree.
+	 *
+	 * @param numThreads Number of threads.  Must be &ge; 1.  Default is 1.
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads == concurrent.getNumThreads())
+			return;
+		ConcurrentBlocks c = new ConcurrentBlocks(numThreads);
+		concurrent.shutdown();
+		concurrent = c;
+	}
+
+	/**
+	 * Specifies the space which is contained by the tree and discards all the points.
+	 *
+	 * @param space Space which is contained by the Octree.
+	 */
+	public void initialize(Box3D_F64 space) {
+		this.space.set(space);
+
+		double cells = 1 << maxDepth;
+		scaleX = cells / space.getLengthX();
+		scaleY = cells / space.getLengthY();
+		scaleZ = cells / space.getLengthZ();
+
+		numPoints = 0;
+		numOutside = 0;
+		leafKey.reset();
+		leafDepth.reset();
+		leafStart.reset();
+		leafStart.add(0);
+	}
+
+	/**
+	 * Constructs the tree from the points.  {@link #initialize} must be called first.  Points outside of the
+	 * space are ignored.  References to the arrays are saved and they should not be modified while the tree
+	 * is in use.
+	 *
+	 * @param x x-coordinate of each point
+	 * @param y y-coordinate of each point
+	 * @param z z-coordinate of each point
+	 * @param N Number of points
+	 */
+	public void construct(final double[] x, final double[] y, final double[] z, final int N) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+
+		if (keys.length < N) {
+			keys = new long[N];
+			order = new int[N];
+			workKeys = new long[N];
+			workOrder = new int[N];
+		}
+
+		// compute the key for each point
+		concurrent.process(N, new ConcurrentBlocks.Block() {
+			@Override
+			public void process(int index, int start, int end) {
+				for (int i = start; i < end; i++) {
+					workKeys[i] = computeKey(x[i], y[i], z[i]);
+				}
+			}
+		});
+
+		// remove points outside the tree
+		numPoints = 0;
+		for (int i = 0; i < N; i++) {
+			long k = workKeys[i];
+			if (k >= 0) {
+				keys[numPoints] = k;
+				order[numPoints++] = i;
+			}
+		}
+		numOutside = N - numPoints;
+
+		sort();
+		constructLeaves();
+	}
+
+	/**
+	 * Constructs the tree from a list of points.  The points are copied into internal storage.
+	 *
+	 * @see #construct(double[], double[], double[], int)
+	 */
+	public void construct(List<Point3D_F64> points) {
+		int N = points.size();
+		if (listX.length < N) {
+			listX = new double[N];
+			listY = new double[N];
+			listZ = new double[N];
+		}
+		for (int i = 0; i < N; i++) {
+			Point3D_F64 p = points.get(i);
+			listX[i] = p.x;
+			listY[i] = p.y;
+			listZ[i] = p.z;
+		}
+		construct(listX, listY, listZ, N);
+	}
+
+	/**
+	 * Computes the Morton key of the point.
+	 *
+	 * @return The key or -1 if the point is outside of the tree's space
+	 */
+	public long computeKey(double x, double y, double z) {
+		if (x < space.p0.x || x >= space.p1.x || y < space.p0.y || y >= space.p1.y ||
+				z < space.p0.z || z >= space.p1.z)
+			return -1;
+
+		int max = (1 << maxDepth) - 1;
+		// round off error can push the index to be the same as the number of cells
+		int qx = Math.min(max, (int) ((x - space.p0.x) * scaleX));
+		int qy = Math.min(max, (int) ((y - space.p0.y) * scaleY));
+		int qz = Math.min(max, (int) ((z - space.p0.z) * scaleZ));
+
+		return encode(qx, qy, qz);
+	}
+
+	/**
+	 * Interleaves the bits of the cell coordinates into a Morton key.  Each 3-bit group has the order (z,x,y)
+	 * from most to least significant bit to match {@link Octree_F64#getChildIndex}.
+	 */
+	public static long encode(int qx, int qy, int qz) {
+		return spread(qy) | (spread(qx) << 1) | (spread(qz) << 2);
+	}
+
+	/**
+	 * Spreads out the lower 21-bits so that there are two zero bits between each bit
+	 */
+	static long spread(int value) {
+		long v = value & 0x1fffffL;
+		v = (v | v << 32) & 0x1f00000000ffffL;
+		v = (v | v << 16) & 0x1f0000ff0000ffL;
+		v = (v | v << 8) & 0x100f00f00f00f00fL;
+		v = (v | v << 4) & 0x10c30c30c30c30c3L;
+		v = (v | v << 2) & 0x1249249249249249L;
+		return v;
+	}
+
+	/**
+	 * Inverse of {@link #spread}
+	 */
+	static int compact(long v) {
+		v &= 0x1249249249249249L;
+		v = (v ^ (v >>> 2)) & 0x10c30c30c30c30c3L;
+		v = (v ^ (v >>> 4)) & 0x100f00f00f00f00fL;
+		v = (v ^ (v >>> 8)) & 0x1f0000ff0000ffL;
+		v = (v ^ (v >>> 16)) & 0x1f00000000ffffL;
+		v = (v ^ (v >>> 32)) & 0x1fffffL;
+		return (int) v;
+	}
+
+	/**
+	 * Sorts the keys and point order.  The first pass splits the points into buckets using the most significant
+	 * bits, then each bucket is sorted independently.
+	 */
+	private void sort() {
+		final int totalBits = 3 * maxDepth;
+		int topBits = Math.min(6, totalBits);
+		final int shiftTop = totalBits - topBits;
+		final int numBuckets = 1 << topBits;
+
+		if (bucketStart == null || bucketStart.length < numBuckets + 1)
+			bucketStart = new int[numBuckets + 1];
+		for (int i = 0; i <= numBuckets; i++) {
+			bucketStart[i] = 0;
+		}
+
+		for (int i = 0; i < numPoints; i++) {
+			bucketStart[(int) (keys[i] >>> shiftTop) + 1]++;
+		}
+		for (int i = 0; i < numBuckets; i++) {
+			bucketStart[i + 1] += bucketStart[i];
+		}
+
+		// scatter the points into their buckets.  bucketStart is used as the write location then restored
+		for (int i = 0; i < numPoints; i++) {
+			int b = (int) (keys[i] >>> shiftTop);
+			int dst = bucketStart[b]++;
+			workKeys[dst] = keys[i];
+			workOrder[dst] = order[i];
+		}
+		for (int i = numBuckets; i > 0; i--) {
+			bucketStart[i] = bucketStart[i - 1];
+		}
+		bucketStart[0] = 0;
+
+		long[] tmpK = keys;
+		keys = workKeys;
+		workKeys = tmpK;
+		int[] tmpO = order;
+		order = workOrder;
+		workOrder = tmpO;
+
+		if (shiftTop == 0)
+			return;
+
+		if (blockCounts.length < concurrent.getNumThreads()) {
+			blockCounts = new int[concurrent.getNumThreads()][256];
+		}
+
+		concurrent.process(numBuckets, new ConcurrentBlocks.Block() {
+			@Override
+			public void process(int index, int start, int end) {
+				for (int b = start; b < end; b++) {
+					radixSort(bucketStart[b], bucketStart[b + 1], shiftTop, blockCounts[index]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * LSD radix sort of the elements in the range [start,end) using the lower 'bits' of each key.  The sorted
+	 * results are always written into 'keys' and 'order'.
+	 */
+	private void radixSort(int start, int end, int bits, int[] count) {
+		int N = end - start;
+		if (N < 2)
+			return;
+
+		if (N < 32) {
+			insertionSort(start, end);
+			return;
+		}
+
+		long[] srcK = keys, dstK = workKeys;
+		int[] srcO = order, dstO = workOrder;
+
+		for (int shift = 0; shift < bits; shift += 8) {
+			int mask = bits - shift >= 8 ? 0xFF : (1 << (bits - shift)) - 1;
+
+			for (int i = 0; i < 256; i++) {
+				count[i] = 0;
+			}
+			for (int i = start; i < end; i++) {
+				count[(int) (srcK[i] >>> shift) & mask]++;
+			}
+
+			// skip the pass if all elements have the same digit
+			if (count[(int) (srcK[start] >>> shift) & mask] == N)
+				continue;
+
+			int total = start;
+			for (int i = 0; i < 256; i++) {
+				int c = count[i];
+				count[i] = total;
+				total += c;
+			}
+
+			for (int i = start; i < end; i++) {
+				int dst = count[(int) (srcK[i] >>> shift) & mask]++;
+				dstK[dst] = srcK[i];
+				dstO[dst] = srcO[i];
+			}
+
+			long[] tk = srcK;
+			srcK = dstK;
+			dstK = tk;
+			int[] to = srcO;
+			srcO = dstO;
+			dstO = to;
+		}
+
+		if (srcK != keys) {
+			System.arraycopy(srcK, start, keys, start, N);
+			System.arraycopy(srcO, start, order, start, N);
+		}
+	}
+
+	private void insertionSort(int start, int end) {
+		for (int i = start + 1; i < end; i++) {
+			long k = keys[i];
+			int o = order[i];
+			int j = i - 1;
+			while (j >= start && keys[j] > k) {
+				keys[j + 1] = keys[j];
+				order[j + 1] = order[j];
+				j--;
+			}
+			keys[j + 1] = k;
+			order[j + 1] = o;
+		}
+	}
+
+	/**
+	 * Scans through the sorted keys and finds all the leaves
+	 */
+	private void constructLeaves() {
+		leafKey.reset();
+		leafDepth.reset();
+		leafStart.reset();
+
+		if (numPoints > 0)
+			constructNode(0, numPoints, 0);
+		leafStart.add(numPoints);
+	}
+
+	private void constructNode(int start, int end, int depth) {
+		// same rule as ConstructOctreeNumPoints_F64. identical points are in the same cell at the maximum depth
+		if (end - start <= divideThreshold || depth == maxDepth || keys[start] == keys[end - 1]) {
+			int shift = 3 * (maxDepth - depth);
+			leafKey.add(depth == 0 ? 0 : (keys[start] >>> shift) << shift);
+			leafDepth.add((byte) depth);
+			leafStart.add(start);
+			return;
+		}
+
+		// split the points up between the children
+		int shift = 3 * (maxDepth - depth - 1);
+		int i = start;
+		while (i < end) {
+			long childKey = (keys[i] >>> shift) << shift;
+			int childEnd = upperBound(keys, i, end, childKey, shift);
+			constructNode(i, childEnd, depth + 1);
+			i = childEnd;
+		}
+	}
+
+	/**
+	 * Returns the index of the first element in the range which is &ge; the value
+	 */
+	private static int lowerBound(long[] array, int start, int end, long value) {
+		while (start < end) {
+			int mid = (start + end) >>> 1;
+			if (array[mid] < value)
+				start = mid + 1;
+			else
+				end = mid;
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the index of the first element in the range which is outside of the node with the specified key.
+	 * The node's size is 2<sup>shift</sup>.
+	 */
+	private static int upperBound(long[] array, int start, int end, long nodeKey, int shift) {
+		long next = nodeKey + (1L << shift);
+		// the last node at depth 1 overflows into the sign bit
+		if (next < 0)
+			return end;
+		return lowerBound(array, start, end, next);
+	}
+
+	/**
+	 * Returns the index of the leaf which contains the point
+	 *
+	 * @return index of the leaf or -1 if no leaf contains the point
+	 */
+	public int findLeaf(double x, double y, double z) {
+		long key = computeKey(x, y, z);
+		if (key < 0)
+			return -1;
+		int i = lowerBound(leafKey.data, 0, leafKey.size, key + 1) - 1;
+		if (i >= 0 && leafContains(i, key))
+			return i;
+		return -1;
+	}
+
+	private boolean leafContains(int leaf, long key) {
+		int depth = leafDepth.data[leaf];
+		if (depth == 0)
+			return true;
+		return (key >>> 3 * (maxDepth - depth)) == (leafKey.data[leaf] >>> 3 * (maxDepth - depth));
+	}
+
+	/**
+	 * Searches for the deepest node which contains the point.  Equivalent to {@link Octree#findDeepest}.
+	 *
+	 * @param node (Output) Description of the deepest node
+	 * @return true if the point is inside the tree's space and false if not
+	 */
+	public boolean findDeepest(double x, double y, double z, Node node) {
+		long key = computeKey(x, y, z);
+		if (key < 0)
+			return false;
+
+		int i = lowerBound(leafKey.data, 0, leafKey.size, key + 1) - 1;
+		if (i >= 0 && leafContains(i, key)) {
+			getLeaf(i, node);
+			return true;
+		}
+
+		// The deepest existing node is the deepest ancestor it has in common with the leaves before and after it
+		int depth = 0;
+		if (i >= 0)
+			depth = commonDepth(key, leafKey.data[i]);
+		if (i + 1 < leafKey.size)
+			depth = Math.max(depth, commonDepth(key, leafKey.data[i + 1]));
+
+		node.depth = depth;
+		if (depth == 0) {
+			node.key = 0;
+			node.start = 0;
+			node.end = numPoints;
+		} else {
+			int shift = 3 * (maxDepth - depth);
+			node.key = (key >>> shift) << shift;
+			node.start = lowerBound(keys, 0, numPoints, node.key);
+			node.end = upperBound(keys, node.start, numPoints, node.key, shift);
+		}
+		return true;
+	}
+
+	/**
+	 * Depth of the deepest node which contains both keys
+	 */
+	private int commonDepth(long a, long b) {
+		long diff = a ^ b;
+		if (diff == 0)
+			return maxDepth;
+		int highest = 63 - Long.numberOfLeadingZeros(diff);
+		return maxDepth - highest / 3 - 1;
+	}
+
+	/**
+	 * Computes the space occupied by a node
+	 *
+	 * @param depth  Depth of the node
+	 * @param key    Key of the node
+	 * @param output (Output) The node's space
+	 */
+	public void computeSpace(int depth, long key, Box3D_F64 output) {
+		if (depth == 0) {
+			output.set(space);
+			return;
+		}
+
+		int shift = maxDepth - depth;
+		int qx = compact(key >>> 1) >> shift;
+		int qy = compact(key) >> shift;
+		int qz = compact(key >>> 2) >> shift;
+
+		double cells = 1 << depth;
+		double lengthX = space.getLengthX() / cells;
+		double lengthY = space.getLengthY() / cells;
+		double lengthZ = space.getLengthZ() / cells;
+
+		output.p0.x = space.p0.x + qx * lengthX;
+		output.p0.y = space.p0.y + qy * lengthY;
+		output.p0.z = space.p0.z + qz * lengthZ;
+		output.p1.x = output.p0.x + lengthX;
+		output.p1.y = output.p0.y + lengthY;
+		output.p1.z = output.p0.z + lengthZ;
+	}
+
+	/**
+	 * Finds all the leaves which intersect the region.
+	 *
+	 * @param region The region which is being tested for intersection
+	 * @param output (Output) Indexes of leaves which intersect the region.  Is cleared.
+	 */
+	public void findLeafsIntersect(Box3D_F64 region, GrowQueue_I32 output) {
+		output.reset();
+		if (leafKey.size > 0)
+			findLeafsIntersect(region, 0, 0, 0, leafKey.size, output);
+	}
+
+	private void findLeafsIntersect(Box3D_F64 region, int depth, long key, int leafS, int leafE,
+									GrowQueue_I32 output) {
+		Box3D_F64 nodeSpace = workSpace[depth];
+
+		// only one leaf in this branch, go straight to it
+		if (leafE - leafS == 1) {
+			computeSpace(leafDepth.data[leafS], leafKey.data[leafS], nodeSpace);
+			if (Intersection3D_F64.intersect(region, nodeSpace))
+				output.add(leafS);
+			return;
+		}
+
+		computeSpace(depth, key, nodeSpace);
+		if (!Intersection3D_F64.intersect(region, nodeSpace))
+			return;
+
+		int shift = 3 * (maxDepth - depth - 1);
+		int i = leafS;
+		while (i < leafE) {
+			long childKey = (leafKey.data[i] >>> shift) << shift;
+			int childEnd = upperBound(leafKey.data, i, leafE, childKey, shift);
+			findLeafsIntersect(region, depth + 1, childKey, i, childEnd, output);
+			i = childEnd;
+		}
+	}
+
+	/**
+	 * Finds all the points which are contained inside the region.
+	 *
+	 * @param region The region points are searched for inside of.  p0 is inclusive and p1 is exclusive.
+	 * @param output (Output) Indexes of the points in the original input.  Is cleared.
+	 */
+	public void findPointsInside(Box3D_F64 region, GrowQueue_I32 output) {
+		output.reset();
+		findLeafsIntersect(region, workLeaves);
+
+		for (int i = 0; i < workLeaves.size; i++) {
+			int leaf = workLeaves.data[i];
+			int end = leafStart.data[leaf + 1];
+			for (int j = leafStart.data[leaf]; j < end; j++) {
+				int index = order[j];
+				double px = x[index], py = y[index], pz = z[index];
+				if (px >= region.p0.x && px < region.p1.x && py >= region.p0.y && py < region.p1.y &&
+						pz >= region.p0.z && pz < region.p1.z)
+					output.add(index);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the description of a leaf
+	 *
+	 * @param index Index of the leaf.  0 to {@link #getLeafCount()}-1
+	 * @param node  (Output) Description of the leaf
+	 */
+	public void getLeaf(int index, Node node) {
+		node.depth = leafDepth.data[index];
+		node.key = leafKey.data[index];
+		node.start = leafStart.data[index];
+		node.end = leafStart.data[index + 1];
+	}
+
+	/**
+	 * Number of leaves in the tree.  Leaves are ordered by their keys.
+	 */
+	public int getLeafCount() {
+		return leafKey.size;
+	}
+
+	/**
+	 * Returns the index of a point in the input given its index in the sorted list.  The points inside of a node
+	 * have sorted indexes from {@link Node#start} to {@link Node#end}.
+	 */
+	public int getPointIndex(int sortedIndex) {
+		return order[sortedIndex];
+	}
+
+	/**
+	 * Number of points which are inside the tree
+	 */
+	public int getNumPoints() {
+		return numPoints;
+	}
+
+	/**
+	 * Number of points in the last call to construct which were outside the tree's space and ignored
+	 */
+	public int getNumOutside() {
+		return numOutside;
+	}
+
+	public Box3D_F64 getSpace() {
+		return space;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Description of a node in the tree
+	 */
+	public static class Node {
+		/**
+		 * Depth of the node.  The root has a depth of 0.
+		 */
+		public int depth;
+		/**
+		 * Smallest Morton key inside the node's space.  Only the upper 3*depth bits are set.
+		 */
+		public long key;
+		/**
+		 * Range of sorted points which are inside the node.  start is inclusive and end is exclusive.
+		 */
+		public int start, end;
+
+		public int getNumPoints() {
+			return end - start;
+		}
+	}
+}
@@ -85,6 +85,22 @@ public class Lrf2dPrecomputedTrig {
 		pt.y = s[index] * range;
 	}
 
+	/**
+	 * Computes the 2D coordinate of every LRF scan point.  Invalid ranges are not checked for and produce
+	 * invalid points, which keeps the loop free of branches.
+	 *
+	 * @param ranges The range of each scan from the sensor.
+	 * @param x      (Output) x-coordinate of each point.
+	 * @param y      (Output) y-coordinate of each point.
+	 */
+	public void computeEndPoints(double ranges[], double x[], double y[]) {
+		final int N = c.length;
+		for (int i = 0; i < N; i++) {
+			x[i] = c[i] * ranges[i];
+			y[i] = s[i] * ranges[i];
+		}
+	}
+
 	public void computeDirection( int index , Vector2D_F64 pt ) {
 		pt.x = c[index];
 		pt.y = s[index];
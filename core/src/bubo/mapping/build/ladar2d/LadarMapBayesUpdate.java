@@ -26,12 +26,34 @@ import bubo.desc.sensors.lrf2d.Lrf2dPrecomputedTrig;
 import bubo.log.streams.PositionRangeArrayData;
 import bubo.maps.d2.grid.GridMapSpacialInfo;
 import bubo.maps.d2.grid.OccupancyGrid2D_F32;
+import bubo.maps.d2.grid.impl.ArrayGrid2DBase;
+import bubo.maps.d2.grid.impl.LogOddsGrid2D_I8;
+import bubo.maps.d2.grid.impl.WrapOccupancy2D_I_to_F32;
+import bubo.metrics.Metrics;
+import bubo.metrics.MetricsRegistry;
+import bubo.struct.ConcurrentBlocks;
 import bubo.struct.StoppingCondition;
 import georegression.struct.point.Point2D_F64;
 import georegression.struct.se.Se2_F64;
 import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.struct.GrowQueue_F32;
+import org.ddogleg.struct.GrowQueue_I32;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
+ * Builds an occupancy grid map from LRF scans.  Two update modes are supported.  If initialized with an
+ * {@link OccupancyGrid2D_F32} then each cell is updated with a weighted floating point Bayesian update.  If
+ * initialized with a {@link LogOddsGrid2D_I8} then each cell is updated by adding a clamped integer change
+ * in log-odds, which is looked up from a table.
+ * <p></p>
+ * Beams can be integrated concurrently, see {@link #setNumThreads(int)}.  First the cells along each beam
+ * and their sensor probabilities are found in parallel, with each thread processing a contiguous block of
+ * beams.  The cells are sorted into the horizontal stripes of the map they fall inside, preserving the order of
+ * the beams.  Then each thread applies the updates for its stripes, going through the blocks in order.  Since
+ * each cell is updated in the same order as the single threaded code, the results are identical.
+ *
  * @author Peter Abeles
  */
 // todo improve weighting mechanism.  use probability theory there too?
@@ -56,6 +78,35 @@ public class LadarMapBayesUpdate extends LineGridGenericUpdate {
 
 	Se2_F64 estimatedCurrToWorld = new Se2_F64();
 
+	// map which is updated in log-odds mode.  null if in floating point mode
+	LogOddsGrid2D_I8 logOddsMap;
+	// change in log-odds for a sensor probability, sampled at discrete probabilities from 0 to 1
+	int logOddsChange[] = new int[256];
+
+	// used to integrate beams concurrently. null if single threaded
+	ConcurrentBlocks concurrent;
+	// storage for the beams processed by each block
+	List<BeamBlock> blocks = new ArrayList<BeamBlock>();
+	// number of rows in a stripe when the map is split between threads
+	int stripeBits = 3;
+
+	/**
+	 * Initializes the map builder in log-odds mode.  The map is read through a {@link WrapOccupancy2D_I_to_F32}
+	 * and the sensor probability is weighted by 'sensorWeight' the same as in floating point mode.
+	 */
+	public void init(Lrf2dParam param,
+					 LogOddsGrid2D_I8 map,
+					 GridMapSpacialInfo mapSpacial) {
+		init(param, new WrapOccupancy2D_I_to_F32(map), mapSpacial);
+		logOddsMap = map;
+
+		for (int i = 0; i < logOddsChange.length; i++) {
+			double p = i / (double) (logOddsChange.length - 1);
+			p = (p - 0.5) * sensorWeight + 0.5;
+			logOddsChange[i] = (int) Math.round(Math.log(p / (1.0 - p)) / map.getResolution());
+		}
+	}
+
 	public void init(Lrf2dParam param,
 					 OccupancyGrid2D_F32 map,
 					 GridMapSpacialInfo mapSpacial) {
@@ -63,6 +114,7 @@ public class LadarMapBayesUpdate extends LineGridGenericUpdate {
 		trig = new Lrf2dPrecomputedTrig(param);
 		this.map = map;
 		this.mapSpacial = mapSpacial;
+		this.logOddsMap = null;
 
 		if (scanMatching != null) {
 			scanMatching.setSensorParam(param);
@@ -71,15 +123,62 @@ public class LadarMapBayesUpdate extends LineGridGenericUpdate {
 		}
 	}
 
+	/**
+	 * Specifies the number of threads used to integrate the beams into the map.  The map is only written to
+	 * by multiple threads if it's a {@link ArrayGrid2DBase} or in log-odds mode, otherwise only the search
+	 * along each beam is done concurrently.
+	 *
+	 * @param numThreads Number of threads.  Must be &ge; 1.  Default is 1.
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads == getNumThreads())
+			return;
+		ConcurrentBlocks c = numThreads == 1 ? null : new ConcurrentBlocks(numThreads);
+		if (concurrent != null)
+			concurrent.shutdown();
+		concurrent = c;
+	}
+
+	public int getNumThreads() {
+		return concurrent == null ? 1 : concurrent.getNumThreads();
+	}
+
 	public Se2_F64 getPosition() {
 		return estimatedCurrToWorld;
 	}
 
 	public void process(PositionRangeArrayData ranges) {
+		MetricsRegistry metrics = Metrics.get();
+		if( metrics == null ) {
+			estimateMotion(ranges);
+			integrateBeams(ranges.getRange());
+			return;
+		}
 
-		final int N = param.getNumberOfScans();
-		double r[] = ranges.getRange();
+		// timers are stopped in finally so that a stage which fails is still recorded
+		MetricsRegistry.Timer timerProcess = metrics.startTimer(Metrics.MAPPING_PROCESS);
+		try {
+			MetricsRegistry.Timer timer = metrics.startTimer(Metrics.MAPPING_MOTION);
+			try {
+				estimateMotion(ranges);
+			} finally {
+				timer.stop();
+			}
+			timer = metrics.startTimer(Metrics.MAPPING_RAYS);
+			try {
+				integrateBeams(ranges.getRange());
+			} finally {
+				timer.stop();
+			}
+		} finally {
+			timerProcess.stop();
+		}
+	}
 
+	/**
+	 * Estimates the sensor's current location using scan matching or uses the provided location
+	 */
+	private void estimateMotion(PositionRangeArrayData ranges) {
 		// todo clean up variable naming for reference frames
 
 		if( scanMatching != null ) {
@@ -88,6 +187,18 @@ public class LadarMapBayesUpdate extends LineGridGenericUpdate {
 		} else {
 			estimatedCurrToWorld.set(ranges.getScanToWorld());
 		}
+	}
+
+	/**
+	 * Updates the map using all the beams in the scan
+	 */
+	private void integrateBeams(double r[]) {
+		final int N = param.getNumberOfScans();
+
+		if (concurrent != null) {
+			processConcurrent(r, N);
+			return;
+		}
 
 		double cellSize = mapSpacial.getCellSize();
 
@@ -125,6 +236,68 @@ public class LadarMapBayesUpdate extends LineGridGenericUpdate {
 
 	}
 
+	/**
+	 * Integrates the beams using multiple threads.  See class description.
+	 */
+	private void processConcurrent(final double r[], int N) {
+		final int numThreads = concurrent.getNumThreads();
+		while (blocks.size() < numThreads) {
+			blocks.add(new BeamBlock());
+		}
+		// a block is skipped if it has no beams
+		for (int i = 0; i < numThreads; i++) {
+			blocks.get(i).reset(numThreads);
+		}
+
+		// find the cells along each beam
+		concurrent.process(N, new ConcurrentBlocks.Block() {
+			@Override
+			public void process(int index, int start, int end) {
+				blocks.get(index).process(r, start, end);
+			}
+		});
+
+		// apply the updates
+		if (logOddsMap != null || map instanceof ArrayGrid2DBase) {
+			concurrent.process(numThreads, new ConcurrentBlocks.Block() {
+				@Override
+				public void process(int index, int start, int end) {
+					applyUpdates(index, numThreads);
+				}
+			});
+		} else {
+			applyUpdates(-1, numThreads);
+		}
+	}
+
+	/**
+	 * Applies all the updates inside the specified stripes in the same order as the beams
+	 *
+	 * @param stripe     Which stripes are updated. If -1 then all cells are updated.
+	 * @param numStripes Number of stripes the map is split into. Same as the number of blocks.
+	 */
+	private void applyUpdates(int stripe, int numStripes) {
+		for (int i = 0; i < numStripes; i++) {
+			BeamBlock b = blocks.get(i);
+			if (stripe == -1) {
+				// a cell is always in the same stripe, so its updates are still applied in order
+				for (int j = 0; j < numStripes; j++) {
+					applyUpdates(b.stripes.get(j));
+				}
+			} else {
+				applyUpdates(b.stripes.get(stripe));
+			}
+		}
+	}
+
+	private void applyUpdates(StripeCells cells) {
+		int xs[] = cells.cellX.data, ys[] = cells.cellY.data;
+		float ps[] = cells.prob.data;
+		for (int j = 0; j < cells.cellX.size; j++) {
+			applyUpdate(xs[j], ys[j], ps[j]);
+		}
+	}
+
 	/**
 	 * Updates a cell on the occupancy grid using a bayesian process.  The map observation
 	 * and sensor observation are weighted, preventing it from getting stuck at 0 and 1.
@@ -152,9 +325,91 @@ public class LadarMapBayesUpdate extends LineGridGenericUpdate {
 	@Override
 	protected void update(int x, int y, double dist) {
 		if (map.isInBounds(x, y)) {
-			float p = probability.computeProbability(dist);
+			applyUpdate(x, y, probability.computeProbability(dist));
+		}
+	}
 
+	/**
+	 * Updates the cell using the current update mode
+	 */
+	private void applyUpdate(int x, int y, float p) {
+		if (logOddsMap != null)
+			logOddsMap.addLogOdds(x, y, logOddsChange[(int) (p * (logOddsChange.length - 1) + 0.5f)]);
+		else
 			bayesUpdate(x, y, p);
+	}
+
+	/**
+	 * Finds the cells along a block of beams and saves them with their sensor probability.  Each block has
+	 * its own copy of everything which is modified.
+	 */
+	private class BeamBlock extends LineGridGenericUpdate {
+		LineRangeProbability probability = LadarMapBayesUpdate.this.probability.copy();
+		Point2D_F64 end = new Point2D_F64();
+		Point2D_F64 temp = new Point2D_F64();
+
+		// cells inside each stripe of the map, in the order of the beams
+		List<StripeCells> stripes = new ArrayList<StripeCells>();
+		int numStripes;
+
+		public void reset(int numStripes) {
+			while (stripes.size() < numStripes) {
+				stripes.add(new StripeCells());
+			}
+			for (int i = 0; i < numStripes; i++) {
+				stripes.get(i).reset();
+			}
+			this.numStripes = numStripes;
+		}
+
+		public void process(double r[], int start, int end) {
+			double cellSize = mapSpacial.getCellSize();
+			double x0 = (estimatedCurrToWorld.getX() - mapSpacial.getBl().getX()) / cellSize;
+			double y0 = (estimatedCurrToWorld.getY() - mapSpacial.getBl().getY()) / cellSize;
+
+			for (int i = start; i < end; i++) {
+				probability.setRangeMeasurement(r[i]);
+				double dist = r[i] + probability.lineExtension();
+
+				if (!param.isValidRange(dist)) {
+					continue;
+				}
+
+				trig.computeEndPoint(i, dist, this.end);
+				SePointOps_F64.transform(estimatedCurrToWorld, this.end.x, this.end.y, temp);
+
+				double x1 = (temp.getX() - mapSpacial.getBl().getX()) / cellSize;
+				double y1 = (temp.getY() - mapSpacial.getBl().getY()) / cellSize;
+
+				update(x0, y0, x1, y1, dist);
+			}
+		}
+
+		@Override
+		protected void update(int x, int y, double dist) {
+			if (map.isInBounds(x, y)) {
+				// maps without bounds can have negative coordinates
+				int stripe = ((y >> stripeBits) % numStripes + numStripes) % numStripes;
+				StripeCells cells = stripes.get(stripe);
+				cells.cellX.add(x);
+				cells.cellY.add(y);
+				cells.prob.add(probability.computeProbability(dist));
+			}
+		}
+	}
+
+	/**
+	 * Cells which are to be updated and their sensor probability
+	 */
+	private static class StripeCells {
+		GrowQueue_I32 cellX = new GrowQueue_I32();
+		GrowQueue_I32 cellY = new GrowQueue_I32();
+		GrowQueue_F32 prob = new GrowQueue_F32();
+
+		public void reset() {
+			cellX.reset();
+			cellY.reset();
+			prob.reset();
 		}
 	}
 
@@ -36,12 +36,16 @@ public class LineRangeGaussian implements LineRangeProbability {
 	// current range measurement
 	double rangeMeas;
 
+	// standard deviation of the distribution
+	double stdev;
+
 	/**
 	 * Creates a new LineRangeGaussian.
 	 *
 	 * @param stdev Distributions standard deviation.
 	 */
 	public LineRangeGaussian(double stdev) {
+		this.stdev = stdev;
 		var = stdev * stdev;
 
 		// compute the point at which it becomes essentially zero
@@ -75,4 +79,9 @@ public class LineRangeGaussian implements LineRangeProbability {
 			return 0.5f;
 		}
 	}
+
+	@Override
+	public LineRangeGaussian copy() {
+		return new LineRangeGaussian(stdev);
+	}
 }
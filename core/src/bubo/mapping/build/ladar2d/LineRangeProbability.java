@@ -51,4 +51,11 @@ public interface LineRangeProbability {
 	 * @return Probability that this is the true range.  Between 0 and 1.
 	 */
 	public float computeProbability(double dist);
+
+	/**
+	 * Creates a new instance with the same configuration.  Used to process measurements in parallel.
+	 *
+	 * @return A copy
+	 */
+	public LineRangeProbability copy();
 }
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.mapping.build.ladar3d;
+
+import bubo.maps.d3.grid.GridMapSpacialInfo3D;
+import bubo.maps.d3.grid.OccupancyGrid3D_F64;
+import bubo.struct.HashSet_I64;
+import georegression.struct.point.Point3D_F64;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Updates a 3D occupancy grid using a batch of range measurements which share the same sensor origin, such as
+ * the points from {@link bubo.desc.sensors.lrf3d.SpinningLrf2dScanToPoints}.  A ray is cast from the origin
+ * to each end point using {@link VoxelRayTraversal3D}.  The voxel containing the end point is
+ * marked as a hit and all the other voxels along the ray are marked as free.
+ * </p>
+ *
+ * <p>
+ * Voxels close to the sensor are passed through by many rays.  To avoid updating them multiple times, each
+ * voxel is first added to a set and then updated only once per batch.  If a voxel is both hit and passed
+ * through then it is only updated as a hit.  The update is done in log-odds space and the resulting
+ * probability is clamped so that the map can quickly adapt to changes.
+ * </p>
+ *
+ * <p>
+ * Rays are clipped to the map's bounds.  If a ray is longer than the maximum range, then it is shortened
+ * to the maximum range and its end is not considered a hit.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class RayBatchOccupancyUpdate3D extends VoxelRayTraversal3D {
+
+	// the map being updated
+	OccupancyGrid3D_F64 map;
+	// conversion from world to map coordinates
+	GridMapSpacialInfo3D spacial;
+
+	// change in log-odds for a hit and a pass through
+	double logOddsHit, logOddsMiss;
+	// range of allowed log-odds
+	double logOddsMin, logOddsMax;
+
+	// maximum length of a ray in world units.  If <= 0 then there is no limit
+	double maxRange = 0;
+
+	// voxels which are hit or are passed through by a ray
+	HashSet_I64 hits = new HashSet_I64();
+	HashSet_I64 free = new HashSet_I64();
+
+	// storage for points in map coordinates
+	Point3D_F64 origin = new Point3D_F64();
+	Point3D_F64 end = new Point3D_F64();
+	// storage for the range of the ray which is inside the map
+	double clipT[] = new double[2];
+
+	/**
+	 * Configures the update using probabilities
+	 *
+	 * @param probHit  Probability that a voxel is occupied given that it contains an end point.  0.5 to 1.
+	 * @param probMiss Probability that a voxel is occupied given that a ray passes through it.  0 to 0.5.
+	 * @param probMin  The lowest probability a voxel can have
+	 * @param probMax  The highest probability a voxel can have
+	 */
+	public RayBatchOccupancyUpdate3D(double probHit, double probMiss, double probMin, double probMax) {
+		if (probHit <= 0.5 || probHit >= 1)
+			throw new IllegalArgumentException("probHit must be between 0.5 and 1, exclusive");
+		if (probMiss <= 0 || probMiss >= 0.5)
+			throw new IllegalArgumentException("probMiss must be between 0 and 0.5, exclusive");
+		if (probMin <= 0 || probMin >= probMax || probMax >= 1)
+			throw new IllegalArgumentException("Must be 0 < probMin < probMax < 1");
+
+		logOddsHit = logOdds(probHit);
+		logOddsMiss = logOdds(probMiss);
+		logOddsMin = logOdds(probMin);
+		logOddsMax = logOdds(probMax);
+	}
+
+	/**
+	 * Default parameters, which are commonly used with LADAR sensors
+	 */
+	public RayBatchOccupancyUpdate3D() {
+		this(0.7, 0.4, 0.12, 0.97);
+	}
+
+	/**
+	 * Specifies the map which is to be updated
+	 *
+	 * @param map     The map
+	 * @param spacial Location of the map in the world and the size of its cells
+	 */
+	public void setMap(OccupancyGrid3D_F64 map, GridMapSpacialInfo3D spacial) {
+		this.map = map;
+		this.spacial = spacial;
+	}
+
+	/**
+	 * Updates the map using all the rays
+	 *
+	 * @param sensorOrigin Location of the sensor in world coordinates
+	 * @param endPoints    Location of each range measurement in world coordinates
+	 */
+	public void process(Point3D_F64 sensorOrigin, List<Point3D_F64> endPoints) {
+		hits.reset();
+		free.reset();
+
+		double cellSize = spacial.getCellSize();
+		spacial.canonicalToMap(sensorOrigin, origin);
+		origin.x /= cellSize;
+		origin.y /= cellSize;
+		origin.z /= cellSize;
+
+		double maxRangeGrid = maxRange / cellSize;
+
+		// find the voxels in all the rays
+		for (int i = 0; i < endPoints.size(); i++) {
+			spacial.canonicalToMap(endPoints.get(i), end);
+			end.x /= cellSize;
+			end.y /= cellSize;
+			end.z /= cellSize;
+
+			addRay(maxRangeGrid);
+		}
+
+		// update the map
+		for (int i = 0; i < free.values.size; i++) {
+			long key = free.values.data[i];
+			if (!hits.contains(key))
+				updateVoxel(key, logOddsMiss);
+		}
+		for (int i = 0; i < hits.values.size; i++) {
+			updateVoxel(hits.values.data[i], logOddsHit);
+		}
+	}
+
+	/**
+	 * Clips the ray from 'origin' to 'end' and adds the voxels it passes through to the appropriate sets
+	 */
+	private void addRay(double maxRangeGrid) {
+		double dx = end.x - origin.x, dy = end.y - origin.y, dz = end.z - origin.z;
+
+		// the fraction along the line which is inside of the map
+		double t[] = clipT;
+		t[0] = 0;
+		t[1] = 1;
+
+		if (maxRangeGrid > 0) {
+			double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+			if (length > maxRangeGrid)
+				t[1] = maxRangeGrid / length;
+		}
+
+		// Liang-Barsky clipping against the map's bounds
+		if (!clip(-dx, origin.x, t) || !clip(dx, map.getSizeX() - origin.x, t) ||
+				!clip(-dy, origin.y, t) || !clip(dy, map.getSizeY() - origin.y, t) ||
+				!clip(-dz, origin.z, t) || !clip(dz, map.getSizeZ() - origin.z, t))
+			return;
+
+		boolean hit = t[1] == 1;
+
+		traverse(origin.x + t[0] * dx, origin.y + t[0] * dy, origin.z + t[0] * dz,
+				origin.x + t[1] * dx, origin.y + t[1] * dy, origin.z + t[1] * dz, !hit);
+
+		if (hit) {
+			int x = (int) Math.floor(end.x), y = (int) Math.floor(end.y), z = (int) Math.floor(end.z);
+			if (map.isInBounds(x, y, z))
+				hits.add(key(x, y, z));
+		}
+	}
+
+	/**
+	 * Updates the range [t[0],t[1]] using the constraint p*t &le; q
+	 *
+	 * @return false if the range is empty
+	 */
+	private static boolean clip(double p, double q, double t[]) {
+		if (p == 0)
+			return q >= 0;
+
+		double r = q / p;
+		if (p < 0) {
+			if (r > t[1])
+				return false;
+			if (r > t[0])
+				t[0] = r;
+		} else {
+			if (r < t[0])
+				return false;
+			if (r < t[1])
+				t[1] = r;
+		}
+		return true;
+	}
+
+	@Override
+	protected void visit(int x, int y, int z) {
+		// clipping can leave the ray touching the upper boundary
+		if (map.isInBounds(x, y, z))
+			free.add(key(x, y, z));
+	}
+
+	private void updateVoxel(long key, double change) {
+		int x = (int) (key & 0x1FFFFF);
+		int y = (int) ((key >>> 21) & 0x1FFFFF);
+		int z = (int) (key >>> 42);
+
+		double p = map.get(x, y, z);
+		double l = logOdds(p) + change;
+		if (l < logOddsMin)
+			l = logOddsMin;
+		else if (l > logOddsMax)
+			l = logOddsMax;
+
+		map.set(x, y, z, 1.0 / (1.0 + Math.exp(-l)));
+	}
+
+	/**
+	 * Packs the coordinate of a voxel into a key.  Coordinates must be non-negative.
+	 */
+	static long key(int x, int y, int z) {
+		return (long) x | ((long) y << 21) | ((long) z << 42);
+	}
+
+	static double logOdds(double p) {
+		return Math.log(p / (1.0 - p));
+	}
+
+	/**
+	 * Number of unique voxels which were marked as hit in the most recent batch
+	 */
+	public int getNumHits() {
+		return hits.size();
+	}
+
+	/**
+	 * Number of unique voxels which were passed through in the most recent batch.  This includes voxels which
+	 * were also hit.
+	 */
+	public int getNumFree() {
+		return free.size();
+	}
+
+	public double getMaxRange() {
+		return maxRange;
+	}
+
+	/**
+	 * Specifies the maximum range of a ray in world units.  If &le; 0 then there is no limit.
+	 */
+	public void setMaxRange(double maxRange) {
+		this.maxRange = maxRange;
+	}
+}
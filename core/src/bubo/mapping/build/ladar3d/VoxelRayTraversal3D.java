@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.mapping.build.ladar3d;
+
+/**
+ * <p>
+ * Traverses every voxel which a line segment passes through, using the algorithm from [1].  This is the 3D
+ * counterpart to {@link bubo.mapping.build.ladar2d.LineGridGenericUpdate}, but unlike Bresenham's algorithm no
+ * voxel which the line passes through is skipped.  Voxel (i,j,k) is the cube from (i,j,k) to (i+1,j+1,k+1)
+ * in grid coordinates.
+ * </p>
+ *
+ * <p>
+ * [1] John Amanatides and Andrew Woo, "A Fast Voxel Traversal Algorithm for Ray Tracing", Eurographics 1987
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public abstract class VoxelRayTraversal3D {
+
+	/**
+	 * Visits each voxel along the line, starting with the voxel which contains (x0,y0,z0) and ending with
+	 * the voxel which contains (x1,y1,z1).  All points are in grid coordinates.  Consecutive voxels share a face.
+	 *
+	 * @param includeEnd If true the last voxel is visited, otherwise it is skipped
+	 */
+	public void traverse(double x0, double y0, double z0, double x1, double y1, double z1, boolean includeEnd) {
+		int x = (int) Math.floor(x0), y = (int) Math.floor(y0), z = (int) Math.floor(z0);
+		int endX = (int) Math.floor(x1), endY = (int) Math.floor(y1), endZ = (int) Math.floor(z1);
+
+		double dx = x1 - x0, dy = y1 - y0, dz = z1 - z0;
+
+		int stepX = endX > x ? 1 : -1;
+		int stepY = endY > y ? 1 : -1;
+		int stepZ = endZ > z ? 1 : -1;
+
+		// distance along the line, as a fraction of its length, to move between voxel boundaries
+		double deltaX = dx == 0 ? Double.MAX_VALUE : Math.abs(1.0 / dx);
+		double deltaY = dy == 0 ? Double.MAX_VALUE : Math.abs(1.0 / dy);
+		double deltaZ = dz == 0 ? Double.MAX_VALUE : Math.abs(1.0 / dz);
+
+		// location along the line where it crosses the next voxel boundary
+		double maxX = dx == 0 ? Double.MAX_VALUE : (stepX > 0 ? x + 1 - x0 : x0 - x) * deltaX;
+		double maxY = dy == 0 ? Double.MAX_VALUE : (stepY > 0 ? y + 1 - y0 : y0 - y) * deltaY;
+		double maxZ = dz == 0 ? Double.MAX_VALUE : (stepZ > 0 ? z + 1 - z0 : z0 - z) * deltaZ;
+
+		// The number of steps is known in advance, which makes it immune to round off errors
+		int N = Math.abs(endX - x) + Math.abs(endY - y) + Math.abs(endZ - z);
+
+		if (N == 0) {
+			if (includeEnd)
+				visit(x, y, z);
+			return;
+		}
+
+		visit(x, y, z);
+		for (int i = 1; i < N; i++) {
+			// move along the axis which crosses a boundary first. Axes which are at their end can't be selected
+			if (x != endX && (y == endY || maxX <= maxY) && (z == endZ || maxX <= maxZ)) {
+				x += stepX;
+				maxX += deltaX;
+			} else if (y != endY && (z == endZ || maxY <= maxZ)) {
+				y += stepY;
+				maxY += deltaY;
+			} else {
+				z += stepZ;
+				maxZ += deltaZ;
+			}
+			visit(x, y, z);
+		}
+
+		if (includeEnd)
+			visit(endX, endY, endZ);
+	}
+
+	/**
+	 * Called for each voxel which the line passes through
+	 *
+	 * @param x x-axis in map grid coordinates.
+	 * @param y y-axis in map grid coordinates.
+	 * @param z z-axis in map grid coordinates.
+	 */
+	protected abstract void visit(int x, int y, int z);
+}
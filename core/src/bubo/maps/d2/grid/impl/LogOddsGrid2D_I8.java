@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.maps.d2.grid.impl;
+
+import bubo.maps.d2.grid.OccupancyGrid2D_I;
+
+/**
+ * <p>
+ * Dense array occupancy grid which stores the log-odds of each cell as a signed byte.  The log-odds is
+ * stored in fixed point with the specified resolution, e.g. if the resolution is 0.05 then a stored value
+ * of 20 is a log-odds of 1.0.  Values are clamped to be between -{@link #LIMIT} and {@link #LIMIT}.  Zero
+ * is unknown.  Since Bayesian updates are additive in log-odds space, an update is a single integer addition
+ * with {@link #addLogOdds}.  It uses a quarter of the memory of {@link ArrayGrid2D_F32}.
+ * </p>
+ *
+ * <p>
+ * To be compatible with other integer maps, {@link #get} and {@link #set} use probabilities scaled to be
+ * from 0 to {@link #MAX}, which are converted with lookup tables.  Wrap the map with
+ * {@link WrapOccupancy2D_I_to_F32} to read it as a floating point probability map.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class LogOddsGrid2D_I8 extends ArrayGrid2DBase implements OccupancyGrid2D_I {
+
+	public static final int MAX = 255;
+	/**
+	 * The largest magnitude of a stored log-odds value
+	 */
+	public static final int LIMIT = 127;
+
+	// grid map in a row major format
+	private byte data[];
+
+	// log-odds of one increment
+	private double resolution;
+
+	// converts log-odds + LIMIT into a scaled probability
+	private int toProbability[] = new int[2 * LIMIT + 1];
+	// converts a scaled probability into log-odds
+	private byte toLogOdds[] = new byte[MAX + 1];
+
+	/**
+	 * Creates a map where all the cells are unknown
+	 *
+	 * @param width      Number of cells along the x-axis
+	 * @param height     Number of cells along the y-axis
+	 * @param resolution The log-odds of a single increment.  Try 0.05.
+	 */
+	public LogOddsGrid2D_I8(int width, int height, double resolution) {
+		super(width, height);
+		if (resolution <= 0)
+			throw new IllegalArgumentException("resolution must be positive");
+
+		this.resolution = resolution;
+		data = new byte[width * height];
+
+		for (int i = -LIMIT; i <= LIMIT; i++) {
+			double p = 1.0 / (1.0 + Math.exp(-i * resolution));
+			toProbability[i + LIMIT] = (int) (MAX * p);
+		}
+		for (int i = 0; i <= MAX; i++) {
+			toLogOdds[i] = (byte) probabilityToLogOdds(i / (double) MAX);
+		}
+		// make sure unknown is converted back into unknown
+		toLogOdds[toProbability[LIMIT]] = 0;
+	}
+
+	/**
+	 * Converts a probability into fixed point log-odds and clamps it
+	 *
+	 * @param p probability from 0 to 1
+	 * @return log-odds from -LIMIT to LIMIT
+	 */
+	public int probabilityToLogOdds(double p) {
+		if (p <= 0)
+			return -LIMIT;
+		if (p >= 1)
+			return LIMIT;
+		long l = Math.round(Math.log(p / (1.0 - p)) / resolution);
+		return (int) Math.max(-LIMIT, Math.min(LIMIT, l));
+	}
+
+	/**
+	 * Adds the change in log-odds to the cell.  The result is clamped.
+	 *
+	 * @param x     x-coordinate of the cell.
+	 * @param y     y-coordinate of the cell.
+	 * @param delta Change in fixed point log-odds
+	 */
+	public void addLogOdds(int x, int y, int delta) {
+		int index = y * width + x;
+		data[index] = (byte) Math.max(-LIMIT, Math.min(LIMIT, data[index] + delta));
+	}
+
+	/**
+	 * Returns the fixed point log-odds of a cell
+	 */
+	public int getLogOdds(int x, int y) {
+		return data[y * width + x];
+	}
+
+	/**
+	 * Sets the fixed point log-odds of a cell.  Must be from -LIMIT to LIMIT.
+	 */
+	public void setLogOdds(int x, int y, int value) {
+		data[y * width + x] = (byte) value;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < data.length; i++) {
+			data[i] = 0;
+		}
+	}
+
+	@Override
+	public void set(int x, int y, int value) {
+		data[y * width + x] = toLogOdds[value];
+	}
+
+	@Override
+	public int get(int x, int y) {
+		return toProbability[data[y * width + x] + LIMIT];
+	}
+
+	@Override
+	public boolean isKnown(int x, int y) {
+		return data[y * width + x] != 0;
+	}
+
+	@Override
+	public int getMaxValue() {
+		return MAX;
+	}
+
+	@Override
+	public int getUnknown() {
+		return toProbability[LIMIT];
+	}
+
+	@Override
+	public boolean isValid(int value) {
+		return value >= 0 && value <= MAX;
+	}
+
+	public double getResolution() {
+		return resolution;
+	}
+
+	@Override
+	public LogOddsGrid2D_I8 copy() {
+		LogOddsGrid2D_I8 ret = new LogOddsGrid2D_I8(width, height, resolution);
+
+		System.arraycopy(data, 0, ret.data, 0, data.length);
+
+		return ret;
+	}
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.maps.d2.grid.impl;
+
+import bubo.maps.d2.grid.OccupancyGrid2D_F32;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * Floating point occupancy grid which is composed of square tiles which are declared the first time a cell
+ * inside of them is assigned a value.  Tiles are found using a hash table keyed by the tile's coordinate, so
+ * reading and writing a cell takes constant time and the map can grow without bounds in any direction,
+ * including negative coordinates.  Cells inside of tiles which have not been declared are unknown.
+ * </p>
+ *
+ * <p>
+ * Since there are no bounds, {@link #isInBounds} always returns true.  {@link #getWidth()} and
+ * {@link #getHeight()} return the size of the smallest region which contains all the tiles and
+ * {@link #getMinX()} and {@link #getMinY()} its lowest coordinate.
+ * </p>
+ *
+ * <p>
+ * Tiles which have not been accessed recently can be compressed by calling {@link #compressCold(int)}
+ * periodically, e.g. after each scan has been added.  Compression is lossless and a compressed tile is
+ * automatically decompressed the next time it is accessed.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class TiledGrid2D_F32 implements OccupancyGrid2D_F32 {
+
+	// value of a cell which is unknown
+	public static final float UNKNOWN = 0.5f;
+	// marks a slot in the table which is empty
+	private static final int EMPTY = -1;
+
+	// number of bits in a tile's coordinate
+	private int tileBits;
+	// the length of a side in a tile
+	private int tileLength;
+	private int tileMask;
+
+	// all the tiles in the order they were declared
+	private List<Tile> tiles = new ArrayList<Tile>();
+
+	// hash table. Key of the tile and index of the tile in each slot
+	private long tableKeys[];
+	private int tableTiles[];
+	private int tableMask;
+
+	// the most recently accessed tile
+	private Tile cached;
+	private long cachedKey;
+
+	// extent of all the tiles in tile coordinates
+	private int tileMinX, tileMinY, tileMaxX, tileMaxY;
+
+	// incremented each time compressCold() is called
+	private int epoch;
+
+	// used to compress and decompress tiles
+	private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private Inflater inflater = new Inflater();
+	private byte work[];
+
+	/**
+	 * Creates a map with no tiles
+	 *
+	 * @param tileBits Number of bits in the coordinate of a cell inside a tile.  A tile is 2<sup>tileBits</sup>
+	 *                 cells along each side.  Try 6.
+	 */
+	public TiledGrid2D_F32(int tileBits) {
+		if (tileBits < 1 || tileBits > 12)
+			throw new IllegalArgumentException("tileBits must be from 1 to 12");
+
+		this.tileBits = tileBits;
+		this.tileLength = 1 << tileBits;
+		this.tileMask = tileLength - 1;
+
+		work = new byte[tileLength * tileLength * 4 + 64];
+		clear();
+	}
+
+	public TiledGrid2D_F32() {
+		this(6);
+	}
+
+	@Override
+	public void set(int x, int y, float value) {
+		Tile tile = lookup(x >> tileBits, y >> tileBits);
+		if (tile == null)
+			tile = addTile(x >> tileBits, y >> tileBits);
+
+		tile.data[((y & tileMask) << tileBits) + (x & tileMask)] = value;
+	}
+
+	@Override
+	public float get(int x, int y) {
+		Tile tile = lookup(x >> tileBits, y >> tileBits);
+		if (tile == null)
+			return UNKNOWN;
+
+		return tile.data[((y & tileMask) << tileBits) + (x & tileMask)];
+	}
+
+	@Override
+	public boolean isKnown(int x, int y) {
+		return get(x, y) != UNKNOWN;
+	}
+
+	@Override
+	public boolean isValid(float value) {
+		return value >= 0f && value <= 1f;
+	}
+
+	/**
+	 * Discards all the tiles
+	 */
+	@Override
+	public void clear() {
+		tiles.clear();
+		declareTable(64);
+		cached = null;
+		tileMinX = tileMinY = Integer.MAX_VALUE;
+		tileMaxX = tileMaxY = Integer.MIN_VALUE;
+	}
+
+	/**
+	 * Always returns true since the map grows as needed
+	 */
+	@Override
+	public boolean isInBounds(int x, int y) {
+		return true;
+	}
+
+	/**
+	 * Width of the region which contains all the tiles
+	 */
+	@Override
+	public int getWidth() {
+		return tiles.isEmpty() ? 0 : (tileMaxX - tileMinX + 1) * tileLength;
+	}
+
+	/**
+	 * Height of the region which contains all the tiles
+	 */
+	@Override
+	public int getHeight() {
+		return tiles.isEmpty() ? 0 : (tileMaxY - tileMinY + 1) * tileLength;
+	}
+
+	/**
+	 * Lowest x-coordinate of a cell in the region which contains all the tiles
+	 */
+	public int getMinX() {
+		return tiles.isEmpty() ? 0 : tileMinX * tileLength;
+	}
+
+	/**
+	 * Lowest y-coordinate of a cell in the region which contains all the tiles
+	 */
+	public int getMinY() {
+		return tiles.isEmpty() ? 0 : tileMinY * tileLength;
+	}
+
+	/**
+	 * Finds the tile with the specified coordinate and decompresses it if needed
+	 *
+	 * @return The tile or null if it has not been declared
+	 */
+	private Tile lookup(int tileX, int tileY) {
+		long key = key(tileX, tileY);
+		if (cached != null && key == cachedKey)
+			return cached;
+
+		int i = slot(key);
+		while (true) {
+			int index = tableTiles[i];
+			if (index == EMPTY)
+				return null;
+			if (tableKeys[i] == key) {
+				Tile tile = tiles.get(index);
+				touch(tile);
+				cached = tile;
+				cachedKey = key;
+				return tile;
+			}
+			i = (i + 1) & tableMask;
+		}
+	}
+
+	private Tile addTile(int tileX, int tileY) {
+		Tile tile = new Tile();
+		tile.x = tileX;
+		tile.y = tileY;
+		tile.data = new float[tileLength * tileLength];
+		Arrays.fill(tile.data, UNKNOWN);
+		tile.lastEpoch = epoch;
+
+		tiles.add(tile);
+		// keep the load factor at or below 0.5
+		if (tiles.size() * 2 > tableKeys.length) {
+			declareTable(tableKeys.length * 2);
+			for (int i = 0; i < tiles.size() - 1; i++) {
+				Tile t = tiles.get(i);
+				insert(key(t.x, t.y), i);
+			}
+		}
+		insert(key(tileX, tileY), tiles.size() - 1);
+
+		tileMinX = Math.min(tileMinX, tileX);
+		tileMinY = Math.min(tileMinY, tileY);
+		tileMaxX = Math.max(tileMaxX, tileX);
+		tileMaxY = Math.max(tileMaxY, tileY);
+
+		cached = tile;
+		cachedKey = key(tileX, tileY);
+		return tile;
+	}
+
+	private void declareTable(int size) {
+		tableKeys = new long[size];
+		tableTiles = new int[size];
+		tableMask = size - 1;
+		Arrays.fill(tableTiles, EMPTY);
+	}
+
+	private void insert(long key, int index) {
+		int i = slot(key);
+		while (tableTiles[i] != EMPTY) {
+			i = (i + 1) & tableMask;
+		}
+		tableKeys[i] = key;
+		tableTiles[i] = index;
+	}
+
+	private static long key(int tileX, int tileY) {
+		return ((long) tileY << 32) | (tileX & 0xFFFFFFFFL);
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & tableMask;
+	}
+
+	/**
+	 * Marks the tile as being recently used and decompresses it if needed
+	 */
+	private void touch(Tile tile) {
+		tile.lastEpoch = epoch;
+		if (tile.compressed != null)
+			decompress(tile);
+	}
+
+	/**
+	 * Compresses all the tiles which have not been accessed between the last 'maxAge' calls to this function,
+	 * including this call.
+	 *
+	 * @param maxAge Number of calls a tile can go without being accessed before it is compressed.  &ge; 1
+	 * @return Number of tiles which were compressed
+	 */
+	public int compressCold(int maxAge) {
+		// the cached tile can be accessed without updating its age, so it's always considered recently used
+		if (cached != null)
+			cached.lastEpoch = epoch;
+		cached = null;
+		epoch++;
+
+		int total = 0;
+		for (int i = 0; i < tiles.size(); i++) {
+			Tile tile = tiles.get(i);
+			if (tile.compressed == null && epoch - tile.lastEpoch > maxAge) {
+				compress(tile);
+				total++;
+			}
+		}
+		return total;
+	}
+
+	private void compress(Tile tile) {
+		float data[] = tile.data;
+		for (int i = 0, j = 0; i < data.length; i++) {
+			int bits = Float.floatToRawIntBits(data[i]);
+			work[j++] = (byte) (bits >>> 24);
+			work[j++] = (byte) (bits >>> 16);
+			work[j++] = (byte) (bits >>> 8);
+			work[j++] = (byte) bits;
+		}
+
+		deflater.reset();
+		deflater.setInput(work, 0, data.length * 4);
+		deflater.finish();
+		byte output[] = new byte[64];
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == output.length)
+				output = Arrays.copyOf(output, output.length * 2);
+			length += deflater.deflate(output, length, output.length - length);
+		}
+
+		tile.compressed = Arrays.copyOf(output, length);
+		tile.data = null;
+	}
+
+	private void decompress(Tile tile) {
+		inflater.reset();
+		inflater.setInput(tile.compressed);
+		int length = tileLength * tileLength * 4;
+		try {
+			int total = 0;
+			while (total < length) {
+				int found = inflater.inflate(work, total, length - total);
+				if (found == 0 && (inflater.finished() || inflater.needsInput()))
+					throw new RuntimeException("Compressed tile is truncated");
+				total += found;
+			}
+		} catch (DataFormatException e) {
+			throw new RuntimeException(e);
+		}
+
+		float data[] = new float[tileLength * tileLength];
+		for (int i = 0, j = 0; i < data.length; i++, j += 4) {
+			int bits = (work[j] & 0xFF) << 24 | (work[j + 1] & 0xFF) << 16 | (work[j + 2] & 0xFF) << 8 | (work[j + 3] & 0xFF);
+			data[i] = Float.intBitsToFloat(bits);
+		}
+		tile.data = data;
+		tile.compressed = null;
+	}
+
+	/**
+	 * Number of tiles which have been declared.
+	 */
+	public int getNumTiles() {
+		return tiles.size();
+	}
+
+	/**
+	 * Returns a tile which has been declared.  Tiles are ordered by when they were declared.
+	 *
+	 * @param index Index of the tile. 0 to {@link #getNumTiles()}-1
+	 */
+	public Tile getTile(int index) {
+		return tiles.get(index);
+	}
+
+	/**
+	 * Returns the value of all the cells inside the tile, decompressing the tile if needed.  The cell at
+	 * (x,y) inside the tile is at index y*length + x.
+	 */
+	public float[] getTileData(Tile tile) {
+		touch(tile);
+		return tile.data;
+	}
+
+	/**
+	 * Number of cells along each side of a tile
+	 */
+	public int getTileLength() {
+		return tileLength;
+	}
+
+	/**
+	 * A square region in the map
+	 */
+	public static class Tile {
+		// coordinate of the tile.  The tile's first cell is at (x*length,y*length)
+		int x, y;
+		// value of each cell.  null if compressed
+		float data[];
+		// the compressed cells.  null if not compressed
+		byte compressed[];
+		// value of epoch when the tile was last accessed
+		int lastEpoch;
+
+		public int getX() {
+			return x;
+		}
+
+		public int getY() {
+			return y;
+		}
+
+		public boolean isCompressed() {
+			return compressed != null;
+		}
+	}
+}
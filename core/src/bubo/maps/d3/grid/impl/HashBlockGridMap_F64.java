@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.maps.d3.grid.impl;
+
+import bubo.maps.d3.grid.CellProbability_F64;
+import bubo.maps.d3.grid.OccupancyGrid3D_F64;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * Sparse 3D map where cells are grouped into blocks of 8x8x8 cells and the blocks are stored in a hash table.
+ * A block is only declared once a cell inside of it has been assigned a value.  Reading and writing to a cell
+ * takes constant time, unlike {@link OctreeGridMap_F64} which needs to traverse the tree from its root.
+ * </p>
+ *
+ * <p>
+ * The hash table uses open addressing with linear probing and is keyed by the block's coordinate packed into
+ * a long.  The value of each cell is stored in a single array, with each block occupying a contiguous
+ * section of it.  No objects are declared per cell or block, which makes {@link #copy()} and
+ * {@link #clear()} cheap array operations.  Cells which have not been assigned a value are internally
+ * marked with NaN, so changing the default value takes effect immediately.
+ * </p>
+ *
+ * <p>
+ * The most recently accessed block is cached, which speeds up the common case of a sequence of operations
+ * on cells which are near each other.  This map is not thread safe, even for read only operations.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class HashBlockGridMap_F64 implements OccupancyGrid3D_F64 {
+
+	/**
+	 * Number of bits used to specify a cell's coordinate inside a block along each axis
+	 */
+	public static final int BLOCK_BITS = 3;
+	/**
+	 * Number of cells along each side of a block
+	 */
+	public static final int BLOCK_LENGTH = 1 << BLOCK_BITS;
+	/**
+	 * Number of cells in a block
+	 */
+	public static final int BLOCK_CELLS = BLOCK_LENGTH * BLOCK_LENGTH * BLOCK_LENGTH;
+
+	private static final int MASK = BLOCK_LENGTH - 1;
+	// marks a slot in the table which is empty
+	private static final int EMPTY = -1;
+
+	// value of cells with no information
+	double defaultValue = 0.5;
+
+	// size of the map
+	int lengthX, lengthY, lengthZ;
+
+	// hash table.  The block's key and index of the block in each slot
+	long tableKeys[];
+	int tableBlocks[];
+	// mask used to convert a hash into a slot in the table. The table's size is always a power of two
+	int tableMask;
+
+	// the key for each block, used when rehashing and iterating
+	long blockKeys[];
+	// value of each cell.  Block i is stored in elements i*BLOCK_CELLS to (i+1)*BLOCK_CELLS-1
+	double cells[];
+	// number of blocks which have been declared
+	int numBlocks;
+
+	// most recently accessed block
+	long cachedKey = -1;
+	int cachedBlock = EMPTY;
+
+	/**
+	 * Creates a new map with the specified number of cells along each axis
+	 *
+	 * @param lengthX Number of map cells along x-axis
+	 * @param lengthY Number of map cells along y-axis
+	 * @param lengthZ Number of map cells along z-axis
+	 */
+	public HashBlockGridMap_F64(int lengthX, int lengthY, int lengthZ) {
+		if (lengthX <= 0 || lengthY <= 0 || lengthZ <= 0)
+			throw new IllegalArgumentException("The length of each axis must be positive");
+		// each block coordinate is packed into 21-bits of the key
+		if (Math.max(lengthX, Math.max(lengthY, lengthZ)) > 1 << (21 + BLOCK_BITS))
+			throw new IllegalArgumentException("The map is too large");
+
+		this.lengthX = lengthX;
+		this.lengthY = lengthY;
+		this.lengthZ = lengthZ;
+
+		declareTable(64);
+		blockKeys = new long[16];
+		cells = new double[16 * BLOCK_CELLS];
+	}
+
+	private void declareTable(int size) {
+		tableKeys = new long[size];
+		tableBlocks = new int[size];
+		tableMask = size - 1;
+		Arrays.fill(tableBlocks, EMPTY);
+	}
+
+	@Override
+	public void set(int x, int y, int z, double value) {
+		if (!isInBounds(x, y, z))
+			throw new IllegalArgumentException("Coordinate is outside the map: " + x + " " + y + " " + z);
+
+		long key = blockKey(x, y, z);
+		int block = lookupBlock(key);
+		if (block == EMPTY)
+			block = addBlock(key);
+
+		cells[block * BLOCK_CELLS + cellIndex(x, y, z)] = value;
+	}
+
+	@Override
+	public double get(int x, int y, int z) {
+		if (!isInBounds(x, y, z))
+			return defaultValue;
+
+		int block = lookupBlock(blockKey(x, y, z));
+		if (block == EMPTY)
+			return defaultValue;
+
+		double value = cells[block * BLOCK_CELLS + cellIndex(x, y, z)];
+		return Double.isNaN(value) ? defaultValue : value;
+	}
+
+	/**
+	 * Packs the coordinate of the block which contains the cell into a key
+	 */
+	static long blockKey(int x, int y, int z) {
+		return (long) (x >> BLOCK_BITS) | ((long) (y >> BLOCK_BITS) << 21) | ((long) (z >> BLOCK_BITS) << 42);
+	}
+
+	/**
+	 * Index of a cell inside of its block
+	 */
+	static int cellIndex(int x, int y, int z) {
+		return ((z & MASK) << (2 * BLOCK_BITS)) | ((y & MASK) << BLOCK_BITS) | (x & MASK);
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & tableMask;
+	}
+
+	/**
+	 * Finds the block which has the specified key
+	 *
+	 * @return index of the block or EMPTY if it hasn't been declared
+	 */
+	private int lookupBlock(long key) {
+		if (key == cachedKey)
+			return cachedBlock;
+
+		int i = slot(key);
+		while (true) {
+			int block = tableBlocks[i];
+			if (block == EMPTY)
+				return EMPTY;
+			if (tableKeys[i] == key) {
+				cachedKey = key;
+				cachedBlock = block;
+				return block;
+			}
+			i = (i + 1) & tableMask;
+		}
+	}
+
+	/**
+	 * Declares a new block with all of its cells unknown and adds it to the table
+	 */
+	private int addBlock(long key) {
+		if (numBlocks == blockKeys.length) {
+			blockKeys = Arrays.copyOf(blockKeys, numBlocks * 2);
+			cells = Arrays.copyOf(cells, numBlocks * 2 * BLOCK_CELLS);
+		}
+
+		int block = numBlocks++;
+		blockKeys[block] = key;
+		Arrays.fill(cells, block * BLOCK_CELLS, (block + 1) * BLOCK_CELLS, Double.NaN);
+
+		// keep the load factor at or below 0.5
+		if (numBlocks * 2 > tableKeys.length) {
+			declareTable(tableKeys.length * 2);
+			for (int i = 0; i < numBlocks - 1; i++) {
+				insert(blockKeys[i], i);
+			}
+		}
+		insert(key, block);
+
+		cachedKey = key;
+		cachedBlock = block;
+		return block;
+	}
+
+	private void insert(long key, int block) {
+		int i = slot(key);
+		while (tableBlocks[i] != EMPTY) {
+			i = (i + 1) & tableMask;
+		}
+		tableKeys[i] = key;
+		tableBlocks[i] = block;
+	}
+
+	@Override
+	public boolean isValid(double value) {
+		return value >= 0 && value <= 1;
+	}
+
+	@Override
+	public double getDefaultValue() {
+		return defaultValue;
+	}
+
+	@Override
+	public void setDefaultValue(double value) {
+		defaultValue = value;
+	}
+
+	@Override
+	public Iterator<CellProbability_F64> iteratorKnown() {
+		return new BlockIterator();
+	}
+
+	@Override
+	public HashBlockGridMap_F64 copy() {
+		HashBlockGridMap_F64 ret = new HashBlockGridMap_F64(lengthX, lengthY, lengthZ);
+		ret.defaultValue = defaultValue;
+		ret.tableKeys = tableKeys.clone();
+		ret.tableBlocks = tableBlocks.clone();
+		ret.tableMask = tableMask;
+		ret.blockKeys = blockKeys.clone();
+		ret.cells = Arrays.copyOf(cells, blockKeys.length * BLOCK_CELLS);
+		ret.numBlocks = numBlocks;
+		return ret;
+	}
+
+	/**
+	 * Discards all the blocks.  Memory is saved and reused.
+	 */
+	@Override
+	public void clear() {
+		Arrays.fill(tableBlocks, EMPTY);
+		numBlocks = 0;
+		cachedKey = -1;
+		cachedBlock = EMPTY;
+	}
+
+	@Override
+	public boolean isInBounds(int x, int y, int z) {
+		return x >= 0 && y >= 0 && z >= 0 && x < lengthX && y < lengthY && z < lengthZ;
+	}
+
+	@Override
+	public boolean isDefault(int x, int y, int z) {
+		return get(x, y, z) == defaultValue;
+	}
+
+	@Override
+	public int getSizeX() {
+		return lengthX;
+	}
+
+	@Override
+	public int getSizeY() {
+		return lengthY;
+	}
+
+	@Override
+	public int getSizeZ() {
+		return lengthZ;
+	}
+
+	/**
+	 * Number of blocks which have been declared
+	 */
+	public int getNumBlocks() {
+		return numBlocks;
+	}
+
+	/**
+	 * Iterates through each cell in each block, skipping cells which are unknown
+	 */
+	private class BlockIterator implements Iterator<CellProbability_F64> {
+
+		// index of the next cell in the cells array
+		int index;
+		CellProbability_F64 storage = new CellProbability_F64();
+
+		public BlockIterator() {
+			searchNext();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < numBlocks * BLOCK_CELLS;
+		}
+
+		@Override
+		public CellProbability_F64 next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			int block = index / BLOCK_CELLS;
+			int cell = index % BLOCK_CELLS;
+			long key = blockKeys[block];
+
+			storage.x = (int) (key & 0x1FFFFF) << BLOCK_BITS | (cell & MASK);
+			storage.y = (int) ((key >>> 21) & 0x1FFFFF) << BLOCK_BITS | ((cell >> BLOCK_BITS) & MASK);
+			storage.z = (int) (key >>> 42) << BLOCK_BITS | (cell >> (2 * BLOCK_BITS));
+			storage.probability = cells[index];
+
+			index++;
+			searchNext();
+			return storage;
+		}
+
+		protected void searchNext() {
+			int end = numBlocks * BLOCK_CELLS;
+			while (index < end) {
+				double v = cells[index];
+				if (!Double.isNaN(v) && v != defaultValue)
+					break;
+				index++;
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new RuntimeException("Remove is not supported");
+		}
+	}
+}
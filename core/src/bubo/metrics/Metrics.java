@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.metrics;
+
+/**
+ * <p>
+ * Global access to the {@link MetricsRegistry} which instrumented code reports to.  By default there is no
+ * registry and instrumentation is disabled.  Instrumented code reads the registry once with {@link #get()} and
+ * skips all measurements if it is null, so when disabled the only cost is a field read and a comparison.
+ * </p>
+ *
+ * <pre>
+ * MetricsRegistry metrics = Metrics.get();
+ * MetricsRegistry.Timer timer = metrics != null ? metrics.startTimer(Metrics.MAPPING_RAYS) : null;
+ * ... do the work ...
+ * if( timer != null )
+ *     timer.stop();
+ * </pre>
+ *
+ * @author Peter Abeles
+ */
+public class Metrics {
+
+	/**
+	 * Time for {@link bubo.mapping.build.ladar2d.LadarMapBayesUpdate#process} to process a scan
+	 */
+	public static final String MAPPING_PROCESS = "mapping.process";
+	/**
+	 * Time spent by {@link bubo.mapping.build.ladar2d.LadarMapBayesUpdate} estimating motion from the scan
+	 */
+	public static final String MAPPING_MOTION = "mapping.motion";
+	/**
+	 * Time spent by {@link bubo.mapping.build.ladar2d.LadarMapBayesUpdate} integrating the beams into the map
+	 */
+	public static final String MAPPING_RAYS = "mapping.rays";
+	/**
+	 * Time spent by {@link bubo.clouds.motion.Lrf2dMotionRollingKeyFrame} matching a scan to the key-frame
+	 */
+	public static final String MOTION_MATCH = "motion.match";
+	/**
+	 * Time spent by {@link bubo.clouds.motion.Lrf2dMotionRollingKeyFrame} switching to a new key-frame
+	 */
+	public static final String MOTION_KEY_FRAME = "motion.keyFrame";
+	/**
+	 * Number of times {@link bubo.clouds.motion.Lrf2dMotionRollingKeyFrame} switched to a new key-frame
+	 */
+	public static final String MOTION_KEY_FRAME_COUNT = "motion.keyFrameCount";
+	/**
+	 * Number of iterations when a {@link bubo.struct.StoppingCondition} decided to stop
+	 */
+	public static final String STOP_ITERATIONS = "stop.iterations";
+	/**
+	 * Error when a {@link bubo.struct.StoppingCondition} decided to stop
+	 */
+	public static final String STOP_ERROR = "stop.error";
+
+	private static volatile MetricsRegistry registry;
+
+	/**
+	 * Returns the registry which measurements are recorded in or null if instrumentation is disabled
+	 */
+	public static MetricsRegistry get() {
+		return registry;
+	}
+
+	/**
+	 * Specifies the registry which measurements are recorded in.  Set to null to disable instrumentation.
+	 */
+	public static void set(MetricsRegistry registry) {
+		Metrics.registry = registry;
+	}
+
+	public static boolean isEnabled() {
+		return registry != null;
+	}
+}
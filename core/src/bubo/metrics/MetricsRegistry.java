@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.metrics;
+
+/**
+ * Receives measurements from instrumented code.  Implementations must be thread safe since measurements can be
+ * recorded from several threads at once.  Names of the measurements made inside of BUBO are defined in
+ * {@link Metrics}.
+ *
+ * @see Metrics
+ *
+ * @author Peter Abeles
+ */
+public interface MetricsRegistry {
+
+	/**
+	 * Records how long it took to perform a task
+	 *
+	 * @param name        Name of the task
+	 * @param nanoseconds Elapsed time in nanoseconds
+	 */
+	public void recordTime(String name, long nanoseconds);
+
+	/**
+	 * Starts timing a task.  The time is recorded when {@link Timer#stop()} is called.  Unlike
+	 * {@link #recordTime} the registry knows when the task started, which is needed to place it on a timeline.
+	 *
+	 * @param name Name of the task
+	 * @return Timer which must be stopped once the task has finished.  Only used by a single thread.
+	 */
+	public Timer startTimer(String name);
+
+	/**
+	 * Increments a counter
+	 *
+	 * @param name   Name of the counter
+	 * @param amount How much it's incremented by
+	 */
+	public void increment(String name, long amount);
+
+	/**
+	 * Records a single sample of a value, e.g. the number of iterations or the final error
+	 *
+	 * @param name  Name of the value
+	 * @param value The sample
+	 */
+	public void recordValue(String name, double value);
+
+	/**
+	 * Times a single task, see {@link #startTimer}
+	 */
+	public static interface Timer {
+		/**
+		 * Marks the end of the task and records it
+		 */
+		public void stop();
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.metrics;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link MetricsRegistry} which keeps summary statistics for each name in memory: the number of samples,
+ * their sum, minimum and maximum.  Times are recorded in nanoseconds and counters are treated as a single
+ * sample of the amount they are incremented by.
+ *
+ * @author Peter Abeles
+ */
+public class SummaryMetricsRegistry implements MetricsRegistry {
+
+	ConcurrentMap<String, Summary> summaries = new ConcurrentHashMap<String, Summary>();
+
+	@Override
+	public void recordTime(String name, long nanoseconds) {
+		lookup(name).add(nanoseconds);
+	}
+
+	@Override
+	public Timer startTimer(final String name) {
+		final long start = System.nanoTime();
+		return new Timer() {
+			@Override
+			public void stop() {
+				recordTime(name, System.nanoTime() - start);
+			}
+		};
+	}
+
+	@Override
+	public void increment(String name, long amount) {
+		lookup(name).add(amount);
+	}
+
+	@Override
+	public void recordValue(String name, double value) {
+		lookup(name).add(value);
+	}
+
+	private Summary lookup(String name) {
+		Summary s = summaries.get(name);
+		if (s == null) {
+			Summary created = new Summary();
+			s = summaries.putIfAbsent(name, created);
+			if (s == null)
+				s = created;
+		}
+		return s;
+	}
+
+	/**
+	 * Returns the summary for a name or null if nothing has been recorded for it
+	 */
+	public Summary getSummary(String name) {
+		return summaries.get(name);
+	}
+
+	/**
+	 * Names of everything which has been recorded, in alphabetical order
+	 */
+	public List<String> getNames() {
+		List<String> names = new ArrayList<String>(summaries.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Discards all the summaries
+	 */
+	public void reset() {
+		summaries.clear();
+	}
+
+	/**
+	 * Prints a table with the summary of each name
+	 */
+	public void print(PrintStream out) {
+		out.printf("%-24s %10s %14s %14s %14s %14s\n", "name", "count", "total", "mean", "min", "max");
+		for (String name : getNames()) {
+			Summary s = summaries.get(name);
+			synchronized (s) {
+				out.printf("%-24s %10d %14.6g %14.6g %14.6g %14.6g\n",
+						name, s.count, s.total, s.getMean(), s.min, s.max);
+			}
+		}
+	}
+
+	/**
+	 * Summary statistics of all the samples recorded with the same name
+	 */
+	public static class Summary {
+		long count;
+		double total;
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+
+		synchronized void add(double value) {
+			count++;
+			total += value;
+			if (value < min)
+				min = value;
+			if (value > max)
+				max = value;
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized double getTotal() {
+			return total;
+		}
+
+		public synchronized double getMean() {
+			return count == 0 ? 0 : total / count;
+		}
+
+		public synchronized double getMin() {
+			return min;
+		}
+
+		public synchronized double getMax() {
+			return max;
+		}
+	}
+}
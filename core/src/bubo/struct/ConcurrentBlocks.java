@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.struct;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a loop over the range [0,N) into one contiguous block per thread and processes the blocks in a
+ * {@link ForkJoinPool}.  Each block is assigned an index from 0 to numThreads-1 which is always the same
+ * for the same range, allowing the caller to keep per-block storage which is recycled between calls.  Since
+ * the blocks are contiguous and fixed, the output is deterministic if each block only writes to its own
+ * range.
+ * <p></p>
+ * If only one thread is requested then the loop is processed on the caller's thread and no pool is created.
+ *
+ * @author Peter Abeles
+ */
+public class ConcurrentBlocks {
+
+	// number of threads and blocks
+	private int numThreads;
+
+	// the pool which the blocks are processed in.  null if single threaded
+	private ForkJoinPool pool;
+
+	/**
+	 * @param numThreads Number of threads.  Must be &ge; 1.
+	 */
+	public ConcurrentBlocks(int numThreads) {
+		if (numThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be at least one");
+
+		this.numThreads = numThreads;
+		if (numThreads > 1)
+			pool = new ForkJoinPool(numThreads);
+	}
+
+	/**
+	 * Processes the range [0,N) and returns after all the blocks have finished.  If a block throws an
+	 * exception it is rethrown on the caller's thread.
+	 *
+	 * @param N     Number of elements
+	 * @param block Processes a single block
+	 */
+	public void process(int N, final Block block) {
+		if (pool == null) {
+			block.process(0, 0, N);
+			return;
+		}
+
+		final List<BlockAction> actions = new ArrayList<BlockAction>(numThreads);
+		for (int i = 0; i < numThreads; i++) {
+			int start = (int) ((long) N * i / numThreads);
+			int end = (int) ((long) N * (i + 1) / numThreads);
+			if (end > start)
+				actions.add(new BlockAction(block, i, start, end));
+		}
+
+		pool.invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll(actions);
+			}
+		});
+	}
+
+	/**
+	 * Shuts down the thread pool.  Pool threads are daemon threads, so calling this is optional.
+	 */
+	public void shutdown() {
+		if (pool != null)
+			pool.shutdown();
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Processes the elements inside a single block
+	 */
+	public interface Block {
+		/**
+		 * @param index Index of the block.  0 to numThreads-1
+		 * @param start First element in the block.  Inclusive.
+		 * @param end   Last element in the block.  Exclusive.
+		 */
+		void process(int index, int start, int end);
+	}
+
+	private static class BlockAction extends RecursiveAction {
+		Block block;
+		int index, start, end;
+
+		private BlockAction(Block block, int index, int start, int end) {
+			this.block = block;
+			this.index = index;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			block.process(index, start, end);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.struct;
+
+import org.ddogleg.struct.GrowQueue_I64;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive longs implemented with an open addressing hash table.  Values are also saved in the order
+ * they were first added, which allows the set to be traversed in a deterministic order without declaring an
+ * iterator.  Removing individual elements is not supported, but {@link #reset()} discards all of them
+ * without declaring new memory.
+ *
+ * @author Peter Abeles
+ */
+public class HashSet_I64 {
+
+	// hash table.  Each slot contains the index of the value plus one.  zero marks an empty slot
+	private int table[];
+	private int tableMask;
+
+	/**
+	 * Values in the set in the order they were added.  Do not modify.
+	 */
+	public GrowQueue_I64 values = new GrowQueue_I64();
+
+	public HashSet_I64(int initialCapacity) {
+		int size = 16;
+		while (size < initialCapacity * 2)
+			size *= 2;
+		table = new int[size];
+		tableMask = size - 1;
+	}
+
+	public HashSet_I64() {
+		this(16);
+	}
+
+	/**
+	 * Adds the value to the set, if it isn't already in the set
+	 *
+	 * @return true if the value was added or false if it was already in the set
+	 */
+	public boolean add(long value) {
+		int i = slot(value);
+		while (true) {
+			int entry = table[i];
+			if (entry == 0)
+				break;
+			if (values.data[entry - 1] == value)
+				return false;
+			i = (i + 1) & tableMask;
+		}
+
+		values.add(value);
+		table[i] = values.size;
+
+		// keep the load factor at or below 0.5
+		if (values.size * 2 > table.length)
+			rehash(table.length * 2);
+
+		return true;
+	}
+
+	/**
+	 * Returns true if the value is in the set
+	 */
+	public boolean contains(long value) {
+		int i = slot(value);
+		while (true) {
+			int entry = table[i];
+			if (entry == 0)
+				return false;
+			if (values.data[entry - 1] == value)
+				return true;
+			i = (i + 1) & tableMask;
+		}
+	}
+
+	/**
+	 * Removes all the values from the set
+	 */
+	public void reset() {
+		// if the table is sparse it's faster to just clear the used slots
+		if (values.size * 8 < table.length) {
+			for (int i = 0; i < values.size; i++) {
+				int j = slot(values.data[i]);
+				while (table[j] != 0) {
+					table[j] = 0;
+					j = (j + 1) & tableMask;
+				}
+			}
+		} else {
+			Arrays.fill(table, 0);
+		}
+		values.reset();
+	}
+
+	public int size() {
+		return values.size;
+	}
+
+	private void rehash(int size) {
+		table = new int[size];
+		tableMask = size - 1;
+		for (int k = 0; k < values.size; k++) {
+			int i = slot(values.data[k]);
+			while (table[i] != 0) {
+				i = (i + 1) & tableMask;
+			}
+			table[i] = k + 1;
+		}
+	}
+
+	private int slot(long value) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & tableMask;
+	}
+}
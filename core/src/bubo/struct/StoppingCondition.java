@@ -18,6 +18,8 @@
 
 package bubo.struct;
 
+import bubo.metrics.Metrics;
+import bubo.metrics.MetricsRegistry;
 
 /**
  * Specifies the stopping condition for an iterative algorithm.
@@ -52,17 +54,34 @@ public class StoppingCondition {
 	}
 
 	public boolean isFinished(double foundError) {
+		// iteration isn't incremented here, but this call is still counted when reporting
 		if (foundError < errorThreshold)
-			return true;
+			return finished(foundError, iteration + 1);
 
 		if (iteration++ > 0) {
 			// see if its at a minimum
 			if (Math.abs(previousError - foundError)/previousError <= errorRelativeChange)
-				return true;
+				return finished(foundError, iteration);
 		}
 		previousError = foundError;
 
-		return iteration >= maxIterations;
+		if (iteration >= maxIterations)
+			return finished(foundError, iteration);
+		return false;
+	}
+
+	/**
+	 * Reports the iterations and final error if instrumentation is enabled
+	 *
+	 * @param numIterations Number of times {@link #isFinished} was called, including the last call
+	 */
+	private boolean finished(double foundError, int numIterations) {
+		MetricsRegistry metrics = Metrics.get();
+		if (metrics != null) {
+			metrics.recordValue(Metrics.STOP_ITERATIONS, numIterations);
+			metrics.recordValue(Metrics.STOP_ERROR, foundError);
+		}
+		return true;
 	}
 
 	public StoppingCondition copy() {
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds;
+
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestPackedCloud3D_F64 {
+
+	@Test
+	public void add_grow() {
+		PackedCloud3D_F64 alg = new PackedCloud3D_F64(2);
+		alg.enableIntensity();
+
+		for (int i = 0; i < 20; i++) {
+			assertEquals(i, alg.add(i, i + 1, i + 2));
+			alg.intensity[i] = i * 2;
+		}
+
+		assertEquals(20, alg.size);
+		assertTrue(alg.intensity.length >= 20);
+		for (int i = 0; i < 20; i++) {
+			assertEquals(i, alg.x[i], 0);
+			assertEquals(i + 1, alg.y[i], 0);
+			assertEquals(i + 2, alg.z[i], 0);
+			assertEquals(i * 2, alg.intensity[i], 0);
+		}
+
+		alg.reset();
+		assertEquals(0, alg.size);
+		assertTrue(alg.hasIntensity());
+	}
+
+	@Test
+	public void enableColumns() {
+		PackedCloud3D_F64 alg = new PackedCloud3D_F64(5);
+		assertFalse(alg.hasNormals());
+		assertFalse(alg.hasColor());
+		assertFalse(alg.hasIntensity());
+
+		alg.enableNormals();
+		alg.enableColor();
+		assertTrue(alg.hasNormals());
+		assertTrue(alg.hasColor());
+		assertFalse(alg.hasIntensity());
+		assertEquals(alg.x.length, alg.normalZ.length);
+		assertEquals(alg.x.length, alg.rgb.length);
+	}
+
+	@Test
+	public void add_otherCloud() {
+		PackedCloud3D_F64 src = new PackedCloud3D_F64();
+		src.enableNormals();
+		src.enableColor();
+		src.add(1, 2, 3);
+		src.add(4, 5, 6);
+		src.setNormal(1, 0, 1, 0);
+		src.rgb[1] = 0xFF00FF;
+
+		PackedCloud3D_F64 dst = new PackedCloud3D_F64();
+		dst.enableNormals();
+		dst.add(src, 1);
+
+		assertEquals(1, dst.size);
+		assertEquals(4, dst.x[0], 0);
+		assertEquals(1, dst.normalY[0], 0);
+		assertFalse(dst.hasColor());
+	}
+
+	@Test
+	public void setTo_toList() {
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < 15; i++) {
+			points.add(new Point3D_F64(i, -i, 2 * i));
+		}
+
+		PackedCloud3D_F64 alg = PackedCloud3D_F64.wrap(points);
+		assertEquals(15, alg.size);
+
+		List<Point3D_F64> found = new ArrayList<Point3D_F64>();
+		found.add(new Point3D_F64());
+		alg.toList(found);
+		assertEquals(15, found.size());
+		for (int i = 0; i < 15; i++) {
+			assertEquals(0, found.get(i).distance(points.get(i)), 0);
+		}
+
+		// shrink the list
+		alg.setTo(points.subList(0, 4));
+		alg.toList(found);
+		assertEquals(4, found.size());
+	}
+
+	@Test
+	public void setTo_packed() {
+		PackedCloud3D_F64 src = new PackedCloud3D_F64();
+		src.enableIntensity();
+		for (int i = 0; i < 30; i++) {
+			src.add(i, 1, 2);
+			src.intensity[i] = i;
+		}
+
+		PackedCloud3D_F64 dst = new PackedCloud3D_F64(2);
+		dst.setTo(src);
+
+		assertEquals(30, dst.size);
+		assertTrue(dst.hasIntensity());
+		assertFalse(dst.hasNormals());
+		for (int i = 0; i < 30; i++) {
+			assertEquals(i, dst.x[i], 0);
+			assertEquals(i, dst.intensity[i], 0);
+		}
+	}
+
+	@Test
+	public void boundingBox() {
+		PackedCloud3D_F64 alg = new PackedCloud3D_F64();
+		alg.add(1, 2, 3);
+		alg.add(-1, 5, 0);
+		alg.add(0, 4, 9);
+
+		Box3D_F64 box = new Box3D_F64();
+		alg.boundingBox(box);
+
+		assertEquals(-1, box.p0.x, 0);
+		assertEquals(2, box.p0.y, 0);
+		assertEquals(0, box.p0.z, 0);
+		assertEquals(1, box.p1.x, 0);
+		assertEquals(5, box.p1.y, 0);
+		assertEquals(9, box.p1.z, 0);
+	}
+}
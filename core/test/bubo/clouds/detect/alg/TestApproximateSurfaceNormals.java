@@ -192,4 +192,39 @@ public class TestApproximateSurfaceNormals {
 		assertTrue(numNorm == numNorm2);
 	}
 
+	/**
+	 * Computing the graph and normals concurrently should produce the same results
+	 */
+	@Test
+	public void concurrent() {
+		List<Point3D_F64> cloud = new ArrayList<Point3D_F64>();
+
+		for (int i = 0; i < 1000; i++) {
+			double x = 3 * (rand.nextDouble() - 0.5);
+			double y = 3 * (rand.nextDouble() - 0.5);
+			double z = 3 * (rand.nextDouble() - 0.5);
+
+			cloud.add(new Point3D_F64(x, y, z));
+		}
+
+		FastQueue<PointVectorNN> expected = new FastQueue<PointVectorNN>(PointVectorNN.class, false);
+		FastQueue<PointVectorNN> found = new FastQueue<PointVectorNN>(PointVectorNN.class, false);
+
+		new ApproximateSurfaceNormals(8, 0.4).process(cloud, expected);
+
+		ApproximateSurfaceNormals alg = new ApproximateSurfaceNormals(8, 0.4);
+		alg.setNumThreads(4);
+		alg.process(cloud, found);
+
+		assertEquals(expected.size(), found.size());
+		for (int i = 0; i < cloud.size(); i++) {
+			PointVectorNN a = expected.get(i);
+			PointVectorNN b = found.get(i);
+
+			assertEquals(i, b.index);
+			assertEquals(a.neighbors.size, b.neighbors.size);
+			assertEquals(0, a.normal.distance(b.normal), 0);
+		}
+	}
+
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.detect.alg;
+
+import bubo.clouds.PackedCloud3D_F64;
+import georegression.struct.point.Point3D_F64;
+import org.ddogleg.struct.FastQueue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestApproximateSurfaceNormalsPacked {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Should produce the same normals as {@link ApproximateSurfaceNormals}
+	 */
+	@Test
+	public void compareToApproximateSurfaceNormals() {
+		List<Point3D_F64> cloud = randomCloud(200);
+
+		FastQueue<PointVectorNN> expected = new FastQueue<PointVectorNN>(PointVectorNN.class, false);
+		new ApproximateSurfaceNormals(8, 0.4).process(cloud, expected);
+
+		double[] found = new ApproximateSurfaceNormalsPacked(8, 0.4).process(cloud, null);
+		assertEquals(cloud.size() * 3, found.length);
+
+		int numZero = 0;
+		for (int i = 0; i < cloud.size(); i++) {
+			PointVectorNN pv = expected.get(i);
+			double dot = pv.normal.x * found[i * 3] + pv.normal.y * found[i * 3 + 1] + pv.normal.z * found[i * 3 + 2];
+			if (pv.normal.norm() == 0) {
+				numZero++;
+				assertEquals(0, found[i * 3], 0);
+				assertEquals(0, found[i * 3 + 1], 0);
+				assertEquals(0, found[i * 3 + 2], 0);
+			} else {
+				assertEquals(1, Math.abs(dot), 1e-8);
+			}
+		}
+		assertTrue(numZero > 0);
+		assertTrue(numZero < cloud.size());
+	}
+
+	/**
+	 * The concurrent output should be identical to the single threaded output
+	 */
+	@Test
+	public void concurrent_sameResults() {
+		List<Point3D_F64> cloud = randomCloud(2000);
+
+		double[] expected = new ApproximateSurfaceNormalsPacked(8, 0.4).process(cloud, null);
+
+		ApproximateSurfaceNormalsPacked alg = new ApproximateSurfaceNormalsPacked(8, 0.4);
+		alg.setNumThreads(3);
+		// process a different cloud first to make sure data is recycled correctly
+		double[] found = alg.process(randomCloud(2200), null);
+		found = alg.process(cloud, found);
+
+		assertEquals(2200 * 3, found.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], found[i], 0);
+		}
+	}
+
+	/**
+	 * Normals written into a packed cloud should be the same as the ones in the array
+	 */
+	@Test
+	public void packedCloud() {
+		List<Point3D_F64> cloud = randomCloud(300);
+
+		double[] expected = new ApproximateSurfaceNormalsPacked(8, 0.4).process(cloud, null);
+
+		PackedCloud3D_F64 packed = PackedCloud3D_F64.wrap(cloud);
+		ApproximateSurfaceNormalsPacked alg = new ApproximateSurfaceNormalsPacked(8, 0.4);
+		alg.setNumThreads(2);
+		alg.process(packed);
+
+		assertTrue(packed.hasNormals());
+		for (int i = 0; i < cloud.size(); i++) {
+			assertEquals(expected[i * 3], packed.normalX[i], 1e-6);
+			assertEquals(expected[i * 3 + 1], packed.normalY[i], 1e-6);
+			assertEquals(expected[i * 3 + 2], packed.normalZ[i], 1e-6);
+		}
+	}
+
+	private List<Point3D_F64> randomCloud(int N) {
+		List<Point3D_F64> cloud = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < N; i++) {
+			double x = 3 * (rand.nextDouble() - 0.5);
+			double y = 3 * (rand.nextDouble() - 0.5);
+			double z = 3 * (rand.nextDouble() - 0.5);
+			cloud.add(new Point3D_F64(x, y, z));
+		}
+		return cloud;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.detect.alg;
+
+import georegression.fitting.plane.FitPlane3D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.point.Vector3D_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestFitNormalCovariance3D_F64 {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Compare against the SVD solution on noisy planes with different orientations and offsets
+	 */
+	@Test
+	public void compareToSvd() {
+		FitPlane3D_F64 svd = new FitPlane3D_F64();
+		FitNormalCovariance3D_F64 alg = new FitNormalCovariance3D_F64();
+
+		Point3D_F64 center = new Point3D_F64();
+		Vector3D_F64 expected = new Vector3D_F64();
+		Vector3D_F64 found = new Vector3D_F64();
+
+		for (int trial = 0; trial < 50; trial++) {
+			Vector3D_F64 a = randomUnit();
+			Vector3D_F64 b = randomUnit();
+			Vector3D_F64 n = a.cross(b);
+			n.normalize();
+
+			// far from the origin to test the numerical stability
+			double offset = 1000 * (rand.nextDouble() - 0.5);
+
+			List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+			alg.reset();
+			for (int i = 0; i < 10; i++) {
+				double u = rand.nextGaussian(), v = rand.nextGaussian(), w = 0.01 * rand.nextGaussian();
+				Point3D_F64 p = new Point3D_F64(offset + a.x * u + b.x * v + n.x * w,
+						offset + a.y * u + b.y * v + n.y * w,
+						offset + a.z * u + b.z * v + n.z * w);
+				points.add(p);
+				alg.add(p.x, p.y, p.z);
+			}
+
+			svd.svd(points, center, expected);
+			assertTrue(alg.computeNormal(found));
+
+			assertEquals(1, found.norm(), 1e-8);
+			assertEquals(1, Math.abs(found.dot(expected)), 1e-6);
+		}
+	}
+
+	/**
+	 * Points which lie on a perfect plane
+	 */
+	@Test
+	public void perfectPlane() {
+		FitNormalCovariance3D_F64 alg = new FitNormalCovariance3D_F64();
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 3; j++) {
+				alg.add(i * 0.1, j * 0.1, -4);
+			}
+		}
+
+		double[] found = new double[5];
+		assertTrue(alg.computeNormal(found, 2));
+		assertEquals(0, found[2], 1e-8);
+		assertEquals(0, found[3], 1e-8);
+		assertEquals(1, Math.abs(found[4]), 1e-8);
+	}
+
+	/**
+	 * The normal is ambiguous when the points lie along a line but it should still be perpendicular to the line
+	 */
+	@Test
+	public void collinear() {
+		FitNormalCovariance3D_F64 alg = new FitNormalCovariance3D_F64();
+		for (int i = 0; i < 5; i++) {
+			alg.add(1 + i, 2 + 2 * i, 3 - i);
+		}
+
+		Vector3D_F64 found = new Vector3D_F64();
+		assertTrue(alg.computeNormal(found));
+		assertEquals(1, found.norm(), 1e-8);
+		assertEquals(0, found.dot(new Vector3D_F64(1, 2, -1)), 1e-8);
+	}
+
+	/**
+	 * Not enough points or all the points are the same
+	 */
+	@Test
+	public void degenerate() {
+		FitNormalCovariance3D_F64 alg = new FitNormalCovariance3D_F64();
+		Vector3D_F64 found = new Vector3D_F64(1, 1, 1);
+
+		alg.add(1, 2, 3);
+		alg.add(2, 2, 3);
+		assertFalse(alg.computeNormal(found));
+		assertEquals(0, found.norm(), 1e-8);
+
+		alg.reset();
+		for (int i = 0; i < 4; i++) {
+			alg.add(1, 2, 3);
+		}
+		found.set(1, 1, 1);
+		assertFalse(alg.computeNormal(found));
+		assertEquals(0, found.norm(), 1e-8);
+	}
+
+	private Vector3D_F64 randomUnit() {
+		Vector3D_F64 v = new Vector3D_F64(rand.nextGaussian(), rand.nextGaussian(), rand.nextGaussian());
+		v.normalize();
+		return v;
+	}
+}
@@ -18,16 +18,108 @@
 
 package bubo.clouds.detect.alg;
 
+import georegression.struct.point.Point3D_F64;
+import org.ddogleg.nn.FactoryNearestNeighbor;
+import org.ddogleg.nn.NearestNeighbor;
+import org.ddogleg.struct.FastQueue;
 import org.junit.Test;
 
-import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
 
 /**
  * @author Peter Abeles
  */
 public class TestPointCloudToGraphNN {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Compare the found neighbors against a brute force search
+	 */
+	@Test
+	public void checkAgainstBruteForce() {
+		List<Point3D_F64> cloud = randomCloud(300);
+
+		PointCloudToGraphNN alg = new PointCloudToGraphNN((NearestNeighbor) FactoryNearestNeighbor.kdtree(), 6, Double.MAX_VALUE);
+		alg.process(cloud);
+
+		FastQueue<PointVectorNN> found = alg.getListPointVector();
+		assertEquals(cloud.size(), found.size);
+
+		for (int i = 0; i < found.size; i++) {
+			PointVectorNN p = found.get(i);
+			assertTrue(p.p == cloud.get(i));
+			assertEquals(i, p.index);
+			assertEquals(6, p.neighbors.size);
+
+			// the farthest neighbor found
+			double farthest = 0;
+			for (int j = 0; j < p.neighbors.size; j++) {
+				PointVectorNN n = p.neighbors.get(j);
+				assertTrue(n != p);
+				farthest = Math.max(farthest, n.p.distance(p.p));
+			}
+
+			// no other points should be closer than the farthest neighbor
+			int closer = 0;
+			for (int j = 0; j < cloud.size(); j++) {
+				if (j != i && cloud.get(j).distance(p.p) <= farthest)
+					closer++;
+			}
+			assertEquals(6, closer);
+		}
+	}
+
+	/**
+	 * The concurrent version should produce the same neighbor lists as the single threaded one
+	 */
 	@Test
-	public void stuff() {
-		fail("Implement");
+	public void concurrent_sameResults() {
+		List<Point3D_F64> cloud = randomCloud(2000);
+
+		PointCloudToGraphNN single = new PointCloudToGraphNN((NearestNeighbor) FactoryNearestNeighbor.kdtree(), 8, 0.4);
+		PointCloudToGraphNN multi = new PointCloudToGraphNN((NearestNeighbor) FactoryNearestNeighbor.kdtree(), 8, 0.4);
+		multi.setNumThreads(3);
+
+		single.process(cloud);
+		// process it twice to make sure data is recycled correctly
+		multi.process(randomCloud(500));
+		multi.process(cloud);
+
+		FastQueue<PointVectorNN> expected = single.getListPointVector();
+		FastQueue<PointVectorNN> found = multi.getListPointVector();
+
+		assertEquals(expected.size, found.size);
+		for (int i = 0; i < expected.size; i++) {
+			PointVectorNN a = expected.get(i);
+			PointVectorNN b = found.get(i);
+
+			assertTrue(a.p == b.p);
+			assertEquals(a.neighbors.size, b.neighbors.size);
+			for (int j = 0; j < a.neighbors.size; j++) {
+				assertEquals(a.neighbors.get(j).index, b.neighbors.get(j).index);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void setNumThreads_invalid() {
+		PointCloudToGraphNN alg = new PointCloudToGraphNN((NearestNeighbor) FactoryNearestNeighbor.kdtree(), 8, 0.4);
+		alg.setNumThreads(0);
+	}
+
+	private List<Point3D_F64> randomCloud(int N) {
+		List<Point3D_F64> cloud = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < N; i++) {
+			double x = 3 * (rand.nextDouble() - 0.5);
+			double y = 3 * (rand.nextDouble() - 0.5);
+			double z = 3 * (rand.nextDouble() - 0.5);
+			cloud.add(new Point3D_F64(x, y, z));
+		}
+		return cloud;
 	}
-}
\ No newline at end of file
+}
@@ -18,6 +18,7 @@
 
 package bubo.clouds.filter;
 
+import bubo.clouds.PackedCloud3D_F64;
 import georegression.struct.point.Point3D_F64;
 import org.junit.Test;
 
@@ -57,4 +58,40 @@ public class TestUniformDensityCloudOctree {
 
 		assertEquals(expectedN,output.size(),5);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void packed() {
+		PackedCloud3D_F64 input = new PackedCloud3D_F64();
+		input.enableIntensity();
+
+		for (int i = 0; i < 1000; i++) {
+			int index = input.add(10 + rand.nextDouble()*0.3, 12 + rand.nextDouble()*0.2, -3 + rand.nextDouble()*0.1);
+			input.intensity[index] = i;
+		}
+
+		PackedCloud3D_F64 output = new PackedCloud3D_F64();
+		output.enableIntensity();
+
+		UniformDensityCloudOctree alg = new UniformDensityCloudOctree(10,0.1,123213);
+
+		alg.process(input,output);
+
+		int expectedN = (int)Math.round(10*(0.3*0.2*0.1)/(0.1*0.1*0.1));
+
+		assertEquals(expectedN,output.size,5);
+
+		// the optional columns should be copied and each point selected once
+		boolean selected[] = new boolean[input.size];
+		for (int i = 0; i < output.size; i++) {
+			int index = (int)output.intensity[i];
+			assertEquals(input.x[index],output.x[i],0);
+			assertEquals(false,selected[index]);
+			selected[index] = true;
+		}
+
+		// should produce the same number of points when called again
+		output.reset();
+		alg.process(input,output);
+		assertEquals(expectedN,output.size,5);
+	}
+}
@@ -31,6 +31,8 @@ import georegression.struct.point.Vector3D_F64;
 import georegression.struct.se.Se2_F64;
 import georegression.struct.se.Se3_F64;
 import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.struct.GrowQueue_F64;
+import org.ddogleg.struct.GrowQueue_I32;
 import org.ejml.data.DenseMatrix64F;
 import org.junit.Test;
 
@@ -38,6 +40,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  * @author Peter Abeles
  */
@@ -134,4 +139,42 @@ public class TestIterativeClosestPoint {
 		}
 	}
 
+	/**
+	 * The same instance is used to process several sets of points.  Results should not depend on previous calls
+	 * and the correspondences from the last iteration should be available.
+	 */
+	@Test
+	public void processMultipleTimes() {
+		Se2_F64 tran = new Se2_F64(0.01, -0.02, 0.01);
+
+		List<Point2D_F64> modelPts = UtilPoint2D_F64.random(-10, 10, 30, rand);
+		List<Point2D_F64> srcOrig = new ArrayList<Point2D_F64>();
+		Se2_F64 inv = tran.invert(null);
+		for (Point2D_F64 p : modelPts) {
+			srcOrig.add(SePointOps_F64.transform(inv, p, null));
+		}
+		// this point won't be matched to anything
+		srcOrig.add(new Point2D_F64(100, 100));
+
+		StoppingCondition stop = new StoppingCondition(10, 1e-12);
+		IterativeClosestPoint<Se2_F64, Point2D_F64>
+				alg = new IterativeClosestPoint<Se2_F64, Point2D_F64>(stop, new MotionSe2PointSVD_F64());
+		alg.setModel(new PointModel<Point2D_F64>(modelPts, 1));
+
+		for (int trial = 0; trial < 3; trial++) {
+			List<Point2D_F64> srcPts = UtilPoint2D_F64.copy(srcOrig);
+			assertTrue(alg.process(srcPts));
+
+			checkTransform(srcOrig.subList(0, modelPts.size()), modelPts, alg.getPointsToModel(), 1e-8);
+
+			GrowQueue_I32 indexes = alg.getMatchIndexes();
+			GrowQueue_F64 distances = alg.getMatchDistanceSq();
+			assertEquals(modelPts.size(), indexes.size);
+			assertEquals(modelPts.size(), distances.size);
+			for (int i = 0; i < indexes.size; i++) {
+				assertEquals(i, indexes.get(i));
+				assertEquals(0, distances.get(i), 1e-8);
+			}
+		}
+	}
 }
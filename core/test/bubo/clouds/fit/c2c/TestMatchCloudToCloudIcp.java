@@ -19,14 +19,27 @@
 package bubo.clouds.fit.c2c;
 
 import bubo.clouds.FactoryFitting;
+import bubo.clouds.PackedCloud3D_F64;
 import bubo.clouds.fit.MatchCloudToCloud;
 import bubo.struct.StoppingCondition;
+import georegression.geometry.UtilPoint3D_F64;
 import georegression.struct.point.Point2D_F64;
 import georegression.struct.point.Point3D_F64;
 import georegression.struct.se.Se2_F64;
 import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.nn.FactoryNearestNeighbor;
+import org.ddogleg.nn.NearestNeighbor;
+import org.ejml.ops.MatrixFeatures;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  * @author Peter Abeles
  */
@@ -54,4 +67,164 @@ public class TestMatchCloudToCloudIcp {
 		}.all();
 	}
 
+
+	/**
+	 * The packed cloud input should produce the same solution as the list input
+	 */
+	@Test
+	public void check3D_packed() {
+		Random rand = new Random(234);
+		List<Point3D_F64> src = UtilPoint3D_F64.random(0, 1, 500, rand);
+
+		Se3_F64 expected = new Se3_F64();
+		expected.getT().set(0.05, -0.02, 0.03);
+
+		PackedCloud3D_F64 packedSrc = PackedCloud3D_F64.wrap(src);
+		PackedCloud3D_F64 packedDst = new PackedCloud3D_F64();
+		Point3D_F64 d = new Point3D_F64();
+		for (int i = 0; i < src.size(); i++) {
+			SePointOps_F64.transform(expected, src.get(i), d);
+			packedDst.add(d.x, d.y, d.z);
+		}
+
+		NearestNeighbor<Point3D_F64> nn = FactoryNearestNeighbor.kdtree();
+		MatchCloudToCloudIcp.SE3 alg = new MatchCloudToCloudIcp.SE3(nn, 0.1 * 0.1, new StoppingCondition(200, 1e-6));
+
+		// call it twice to make sure the internal storage is recycled correctly
+		for (int trial = 0; trial < 2; trial++) {
+			alg.setSource(packedSrc);
+			alg.setDestination(packedDst);
+			assertTrue(alg.compute());
+
+			Se3_F64 found = alg.getSourceToDestination();
+			assertEquals(expected.T.x, found.T.x, 0.01);
+			assertEquals(expected.T.y, found.T.y, 0.01);
+			assertEquals(expected.T.z, found.T.z, 0.01);
+		}
+
+		// input cloud should not be modified
+		assertEquals(src.get(3).x, packedSrc.x[3], 0);
+	}
+
+	@Test
+	public void check2D_concurrent() {
+		new GeneralCloudToCloudChecksSe2() {
+
+			@Override
+			public MatchCloudToCloud<Se2_F64, Point2D_F64> create() {
+				NearestNeighbor<Point2D_F64> nn = FactoryNearestNeighbor.kdtree();
+				MatchCloudToCloudIcp.SE2 alg = new MatchCloudToCloudIcp.SE2(nn, 0.1 * 0.1, new StoppingCondition(200, 1e-6));
+				alg.setNumThreads(3);
+				return alg;
+			}
+		}.all();
+	}
+
+	@Test
+	public void check3D_concurrent() {
+		new GeneralCloudToCloudChecksSe3() {
+
+			@Override
+			public MatchCloudToCloud<Se3_F64, Point3D_F64> create() {
+				NearestNeighbor<Point3D_F64> nn = FactoryNearestNeighbor.kdtree();
+				MatchCloudToCloudIcp.SE3 alg = new MatchCloudToCloudIcp.SE3(nn, 0.1 * 0.1, new StoppingCondition(200, 1e-6));
+				alg.setNumThreads(3);
+				return alg;
+			}
+		}.all();
+	}
+
+	/**
+	 * Finding correspondences concurrently should produce exactly the same solution as a single thread
+	 */
+	@Test
+	public void concurrentSameAsSingle() {
+		Random rand = new Random(234);
+		List<Point3D_F64> dst = UtilPoint3D_F64.random(0, 1, 2000, rand);
+
+		Se3_F64 motion = new Se3_F64();
+		motion.getT().set(0.03, -0.02, 0.01);
+		Se3_F64 inverse = motion.invert(null);
+
+		Se3_F64 expected = null;
+		for (int numThreads = 1; numThreads <= 4; numThreads++) {
+			List<Point3D_F64> src = new ArrayList<Point3D_F64>();
+			for (int i = 0; i < dst.size(); i++) {
+				src.add(SePointOps_F64.transform(inverse, dst.get(i), null));
+			}
+
+			NearestNeighbor<Point3D_F64> nn = FactoryNearestNeighbor.kdtree();
+			MatchCloudToCloudIcp.SE3 alg = new MatchCloudToCloudIcp.SE3(nn, 0.1 * 0.1, new StoppingCondition(200, 1e-6));
+			alg.setNumThreads(numThreads);
+			assertEquals(numThreads, alg.getNumThreads());
+
+			alg.setSource(src);
+			alg.setDestination(dst);
+			assertTrue(alg.compute());
+
+			Se3_F64 found = alg.getSourceToDestination();
+			if (expected == null) {
+				expected = found.copy();
+				assertEquals(motion.T.x, found.T.x, 0.01);
+			} else {
+				assertEquals(expected.T.x, found.T.x, 0);
+				assertEquals(expected.T.y, found.T.y, 0);
+				assertEquals(expected.T.z, found.T.z, 0);
+				assertTrue(MatrixFeatures.isIdentical(expected.R, found.R, 0));
+			}
+			alg.setNumThreads(1);
+		}
+	}
+
+	/**
+	 * Adding the destination incrementally should produce the same solution as specifying it all at once,
+	 * and points which leave the sliding window should no longer be matched
+	 */
+	@Test
+	public void incrementalDestination() {
+		Random rand = new Random(234);
+		List<Point3D_F64> dst = UtilPoint3D_F64.random(0, 1, 2000, rand);
+
+		Se3_F64 motion = new Se3_F64();
+		motion.getT().set(0.03, -0.02, 0.01);
+		Se3_F64 inverse = motion.invert(null);
+
+		for (int numThreads = 1; numThreads <= 2; numThreads++) {
+			NearestNeighbor<Point3D_F64> nn = FactoryNearestNeighbor.kdtree();
+			MatchCloudToCloudIcp.SE3 alg = new MatchCloudToCloudIcp.SE3(nn, 0.1 * 0.1, new StoppingCondition(200, 1e-6));
+			alg.setNumThreads(numThreads);
+
+			alg.setSource(transform(inverse, dst));
+			alg.setDestination(dst);
+			assertTrue(alg.compute());
+			Se3_F64 expected = alg.getSourceToDestination().copy();
+
+			// points which are far away and will be pushed out of the window
+			List<Point3D_F64> junk = UtilPoint3D_F64.random(-1, 2, 500, rand);
+			alg.setSource(transform(inverse, dst));
+			alg.setDestination(junk);
+			alg.getDestinationIndex().setMaxSize(dst.size());
+			assertEquals(500, alg.addDestination(dst.subList(0, 1000)));
+			assertEquals(1500, alg.addDestination(dst.subList(1000, 2000)));
+			assertEquals(dst.size(), alg.getDestinationIndex().size());
+			assertTrue(alg.compute());
+
+			Se3_F64 found = alg.getSourceToDestination();
+			assertEquals(motion.T.x, found.T.x, 0.01);
+			assertEquals(expected.T.x, found.T.x, 1e-8);
+			assertEquals(expected.T.y, found.T.y, 1e-8);
+			assertEquals(expected.T.z, found.T.z, 1e-8);
+			assertTrue(MatrixFeatures.isIdentical(expected.R, found.R, 1e-8));
+
+			alg.setNumThreads(1);
+		}
+	}
+
+	private static List<Point3D_F64> transform(Se3_F64 motion, List<Point3D_F64> points) {
+		List<Point3D_F64> output = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < points.size(); i++) {
+			output.add(SePointOps_F64.transform(motion, points.get(i), null));
+		}
+		return output;
+	}
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.fit.c2c;
+
+import bubo.struct.StoppingCondition;
+import georegression.geometry.RotationMatrixGenerator;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ejml.ops.MatrixFeatures;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestMatchCloudToCloudNdt {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Points randomly sampled from the floor and walls in a room's corner
+	 */
+	private List<Point3D_F64> createCorner(int N) {
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < N; i++) {
+			double a = rand.nextDouble() * 4 - 1, b = rand.nextDouble() * 4 - 1;
+			switch (i % 3) {
+				case 0:
+					points.add(new Point3D_F64(a, b, 0.25));
+					break;
+				case 1:
+					points.add(new Point3D_F64(0.25, a, b));
+					break;
+				default:
+					points.add(new Point3D_F64(a, 0.25, b));
+					break;
+			}
+		}
+		return points;
+	}
+
+	private List<Point3D_F64> transform(Se3_F64 motion, List<Point3D_F64> points) {
+		List<Point3D_F64> output = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < points.size(); i++) {
+			output.add(SePointOps_F64.transform(motion, points.get(i), null));
+		}
+		return output;
+	}
+
+	@Test
+	public void corner() {
+		Se3_F64 expected = new Se3_F64();
+		RotationMatrixGenerator.eulerXYZ(0.02, -0.03, 0.04, expected.getR());
+		expected.getT().set(0.1, -0.08, 0.06);
+
+		List<Point3D_F64> dst = createCorner(20000);
+		List<Point3D_F64> src = transform(expected.invert(null), createCorner(3000));
+
+		MatchCloudToCloudNdt alg = new MatchCloudToCloudNdt(0.5, 0.55, new StoppingCondition(50, 1e-12));
+		alg.setSource(src);
+		alg.setDestination(dst);
+		assertTrue(alg.compute());
+		assertFalse(alg.isModifiedSource());
+
+		Se3_F64 found = alg.getSourceToDestination();
+		assertEquals(expected.T.x, found.T.x, 0.01);
+		assertEquals(expected.T.y, found.T.y, 0.01);
+		assertEquals(expected.T.z, found.T.z, 0.01);
+		assertTrue(MatrixFeatures.isIdentical(expected.getR(), found.getR(), 0.01));
+		assertTrue(alg.getMatchedSourcePoints() > src.size() * 0.9);
+	}
+
+	/**
+	 * Build the destination from two clouds incrementally and see if it produces the same solution
+	 */
+	@Test
+	public void incrementalDestination() {
+		Se3_F64 expected = new Se3_F64();
+		expected.getT().set(0.1, -0.08, 0.06);
+
+		List<Point3D_F64> dstA = createCorner(10000);
+		List<Point3D_F64> dstB = createCorner(10000);
+		List<Point3D_F64> src = transform(expected.invert(null), createCorner(3000));
+
+		MatchCloudToCloudNdt alg = new MatchCloudToCloudNdt(0.5, 0.55, new StoppingCondition(50, 1e-12));
+		alg.setSource(src);
+		alg.setDestination(dstA);
+		assertTrue(alg.compute());
+		alg.getDestinationGrid().addPoints(dstB);
+		assertTrue(alg.compute());
+		Se3_F64 incremental = alg.getSourceToDestination().copy();
+
+		List<Point3D_F64> dstAll = new ArrayList<Point3D_F64>(dstA);
+		dstAll.addAll(dstB);
+		alg.setDestination(dstAll);
+		assertTrue(alg.compute());
+		Se3_F64 batch = alg.getSourceToDestination();
+
+		assertEquals(expected.T.x, batch.T.x, 0.01);
+		assertEquals(batch.T.x, incremental.T.x, 1e-8);
+		assertEquals(batch.T.y, incremental.T.y, 1e-8);
+		assertEquals(batch.T.z, incremental.T.z, 1e-8);
+	}
+
+	@Test
+	public void noOverlap() {
+		MatchCloudToCloudNdt alg = new MatchCloudToCloudNdt(0.5, 0.55, new StoppingCondition(50, 1e-12));
+		alg.setSource(transform(new Se3_F64(), createCorner(100)));
+		List<Point3D_F64> far = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < 100; i++) {
+			far.add(new Point3D_F64(100 + rand.nextDouble(), 100 + rand.nextDouble(), 100 + rand.nextDouble()));
+		}
+		alg.setDestination(far);
+		assertFalse(alg.compute());
+	}
+}
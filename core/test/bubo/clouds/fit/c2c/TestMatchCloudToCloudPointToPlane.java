@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.detect.alg.PointVectorNN;
+import bubo.struct.StoppingCondition;
+import georegression.geometry.RotationMatrixGenerator;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ejml.ops.MatrixFeatures;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestMatchCloudToCloudPointToPlane {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Points randomly sampled from the floor and walls in a room's corner
+	 */
+	private List<Point3D_F64> createCorner(int N) {
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < N; i++) {
+			double a = rand.nextDouble() * 2, b = rand.nextDouble() * 2;
+			switch (i % 3) {
+				case 0:
+					points.add(new Point3D_F64(a, b, 0));
+					break;
+				case 1:
+					points.add(new Point3D_F64(0, a, b));
+					break;
+				default:
+					points.add(new Point3D_F64(a, 0, b));
+					break;
+			}
+		}
+		return points;
+	}
+
+	@Test
+	public void corner() {
+		List<Point3D_F64> src = createCorner(3000);
+
+		Se3_F64 expected = new Se3_F64();
+		RotationMatrixGenerator.eulerXYZ(0.02, -0.03, 0.04, expected.getR());
+		expected.getT().set(0.05, -0.04, 0.03);
+
+		List<Point3D_F64> dst = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < src.size(); i++) {
+			dst.add(SePointOps_F64.transform(expected, src.get(i), null));
+		}
+
+		MatchCloudToCloudPointToPlane alg = new MatchCloudToCloudPointToPlane(10, 0.3, 0.3,
+				new StoppingCondition(50, 1e-12));
+		alg.setSource(src);
+		alg.setDestination(dst);
+		assertTrue(alg.compute());
+		assertFalse(alg.isModifiedSource());
+
+		Se3_F64 found = alg.getSourceToDestination();
+		assertEquals(expected.T.x, found.T.x, 1e-3);
+		assertEquals(expected.T.y, found.T.y, 1e-3);
+		assertEquals(expected.T.z, found.T.z, 1e-3);
+		assertTrue(MatrixFeatures.isIdentical(expected.getR(), found.getR(), 1e-3));
+
+		// should converge quickly
+		assertTrue(alg.getIterations() < 15);
+		assertTrue(alg.getMatchedSourcePoints() > src.size() * 0.9);
+	}
+
+	/**
+	 * Points without a normal should be ignored
+	 */
+	@Test
+	public void setDestinationNormals_noNormal() {
+		List<PointVectorNN> dst = new ArrayList<PointVectorNN>();
+		List<Point3D_F64> src = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < 20; i++) {
+			dst.add(new PointVectorNN(i * 0.1, 0, 0, 0, 0, 0));
+			src.add(new Point3D_F64(i * 0.1, 0, 0));
+		}
+
+		MatchCloudToCloudPointToPlane alg = new MatchCloudToCloudPointToPlane(10, 0.3, 0.3,
+				new StoppingCondition(50, 1e-12));
+		alg.setSource(src);
+		alg.setDestinationNormals(dst);
+		assertFalse(alg.compute());
+		assertEquals(0, alg.getMatchedSourcePoints());
+	}
+}
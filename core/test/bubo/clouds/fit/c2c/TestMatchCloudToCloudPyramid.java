@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.fit.c2c;
+
+import bubo.clouds.fit.MatchCloudToCloud;
+import bubo.struct.StoppingCondition;
+import georegression.geometry.UtilPoint3D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.nn.FactoryNearestNeighbor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestMatchCloudToCloudPyramid {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void checkGeneral() {
+		new GeneralCloudToCloudChecksSe3() {
+
+			@Override
+			public MatchCloudToCloud<Se3_F64, Point3D_F64> create() {
+				return createPyramid();
+			}
+		}.all();
+	}
+
+	private MatchCloudToCloudPyramid createPyramid() {
+		MatchCloudToCloudPyramid alg = new MatchCloudToCloudPyramid(234);
+		alg.addLevel(0.2, 0.5, new StoppingCondition(50, 1e-6));
+		alg.addLevel(0.05, 0.15, new StoppingCondition(50, 1e-6));
+		alg.addLevel(0, 0.05, new StoppingCondition(50, 1e-6));
+		return alg;
+	}
+
+	/**
+	 * The motion is larger than the matching distance at the finest level.  Single level ICP with the same
+	 * matching distance should fail while the pyramid should succeed
+	 */
+	@Test
+	public void largeMotion() {
+		List<Point3D_F64> src = UtilPoint3D_F64.random(0, 1, 2000, rand);
+		List<Point3D_F64> original = UtilPoint3D_F64.copy(src);
+		Se3_F64 expected = new Se3_F64();
+		expected.getT().set(0.15, -0.1, 0.08);
+
+		List<Point3D_F64> dst = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < src.size(); i++) {
+			dst.add(SePointOps_F64.transform(expected, src.get(i), null));
+		}
+
+		MatchCloudToCloudPyramid alg = createPyramid();
+		alg.setSource(src);
+		alg.setDestination(dst);
+		assertTrue(alg.compute());
+		assertFalse(alg.isModifiedSource());
+
+		Se3_F64 found = alg.getSourceToDestination();
+		assertEquals(expected.T.x, found.T.x, 0.01);
+		assertEquals(expected.T.y, found.T.y, 0.01);
+		assertEquals(expected.T.z, found.T.z, 0.01);
+		assertTrue(alg.getMatchedSourcePoints() > 0);
+
+		// source should not have been modified
+		for (int i = 0; i < src.size(); i++) {
+			assertEquals(0, original.get(i).distance(src.get(i)), 0);
+		}
+
+		// ICP at the finest level alone doesn't have a large enough matching distance
+		MatchCloudToCloudIcp.SE3 single = new MatchCloudToCloudIcp.SE3(
+				FactoryNearestNeighbor.<Point3D_F64>kdtree(), 0.05 * 0.05, new StoppingCondition(50, 1e-6));
+		single.setSource(src);
+		single.setDestination(dst);
+		if (single.compute()) {
+			found = single.getSourceToDestination();
+			assertTrue(Math.abs(expected.T.x - found.T.x) > 0.01);
+		}
+	}
+
+	@Test
+	public void addLevel_order() {
+		MatchCloudToCloudPyramid alg = new MatchCloudToCloudPyramid(234);
+		alg.addLevel(0.2, 0.5, new StoppingCondition(50, 1e-6));
+		try {
+			alg.addLevel(0.3, 0.5, new StoppingCondition(50, 1e-6));
+			fail("Exception expected");
+		} catch (IllegalArgumentException ignore) {
+		}
+		alg.addLevel(0, 0.5, new StoppingCondition(50, 1e-6));
+		try {
+			alg.addLevel(0.1, 0.5, new StoppingCondition(50, 1e-6));
+			fail("Exception expected");
+		} catch (IllegalArgumentException ignore) {
+		}
+		assertEquals(2, alg.getNumLevels());
+	}
+}
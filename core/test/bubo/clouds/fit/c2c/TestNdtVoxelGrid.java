@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.fit.c2c;
+
+import georegression.struct.point.Point3D_F64;
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestNdtVoxelGrid {
+
+	Random rand = new Random(234);
+
+	private List<Point3D_F64> randomPoints(double x, double y, double z, double width, int N) {
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < N; i++) {
+			points.add(new Point3D_F64(x + rand.nextDouble() * width, y + rand.nextDouble() * width,
+					z + rand.nextDouble() * width));
+		}
+		return points;
+	}
+
+	/**
+	 * Compare the Gaussian against one computed directly from the points
+	 */
+	@Test
+	public void gaussian() {
+		// negative coordinates are intentional
+		List<Point3D_F64> points = randomPoints(-2, 3, -1, 1, 200);
+
+		NdtVoxelGrid alg = new NdtVoxelGrid(1);
+		alg.setMinEigenRatio(0);
+		alg.addPoints(points);
+		assertEquals(1, alg.getNumVoxels());
+
+		int voxel = alg.findVoxel(-1.5, 3.5, -0.5);
+		assertTrue(voxel >= 0);
+		assertEquals(200, alg.getPointCount(voxel));
+
+		Point3D_F64 mean = new Point3D_F64();
+		for (Point3D_F64 p : points) {
+			mean.x += p.x / points.size();
+			mean.y += p.y / points.size();
+			mean.z += p.z / points.size();
+		}
+		DenseMatrix64F cov = new DenseMatrix64F(3, 3);
+		for (Point3D_F64 p : points) {
+			double d[] = new double[]{p.x - mean.x, p.y - mean.y, p.z - mean.z};
+			for (int i = 0; i < 3; i++) {
+				for (int j = 0; j < 3; j++) {
+					cov.data[i * 3 + j] += d[i] * d[j] / (points.size() - 1);
+				}
+			}
+		}
+		CommonOps.invert(cov);
+
+		Point3D_F64 foundMean = new Point3D_F64();
+		DenseMatrix64F foundInv = new DenseMatrix64F(3, 3);
+		alg.getMean(voxel, foundMean);
+		alg.getInverseCovariance(voxel, foundInv);
+
+		assertEquals(0, mean.distance(foundMean), 1e-8);
+		for (int i = 0; i < 9; i++) {
+			assertEquals(cov.data[i], foundInv.data[i], 1e-6);
+		}
+	}
+
+	/**
+	 * Adding points over several calls should produce the same Gaussians as adding them all at once
+	 */
+	@Test
+	public void incremental() {
+		List<Point3D_F64> pointsA = randomPoints(0, 0, 0, 3, 500);
+		List<Point3D_F64> pointsB = randomPoints(0, 0, 0, 3, 500);
+
+		NdtVoxelGrid all = new NdtVoxelGrid(1);
+		all.addPoints(pointsA);
+		all.addPoints(pointsB);
+
+		NdtVoxelGrid inc = new NdtVoxelGrid(1);
+		inc.addPoints(pointsA);
+		// look up all the voxels so that the Gaussians are computed before more points are added
+		for (Point3D_F64 p : pointsA) {
+			inc.findVoxel(p.x, p.y, p.z);
+		}
+		inc.addPoints(pointsB);
+
+		assertEquals(27, inc.getNumVoxels());
+
+		Point3D_F64 meanAll = new Point3D_F64();
+		Point3D_F64 meanInc = new Point3D_F64();
+		for (Point3D_F64 p : pointsB) {
+			int voxelAll = all.findVoxel(p.x, p.y, p.z);
+			int voxelInc = inc.findVoxel(p.x, p.y, p.z);
+			all.getMean(voxelAll, meanAll);
+			inc.getMean(voxelInc, meanInc);
+			assertEquals(0, meanAll.distance(meanInc), 1e-8);
+			assertEquals(all.getPointCount(voxelAll), inc.getPointCount(voxelInc));
+		}
+	}
+
+	/**
+	 * Voxels with too few points should not have a Gaussian
+	 */
+	@Test
+	public void minPoints() {
+		NdtVoxelGrid alg = new NdtVoxelGrid(1);
+		alg.addPoints(randomPoints(0, 0, 0, 1, 4));
+
+		assertEquals(-1, alg.findVoxel(0.5, 0.5, 0.5));
+		alg.setMinPoints(3);
+		assertTrue(alg.findVoxel(0.5, 0.5, 0.5) >= 0);
+
+		// empty voxel
+		assertEquals(-1, alg.findVoxel(1.5, 0.5, 0.5));
+
+		alg.reset();
+		assertEquals(0, alg.getNumVoxels());
+		assertEquals(-1, alg.findVoxel(0.5, 0.5, 0.5));
+	}
+
+	/**
+	 * Points on a plane have a singular covariance, which should be regularized
+	 */
+	@Test
+	public void planar() {
+		NdtVoxelGrid alg = new NdtVoxelGrid(1);
+		for (int i = 0; i < 50; i++) {
+			alg.addPoint(rand.nextDouble(), rand.nextDouble(), 0.5);
+		}
+
+		int voxel = alg.findVoxel(0.5, 0.5, 0.5);
+		assertTrue(voxel >= 0);
+
+		DenseMatrix64F inv = new DenseMatrix64F(3, 3);
+		alg.getInverseCovariance(voxel, inv);
+		for (int i = 0; i < 9; i++) {
+			assertTrue(!Double.isNaN(inv.data[i]) && !Double.isInfinite(inv.data[i]));
+		}
+		// the normal direction should be much more certain
+		assertTrue(inv.get(2, 2) > 50 * inv.get(0, 0));
+	}
+
+	/**
+	 * Points which can't be packed into a key should be rejected, no matter how far away they are
+	 */
+	@Test
+	public void addPoint_outside() {
+		NdtVoxelGrid alg = new NdtVoxelGrid(1);
+
+		double bad[][] = new double[][]{
+				{1e300, 0, 0}, {-1e300, 0, 0}, {0, -1e300, 0}, {0, 0, -1e300},
+				{Double.NaN, 0, 0}, {0, Double.NaN, 0}, {0, 0, Double.NaN}};
+		for (double p[] : bad) {
+			try {
+				alg.addPoint(p[0], p[1], p[2]);
+				fail("Should have been rejected");
+			} catch (IllegalArgumentException ignore) {
+			}
+			assertEquals(-1, alg.findVoxel(p[0], p[1], p[2]));
+		}
+		assertEquals(0, alg.getNumVoxels());
+	}
+}
@@ -19,6 +19,7 @@
 package bubo.clouds.fit.s2s;
 
 import bubo.clouds.fit.Lrf2dScanToScan;
+import bubo.clouds.fit.Lrf2dScanToScanPrepared;
 import bubo.desc.sensors.lrf2d.Lrf2dParam;
 import bubo.maps.d2.lines.LineSegmentMap;
 import bubo.simulation.d2.sensors.SimulateLrf2D;
@@ -66,6 +67,10 @@ public abstract class StandardTestsScanToScan {
 		checkPrefectHint();
 		setupSimulation();
 		setSecondToFirst();
+		setupSimulation();
+		reuseDestination();
+		setupSimulation();
+		preparedSource();
 	}
 
 	public void setupSimulation() {
@@ -186,4 +191,79 @@ public abstract class StandardTestsScanToScan {
 		assertEquals(expected.getYaw(), found.getYaw(), angTol);
 		assertTrue(alg.getError() < 0.01);
 	}
+
+	/**
+	 * The destination is only specified once and then matched against several source scans
+	 */
+	public void reuseDestination() {
+		Lrf2dScanToScan alg = createAlg();
+		alg.setSensorParam(param);
+
+		model.update(new Se2_F64(), world);
+		alg.setDestination(model.getMeasurement().meas.clone());
+
+		Se2_F64 motions[] = new Se2_F64[]{new Se2_F64(0.12, -0.12, 0.05), new Se2_F64(-0.1, 0.05, -0.04),
+				new Se2_F64(0.12, -0.12, 0.05)};
+
+		for (Se2_F64 expected : motions) {
+			model.update(expected, world);
+			alg.setSource(model.getMeasurement().meas.clone());
+
+			assertTrue(alg.process(null));
+
+			Se2_F64 found = alg.getSourceToDestination();
+			GeometryUnitTest.assertEquals(expected.getTranslation(), found.getTranslation(), tranTol);
+			assertEquals(expected.getYaw(), found.getYaw(), angTol);
+			assertTrue(alg.getError() < 0.01);
+		}
+	}
+
+	/**
+	 * Source scans are prepared ahead of time and then passed in.  Only run if the algorithm supports it.
+	 */
+	@SuppressWarnings("unchecked")
+	public void preparedSource() {
+		Lrf2dScanToScan alg = createAlg();
+		if (!(alg instanceof Lrf2dScanToScanPrepared))
+			return;
+		Lrf2dScanToScanPrepared<Object> algPrepared = (Lrf2dScanToScanPrepared<Object>) alg;
+		alg.setSensorParam(param);
+
+		model.update(new Se2_F64(), world);
+		alg.setDestination(model.getMeasurement().meas.clone());
+
+		Se2_F64 motions[] = new Se2_F64[]{new Se2_F64(0.12, -0.12, 0.05), new Se2_F64(-0.1, 0.05, -0.04)};
+
+		// prepare all the scans before any of them are matched
+		Object prepared[] = new Object[motions.length];
+		for (int i = 0; i < motions.length; i++) {
+			model.update(motions[i], world);
+			prepared[i] = algPrepared.createPreparedSource();
+			algPrepared.prepareSource(model.getMeasurement().meas.clone(), prepared[i]);
+		}
+
+		for (int i = 0; i < motions.length; i++) {
+			Object old = algPrepared.setPreparedSource(prepared[i]);
+			assertTrue(old != null && old != prepared[i]);
+
+			assertTrue(alg.process(null));
+
+			Se2_F64 expected = motions[i];
+			Se2_F64 found = alg.getSourceToDestination();
+			GeometryUnitTest.assertEquals(expected.getTranslation(), found.getTranslation(), tranTol);
+			assertEquals(expected.getYaw(), found.getYaw(), angTol);
+			assertTrue(alg.getError() < 0.01);
+		}
+
+		// the last prepared scan becomes the destination and the first scan is matched against it
+		alg.assignSourceToDestination();
+		model.update(motions[0], world);
+		alg.setSource(model.getMeasurement().meas.clone());
+		assertTrue(alg.process(null));
+
+		Se2_F64 expected = motions[0].concat(motions[1].invert(null), null);
+		Se2_F64 found = alg.getSourceToDestination();
+		GeometryUnitTest.assertEquals(expected.getTranslation(), found.getTranslation(), tranTol);
+		assertEquals(expected.getYaw(), found.getYaw(), angTol);
+	}
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.fit.s2s;
+
+import bubo.clouds.fit.Lrf2dScanToScan;
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.maps.d2.lines.LineSegmentMap;
+import bubo.simulation.d2.sensors.SimulateLrf2D;
+import georegression.misc.test.GeometryUnitTest;
+import georegression.struct.line.LineSegment2D_F64;
+import georegression.struct.se.Se2_F64;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestLrf2dScanToScan_Correlative extends StandardTestsScanToScan {
+	public TestLrf2dScanToScan_Correlative() {
+		angTol = 0.02;
+		tranTol = 0.02;
+	}
+
+	@Override
+	public Lrf2dScanToScan createAlg() {
+		return new Lrf2dScanToScan_Correlative(0.02, 0.5, 0.3, 0.3, 5);
+	}
+
+	/**
+	 * The solution should be the same as an exhaustive search, no matter how many levels there are
+	 */
+	@Test
+	public void sameSolutionAllLevels() {
+		Lrf2dParam param = new Lrf2dParam("Dummy", -Math.PI / 2, Math.PI, 100, 10, 0, 0);
+
+		LineSegmentMap world = new LineSegmentMap();
+		world.lines.add(new LineSegment2D_F64(-2, 4, 2, 0));
+		world.lines.add(new LineSegment2D_F64(-2, -4, 2, 0));
+		world.lines.add(new LineSegment2D_F64(-1, 2, 1, 3));
+
+		SimulateLrf2D model = new SimulateLrf2D(param);
+		model.update(new Se2_F64(), world);
+		double dst[] = model.getMeasurement().meas.clone();
+		Se2_F64 sensorToWorld = new Se2_F64(-0.2, 0.15, -0.1);
+		model.update(sensorToWorld, world);
+		double src[] = model.getMeasurement().meas.clone();
+
+		Se2_F64 expected = null;
+		for (int numLevels = 1; numLevels <= 6; numLevels++) {
+			Lrf2dScanToScan_Correlative alg = new Lrf2dScanToScan_Correlative(0.02, 0.5, 0.3, 0.2, numLevels);
+			alg.setSensorParam(param);
+			alg.setDestination(dst);
+			alg.setSource(src);
+			assertTrue(alg.process(null));
+
+			Se2_F64 found = alg.getSourceToDestination();
+			if (expected == null) {
+				expected = found.copy();
+				GeometryUnitTest.assertEquals(sensorToWorld, found, 0.02, 0.02);
+			} else {
+				GeometryUnitTest.assertEquals(expected, found, 1e-8, 1e-8);
+			}
+		}
+	}
+
+	/**
+	 * Motion is outside of the search window and the hint is not provided
+	 */
+	@Test
+	public void outsideWindow() {
+		Lrf2dParam param = new Lrf2dParam("Dummy", -Math.PI / 2, Math.PI, 100, 10, 0, 0);
+
+		LineSegmentMap world = new LineSegmentMap();
+		world.lines.add(new LineSegment2D_F64(-2, 4, 2, 0));
+		world.lines.add(new LineSegment2D_F64(-2, -4, 2, 0));
+
+		SimulateLrf2D model = new SimulateLrf2D(param);
+		model.update(new Se2_F64(), world);
+		double dst[] = model.getMeasurement().meas.clone();
+		model.update(new Se2_F64(1.0, 0.5, 0.3), world);
+		double src[] = model.getMeasurement().meas.clone();
+
+		Lrf2dScanToScan_Correlative alg = new Lrf2dScanToScan_Correlative(0.02, 0.5, 0.1, 0.1, 4);
+		alg.setSensorParam(param);
+		alg.setDestination(dst);
+		alg.setSource(src);
+		alg.setMinScore(0.9);
+
+		// no solution is good enough
+		assertTrue(!alg.process(null));
+		assertEquals(0, alg.totalScansMatched());
+	}
+}
@@ -20,12 +20,17 @@ package bubo.clouds.fit.s2s;
 
 import bubo.clouds.fit.Lrf2dScanToScan;
 import bubo.struct.StoppingCondition;
+import org.junit.Test;
 
 
 /**
  * @author Peter Abeles
  */
 public class TestLrf2dScanToScan_LocalICP extends StandardTestsScanToScan {
+
+	// if true the created algorithm will use projective association
+	boolean projective = false;
+
 	public TestLrf2dScanToScan_LocalICP() {
 		angTol = 0.02;
 		tranTol = 0.02;
@@ -35,6 +40,21 @@ public class TestLrf2dScanToScan_LocalICP extends StandardTestsScanToScan {
 	public Lrf2dScanToScan createAlg() {
 		StoppingCondition stop = new StoppingCondition(20, 0.0001);
 
-		return new Lrf2dScanToScan_LocalICP(stop, 50, 0.2);
+		Lrf2dScanToScan_LocalICP alg = new Lrf2dScanToScan_LocalICP(stop, 50, 0.2);
+		if (projective)
+			alg.setProjectiveRadius(5);
+		return alg;
+	}
+
+	@Test
+	public void projectiveCCW() {
+		projective = true;
+		standardTestsCCW();
+	}
+
+	@Test
+	public void projectiveCW() {
+		projective = true;
+		standardTestsCW();
 	}
 }
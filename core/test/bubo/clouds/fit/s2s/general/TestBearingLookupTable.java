@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.s2s.general;
+
+import georegression.struct.point.Point2D_F64;
+import org.ddogleg.struct.GrowQueue_I32;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author Peter Abeles
+ */
+public class TestBearingLookupTable {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Compare the found points against an exhaustive search
+	 */
+	@Test
+	public void lookup() {
+		int N = 300;
+		Point2D_F64 pts[] = new Point2D_F64[N];
+		boolean vis[] = new boolean[N];
+		for (int i = 0; i < N; i++) {
+			pts[i] = new Point2D_F64(rand.nextGaussian(), rand.nextGaussian());
+			vis[i] = rand.nextDouble() > 0.2;
+		}
+
+		BearingLookupTable alg = new BearingLookupTable(0.05);
+		alg.process(pts, vis, N);
+
+		GrowQueue_I32 found = new GrowQueue_I32();
+		for (int trial = 0; trial < 100; trial++) {
+			double theta = (rand.nextDouble() * 2 - 1) * Math.PI;
+			int radius = rand.nextInt(3);
+
+			found.reset();
+			alg.lookup(theta, radius, found);
+
+			int center = alg.bin(theta);
+			int expected = 0;
+			for (int i = 0; i < N; i++) {
+				if (!vis[i])
+					continue;
+				int bin = alg.bin(Math.atan2(pts[i].y, pts[i].x));
+				int distance = Math.abs(bin - center);
+				distance = Math.min(distance, alg.getNumBins() - distance);
+				boolean inside = distance <= radius;
+				if (inside)
+					expected++;
+				assertEquals(inside, contains(found, i));
+			}
+			assertEquals(expected, found.size);
+		}
+	}
+
+	/**
+	 * A large radius should return every visible point exactly once
+	 */
+	@Test
+	public void lookup_everything() {
+		int N = 50;
+		Point2D_F64 pts[] = new Point2D_F64[N];
+		boolean vis[] = new boolean[N];
+		for (int i = 0; i < N; i++) {
+			pts[i] = new Point2D_F64(rand.nextGaussian(), rand.nextGaussian());
+			vis[i] = true;
+		}
+
+		BearingLookupTable alg = new BearingLookupTable(0.5);
+		alg.process(pts, vis, N);
+
+		GrowQueue_I32 found = new GrowQueue_I32();
+		alg.lookup(0, 100, found);
+		assertEquals(N, found.size);
+		for (int i = 0; i < N; i++) {
+			assertTrue(contains(found, i));
+		}
+	}
+
+	@Test
+	public void bin() {
+		BearingLookupTable alg = new BearingLookupTable(0.1);
+		assertEquals(63, alg.getNumBins());
+		assertEquals(0, alg.bin(-Math.PI));
+		assertEquals(62, alg.bin(Math.PI));
+		assertEquals(31, alg.bin(0));
+	}
+
+	private static boolean contains(GrowQueue_I32 list, int value) {
+		for (int i = 0; i < list.size; i++) {
+			if (list.data[i] == value)
+				return true;
+		}
+		return false;
+	}
+}
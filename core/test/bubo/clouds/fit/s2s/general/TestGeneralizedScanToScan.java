@@ -109,7 +109,8 @@ public class TestGeneralizedScanToScan {
 		double range[] = new double[N];
 		for (int i = 0; i < N; i++) {
 			range[i] = r;
-			info.pts[i].set(1, 1);
+			info.x[i] = 1;
+			info.y[i] = 1;
 			info.vis[i] = false;
 		}
 		// cause a bad point
@@ -121,6 +122,7 @@ public class TestGeneralizedScanToScan {
 		for (int i = 0; i < N; i++) {
 			if (i != 10) {
 				assertEquals(info.theta[i], Math.PI / 4, 1e-8);
+				assertEquals(info.range[i], Math.sqrt(2), 1e-8);
 				assertTrue(info.vis[i]);
 			} else {
 				assertTrue(!info.vis[i]);
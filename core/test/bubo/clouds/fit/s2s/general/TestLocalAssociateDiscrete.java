@@ -24,6 +24,7 @@ import org.junit.Test;
 
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 
@@ -65,6 +66,64 @@ public class TestLocalAssociateDiscrete {
 		}
 	}
 
+	/**
+	 * Projective association should find the same matches as a local search when the points are on
+	 * the sensor's beams
+	 */
+	@Test
+	public void projective() {
+		Lrf2dParam param = TestGeneralizedScanToScan.createParam();
+		int N = param.getNumberOfScans();
+
+		ScanInfo scanSrc = new ScanInfo(N);
+		ScanInfo scanDst = new ScanInfo(N);
+
+		for (int i = 0; i < N; i++) {
+			double theta = param.computeAngle(i);
+			double r = 2 + 0.2 * Math.sin(i * 0.1);
+			scanDst.pts[i] = new Point2D_F64(r * Math.cos(theta), r * Math.sin(theta));
+			// slightly rotate the source points so that they aren't exactly on top of each other
+			theta += param.getAngleIncrement() * 0.3;
+			scanSrc.pts[i] = new Point2D_F64(r * Math.cos(theta), r * Math.sin(theta));
+			scanSrc.vis[i] = true;
+			scanDst.vis[i] = i % 7 != 0;
+		}
+
+		DistanceAssociate local = new DistanceAssociate(10, 0.5);
+		local.setParam(param);
+		local.associate(scanSrc, scanDst);
+
+		DistanceAssociate alg = new DistanceAssociate(10, 0.5);
+		alg.setParam(param);
+		alg.setProjectiveRadius(2);
+		alg.setDestination(scanDst);
+		alg.associate(scanSrc, scanDst);
+
+		assertEquals(local.getListSource().size(), alg.getListSource().size());
+		for (int i = 0; i < alg.getListSource().size(); i++) {
+			assertTrue(local.getListSource().get(i) == alg.getListSource().get(i));
+			assertTrue(local.getListDestination().get(i) == alg.getListDestination().get(i));
+		}
+	}
+
+	private static class DistanceAssociate extends LocalAssociateDiscrete {
+		Point2D_F64 target;
+
+		protected DistanceAssociate(int searchNeighborhood, double maxSeparation) {
+			super(searchNeighborhood, maxSeparation);
+		}
+
+		@Override
+		public void setTarget(int index) {
+			target = scanSrc.pts[index];
+		}
+
+		@Override
+		public double distToTarget(int index) {
+			return scanDst.pts[index].distance2(target);
+		}
+	}
+
 	/**
 	 * Very simple implementation of associate.  Does it based upon the index alone.
 	 */
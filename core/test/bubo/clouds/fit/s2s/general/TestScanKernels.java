@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.fit.s2s.general;
+
+import georegression.struct.point.Point2D_F64;
+import georegression.struct.se.Se2_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * @author Peter Abeles
+ */
+public class TestScanKernels {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void atan2() {
+		for (int i = 0; i < 100000; i++) {
+			double x = rand.nextGaussian() * 10;
+			double y = rand.nextGaussian() * 10;
+			assertEquals(Math.atan2(y, x), ScanKernels.atan2(y, x), 1e-9);
+		}
+
+		// along the axes, diagonals, and the boundary of the range reduction
+		double t = Math.tan(Math.PI / 8);
+		double special[][] = new double[][]{{0, 1}, {1, 0}, {0, -1}, {-1, 0}, {1, 1}, {-1, 1}, {1, -1}, {-1, -1},
+				{t, 1}, {1, t}, {-t, -1}, {1e-300, 1}, {1, 1e-300}, {-1e-300, -1}, {0, 0}, {0, -2}};
+		for (double[] s : special) {
+			assertEquals(Math.atan2(s[0], s[1]), ScanKernels.atan2(s[0], s[1]), 1e-9);
+		}
+	}
+
+	@Test
+	public void computePolar() {
+		int N = 50;
+		double x[] = new double[N];
+		double y[] = new double[N];
+		for (int i = 0; i < N; i++) {
+			x[i] = rand.nextGaussian();
+			y[i] = rand.nextGaussian();
+		}
+
+		double range[] = new double[N];
+		double theta[] = new double[N];
+		ScanKernels.computePolar(x, y, range, theta, N);
+
+		for (int i = 0; i < N; i++) {
+			assertEquals(Math.sqrt(x[i] * x[i] + y[i] * y[i]), range[i], 1e-12);
+			assertEquals(Math.atan2(y[i], x[i]), theta[i], 1e-9);
+		}
+	}
+
+	@Test
+	public void transform() {
+		Se2_F64 m = new Se2_F64(0.5, -1.2, 0.7);
+
+		int N = 20;
+		double x[] = new double[N];
+		double y[] = new double[N];
+		Point2D_F64 expected[] = new Point2D_F64[N];
+		for (int i = 0; i < N; i++) {
+			x[i] = rand.nextGaussian();
+			y[i] = rand.nextGaussian();
+			expected[i] = SePointOps_F64.transform(m, new Point2D_F64(x[i], y[i]), null);
+		}
+		double origX[] = x.clone();
+		double origY[] = y.clone();
+
+		// different output arrays
+		double outX[] = new double[N];
+		double outY[] = new double[N];
+		ScanKernels.transform(m, x, y, outX, outY, N);
+
+		for (int i = 0; i < N; i++) {
+			assertEquals(expected[i].x, outX[i], 1e-12);
+			assertEquals(expected[i].y, outY[i], 1e-12);
+			assertEquals(origX[i], x[i], 0);
+			assertEquals(origY[i], y[i], 0);
+		}
+
+		// in place
+		ScanKernels.transform(m, x, y, x, y, N);
+
+		for (int i = 0; i < N; i++) {
+			assertEquals(expected[i].x, x[i], 1e-12);
+			assertEquals(expected[i].y, y[i], 1e-12);
+		}
+	}
+}
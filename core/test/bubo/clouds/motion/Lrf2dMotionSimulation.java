@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.motion;
+
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.maps.d2.lines.LineSegmentMap;
+import bubo.simulation.d2.sensors.SimulateLrf2D;
+import georegression.struct.line.LineSegment2D_F64;
+import georegression.struct.se.Se2_F64;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simulated LRF scans for testing motion estimation.  The sensor moves in a straight line next to two walls and
+ * the odometry has a small bias.
+ *
+ * @author Peter Abeles
+ */
+public class Lrf2dMotionSimulation {
+
+	public Lrf2dParam param = createParam();
+
+	public List<double[]> scans = new ArrayList<double[]>();
+	// sensor to world from odometry
+	public List<Se2_F64> odometry = new ArrayList<Se2_F64>();
+	// true sensor to world
+	public List<Se2_F64> truth = new ArrayList<Se2_F64>();
+
+	/**
+	 * Simulates the specified number of scans
+	 */
+	public Lrf2dMotionSimulation(int N) {
+		LineSegmentMap world = new LineSegmentMap();
+		world.lines.add(new LineSegment2D_F64(-2, 4, 2, 0));
+		world.lines.add(new LineSegment2D_F64(-2, -4, 2, 0));
+
+		SimulateLrf2D model = new SimulateLrf2D(param);
+		for (int i = 0; i < N; i++) {
+			Se2_F64 sensorToWorld = new Se2_F64(-0.01 * i, 0.005 * i, 0.002 * i);
+			model.update(sensorToWorld, world);
+			scans.add(model.getMeasurement().meas.clone());
+			truth.add(sensorToWorld);
+			// odometry with a small bias
+			odometry.add(new Se2_F64(sensorToWorld.getX() * 1.05, sensorToWorld.getY(), sensorToWorld.getYaw()));
+		}
+	}
+
+	/**
+	 * Sensor which the scans are simulated for
+	 */
+	public static Lrf2dParam createParam() {
+		return new Lrf2dParam("Dummy", Math.PI / 2, -Math.PI, 100, 10, 0, 0);
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.motion;
+
+import bubo.clouds.fit.Lrf2dScanToScan;
+import bubo.clouds.fit.s2s.Lrf2dScanToScan_LocalICP;
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.struct.StoppingCondition;
+import georegression.struct.se.Se2_F64;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestLrf2dBatchOdometry {
+
+	Lrf2dParam param = Lrf2dMotionSimulation.createParam();
+
+	List<double[]> scans;
+	List<Se2_F64> odometry;
+	List<Se2_F64> truth;
+
+	/**
+	 * Compare against matching each pair and chaining the motions one at a time
+	 */
+	@Test
+	public void trajectory() {
+		simulate(20);
+
+		Lrf2dBatchOdometry alg = new Lrf2dBatchOdometry(new IcpFactory(), 1);
+		alg.init(param);
+		alg.process(scans, odometry);
+
+		List<Se2_F64> found = alg.getTrajectory();
+		assertEquals(scans.size(), found.size());
+
+		Lrf2dScanToScan estimator = new IcpFactory().create();
+		estimator.setSensorParam(param);
+		Se2_F64 expected = odometry.get(0).copy();
+		for (int i = 0; i < scans.size(); i++) {
+			if (i > 0) {
+				Se2_F64 hint = odometry.get(i).concat(odometry.get(i - 1).invert(null), null);
+				estimator.setDestination(scans.get(i - 1));
+				estimator.setSource(scans.get(i));
+				assertTrue(estimator.process(hint));
+				expected = estimator.getSourceToDestination().concat(expected, null);
+
+				assertTrue(alg.isMatched(i));
+				assertEquals(estimator.getError(), alg.getError(i), 1e-8);
+			}
+			Se2_F64 f = found.get(i);
+			assertEquals(expected.getX(), f.getX(), 1e-8);
+			assertEquals(expected.getY(), f.getY(), 1e-8);
+			assertEquals(expected.getYaw(), f.getYaw(), 1e-8);
+
+			// should be in the general vicinity of the truth
+			assertEquals(truth.get(i).getX(), f.getX(), 0.2);
+			assertEquals(truth.get(i).getY(), f.getY(), 0.2);
+		}
+	}
+
+	/**
+	 * The results should be identical no matter how many threads are used
+	 */
+	@Test
+	public void sameForAnyNumberOfThreads() {
+		simulate(30);
+
+		Lrf2dBatchOdometry single = new Lrf2dBatchOdometry(new IcpFactory(), 1);
+		single.init(param);
+		single.process(scans, odometry);
+
+		for (int numThreads = 2; numThreads <= 5; numThreads++) {
+			Lrf2dBatchOdometry alg = new Lrf2dBatchOdometry(new IcpFactory(), numThreads);
+			alg.init(param);
+			alg.process(scans, odometry);
+
+			for (int i = 0; i < scans.size(); i++) {
+				Se2_F64 e = single.getTrajectory().get(i), f = alg.getTrajectory().get(i);
+				assertEquals(e.getX(), f.getX(), 0);
+				assertEquals(e.getY(), f.getY(), 0);
+				assertEquals(e.getYaw(), f.getYaw(), 0);
+				assertEquals(single.getError(i), alg.getError(i), 0);
+			}
+			alg.shutdown();
+		}
+	}
+
+	/**
+	 * Pairs which contain a scan with no valid ranges should use odometry
+	 */
+	@Test
+	public void invalidScan() {
+		simulate(10);
+		Arrays.fill(scans.get(4), Double.NaN);
+
+		Lrf2dBatchOdometry alg = new Lrf2dBatchOdometry(new IcpFactory(), 3);
+		alg.init(param);
+		alg.process(scans, odometry);
+
+		for (int i = 1; i < scans.size(); i++) {
+			assertEquals(i != 4 && i != 5, alg.isMatched(i));
+		}
+		checkOdometryMotion(alg, 4);
+		checkOdometryMotion(alg, 5);
+		alg.shutdown();
+	}
+
+	/**
+	 * If the estimator fails then odometry should be used
+	 */
+	@Test
+	public void estimatorFails() {
+		simulate(6);
+
+		Lrf2dBatchOdometry alg = new Lrf2dBatchOdometry(new Lrf2dBatchOdometry.EstimatorFactory() {
+			@Override
+			public Lrf2dScanToScan create() {
+				return new Lrf2dScanToScan_LocalICP(new StoppingCondition(20, 0.0001), 50, 0.2) {
+					@Override
+					public boolean process(Se2_F64 hintSrcToDst) {
+						return false;
+					}
+				};
+			}
+		}, 2);
+		alg.init(param);
+		alg.process(scans, odometry);
+
+		for (int i = 1; i < scans.size(); i++) {
+			assertFalse(alg.isMatched(i));
+			checkOdometryMotion(alg, i);
+
+			Se2_F64 f = alg.getTrajectory().get(i), o = odometry.get(i);
+			assertEquals(o.getX(), f.getX(), 1e-8);
+			assertEquals(o.getY(), f.getY(), 1e-8);
+			assertEquals(o.getYaw(), f.getYaw(), 1e-8);
+		}
+		alg.shutdown();
+	}
+
+	@Test
+	public void noOdometry() {
+		simulate(8);
+
+		Lrf2dBatchOdometry alg = new Lrf2dBatchOdometry(new IcpFactory(), 2);
+		alg.init(param);
+		alg.process(scans, null);
+
+		Se2_F64 first = alg.getTrajectory().get(0);
+		assertEquals(0, first.getX(), 0);
+		assertEquals(0, first.getY(), 0);
+		assertEquals(0, first.getYaw(), 0);
+
+		for (int i = 1; i < scans.size(); i++) {
+			assertTrue(alg.isMatched(i));
+		}
+		alg.shutdown();
+	}
+
+	private void checkOdometryMotion(Lrf2dBatchOdometry alg, int index) {
+		Se2_F64 expected = odometry.get(index).concat(odometry.get(index - 1).invert(null), null);
+		Se2_F64 found = alg.getMotion(index);
+		assertEquals(expected.getX(), found.getX(), 1e-8);
+		assertEquals(expected.getY(), found.getY(), 1e-8);
+		assertEquals(expected.getYaw(), found.getYaw(), 1e-8);
+	}
+
+	private void simulate(int N) {
+		Lrf2dMotionSimulation sim = new Lrf2dMotionSimulation(N);
+		scans = sim.scans;
+		odometry = sim.odometry;
+		truth = sim.truth;
+	}
+
+	private class IcpFactory implements Lrf2dBatchOdometry.EstimatorFactory {
+		@Override
+		public Lrf2dScanToScan create() {
+			return new Lrf2dScanToScan_LocalICP(new StoppingCondition(20, 0.0001), 50, 0.2);
+		}
+	}
+}
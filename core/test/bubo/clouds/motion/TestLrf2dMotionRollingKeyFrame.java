@@ -18,16 +18,129 @@
 
 package bubo.clouds.motion;
 
+import bubo.clouds.fit.Lrf2dScanToScan;
+import bubo.clouds.fit.s2s.Lrf2dScanToScan_LocalICP;
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.metrics.Metrics;
+import bubo.metrics.SummaryMetricsRegistry;
+import bubo.struct.StoppingCondition;
+import georegression.struct.se.Se2_F64;
 import org.junit.Test;
 
-import static org.junit.Assert.fail;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
 
 /**
  * @author Peter Abeles
  */
 public class TestLrf2dMotionRollingKeyFrame {
+
+	Lrf2dParam param = Lrf2dMotionSimulation.createParam();
+
 	@Test
 	public void stuff() {
 		fail("Implement");
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Every time the key-frame is changed it should be recorded, including when scans are missing
+	 */
+	@Test
+	public void metrics_keyFrameChanges() {
+		Lrf2dMotionRollingKeyFrame alg = new Lrf2dMotionRollingKeyFrame(
+				new Lrf2dScanToScan_LocalICP(new StoppingCondition(20, 0.0001), 50, 0.2), 10);
+		alg.init(param);
+
+		double valid[] = new double[param.getNumberOfScans()];
+		double invalid[] = new double[param.getNumberOfScans()];
+		Arrays.fill(valid, 5);
+		Arrays.fill(invalid, Double.NaN);
+
+		SummaryMetricsRegistry metrics = new SummaryMetricsRegistry();
+		Metrics.set(metrics);
+		try {
+			// the first key-frame isn't a change
+			alg.process(new Se2_F64(), valid);
+			assertNull(metrics.getSummary(Metrics.MOTION_KEY_FRAME_COUNT));
+
+			// key-frame has a scan but the current frame doesn't
+			alg.process(new Se2_F64(0.1, 0, 0), invalid);
+			assertEquals(1, metrics.getSummary(Metrics.MOTION_KEY_FRAME_COUNT).getCount());
+
+			// key-frame has no scan, so there is nothing to match against
+			alg.process(new Se2_F64(0.2, 0, 0), invalid);
+			assertEquals(1, metrics.getSummary(Metrics.MOTION_KEY_FRAME_COUNT).getCount());
+
+			// key-frame has no scan but the current frame does
+			alg.process(new Se2_F64(0.3, 0, 0), valid);
+			assertEquals(2, metrics.getSummary(Metrics.MOTION_KEY_FRAME_COUNT).getCount());
+			assertEquals(2, metrics.getSummary(Metrics.MOTION_KEY_FRAME).getCount());
+		} finally {
+			Metrics.set(null);
+		}
+	}
+
+	/**
+	 * The time spent matching should be recorded even if matching fails
+	 */
+	@Test
+	public void metrics_failedMatch() {
+		Lrf2dMotionRollingKeyFrame alg = new Lrf2dMotionRollingKeyFrame(new FailingMatcher(), 10);
+		alg.init(param);
+
+		double valid[] = new double[param.getNumberOfScans()];
+		Arrays.fill(valid, 5);
+
+		SummaryMetricsRegistry metrics = new SummaryMetricsRegistry();
+		Metrics.set(metrics);
+		try {
+			alg.process(new Se2_F64(), valid);
+			try {
+				alg.process(new Se2_F64(0.1, 0, 0), valid);
+				fail("Should have failed");
+			} catch (RuntimeException ignore) {
+			}
+			assertEquals(1, metrics.getSummary(Metrics.MOTION_MATCH).getCount());
+		} finally {
+			Metrics.set(null);
+		}
+	}
+
+	/**
+	 * Matcher which always fails
+	 */
+	public static class FailingMatcher implements Lrf2dScanToScan {
+		@Override
+		public void setSensorParam(Lrf2dParam param) {}
+
+		@Override
+		public Se2_F64 getSourceToDestination() {
+			return null;
+		}
+
+		@Override
+		public void setDestination(double[] scan) {}
+
+		@Override
+		public void setSource(double[] scan) {}
+
+		@Override
+		public void assignSourceToDestination() {}
+
+		@Override
+		public boolean process(Se2_F64 hintSrcToDst) {
+			return false;
+		}
+
+		@Override
+		public double getError() {
+			return 0;
+		}
+
+		@Override
+		public int totalScansMatched() {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.motion;
+
+import bubo.clouds.fit.Lrf2dScanToScan;
+import bubo.clouds.fit.s2s.Lrf2dScanToScan_LocalICP;
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.struct.StoppingCondition;
+import georegression.struct.se.Se2_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestLrf2dMotionRollingKeyFrameAsync {
+
+	Lrf2dParam param = Lrf2dMotionSimulation.createParam();
+
+	/**
+	 * The asynchronous version should produce exactly the same poses as the synchronous version
+	 */
+	@Test
+	public void sameAsSynchronous() {
+		Lrf2dMotionSimulation sim = new Lrf2dMotionSimulation(30);
+		List<double[]> scans = sim.scans;
+		List<Se2_F64> odometry = sim.odometry;
+
+		Lrf2dMotionRollingKeyFrame sync = new Lrf2dMotionRollingKeyFrame(createMatcher(), 10);
+		sync.init(param);
+		List<Se2_F64> expected = new ArrayList<Se2_F64>();
+		for (int i = 0; i < scans.size(); i++) {
+			sync.process(odometry.get(i), scans.get(i));
+			expected.add(sync.getSensorToWorld().copy());
+		}
+
+		Lrf2dMotionRollingKeyFrameAsync alg = new Lrf2dMotionRollingKeyFrameAsync(
+				new Lrf2dMotionRollingKeyFrame(createMatcher(), 10), 3, Lrf2dMotionRollingKeyFrameAsync.Policy.BLOCK);
+		SaveListener listener = new SaveListener();
+		alg.setListener(listener);
+		alg.init(param);
+
+		for (int i = 0; i < scans.size(); i++) {
+			assertEquals(i, alg.submit(odometry.get(i), scans.get(i)));
+		}
+		alg.flush();
+
+		assertEquals(0, alg.getQueueDepth());
+		assertEquals(scans.size(), alg.getTotalProcessed());
+		assertEquals(0, alg.getTotalDropped());
+		assertTrue(alg.getLatencyMax() >= alg.getLatencyLast());
+		assertTrue(alg.getLatencyMean() > 0);
+
+		assertEquals(scans.size(), listener.sequences.size());
+		for (int i = 0; i < scans.size(); i++) {
+			assertEquals(i, (long) listener.sequences.get(i));
+			Se2_F64 e = expected.get(i), f = listener.poses.get(i);
+			assertEquals(e.getX(), f.getX(), 0);
+			assertEquals(e.getY(), f.getY(), 0);
+			assertEquals(e.getYaw(), f.getYaw(), 0);
+		}
+
+		alg.shutdown();
+	}
+
+	/**
+	 * When matching is slower than frames arrive, old frames should be discarded and the remaining ones
+	 * processed in order
+	 */
+	@Test
+	public void dropOldest() {
+		Lrf2dMotionSimulation sim = new Lrf2dMotionSimulation(20);
+		List<double[]> scans = sim.scans;
+		List<Se2_F64> odometry = sim.odometry;
+
+		Lrf2dMotionRollingKeyFrameAsync alg = new Lrf2dMotionRollingKeyFrameAsync(
+				new Lrf2dMotionRollingKeyFrame(new SlowMatcher(20), 10), 2,
+				Lrf2dMotionRollingKeyFrameAsync.Policy.DROP_OLDEST);
+		SaveListener listener = new SaveListener();
+		alg.setListener(listener);
+		alg.init(param);
+
+		for (int i = 0; i < scans.size(); i++) {
+			alg.submit(odometry.get(i), scans.get(i));
+			// the queue plus the frames being preprocessed, waiting to be matched, and being matched
+			assertTrue(alg.getQueueDepth() <= 2 + 3);
+		}
+		alg.flush();
+
+		assertTrue(alg.getTotalDropped() > 0);
+		assertEquals(scans.size(), alg.getTotalDropped() + alg.getTotalProcessed());
+		assertEquals(alg.getTotalProcessed(), listener.sequences.size());
+
+		// strictly increasing and the last frame is never dropped
+		List<Long> sorted = new ArrayList<Long>(listener.sequences);
+		Collections.sort(sorted);
+		assertEquals(sorted, listener.sequences);
+		assertEquals(scans.size() - 1, (long) listener.sequences.get(listener.sequences.size() - 1));
+
+		alg.shutdown();
+	}
+
+	/**
+	 * An exception thrown while matching should be passed to the caller
+	 */
+	@Test
+	public void failure() {
+		Lrf2dMotionSimulation sim = new Lrf2dMotionSimulation(3);
+		List<double[]> scans = sim.scans;
+		List<Se2_F64> odometry = sim.odometry;
+
+		SlowMatcher matcher = new SlowMatcher(0);
+		matcher.success = false;
+		Lrf2dMotionRollingKeyFrameAsync alg = new Lrf2dMotionRollingKeyFrameAsync(
+				new Lrf2dMotionRollingKeyFrame(matcher, 10), 2, Lrf2dMotionRollingKeyFrameAsync.Policy.BLOCK);
+		alg.init(param);
+
+		// depending on timing it's thrown by submit or flush
+		try {
+			for (int i = 0; i < scans.size(); i++) {
+				alg.submit(odometry.get(i), scans.get(i));
+			}
+			alg.flush();
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals("Crap it failed.  I should something smart here", e.getMessage());
+		}
+		alg.shutdown();
+	}
+
+	/**
+	 * If the caller is interrupted while waiting it should return with the interrupt status still set
+	 */
+	@Test
+	public void interrupted() {
+		Lrf2dMotionSimulation sim = new Lrf2dMotionSimulation(6);
+		List<double[]> scans = sim.scans;
+		List<Se2_F64> odometry = sim.odometry;
+
+		SlowMatcher matcher = new SlowMatcher(0);
+		matcher.gate = new CountDownLatch(1);
+		Lrf2dMotionRollingKeyFrameAsync alg = new Lrf2dMotionRollingKeyFrameAsync(
+				new Lrf2dMotionRollingKeyFrame(matcher, 10), 1, Lrf2dMotionRollingKeyFrameAsync.Policy.BLOCK);
+		alg.init(param);
+
+		// the first frame isn't matched.  The second frame is stuck being matched, the third is waiting to be
+		// matched, the fourth is stuck being preprocessed, and the fifth fills the queue
+		for (int i = 0; i < 5; i++) {
+			assertEquals(i, alg.submit(odometry.get(i), scans.get(i)));
+		}
+
+		// the queue is full, so the frame can't be added
+		Thread.currentThread().interrupt();
+		assertEquals(-1, alg.submit(odometry.get(5), scans.get(5)));
+		assertTrue(Thread.interrupted());
+
+		Thread.currentThread().interrupt();
+		alg.flush();
+		assertTrue(Thread.interrupted());
+		assertEquals(4, alg.getQueueDepth());
+
+		matcher.gate.countDown();
+		alg.flush();
+		assertEquals(5, alg.getTotalProcessed());
+		alg.shutdown();
+	}
+
+	private Lrf2dScanToScan createMatcher() {
+		return new Lrf2dScanToScan_LocalICP(new StoppingCondition(20, 0.0001), 50, 0.2);
+	}
+
+	private static class SaveListener implements Lrf2dMotionRollingKeyFrameAsync.Listener {
+		List<Long> sequences = Collections.synchronizedList(new ArrayList<Long>());
+		List<Se2_F64> poses = Collections.synchronizedList(new ArrayList<Se2_F64>());
+
+		@Override
+		public void poseAvailable(long sequence, Se2_F64 sensorToWorld, boolean fromOdometry) {
+			sequences.add(sequence);
+			poses.add(sensorToWorld.copy());
+		}
+	}
+
+	/**
+	 * Matcher which takes a fixed amount of time and returns no motion
+	 */
+	private static class SlowMatcher implements Lrf2dScanToScan {
+		long sleepMilli;
+		// if not null then matching waits until it's released
+		CountDownLatch gate;
+		boolean success = true;
+		Se2_F64 found = new Se2_F64();
+
+		private SlowMatcher(long sleepMilli) {
+			this.sleepMilli = sleepMilli;
+		}
+
+		@Override
+		public void setSensorParam(Lrf2dParam param) {}
+
+		@Override
+		public Se2_F64 getSourceToDestination() {
+			return found;
+		}
+
+		@Override
+		public void setDestination(double[] scan) {}
+
+		@Override
+		public void setSource(double[] scan) {}
+
+		@Override
+		public void assignSourceToDestination() {}
+
+		@Override
+		public boolean process(Se2_F64 hintSrcToDst) {
+			try {
+				if (gate != null)
+					gate.await();
+				Thread.sleep(sleepMilli);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			return success;
+		}
+
+		@Override
+		public double getError() {
+			return 0;
+		}
+
+		@Override
+		public int totalScansMatched() {
+			return 100;
+		}
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package bubo.clouds.nn;
+
+import org.ddogleg.nn.NnData;
+import org.ddogleg.struct.FastQueue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestIncrementalKdTreeNN {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Randomly add and remove points and compare the results against an exhaustive search
+	 */
+	@Test
+	public void compareToExhaustive() {
+		IncrementalKdTreeNN<Integer> alg = new IncrementalKdTreeNN<Integer>(3);
+
+		List<double[]> points = new ArrayList<double[]>();
+		List<Long> ids = new ArrayList<Long>();
+
+		for (int cycle = 0; cycle < 20; cycle++) {
+			for (int i = 0; i < 100; i++) {
+				double p[] = new double[]{rand.nextDouble(), rand.nextDouble(), rand.nextDouble()};
+				long id = alg.add(p, points.size());
+				points.add(p);
+				ids.add(id);
+			}
+			// remove a random subset of the points
+			for (int i = 0; i < 60; i++) {
+				int which = rand.nextInt(points.size());
+				if (points.get(which) == null)
+					continue;
+				assertTrue(alg.remove(ids.get(which)));
+				assertFalse(alg.contains(ids.get(which)));
+				points.set(which, null);
+			}
+
+			checkSearch(alg, points);
+		}
+	}
+
+	@Test
+	public void slidingWindow() {
+		IncrementalKdTreeNN<Integer> alg = new IncrementalKdTreeNN<Integer>(2);
+		alg.setMaxSize(150);
+
+		List<double[]> points = new ArrayList<double[]>();
+		for (int i = 0; i < 1000; i++) {
+			double p[] = new double[]{rand.nextDouble(), rand.nextDouble()};
+			assertEquals(i, alg.add(p, i));
+			points.add(p);
+			if (points.size() > 150)
+				points.set(points.size() - 151, null);
+
+			if (i % 97 == 0)
+				checkSearch(alg, points);
+		}
+		assertEquals(150, alg.size());
+		assertEquals(850, alg.getOldestId());
+		assertFalse(alg.contains(849));
+		assertTrue(alg.contains(850));
+
+		alg.removeOlderThan(900);
+		assertEquals(100, alg.size());
+		assertEquals(900, alg.getOldestId());
+		for (int i = 0; i < 900; i++) {
+			points.set(i, null);
+		}
+		checkSearch(alg, points);
+	}
+
+	/**
+	 * IDs must keep on increasing once they go past the range of a 32-bit integer
+	 */
+	@Test
+	public void slidingWindow_idsPastIntRange() {
+		IncrementalKdTreeNN<Integer> alg = new IncrementalKdTreeNN<Integer>(2);
+		long start = Integer.MAX_VALUE - 300L;
+		alg.setInitialId(start);
+		alg.setMaxSize(100);
+
+		List<double[]> points = new ArrayList<double[]>();
+		for (int i = 0; i < 1000; i++) {
+			double p[] = new double[]{rand.nextDouble(), rand.nextDouble()};
+			assertEquals(start + i, alg.add(p, i));
+			points.add(p);
+			if (points.size() > 100)
+				points.set(points.size() - 101, null);
+
+			if (i % 97 == 0)
+				checkSearch(alg, points);
+		}
+		assertEquals(100, alg.size());
+		assertEquals(start + 900, alg.getOldestId());
+		assertFalse(alg.contains(start + 899));
+		assertTrue(alg.contains(start + 900));
+		assertFalse(alg.contains(start + 1000));
+		checkSearch(alg, points);
+
+		alg.removeOlderThan(start + 950);
+		assertEquals(50, alg.size());
+		for (int i = 0; i < 950; i++) {
+			points.set(i, null);
+		}
+		checkSearch(alg, points);
+	}
+
+	/**
+	 * The number of trees should only grow logarithmically
+	 */
+	@Test
+	public void numberOfTrees() {
+		IncrementalKdTreeNN<Integer> alg = new IncrementalKdTreeNN<Integer>(2);
+		for (int i = 0; i < 10000; i++) {
+			alg.add(new double[]{rand.nextDouble(), rand.nextDouble()}, i);
+		}
+		assertTrue(alg.getNumTrees() <= 10);
+	}
+
+	@Test
+	public void setPoints() {
+		List<double[]> points = new ArrayList<double[]>();
+		List<Integer> data = new ArrayList<Integer>();
+		for (int i = 0; i < 300; i++) {
+			points.add(new double[]{rand.nextDouble(), rand.nextDouble(), rand.nextDouble()});
+			data.add(i);
+		}
+
+		IncrementalKdTreeNN<Integer> alg = new IncrementalKdTreeNN<Integer>();
+		alg.init(3);
+		alg.add(new double[]{0.5, 0.5, 0.5}, -1);
+		alg.setPoints(points, data);
+		assertEquals(300, alg.size());
+		checkSearch(alg, points);
+	}
+
+	@Test
+	public void concurrentSearchers() {
+		IncrementalKdTreeNN<Integer> alg = new IncrementalKdTreeNN<Integer>(3);
+		List<double[]> points = new ArrayList<double[]>();
+		for (int i = 0; i < 300; i++) {
+			double p[] = new double[]{rand.nextDouble(), rand.nextDouble(), rand.nextDouble()};
+			alg.add(p, i);
+			points.add(p);
+		}
+
+		IncrementalKdTreeNN.Searcher<Integer> searcherA = alg.createSearcher();
+		IncrementalKdTreeNN.Searcher<Integer> searcherB = alg.createSearcher();
+		NnData<Integer> resultA = new NnData<Integer>();
+		NnData<Integer> resultB = new NnData<Integer>();
+		for (int trial = 0; trial < 50; trial++) {
+			double[] target = new double[]{rand.nextDouble(), rand.nextDouble(), rand.nextDouble()};
+			assertTrue(searcherA.findNearest(target, -1, resultA));
+			assertTrue(searcherB.findNearest(target, -1, resultB));
+			assertTrue(resultA.data == resultB.data);
+			assertEquals(bruteNearest(points, target, Double.MAX_VALUE), (int) resultA.data);
+		}
+	}
+
+	private void checkSearch(IncrementalKdTreeNN<Integer> alg, List<double[]> points) {
+		int N = 0;
+		for (int i = 0; i < points.size(); i++) {
+			if (points.get(i) != null)
+				N = points.get(i).length;
+		}
+
+		NnData<Integer> result = new NnData<Integer>();
+		FastQueue<NnData<Integer>> list = new FastQueue<NnData<Integer>>((Class) NnData.class, true);
+
+		for (int trial = 0; trial < 30; trial++) {
+			double target[] = new double[N];
+			for (int k = 0; k < N; k++) {
+				target[k] = rand.nextDouble();
+			}
+
+			int expected = bruteNearest(points, target, 0.05);
+			if (expected < 0) {
+				assertFalse(alg.findNearest(target, 0.05, result));
+			} else {
+				assertTrue(alg.findNearest(target, 0.05, result));
+				assertEquals(expected, (int) result.data);
+				assertTrue(result.point == points.get(expected));
+			}
+
+			// N-nearest.  The results should be sorted and contain every point closer than the farthest one
+			list.reset();
+			alg.findNearest(target, 0.1, 5, list);
+			int totalInside = 0;
+			for (int i = 0; i < points.size(); i++) {
+				if (points.get(i) != null && distanceSq(points.get(i), target) <= 0.1)
+					totalInside++;
+			}
+			assertEquals(Math.min(5, totalInside), list.size);
+			for (int i = 0; i < list.size; i++) {
+				NnData<Integer> r = list.get(i);
+				assertTrue(points.get(r.data) != null);
+				assertEquals(distanceSq(points.get(r.data), target), r.distance, 1e-12);
+				if (i > 0)
+					assertTrue(list.get(i - 1).distance <= r.distance);
+			}
+			if (list.size > 0) {
+				double worst = list.get(list.size - 1).distance;
+				int closer = 0;
+				for (int i = 0; i < points.size(); i++) {
+					if (points.get(i) != null && distanceSq(points.get(i), target) < worst)
+						closer++;
+				}
+				assertTrue(closer < list.size);
+			}
+		}
+	}
+
+	private int bruteNearest(List<double[]> points, double target[], double maxDistanceSq) {
+		int best = -1;
+		double bestDistance = maxDistanceSq;
+		for (int i = 0; i < points.size(); i++) {
+			double p[] = points.get(i);
+			if (p == null)
+				continue;
+			double d = distanceSq(p, target);
+			if (d <= bestDistance) {
+				bestDistance = d;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	private static double distanceSq(double a[], double b[]) {
+		double total = 0;
+		for (int i = 0; i < a.length; i++) {
+			total += (a[i] - b[i]) * (a[i] - b[i]);
+		}
+		return total;
+	}
+}
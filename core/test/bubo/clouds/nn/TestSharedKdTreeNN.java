@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.clouds.nn;
+
+import org.ddogleg.nn.FactoryNearestNeighbor;
+import org.ddogleg.nn.NearestNeighbor;
+import org.ddogleg.nn.NnData;
+import org.ddogleg.struct.FastQueue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestSharedKdTreeNN {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Results should be identical to the single threaded K-D tree
+	 */
+	@Test
+	public void compareToKdTree() {
+		List<double[]> points = new ArrayList<double[]>();
+		List<Integer> data = new ArrayList<Integer>();
+		for (int i = 0; i < 200; i++) {
+			points.add(new double[]{rand.nextDouble(), rand.nextDouble(), rand.nextDouble()});
+			data.add(i);
+		}
+
+		NearestNeighbor<Integer> expected = FactoryNearestNeighbor.kdtree();
+		expected.init(3);
+		expected.setPoints(points, data);
+
+		SharedKdTreeNN<Integer> alg = new SharedKdTreeNN<Integer>(3);
+		alg.setPoints(points, data);
+		SharedKdTreeNN.Searcher<Integer> searcher = alg.createSearcher();
+
+		NnData<Integer> resultA = new NnData<Integer>();
+		NnData<Integer> resultB = new NnData<Integer>();
+		FastQueue<NnData<Integer>> listA = new FastQueue<NnData<Integer>>((Class) NnData.class, true);
+		FastQueue<NnData<Integer>> listB = new FastQueue<NnData<Integer>>((Class) NnData.class, true);
+
+		for (int trial = 0; trial < 50; trial++) {
+			double[] target = new double[]{rand.nextDouble(), rand.nextDouble(), rand.nextDouble()};
+
+			assertEquals(expected.findNearest(target, 0.2, resultA), searcher.findNearest(target, 0.2, resultB));
+			if (resultA.data != null)
+				assertTrue(resultA.data == resultB.data);
+
+			listA.reset();
+			listB.reset();
+			expected.findNearest(target, 0.3, 5, listA);
+			searcher.findNearest(target, 0.3, 5, listB);
+
+			assertEquals(listA.size, listB.size);
+			for (int i = 0; i < listA.size; i++) {
+				assertTrue(listA.get(i).data == listB.get(i).data);
+				assertEquals(listA.get(i).distance, listB.get(i).distance, 1e-12);
+			}
+		}
+	}
+
+	/**
+	 * Searchers should see the new tree after setPoints has been called again
+	 */
+	@Test
+	public void setPoints_multipleCalls() {
+		SharedKdTreeNN<Integer> alg = new SharedKdTreeNN<Integer>(1);
+		SharedKdTreeNN.Searcher<Integer> searcher = alg.createSearcher();
+
+		List<double[]> points = new ArrayList<double[]>();
+		List<Integer> data = new ArrayList<Integer>();
+		points.add(new double[]{1});
+		data.add(1);
+		alg.setPoints(points, data);
+
+		NnData<Integer> result = new NnData<Integer>();
+		assertTrue(searcher.findNearest(new double[]{0}, -1, result));
+		assertEquals(1, (int) result.data);
+
+		points.clear();
+		data.clear();
+		points.add(new double[]{5});
+		data.add(5);
+		alg.setPoints(points, data);
+
+		assertTrue(searcher.findNearest(new double[]{0}, -1, result));
+		assertEquals(5, (int) result.data);
+	}
+}
@@ -79,4 +79,27 @@ public class TestConstructOctree_F64 {
 		}
 	}
 
+	@Test
+	public void addPoints_packed() {
+		ConstructOctreeNumPoints_F64 alg = new ConstructOctreeNumPoints_F64(4);
+		alg.initialize(new Box3D_F64(-10, -10, -10, 10, 10, 10));
+
+		double[] x = new double[]{1, 2, 3, -4, 5, 6, 7};
+		double[] y = new double[]{-1, -2, -3, 4, 5, 6, 7};
+		double[] z = new double[]{0, 1, 2, 3, 4, 5, 6};
+
+		for (int trial = 0; trial < 2; trial++) {
+			alg.addPoints(x, y, z, 6);
+
+			assertEquals(6, alg.getAllPoints().size);
+			for (int i = 0; i < 6; i++) {
+				Point3D_F64 p = alg.getAllPoints().get(i).point;
+				assertEquals(x[i], p.x, 0);
+				assertEquals(y[i], p.y, 0);
+				assertEquals(z[i], p.z, 0);
+				assertTrue(alg.getTree().findDeepest(p).points.size > 0);
+			}
+			alg.initialize(new Box3D_F64(-10, -10, -10, 10, 10, 10));
+		}
+	}
 }
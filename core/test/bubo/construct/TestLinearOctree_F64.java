@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.construct;
+
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.shapes.Box3D_F64;
+import org.ddogleg.struct.GrowQueue_I32;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestLinearOctree_F64 {
+
+	Random rand = new Random(234);
+
+	// Space is a power of two so that the divider and quantization are computed exactly
+	Box3D_F64 space = new Box3D_F64(-8, -8, -8, 8, 8, 8);
+
+	@Test
+	public void encode_compact() {
+		for (int i = 0; i < 100; i++) {
+			int x = rand.nextInt(1 << 21);
+			int y = rand.nextInt(1 << 21);
+			int z = rand.nextInt(1 << 21);
+
+			long key = LinearOctree_F64.encode(x, y, z);
+			assertTrue(key >= 0);
+			assertEquals(x, LinearOctree_F64.compact(key >>> 1));
+			assertEquals(y, LinearOctree_F64.compact(key));
+			assertEquals(z, LinearOctree_F64.compact(key >>> 2));
+		}
+	}
+
+	/**
+	 * The 3-bit groups in the key should be the same as the child index in the octree
+	 */
+	@Test
+	public void computeKey_childIndex() {
+		LinearOctree_F64 alg = new LinearOctree_F64(10, 1);
+		alg.initialize(space);
+
+		Octree_F64 tree = new Octree_F64();
+		tree.space.set(space);
+		ConstructOctree_F64.computeDivider(tree.space, tree.divider);
+
+		for (int i = 0; i < 50; i++) {
+			Point3D_F64 p = randomPoint();
+			assertEquals(tree.getChildIndex(p), alg.computeKey(p.x, p.y, p.z));
+		}
+
+		assertEquals(-1, alg.computeKey(8, 0, 0));
+		assertEquals(-1, alg.computeKey(0, -8.1, 0));
+	}
+
+	/**
+	 * Compares the tree against the one created by ConstructOctreeNumPoints_F64
+	 */
+	@Test
+	public void compareToConstructOctreeNumPoints() {
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < 2000; i++) {
+			points.add(randomPoint());
+		}
+		// add a cluster of identical points
+		for (int i = 0; i < 20; i++) {
+			points.add(new Point3D_F64(1.5, 2.5, -3.5));
+		}
+
+		ConstructOctreeNumPoints_F64 expected = new ConstructOctreeNumPoints_F64(8);
+		expected.initialize(space);
+		expected.addPoints(points);
+
+		LinearOctree_F64 alg = new LinearOctree_F64(8);
+		alg.initialize(space);
+		alg.construct(points);
+
+		assertEquals(points.size(), alg.getNumPoints());
+		assertEquals(0, alg.getNumOutside());
+
+		// same number of leaves
+		int numLeaves = 0;
+		for (int i = 0; i < expected.getAllNodes().size; i++) {
+			if (expected.getAllNodes().get(i).isLeaf())
+				numLeaves++;
+		}
+		assertEquals(numLeaves, alg.getLeafCount());
+
+		// check the deepest node for the points and some random locations where there might not be a leaf
+		List<Point3D_F64> queries = new ArrayList<Point3D_F64>(points);
+		for (int i = 0; i < 500; i++) {
+			queries.add(randomPoint());
+		}
+
+		LinearOctree_F64.Node node = new LinearOctree_F64.Node();
+		Box3D_F64 found = new Box3D_F64();
+		for (Point3D_F64 p : queries) {
+			Octree_F64 e = expected.getTree().findDeepest(p);
+			assertTrue(alg.findDeepest(p.x, p.y, p.z, node));
+
+			assertEquals(e.points.size(), node.getNumPoints());
+			alg.computeSpace(node.depth, node.key, found);
+			assertEquals(0, e.space.p0.distance(found.p0), 1e-8);
+			assertEquals(0, e.space.p1.distance(found.p1), 1e-8);
+
+			// the points inside the node should be the same
+			for (int j = node.start; j < node.end; j++) {
+				Point3D_F64 a = points.get(alg.getPointIndex(j));
+				assertTrue(a.x >= found.p0.x && a.x < found.p1.x);
+				assertTrue(a.y >= found.p0.y && a.y < found.p1.y);
+				assertTrue(a.z >= found.p0.z && a.z < found.p1.z);
+			}
+
+			assertEquals(e.isLeaf(), alg.findLeaf(p.x, p.y, p.z) >= 0);
+		}
+	}
+
+	@Test
+	public void findDeepest_outside() {
+		LinearOctree_F64 alg = new LinearOctree_F64(8);
+		alg.initialize(space);
+		alg.construct(new double[]{1, 20}, new double[]{1, 1}, new double[]{1, 1}, 2);
+
+		assertEquals(1, alg.getNumPoints());
+		assertEquals(1, alg.getNumOutside());
+		assertEquals(0, alg.getPointIndex(0));
+
+		assertFalse(alg.findDeepest(20, 1, 1, new LinearOctree_F64.Node()));
+		assertEquals(-1, alg.findLeaf(20, 1, 1));
+	}
+
+	@Test
+	public void findPointsInside() {
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		for (int i = 0; i < 1000; i++) {
+			points.add(randomPoint());
+		}
+
+		LinearOctree_F64 alg = new LinearOctree_F64(5);
+		alg.initialize(space);
+		alg.construct(points);
+
+		GrowQueue_I32 found = new GrowQueue_I32();
+		GrowQueue_I32 leaves = new GrowQueue_I32();
+		LinearOctree_F64.Node leaf = new LinearOctree_F64.Node();
+
+		for (int trial = 0; trial < 20; trial++) {
+			Point3D_F64 a = randomPoint();
+			Box3D_F64 region = new Box3D_F64(a.x, a.y, a.z, a.x + rand.nextDouble() * 6,
+					a.y + rand.nextDouble() * 6, a.z + rand.nextDouble() * 6);
+
+			alg.findPointsInside(region, found);
+
+			int expected = 0;
+			boolean matched[] = new boolean[points.size()];
+			for (int i = 0; i < points.size(); i++) {
+				Point3D_F64 p = points.get(i);
+				if (p.x >= region.p0.x && p.x < region.p1.x && p.y >= region.p0.y && p.y < region.p1.y &&
+						p.z >= region.p0.z && p.z < region.p1.z) {
+					expected++;
+					matched[i] = true;
+				}
+			}
+			assertEquals(expected, found.size);
+			for (int i = 0; i < found.size; i++) {
+				assertTrue(matched[found.get(i)]);
+			}
+
+			// every leaf with a point inside the region must have been found
+			alg.findLeafsIntersect(region, leaves);
+			for (int i = 0; i < points.size(); i++) {
+				if (!matched[i])
+					continue;
+				Point3D_F64 p = points.get(i);
+				int index = alg.findLeaf(p.x, p.y, p.z);
+				boolean contained = false;
+				for (int j = 0; j < leaves.size; j++) {
+					contained |= leaves.get(j) == index;
+				}
+				assertTrue(contained);
+				alg.getLeaf(index, leaf);
+				assertTrue(leaf.getNumPoints() > 0);
+			}
+		}
+	}
+
+	/**
+	 * The multi-threaded construction should produce exactly the same tree
+	 */
+	@Test
+	public void concurrent() {
+		int N = 20000;
+		double[] x = new double[N], y = new double[N], z = new double[N];
+		for (int i = 0; i < N; i++) {
+			// cluster the points so that the buckets are unbalanced
+			double s = i % 3 == 0 ? 8 : 1;
+			x[i] = (rand.nextDouble() * 2 - 1) * s * 0.999;
+			y[i] = (rand.nextDouble() * 2 - 1) * s * 0.999;
+			z[i] = (rand.nextDouble() * 2 - 1) * s * 0.999;
+		}
+
+		LinearOctree_F64 single = new LinearOctree_F64(10);
+		single.initialize(space);
+		single.construct(x, y, z, N);
+
+		LinearOctree_F64 multi = new LinearOctree_F64(10);
+		multi.setNumThreads(4);
+		// construct twice to make sure the work space is correctly recycled
+		multi.initialize(space);
+		multi.construct(x, y, z, N / 2);
+		multi.initialize(space);
+		multi.construct(x, y, z, N);
+
+		assertEquals(single.getLeafCount(), multi.getLeafCount());
+		LinearOctree_F64.Node a = new LinearOctree_F64.Node();
+		LinearOctree_F64.Node b = new LinearOctree_F64.Node();
+		for (int i = 0; i < single.getLeafCount(); i++) {
+			single.getLeaf(i, a);
+			multi.getLeaf(i, b);
+			assertEquals(a.depth, b.depth);
+			assertEquals(a.key, b.key);
+			assertEquals(a.start, b.start);
+			assertEquals(a.end, b.end);
+		}
+		for (int i = 0; i < N; i++) {
+			assertEquals(single.getPointIndex(i), multi.getPointIndex(i));
+		}
+	}
+
+	private Point3D_F64 randomPoint() {
+		return new Point3D_F64(rand.nextDouble() * 16 - 8, rand.nextDouble() * 16 - 8, rand.nextDouble() * 16 - 8);
+	}
+}
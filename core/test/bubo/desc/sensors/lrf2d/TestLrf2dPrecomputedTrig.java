@@ -62,6 +62,28 @@ public class TestLrf2dPrecomputedTrig {
 		assertEquals(foundYaw, -Math.PI + 5.0 / 99.0 * Math.PI, 1e-8);
 	}
 
+	@Test
+	public void computeEndPoints() {
+		Lrf2dParam param = createParam();
+
+		Lrf2dPrecomputedTrig alg = new Lrf2dPrecomputedTrig(param);
+
+		double ranges[] = new double[100];
+		for (int i = 0; i < ranges.length; i++) {
+			ranges[i] = 1 + i * 0.1;
+		}
+		double x[] = new double[100];
+		double y[] = new double[100];
+		alg.computeEndPoints(ranges, x, y);
+
+		Point2D_F64 pt = new Point2D_F64();
+		for (int i = 0; i < ranges.length; i++) {
+			alg.computeEndPoint(i, ranges[i], pt);
+			assertEquals(pt.x, x[i], 1e-12);
+			assertEquals(pt.y, y[i], 1e-12);
+		}
+	}
+
 	private Lrf2dParam createParam() {
 		Lrf2dParam param = new Lrf2dParam();
 
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bubo.mapping.build.ladar2d;
+
+import bubo.clouds.motion.TestLrf2dMotionRollingKeyFrame;
+import bubo.desc.sensors.lrf2d.Lrf2dParam;
+import bubo.log.streams.PositionRangeArrayData;
+import bubo.maps.d2.grid.GridMapSpacialInfo;
+import bubo.maps.d2.grid.OccupancyGrid2D_F32;
+import bubo.maps.d2.grid.impl.ArrayGrid2D_F32;
+import bubo.maps.d2.grid.impl.LogOddsGrid2D_I8;
+import bubo.maps.d2.grid.impl.TiledGrid2D_F32;
+import bubo.metrics.Metrics;
+import bubo.metrics.SummaryMetricsRegistry;
+import georegression.struct.se.Se2_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestLadarMapBayesUpdate {
+
+	Random rand = new Random(234);
+
+	Lrf2dParam param = new Lrf2dParam("test", -Math.PI, 2 * Math.PI, 1000, 20, 0.01, 0.01);
+	GridMapSpacialInfo spacial = new GridMapSpacialInfo(0.1, 0, 0);
+
+	/**
+	 * Updating the map should change the cells along the beams
+	 */
+	@Test
+	public void process_changesMap() {
+		ArrayGrid2D_F32 map = new ArrayGrid2D_F32(200, 200);
+		map.clear();
+
+		LadarMapBayesUpdate alg = createAlg();
+		alg.init(param, map, spacial);
+		alg.process(createScans(1).get(0));
+
+		int numFree = 0, numOccupied = 0;
+		for (int y = 0; y < map.getHeight(); y++) {
+			for (int x = 0; x < map.getWidth(); x++) {
+				float v = map.get(x, y);
+				if (v < 0.5f) numFree++;
+				else if (v > 0.5f) numOccupied++;
+			}
+		}
+		assertTrue(numFree > 1000);
+		assertTrue(numOccupied > 100);
+	}
+
+	/**
+	 * The concurrent code should produce exactly the same map as the single threaded code
+	 */
+	@Test
+	public void concurrent_F32() {
+		List<PositionRangeArrayData> scans = createScans(3);
+
+		ArrayGrid2D_F32 expected = new ArrayGrid2D_F32(200, 200);
+		ArrayGrid2D_F32 found = new ArrayGrid2D_F32(200, 200);
+		expected.clear();
+		found.clear();
+
+		process(scans, expected, 1);
+		process(scans, found, 4);
+
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertTrue(expected.get(x, y) == found.get(x, y));
+			}
+		}
+	}
+
+	/**
+	 * If the map doesn't support concurrent writes the results should still be the same
+	 */
+	@Test
+	public void concurrent_tiled() {
+		List<PositionRangeArrayData> scans = createScans(2);
+
+		TiledGrid2D_F32 expected = new TiledGrid2D_F32();
+		TiledGrid2D_F32 found = new TiledGrid2D_F32();
+
+		process(scans, expected, 1);
+		process(scans, found, 3);
+
+		assertEquals(expected.getNumTiles(), found.getNumTiles());
+		for (int y = -50; y < 250; y++) {
+			for (int x = -50; x < 250; x++) {
+				assertTrue(expected.get(x, y) == found.get(x, y));
+			}
+		}
+	}
+
+	@Test
+	public void concurrent_logOdds() {
+		List<PositionRangeArrayData> scans = createScans(3);
+
+		LogOddsGrid2D_I8 expected = new LogOddsGrid2D_I8(200, 200, 0.05);
+		LogOddsGrid2D_I8 found = new LogOddsGrid2D_I8(200, 200, 0.05);
+
+		for (int numThreads : new int[]{1, 4}) {
+			LadarMapBayesUpdate alg = createAlg();
+			alg.setNumThreads(numThreads);
+			alg.init(param, numThreads == 1 ? expected : found, spacial);
+			for (PositionRangeArrayData s : scans) {
+				alg.process(s);
+			}
+		}
+
+		int numKnown = 0;
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals(expected.getLogOdds(x, y), found.getLogOdds(x, y));
+				if (expected.isKnown(x, y))
+					numKnown++;
+			}
+		}
+		assertTrue(numKnown > 1000);
+	}
+
+	private void process(List<PositionRangeArrayData> scans, OccupancyGrid2D_F32 map, int numThreads) {
+		LadarMapBayesUpdate alg = createAlg();
+		alg.setNumThreads(numThreads);
+		alg.init(param, map, spacial);
+		for (PositionRangeArrayData s : scans) {
+			alg.process(s);
+		}
+	}
+
+	/**
+	 * When instrumentation is enabled the time of each stage should be recorded
+	 */
+	@Test
+	public void metrics() {
+		ArrayGrid2D_F32 map = new ArrayGrid2D_F32(200, 200);
+		map.clear();
+
+		LadarMapBayesUpdate alg = createAlg();
+		alg.init(param, map, spacial);
+
+		SummaryMetricsRegistry metrics = new SummaryMetricsRegistry();
+		Metrics.set(metrics);
+		try {
+			for (PositionRangeArrayData scan : createScans(2)) {
+				alg.process(scan);
+			}
+		} finally {
+			Metrics.set(null);
+		}
+
+		assertEquals(2, metrics.getSummary(Metrics.MAPPING_PROCESS).getCount());
+		assertEquals(2, metrics.getSummary(Metrics.MAPPING_MOTION).getCount());
+		assertEquals(2, metrics.getSummary(Metrics.MAPPING_RAYS).getCount());
+		assertTrue(metrics.getSummary(Metrics.MAPPING_PROCESS).getTotal() >=
+				metrics.getSummary(Metrics.MAPPING_RAYS).getTotal());
+
+		// nothing should be recorded once it's disabled
+		alg.process(createScans(1).get(0));
+		assertEquals(2, metrics.getSummary(Metrics.MAPPING_PROCESS).getCount());
+	}
+
+	/**
+	 * Stages which fail should still be recorded
+	 */
+	@Test
+	public void metrics_failedMotion() {
+		ArrayGrid2D_F32 map = new ArrayGrid2D_F32(200, 200);
+		map.clear();
+
+		LadarMapBayesUpdate alg = new LadarMapBayesUpdate();
+		alg.scanMatching = new TestLrf2dMotionRollingKeyFrame.FailingMatcher();
+		alg.init(param, map, spacial);
+
+		SummaryMetricsRegistry metrics = new SummaryMetricsRegistry();
+		Metrics.set(metrics);
+		try {
+			List<PositionRangeArrayData> scans = createScans(2);
+			alg.process(scans.get(0));
+			try {
+				alg.process(scans.get(1));
+				fail("Should have failed");
+			} catch (RuntimeException ignore) {
+			}
+		} finally {
+			Metrics.set(null);
+		}
+
+		assertEquals(2, metrics.getSummary(Metrics.MAPPING_PROCESS).getCount());
+		assertEquals(2, metrics.getSummary(Metrics.MAPPING_MOTION).getCount());
+		assertEquals(1, metrics.getSummary(Metrics.MAPPING_RAYS).getCount());
+	}
+
+	private LadarMapBayesUpdate createAlg() {
+		LadarMapBayesUpdate alg = new LadarMapBayesUpdate();
+		// use the provided location
+		alg.scanMatching = null;
+		return alg;
+	}
+
+	/**
+	 * Robot moving through a room with random range measurements
+	 */
+	private List<PositionRangeArrayData> createScans(int N) {
+		List<PositionRangeArrayData> scans = new ArrayList<PositionRangeArrayData>();
+		for (int i = 0; i < N; i++) {
+			PositionRangeArrayData s = new PositionRangeArrayData(param.getNumberOfScans());
+			s.setScanToWorld(new Se2_F64(9 + i * 0.3, 10 - i * 0.2, i * 0.1));
+			double r[] = s.getRange();
+			for (int j = 0; j < r.length; j++) {
+				r[j] = 3 + rand.nextDouble() * 8;
+			}
+			scans.add(s);
+		}
+		return scans;
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bubo.mapping.build.ladar3d;
+
+import bubo.maps.d3.grid.GridMapSpacialInfo3D;
+import bubo.maps.d3.grid.impl.HashBlockGridMap_F64;
+import bubo.maps.d3.grid.impl.OctreeGridMap_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestRayBatchOccupancyUpdate3D {
+
+	GridMapSpacialInfo3D spacial = new GridMapSpacialInfo3D(0.5, new Se3_F64());
+
+	/**
+	 * A single ray along the x-axis.  Cells along the ray should be free and the end occupied
+	 */
+	@Test
+	public void singleRay() {
+		HashBlockGridMap_F64 map = new HashBlockGridMap_F64(20, 20, 20);
+		RayBatchOccupancyUpdate3D alg = new RayBatchOccupancyUpdate3D();
+		alg.setMap(map, spacial);
+
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		points.add(new Point3D_F64(4.25, 1.25, 1.25));
+		alg.process(new Point3D_F64(0.25, 1.25, 1.25), points);
+
+		assertEquals(1, alg.getNumHits());
+		assertEquals(8, alg.getNumFree());
+
+		for (int x = 0; x < 8; x++) {
+			assertEquals(0.4, map.get(x, 2, 2), 1e-8);
+		}
+		assertEquals(0.7, map.get(8, 2, 2), 1e-8);
+		assertEquals(0.5, map.get(9, 2, 2), 1e-8);
+		assertEquals(0.5, map.get(3, 3, 2), 1e-8);
+	}
+
+	/**
+	 * Voxels which are passed through by multiple rays should only be updated once
+	 */
+	@Test
+	public void deduplicate() {
+		OctreeGridMap_F64 map = new OctreeGridMap_F64(20, 20, 20);
+		RayBatchOccupancyUpdate3D alg = new RayBatchOccupancyUpdate3D();
+		alg.setMap(map, spacial);
+
+		// rays which overlap near the origin
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		points.add(new Point3D_F64(4.25, 1.25, 1.25));
+		points.add(new Point3D_F64(4.25, 1.30, 1.25));
+		points.add(new Point3D_F64(4.25, 1.35, 1.25));
+		alg.process(new Point3D_F64(0.25, 1.25, 1.25), points);
+
+		assertEquals(1, alg.getNumHits());
+		assertEquals(0.4, map.get(0, 2, 2), 1e-8);
+		assertEquals(0.7, map.get(8, 2, 2), 1e-8);
+
+		// a second batch should move the probability further
+		alg.process(new Point3D_F64(0.25, 1.25, 1.25), points);
+		assertTrue(map.get(0, 2, 2) < 0.4);
+		assertTrue(map.get(8, 2, 2) > 0.7);
+	}
+
+	/**
+	 * If a voxel is hit and passed through in the same batch it's only updated as a hit
+	 */
+	@Test
+	public void hitHasPriority() {
+		HashBlockGridMap_F64 map = new HashBlockGridMap_F64(20, 20, 20);
+		RayBatchOccupancyUpdate3D alg = new RayBatchOccupancyUpdate3D();
+		alg.setMap(map, spacial);
+
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		points.add(new Point3D_F64(2.25, 1.25, 1.25));
+		points.add(new Point3D_F64(4.25, 1.25, 1.25));
+		alg.process(new Point3D_F64(0.25, 1.25, 1.25), points);
+
+		assertEquals(0.7, map.get(4, 2, 2), 1e-8);
+		assertEquals(0.4, map.get(5, 2, 2), 1e-8);
+		assertEquals(0.7, map.get(8, 2, 2), 1e-8);
+	}
+
+	@Test
+	public void clamped() {
+		HashBlockGridMap_F64 map = new HashBlockGridMap_F64(20, 20, 20);
+		RayBatchOccupancyUpdate3D alg = new RayBatchOccupancyUpdate3D(0.7, 0.4, 0.2, 0.8);
+		alg.setMap(map, spacial);
+
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		points.add(new Point3D_F64(4.25, 1.25, 1.25));
+		for (int i = 0; i < 20; i++) {
+			alg.process(new Point3D_F64(0.25, 1.25, 1.25), points);
+		}
+
+		assertEquals(0.2, map.get(2, 2, 2), 1e-8);
+		assertEquals(0.8, map.get(8, 2, 2), 1e-8);
+	}
+
+	/**
+	 * Rays which leave the map or exceed the maximum range should not mark their end as a hit
+	 */
+	@Test
+	public void clipping() {
+		HashBlockGridMap_F64 map = new HashBlockGridMap_F64(10, 10, 10);
+		RayBatchOccupancyUpdate3D alg = new RayBatchOccupancyUpdate3D();
+		alg.setMap(map, spacial);
+
+		List<Point3D_F64> points = new ArrayList<Point3D_F64>();
+		points.add(new Point3D_F64(20.25, 1.25, 1.25));
+		alg.process(new Point3D_F64(-3.25, 1.25, 1.25), points);
+
+		assertEquals(0, alg.getNumHits());
+		assertEquals(10, alg.getNumFree());
+		for (int x = 0; x < 10; x++) {
+			assertEquals(0.4, map.get(x, 2, 2), 1e-8);
+		}
+
+		// max range
+		map.clear();
+		alg.setMaxRange(1.0);
+		points.clear();
+		points.add(new Point3D_F64(4.25, 1.25, 1.25));
+		alg.process(new Point3D_F64(0.25, 1.25, 1.25), points);
+
+		assertEquals(0, alg.getNumHits());
+		assertEquals(3, alg.getNumFree());
+		assertEquals(0.5, map.get(8, 2, 2), 1e-8);
+
+		// completely outside the map
+		map.clear();
+		alg.setMaxRange(0);
+		points.clear();
+		points.add(new Point3D_F64(-4.25, 1.25, 1.25));
+		alg.process(new Point3D_F64(-0.25, 1.25, 1.25), points);
+		assertEquals(0, alg.getNumHits());
+		assertEquals(0, alg.getNumFree());
+	}
+}
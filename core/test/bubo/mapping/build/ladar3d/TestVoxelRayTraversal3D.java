@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bubo.mapping.build.ladar3d;
+
+import georegression.struct.point.Point3D_I32;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestVoxelRayTraversal3D {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void axisLines() {
+		DebugTraversal alg = new DebugTraversal();
+
+		alg.traverse(1.5, 2.5, 3.5, 5.5, 2.5, 3.5, true);
+		checkLine(alg.points, 1, 2, 3, 1, 0, 0, 5);
+		alg.points.clear();
+		alg.traverse(1.5, 2.5, 3.5, 1.5, -1.5, 3.5, true);
+		checkLine(alg.points, 1, 2, 3, 0, -1, 0, 5);
+		alg.points.clear();
+		alg.traverse(1.5, 2.5, 3.5, 1.5, 2.5, 7.2, true);
+		checkLine(alg.points, 1, 2, 3, 0, 0, 1, 5);
+
+		// the last voxel should be skipped
+		alg.points.clear();
+		alg.traverse(1.5, 2.5, 3.5, 5.5, 2.5, 3.5, false);
+		checkLine(alg.points, 1, 2, 3, 1, 0, 0, 4);
+	}
+
+	private void checkLine(List<Point3D_I32> points, int x, int y, int z, int dx, int dy, int dz, int N) {
+		assertEquals(N, points.size());
+		for (int i = 0; i < N; i++) {
+			Point3D_I32 p = points.get(i);
+			assertEquals(x + i * dx, p.x);
+			assertEquals(y + i * dy, p.y);
+			assertEquals(z + i * dz, p.z);
+		}
+	}
+
+	@Test
+	public void singleVoxel() {
+		DebugTraversal alg = new DebugTraversal();
+		alg.traverse(1.1, 2.1, 3.1, 1.9, 2.9, 3.9, true);
+		assertEquals(1, alg.points.size());
+		alg.points.clear();
+		alg.traverse(1.1, 2.1, 3.1, 1.9, 2.9, 3.9, false);
+		assertEquals(0, alg.points.size());
+	}
+
+	/**
+	 * Compare against voxels found by densely sampling the line
+	 */
+	@Test
+	public void randomLines() {
+		DebugTraversal alg = new DebugTraversal();
+
+		for (int trial = 0; trial < 200; trial++) {
+			double x0 = rand.nextDouble() * 20 - 10, y0 = rand.nextDouble() * 20 - 10, z0 = rand.nextDouble() * 20 - 10;
+			double x1 = rand.nextDouble() * 20 - 10, y1 = rand.nextDouble() * 20 - 10, z1 = rand.nextDouble() * 20 - 10;
+
+			alg.points.clear();
+			alg.traverse(x0, y0, z0, x1, y1, z1, true);
+
+			// starts and ends at the correct voxel
+			Point3D_I32 first = alg.points.get(0);
+			Point3D_I32 last = alg.points.get(alg.points.size() - 1);
+			checkVoxel(first, x0, y0, z0);
+			checkVoxel(last, x1, y1, z1);
+
+			// each voxel shares a face with the previous one
+			for (int i = 1; i < alg.points.size(); i++) {
+				Point3D_I32 a = alg.points.get(i - 1);
+				Point3D_I32 b = alg.points.get(i);
+				assertEquals(1, Math.abs(a.x - b.x) + Math.abs(a.y - b.y) + Math.abs(a.z - b.z));
+			}
+
+			// every voxel the line passes through should be included
+			int numMissed = 0;
+			for (int i = 0; i <= 10000; i++) {
+				double t = i / 10000.0;
+				if (!contains(alg.points, (int) Math.floor(x0 + t * (x1 - x0)),
+						(int) Math.floor(y0 + t * (y1 - y0)), (int) Math.floor(z0 + t * (z1 - z0))))
+					numMissed++;
+			}
+			assertEquals(0, numMissed);
+		}
+	}
+
+	private void checkVoxel(Point3D_I32 voxel, double x, double y, double z) {
+		assertEquals((int) Math.floor(x), voxel.x);
+		assertEquals((int) Math.floor(y), voxel.y);
+		assertEquals((int) Math.floor(z), voxel.z);
+	}
+
+	private boolean contains(List<Point3D_I32> points, int x, int y, int z) {
+		for (Point3D_I32 p : points) {
+			if (p.x == x && p.y == y && p.z == z)
+				return true;
+		}
+		return false;
+	}
+
+	private static class DebugTraversal extends VoxelRayTraversal3D {
+		List<Point3D_I32> points = new ArrayList<Point3D_I32>();
+
+		@Override
+		protected void visit(int x, int y, int z) {
+			points.add(new Point3D_I32(x, y, z));
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bubo.maps.d2.grid.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestLogOddsGrid2D_I8 {
+
+	@Test
+	public void initial_and_clear() {
+		LogOddsGrid2D_I8 map = new LogOddsGrid2D_I8(5, 7, 0.05);
+
+		assertEquals(127, map.getUnknown());
+		for (int y = 0; y < map.getHeight(); y++) {
+			for (int x = 0; x < map.getWidth(); x++) {
+				assertEquals(map.getUnknown(), map.get(x, y));
+				assertFalse(map.isKnown(x, y));
+			}
+		}
+
+		map.addLogOdds(2, 3, 20);
+		assertTrue(map.isKnown(2, 3));
+		map.clear();
+		assertFalse(map.isKnown(2, 3));
+		assertEquals(0, map.getLogOdds(2, 3));
+	}
+
+	@Test
+	public void set_get() {
+		LogOddsGrid2D_I8 map = new LogOddsGrid2D_I8(5, 7, 0.05);
+
+		map.set(2, 3, map.getUnknown());
+		assertFalse(map.isKnown(2, 3));
+
+		// round off error is introduced by the conversion to and from log-odds
+		for (int value = 10; value < 250; value += 10) {
+			map.set(2, 3, value);
+			assertEquals(value, map.get(2, 3), 2);
+		}
+
+		map.set(2, 3, 0);
+		assertEquals(-LogOddsGrid2D_I8.LIMIT, map.getLogOdds(2, 3));
+		map.set(2, 3, 255);
+		assertEquals(LogOddsGrid2D_I8.LIMIT, map.getLogOdds(2, 3));
+	}
+
+	@Test
+	public void addLogOdds_clamped() {
+		LogOddsGrid2D_I8 map = new LogOddsGrid2D_I8(5, 7, 0.05);
+
+		map.addLogOdds(1, 2, 20);
+		assertEquals(20, map.getLogOdds(1, 2));
+		// log-odds of 1
+		assertEquals((int) (255 / (1 + Math.exp(-1))), map.get(1, 2));
+
+		for (int i = 0; i < 10; i++) {
+			map.addLogOdds(1, 2, 100);
+		}
+		assertEquals(LogOddsGrid2D_I8.LIMIT, map.getLogOdds(1, 2));
+
+		for (int i = 0; i < 10; i++) {
+			map.addLogOdds(1, 2, -100);
+		}
+		assertEquals(-LogOddsGrid2D_I8.LIMIT, map.getLogOdds(1, 2));
+	}
+
+	@Test
+	public void wrapped() {
+		LogOddsGrid2D_I8 map = new LogOddsGrid2D_I8(5, 7, 0.05);
+		WrapOccupancy2D_I_to_F32 wrapped = new WrapOccupancy2D_I_to_F32(map);
+
+		assertEquals(0.5f, wrapped.get(1, 1), 0.01f);
+		map.addLogOdds(1, 1, 20);
+		assertEquals(1.0 / (1 + Math.exp(-1)), wrapped.get(1, 1), 0.01f);
+	}
+
+	@Test
+	public void isValid() {
+		LogOddsGrid2D_I8 map = new LogOddsGrid2D_I8(5, 7, 0.05);
+
+		assertTrue(map.isValid(0));
+		assertTrue(map.isValid(255));
+		assertFalse(map.isValid(-1));
+		assertFalse(map.isValid(256));
+	}
+
+	@Test
+	public void copy() {
+		LogOddsGrid2D_I8 map = new LogOddsGrid2D_I8(5, 7, 0.05);
+		map.addLogOdds(1, 2, -15);
+
+		LogOddsGrid2D_I8 found = map.copy();
+		assertEquals(-15, found.getLogOdds(1, 2));
+		assertEquals(0.05, found.getResolution(), 1e-8);
+		found.addLogOdds(1, 2, 1);
+		assertEquals(-15, map.getLogOdds(1, 2));
+	}
+}
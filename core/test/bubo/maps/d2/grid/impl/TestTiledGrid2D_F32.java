@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bubo.maps.d2.grid.impl;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestTiledGrid2D_F32 {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void initialUnknown() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(4);
+
+		assertEquals(0.5f, map.get(3, 4), 1e-8f);
+		assertEquals(0.5f, map.get(-300, 4000), 1e-8f);
+		assertFalse(map.isKnown(-300, 4000));
+		assertTrue(map.isInBounds(-300, 4000));
+		// reading should not declare tiles
+		assertEquals(0, map.getNumTiles());
+		assertEquals(0, map.getWidth());
+		assertEquals(0, map.getHeight());
+	}
+
+	/**
+	 * Randomly set cells across a large region including negative coordinates
+	 */
+	@Test
+	public void set_get_random() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(3);
+		Map<Long, Float> expected = new HashMap<Long, Float>();
+
+		for (int i = 0; i < 3000; i++) {
+			int x = rand.nextInt(2000) - 1000;
+			int y = rand.nextInt(2000) - 1000;
+			float v = rand.nextFloat();
+			map.set(x, y, v);
+			expected.put(((long) y << 32) | (x & 0xFFFFFFFFL), v);
+		}
+		assertTrue(map.getNumTiles() > 100);
+
+		for (Map.Entry<Long, Float> e : expected.entrySet()) {
+			int x = (int) e.getKey().longValue();
+			int y = (int) (e.getKey() >> 32);
+			assertTrue(e.getValue() == map.get(x, y));
+			assertTrue(map.isKnown(x, y));
+		}
+	}
+
+	@Test
+	public void extent() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(4);
+
+		map.set(-1, 5, 0.2f);
+		map.set(40, -20, 0.9f);
+
+		assertEquals(2, map.getNumTiles());
+		assertEquals(-16, map.getMinX());
+		assertEquals(-32, map.getMinY());
+		assertEquals(16 * 4, map.getWidth());
+		assertEquals(16 * 3, map.getHeight());
+
+		map.clear();
+		assertEquals(0, map.getNumTiles());
+		assertEquals(0.5f, map.get(-1, 5), 1e-8f);
+	}
+
+	@Test
+	public void tiles() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(4);
+
+		map.set(18, -3, 0.2f);
+
+		TiledGrid2D_F32.Tile tile = map.getTile(0);
+		assertEquals(1, tile.getX());
+		assertEquals(-1, tile.getY());
+		float data[] = map.getTileData(tile);
+		assertEquals(0.2f, data[13 * 16 + 2], 1e-8f);
+		assertEquals(0.5f, data[0], 1e-8f);
+	}
+
+	@Test
+	public void compressCold() {
+		TiledGrid2D_F32 map = new TiledGrid2D_F32(4);
+
+		map.set(1, 1, 0.2f);
+		map.set(100, 1, 0.3f);
+		map.set(101, 2, 0.35f);
+
+		assertEquals(0, map.compressCold(2));
+		map.get(1, 1);
+		assertEquals(0, map.compressCold(2));
+		// the second tile hasn't been accessed in two calls
+		assertEquals(1, map.compressCold(2));
+		assertFalse(map.getTile(0).isCompressed());
+		assertTrue(map.getTile(1).isCompressed());
+
+		// accessing it should decompress it without changing the values
+		assertEquals(0.3f, map.get(100, 1), 1e-8f);
+		assertEquals(0.35f, map.get(101, 2), 1e-8f);
+		assertEquals(0.5f, map.get(102, 2), 1e-8f);
+		assertFalse(map.getTile(1).isCompressed());
+
+		// writing to a compressed tile
+		assertEquals(1, map.compressCold(1));
+		assertEquals(1, map.compressCold(1));
+		map.set(2, 1, 0.9f);
+		assertEquals(0.2f, map.get(1, 1), 1e-8f);
+		assertEquals(0.9f, map.get(2, 1), 1e-8f);
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.maps.d3.grid.impl;
+
+import bubo.maps.d3.grid.CellProbability_F64;
+import bubo.maps.d3.grid.OccupancyGrid3D_F64;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestHashBlockGridMap_F64 extends GenericOccupancyGrid3DChecks {
+
+	Random rand = new Random(234);
+
+	@Override
+	public OccupancyGrid3D_F64 createOccupancyGrid(int sizeX, int sizeY, int sizeZ) {
+		return new HashBlockGridMap_F64(sizeX, sizeY, sizeZ);
+	}
+
+	/**
+	 * Set enough cells to force the table to grow several times and compare against a dense array
+	 */
+	@Test
+	public void compareToDense() {
+		int sizeX = 70, sizeY = 50, sizeZ = 40;
+		HashBlockGridMap_F64 map = new HashBlockGridMap_F64(sizeX, sizeY, sizeZ);
+		double expected[][][] = new double[sizeX][sizeY][sizeZ];
+		for (int i = 0; i < sizeX; i++) {
+			for (int j = 0; j < sizeY; j++) {
+				for (int k = 0; k < sizeZ; k++) {
+					expected[i][j][k] = 0.5;
+				}
+			}
+		}
+
+		for (int i = 0; i < 5000; i++) {
+			int x = rand.nextInt(sizeX);
+			int y = rand.nextInt(sizeY);
+			int z = rand.nextInt(sizeZ);
+			double p = rand.nextDouble();
+			map.set(x, y, z, p);
+			expected[x][y][z] = p;
+		}
+		assertTrue(map.getNumBlocks() > 64);
+
+		int numKnown = 0;
+		for (int i = 0; i < sizeX; i++) {
+			for (int j = 0; j < sizeY; j++) {
+				for (int k = 0; k < sizeZ; k++) {
+					assertTrue(expected[i][j][k] == map.get(i, j, k));
+					if (expected[i][j][k] != 0.5)
+						numKnown++;
+				}
+			}
+		}
+
+		Iterator<CellProbability_F64> iter = map.iteratorKnown();
+		int total = 0;
+		while (iter.hasNext()) {
+			CellProbability_F64 c = iter.next();
+			assertTrue(expected[c.x][c.y][c.z] == c.probability);
+			total++;
+		}
+		assertEquals(numKnown, total);
+	}
+
+	@Test
+	public void outOfBounds() {
+		HashBlockGridMap_F64 map = new HashBlockGridMap_F64(10, 12, 14);
+
+		assertFalse(map.isInBounds(-1, 0, 0));
+		assertFalse(map.isInBounds(0, 12, 0));
+		assertEquals(map.getDefaultValue(), map.get(-1, 0, 0), 1e-8);
+		assertEquals(map.getDefaultValue(), map.get(0, 0, 14), 1e-8);
+
+		try {
+			map.set(10, 0, 0, 0.2);
+			fail("Exception should have been thrown");
+		} catch (IllegalArgumentException ignore) {
+		}
+	}
+
+	@Test
+	public void clear() {
+		HashBlockGridMap_F64 map = new HashBlockGridMap_F64(30, 30, 30);
+		map.set(1, 2, 3, 0.9);
+		map.set(20, 21, 22, 0.1);
+
+		map.clear();
+		assertEquals(0, map.getNumBlocks());
+		assertFalse(map.iteratorKnown().hasNext());
+		assertEquals(0.5, map.get(1, 2, 3), 1e-8);
+		assertEquals(0.5, map.get(20, 21, 22), 1e-8);
+
+		// memory is reused after being cleared
+		map.set(20, 21, 22, 0.3);
+		assertEquals(0.3, map.get(20, 21, 22), 1e-8);
+		assertEquals(0.5, map.get(1, 2, 3), 1e-8);
+	}
+
+	/**
+	 * Changes to the copy should not affect the original
+	 */
+	@Test
+	public void copy_independent() {
+		HashBlockGridMap_F64 map = new HashBlockGridMap_F64(30, 30, 30);
+		map.set(1, 2, 3, 0.9);
+
+		HashBlockGridMap_F64 copy = map.copy();
+		copy.set(1, 2, 3, 0.2);
+		copy.set(25, 2, 3, 0.2);
+
+		assertEquals(0.9, map.get(1, 2, 3), 1e-8);
+		assertEquals(0.5, map.get(25, 2, 3), 1e-8);
+		assertEquals(1, map.getNumBlocks());
+		assertEquals(2, copy.getNumBlocks());
+	}
+
+	@Test
+	public void isDefault() {
+		HashBlockGridMap_F64 map = new HashBlockGridMap_F64(30, 30, 30);
+		map.set(1, 2, 3, 0.9);
+
+		assertFalse(map.isDefault(1, 2, 3));
+		assertTrue(map.isDefault(1, 2, 4));
+		assertTrue(map.isDefault(20, 20, 20));
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.metrics;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestSummaryMetricsRegistry {
+
+	@Test
+	public void summary() {
+		SummaryMetricsRegistry alg = new SummaryMetricsRegistry();
+
+		alg.recordTime("b", 10);
+		alg.recordTime("b", 30);
+		alg.increment("a", 2);
+		alg.recordValue("c", -1.5);
+
+		assertEquals(Arrays.asList("a", "b", "c"), alg.getNames());
+
+		SummaryMetricsRegistry.Summary b = alg.getSummary("b");
+		assertEquals(2, b.getCount());
+		assertEquals(40, b.getTotal(), 0);
+		assertEquals(20, b.getMean(), 0);
+		assertEquals(10, b.getMin(), 0);
+		assertEquals(30, b.getMax(), 0);
+
+		assertEquals(2, alg.getSummary("a").getTotal(), 0);
+		assertEquals(-1.5, alg.getSummary("c").getMax(), 0);
+		assertNull(alg.getSummary("d"));
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		alg.print(new PrintStream(stream));
+		assertTrue(stream.toString().contains("b"));
+
+		alg.reset();
+		assertEquals(0, alg.getNames().size());
+	}
+
+	@Test
+	public void startTimer() throws InterruptedException {
+		SummaryMetricsRegistry alg = new SummaryMetricsRegistry();
+
+		MetricsRegistry.Timer timer = alg.startTimer("a");
+		assertNull(alg.getSummary("a"));
+		Thread.sleep(5);
+		timer.stop();
+
+		assertEquals(1, alg.getSummary("a").getCount());
+		assertTrue(alg.getSummary("a").getTotal() >= 5e6);
+	}
+
+	/**
+	 * Record from several threads at once and see if any samples are lost
+	 */
+	@Test
+	public void concurrent() throws InterruptedException {
+		final SummaryMetricsRegistry alg = new SummaryMetricsRegistry();
+
+		Thread threads[] = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						alg.increment("count" + (j % 3), 1);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		long total = 0;
+		for (String name : alg.getNames()) {
+			total += alg.getSummary(name).getCount();
+		}
+		assertEquals(40000, total);
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.struct;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestConcurrentBlocks {
+
+	/**
+	 * Every element should be processed exactly once and by the same block each time
+	 */
+	@Test
+	public void process() {
+		for (int numThreads = 1; numThreads <= 4; numThreads++) {
+			ConcurrentBlocks alg = new ConcurrentBlocks(numThreads);
+
+			for (int N : new int[]{0, 2, 103}) {
+				final int[] counts = new int[N];
+				final int[] owner = new int[N];
+
+				alg.process(N, new ConcurrentBlocks.Block() {
+					@Override
+					public void process(int index, int start, int end) {
+						for (int i = start; i < end; i++) {
+							counts[i]++;
+							owner[i] = index;
+						}
+					}
+				});
+
+				for (int i = 0; i < N; i++) {
+					assertEquals(1, counts[i]);
+					// blocks are contiguous and in order
+					if (i > 0)
+						assertEquals(true, owner[i] >= owner[i - 1]);
+					assertEquals(true, owner[i] < numThreads);
+				}
+			}
+			alg.shutdown();
+		}
+	}
+
+	/**
+	 * Exceptions thrown inside of a block should be passed on to the caller
+	 */
+	@Test
+	public void process_exception() {
+		ConcurrentBlocks alg = new ConcurrentBlocks(2);
+		try {
+			alg.process(10, new ConcurrentBlocks.Block() {
+				@Override
+				public void process(int index, int start, int end) {
+					if (index == 1)
+						throw new IllegalArgumentException("Test");
+				}
+			});
+			fail("Exception should have been thrown");
+		} catch (IllegalArgumentException ignore) {
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_invalid() {
+		new ConcurrentBlocks(0);
+	}
+}
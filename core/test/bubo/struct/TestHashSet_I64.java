@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bubo.struct;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestHashSet_I64 {
+
+	Random rand = new Random(234);
+
+	@Test
+	public void compareToHashSet() {
+		HashSet_I64 alg = new HashSet_I64(4);
+		Set<Long> expected = new HashSet<Long>();
+
+		for (int i = 0; i < 2000; i++) {
+			long value = rand.nextInt(1000) * 0x100000000L + rand.nextInt(3);
+			assertEquals(expected.add(value), alg.add(value));
+		}
+		assertEquals(expected.size(), alg.size());
+
+		for (int i = 0; i < alg.size(); i++) {
+			assertTrue(expected.contains(alg.values.get(i)));
+		}
+		for (int i = 0; i < 2000; i++) {
+			long value = rand.nextInt(1000) * 0x100000000L + rand.nextInt(4);
+			assertEquals(expected.contains(value), alg.contains(value));
+		}
+	}
+
+	@Test
+	public void values_order() {
+		HashSet_I64 alg = new HashSet_I64();
+		alg.add(5);
+		alg.add(-2);
+		alg.add(5);
+		alg.add(9);
+
+		assertEquals(3, alg.values.size);
+		assertEquals(5, alg.values.get(0));
+		assertEquals(-2, alg.values.get(1));
+		assertEquals(9, alg.values.get(2));
+	}
+
+	/**
+	 * Test both the sparse and dense code paths for reset
+	 */
+	@Test
+	public void reset() {
+		for (int numValues : new int[]{3, 500}) {
+			HashSet_I64 alg = new HashSet_I64(1000);
+			for (int i = 0; i < numValues; i++) {
+				alg.add(i * 7);
+			}
+			alg.reset();
+			assertEquals(0, alg.size());
+			for (int i = 0; i < numValues; i++) {
+				assertFalse(alg.contains(i * 7));
+			}
+			assertTrue(alg.add(7));
+			assertTrue(alg.contains(7));
+			assertFalse(alg.contains(14));
+		}
+	}
+}
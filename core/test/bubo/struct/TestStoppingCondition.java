@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.struct;
+
+import bubo.metrics.Metrics;
+import bubo.metrics.SummaryMetricsRegistry;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestStoppingCondition {
+
+	@Test
+	public void isFinished() {
+		StoppingCondition alg = new StoppingCondition(3, 0.1);
+
+		// below the threshold
+		alg.reset();
+		assertTrue(alg.isFinished(0.05));
+
+		// too many iterations
+		alg.reset();
+		assertFalse(alg.isFinished(10));
+		assertFalse(alg.isFinished(5));
+		assertTrue(alg.isFinished(2));
+
+		// no change in error
+		alg.reset();
+		assertFalse(alg.isFinished(10));
+		assertTrue(alg.isFinished(10));
+	}
+
+	/**
+	 * When instrumentation is enabled the iterations and final error should be recorded
+	 */
+	@Test
+	public void metrics() {
+		SummaryMetricsRegistry metrics = new SummaryMetricsRegistry();
+		Metrics.set(metrics);
+		try {
+			StoppingCondition alg = new StoppingCondition(3, 0.1);
+			alg.reset();
+			alg.isFinished(10);
+			alg.isFinished(5);
+			assertNull(metrics.getSummary(Metrics.STOP_ITERATIONS));
+			alg.isFinished(2);
+
+			assertEquals(1, metrics.getSummary(Metrics.STOP_ITERATIONS).getCount());
+			assertEquals(3, metrics.getSummary(Metrics.STOP_ITERATIONS).getMax(), 0);
+			assertEquals(2, metrics.getSummary(Metrics.STOP_ERROR).getMax(), 0);
+		} finally {
+			Metrics.set(null);
+		}
+	}
+
+	/**
+	 * The number of iterations should be counted the same way no matter which condition stops it
+	 */
+	@Test
+	public void metrics_iterationsEachCondition() {
+		SummaryMetricsRegistry metrics = new SummaryMetricsRegistry();
+		Metrics.set(metrics);
+		try {
+			// error threshold
+			StoppingCondition alg = new StoppingCondition(10, 0.1);
+			alg.reset();
+			alg.isFinished(10);
+			assertTrue(alg.isFinished(0.05));
+			assertEquals(2, metrics.getSummary(Metrics.STOP_ITERATIONS).getMax(), 0);
+
+			// relative change in error
+			metrics.reset();
+			alg.reset();
+			alg.isFinished(10);
+			assertTrue(alg.isFinished(10));
+			assertEquals(2, metrics.getSummary(Metrics.STOP_ITERATIONS).getMax(), 0);
+
+			// maximum iterations
+			metrics.reset();
+			alg = new StoppingCondition(2, 0.1);
+			alg.reset();
+			alg.isFinished(10);
+			assertTrue(alg.isFinished(5));
+			assertEquals(2, metrics.getSummary(Metrics.STOP_ITERATIONS).getMax(), 0);
+		} finally {
+			Metrics.set(null);
+		}
+	}
+}
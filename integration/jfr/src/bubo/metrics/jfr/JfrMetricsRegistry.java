@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.metrics.jfr;
+
+import bubo.metrics.Metrics;
+import bubo.metrics.MetricsRegistry;
+
+/**
+ * <p>
+ * {@link MetricsRegistry} which commits each measurement as a custom Java Flight Recorder event, so that
+ * latency spikes in a recording can be attributed to a stage of the pipeline.  The events are in the
+ * "BUBO" category and are only committed while a recording which has them enabled is running.
+ * </p>
+ *
+ * <p>
+ * Stages timed with {@link #startTimer} are begun when the stage starts and committed when it stops, so
+ * their start time and duration in the recording match the stage.  Stages passed to {@link #recordTime}
+ * only know the elapsed time.  Their event is created after the stage has finished and its own duration
+ * is close to zero, so only the "Elapsed" field is meaningful.
+ * </p>
+ *
+ * <pre>
+ * Metrics.set(new JfrMetricsRegistry());
+ * </pre>
+ *
+ * <p>
+ * then start the application with -XX:StartFlightRecording or attach with jcmd.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class JfrMetricsRegistry implements MetricsRegistry {
+
+	/**
+	 * Creates a registry and makes it the registry used by {@link Metrics}
+	 */
+	public static JfrMetricsRegistry install() {
+		JfrMetricsRegistry registry = new JfrMetricsRegistry();
+		Metrics.set(registry);
+		return registry;
+	}
+
+	@Override
+	public void recordTime(String name, long nanoseconds) {
+		StageEvent event = new StageEvent();
+		if (event.isEnabled()) {
+			event.name = name;
+			event.elapsed = nanoseconds;
+			event.commit();
+		}
+	}
+
+	@Override
+	public Timer startTimer(String name) {
+		StageEvent event = new StageEvent();
+		if (!event.isEnabled())
+			return DISABLED;
+		return new StageTimer(name, event);
+	}
+
+	@Override
+	public void increment(String name, long amount) {
+		CounterEvent event = new CounterEvent();
+		if (event.isEnabled()) {
+			event.name = name;
+			event.amount = amount;
+			event.commit();
+		}
+	}
+
+	@Override
+	public void recordValue(String name, double value) {
+		ValueEvent event = new ValueEvent();
+		if (event.isEnabled()) {
+			event.name = name;
+			event.value = value;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Returned when stage events are disabled
+	 */
+	private static final Timer DISABLED = new Timer() {
+		@Override
+		public void stop() {
+		}
+	};
+
+	/**
+	 * Wraps the stage inside of a {@link StageEvent}
+	 */
+	private static class StageTimer implements Timer {
+		String name;
+		StageEvent event;
+		long start;
+
+		StageTimer(String name, StageEvent event) {
+			this.name = name;
+			this.event = event;
+			event.begin();
+			start = System.nanoTime();
+		}
+
+		@Override
+		public void stop() {
+			long elapsed = System.nanoTime() - start;
+			event.end();
+			if (event.shouldCommit()) {
+				event.name = name;
+				event.elapsed = elapsed;
+				event.commit();
+			}
+		}
+	}
+}
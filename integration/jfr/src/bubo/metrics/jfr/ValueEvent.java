@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event which is committed each time a value is sampled, e.g. the number of iterations or final error.
+ * See {@link bubo.metrics.MetricsRegistry#recordValue}
+ *
+ * @author Peter Abeles
+ */
+@Name("bubo.Value")
+@Label("Value")
+@Category("BUBO")
+@Description("A sample of a value, such as the number of iterations or the final error")
+@StackTrace(false)
+public class ValueEvent extends Event {
+	@Label("Name")
+	String name;
+
+	@Label("Value")
+	double value;
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.metrics.jfr;
+
+import bubo.metrics.Metrics;
+import bubo.metrics.MetricsRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestJfrMetricsRegistry {
+
+	/**
+	 * Record each type of measurement inside of a recording and see if the events were written
+	 */
+	@Test
+	public void events() throws IOException, InterruptedException {
+		List<RecordedEvent> events;
+
+		Recording recording = new Recording();
+		try {
+			recording.enable("bubo.Stage");
+			recording.enable("bubo.Counter");
+			recording.enable("bubo.Value");
+			recording.start();
+
+			JfrMetricsRegistry alg = JfrMetricsRegistry.install();
+			try {
+				assertSame(alg, Metrics.get());
+
+				MetricsRegistry.Timer timer = alg.startTimer("stage");
+				Thread.sleep(20);
+				timer.stop();
+				alg.recordTime("elapsed", 1234);
+				alg.increment("counter", 7);
+				alg.recordValue("value", 2.5);
+			} finally {
+				Metrics.set(null);
+			}
+
+			recording.stop();
+			File file = File.createTempFile("bubo", ".jfr");
+			try {
+				recording.dump(file.toPath());
+				events = RecordingFile.readAllEvents(file.toPath());
+			} finally {
+				file.delete();
+			}
+		} finally {
+			recording.close();
+		}
+
+		RecordedEvent stage = find(events, "bubo.Stage", "stage");
+		assertTrue(stage.getLong("elapsed") >= 20_000_000L);
+		// the event wraps the stage
+		assertTrue(stage.getDuration().toNanos() >= 20_000_000L);
+
+		assertEquals(1234, find(events, "bubo.Stage", "elapsed").getLong("elapsed"));
+		assertEquals(7, find(events, "bubo.Counter", "counter").getLong("amount"));
+		assertEquals(2.5, find(events, "bubo.Value", "value").getDouble("value"), 0);
+	}
+
+	/**
+	 * Nothing should be written when the events are not enabled
+	 */
+	@Test
+	public void disabled() throws IOException {
+		List<RecordedEvent> events;
+
+		Recording recording = new Recording();
+		try {
+			recording.disable("bubo.Stage");
+			recording.disable("bubo.Counter");
+			recording.start();
+
+			JfrMetricsRegistry alg = new JfrMetricsRegistry();
+			alg.startTimer("stage").stop();
+			alg.increment("counter", 7);
+
+			recording.stop();
+			File file = File.createTempFile("bubo", ".jfr");
+			try {
+				recording.dump(file.toPath());
+				events = RecordingFile.readAllEvents(file.toPath());
+			} finally {
+				file.delete();
+			}
+		} finally {
+			recording.close();
+		}
+
+		for (RecordedEvent e : events) {
+			assertFalse(e.getEventType().getName().startsWith("bubo."));
+		}
+	}
+
+	private static RecordedEvent find(List<RecordedEvent> events, String type, String name) {
+		for (RecordedEvent e : events) {
+			if (e.getEventType().getName().equals(type) && name.equals(e.getString("name")))
+				return e;
+		}
+		fail("Could not find " + type + " " + name);
+		return null;
+	}
+}
@@ -20,16 +20,37 @@ package bubo.validation;
 
 import bubo.validation.clouds.motion.RunAllScanMotionValidations;
 
+import java.io.IOException;
+import java.util.List;
+
 /**
+ * Regenerates all the regression files.  Timing statistics in the files which are being overwritten are used as
+ * the baseline, and statistics which are slower by more than the threshold are printed.  The threshold is an
+ * optional argument and defaults to 0.2, i.e. 20% slower.  If there are any slowdowns then the exit status is 1.
+ *
  * @author Peter Abeles
  */
 public class GenerateRegressionData {
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
 
 		String where = "regression/";
+		double threshold = args.length > 0 ? Double.parseDouble(args[0]) : 0.2;
+
+		RegressionTiming baseline = RegressionTiming.load(where);
 
 		RunAllScanMotionValidations scanMotion = new RunAllScanMotionValidations();
 		scanMotion.setOutputDirectory(where);
 		scanMotion.processAll();
+
+		List<String> slowdowns = RegressionTiming.load(where).findSlowdowns(baseline, threshold);
+		if (slowdowns.isEmpty()) {
+			System.out.println("No timing regressions");
+		} else {
+			System.out.println("Timing regressions. More than " + (100 * threshold) + "% slower than baseline:");
+			for (String s : slowdowns) {
+				System.out.println("  " + s);
+			}
+			System.exit(1);
+		}
 	}
 }
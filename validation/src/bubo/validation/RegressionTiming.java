@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.validation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>
+ * Reads the timing statistics from the regression files written by validation classes and compares them against
+ * a baseline.  Results for each data set start with a "File: " line and timing statistics are all the
+ * "name = value" lines after "**** TIMING ****" and before the next data set.  The same data set is often
+ * processed several times with different configurations, each of which is described by the lines between
+ * "=====" and "-----".  A statistic is identified by the regression file, configuration, data set and name.
+ * </p>
+ *
+ * <p>
+ * Timing depends on the computer, so a baseline is only meaningful if it was generated on the same computer.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class RegressionTiming {
+
+	// value of each statistic
+	Map<String, Double> values = new TreeMap<String, Double>();
+
+	/**
+	 * Reads the timing statistics in all the regression files inside the directory.  If the directory doesn't
+	 * exist then no statistics are read.
+	 */
+	public static RegressionTiming load(String directory) throws IOException {
+		RegressionTiming ret = new RegressionTiming();
+
+		File files[] = new File(directory).listFiles();
+		if (files == null)
+			return ret;
+
+		for (File f : files) {
+			if (f.isFile() && f.getName().endsWith(".txt"))
+				ret.read(f);
+		}
+		return ret;
+	}
+
+	private void read(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			read(file.getName(), reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads the timing statistics from a single regression file
+	 *
+	 * @param fileName Name of the regression file.  Used to identify its statistics.
+	 * @param reader   Contents of the regression file
+	 */
+	void read(String fileName, BufferedReader reader) throws IOException {
+		// configuration of the current section.  The lines between "=====" and "-----"
+		StringBuilder header = new StringBuilder();
+		boolean inHeader = false;
+		// identifies the current data set and configuration
+		String section = fileName;
+		boolean timing = false;
+		// number of times each section has been seen, in case the same one is repeated
+		Map<String, Integer> occurrences = new HashMap<String, Integer>();
+
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (line.startsWith("=====")) {
+				header.setLength(0);
+				inHeader = true;
+				timing = false;
+			} else if (line.startsWith("-----")) {
+				inHeader = false;
+				timing = false;
+			} else if (inHeader) {
+				if (line.length() > 0) {
+					if (header.length() > 0)
+						header.append("; ");
+					header.append(line);
+				}
+			} else if (line.startsWith("File:")) {
+				section = fileName + " | ";
+				if (header.length() > 0)
+					section += header + " | ";
+				section += line.substring(5).trim();
+
+				Integer count = occurrences.get(section);
+				count = count == null ? 1 : count + 1;
+				occurrences.put(section, count);
+				if (count > 1)
+					section += " #" + count;
+				timing = false;
+			} else if (line.startsWith("****")) {
+				timing = line.contains("TIMING");
+			} else if (timing) {
+				int split = line.indexOf('=');
+				if (split < 0)
+					continue;
+				String name = line.substring(0, split).trim();
+				try {
+					double value = Double.parseDouble(line.substring(split + 1).trim());
+					values.put(section + " | " + name, value);
+				} catch (NumberFormatException ignore) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds all the statistics which are slower than the baseline by more than the threshold.  Statistics which
+	 * are only in one of the two are ignored.
+	 *
+	 * @param baseline  Timing statistics which are compared against
+	 * @param threshold Fractional increase which is considered a slowdown, e.g. 0.2 is 20% slower
+	 * @return Description of each slowdown
+	 */
+	public List<String> findSlowdowns(RegressionTiming baseline, double threshold) {
+		List<String> ret = new ArrayList<String>();
+
+		for (Map.Entry<String, Double> e : values.entrySet()) {
+			Double expected = baseline.values.get(e.getKey());
+			if (expected == null || expected <= 0)
+				continue;
+
+			double found = e.getValue();
+			if (found > expected * (1.0 + threshold)) {
+				ret.add(String.format("%s  baseline %.4g  current %.4g  (+%.1f%%)",
+						e.getKey(), expected, found, 100.0 * (found / expected - 1.0)));
+			}
+		}
+
+		return ret;
+	}
+
+	public Map<String, Double> getValues() {
+		return values;
+	}
+}
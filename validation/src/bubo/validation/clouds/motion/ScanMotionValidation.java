@@ -55,6 +55,8 @@ public abstract class ScanMotionValidation extends ValidationBase {
 	GrowQueue_F64 errorAngle = new GrowQueue_F64();
 	GrowQueue_F64 totalDistance = new GrowQueue_F64();
 	GrowQueue_F64 totalRotate = new GrowQueue_F64();
+	// time it took to process each scan in milliseconds
+	GrowQueue_F64 latency = new GrowQueue_F64();
 
 	List<DataSet> dataSets = new ArrayList<DataSet>();
 
@@ -109,10 +111,16 @@ public abstract class ScanMotionValidation extends ValidationBase {
 			out.println("error location95 = "+found.location95);
 			out.println("error angle50    = "+found.angle50);
 			out.println("error angle95    = "+found.angle95);
+			out.println("    **** TIMING ****");
+			out.println("latency mean = "+found.latencyMean);
+			out.println("latency50    = "+found.latency50);
+			out.println("latency99    = "+found.latency99);
+			out.println("runtime      = "+found.runtime);
 		}
 	}
 
 	protected Results process( DataSet dataSet ) throws IOException {
+		long startTime = System.nanoTime();
 		initialize(dataSet);
 		estimator.reset();
 
@@ -152,12 +160,14 @@ public abstract class ScanMotionValidation extends ValidationBase {
 			double noisyObservations[] = adjustObservations(data.getRange());
 
 			if( count % skipSensor == 0 ) {
+				long before = System.nanoTime();
 				try {
 					estimator.process(noisySensorToWorld, noisyObservations);
 				} catch( RuntimeException ignore ) {
 					failed = true;
 					break;
 				}
+				latency.add((System.nanoTime() - before) * 1e-6);
 
 				if( showGui ) {
 					gui.updateLidar(noisyObservations);
@@ -190,11 +200,19 @@ public abstract class ScanMotionValidation extends ValidationBase {
 			count++;
 		}
 
+		double runtime = (System.nanoTime() - startTime) * 1e-9;
+
 		if( showGui ) {
 			window.dispose();
 			gui = null;
 		}
 
+		double latencySum = 0;
+		for (int i = 0; i < latency.size; i++) {
+			latencySum += latency.data[i];
+		}
+		Arrays.sort(latency.data,0,latency.size);
+
 		Arrays.sort(errorLocation.data,0,errorLocation.size);
 		Arrays.sort(errorAngle.data,0,errorAngle.size);
 		Arrays.sort(totalDistance.data,0,totalDistance.size);
@@ -214,6 +232,12 @@ public abstract class ScanMotionValidation extends ValidationBase {
 		result.location95 = errorLocation.get(index95);
 		result.angle50 = errorAngle.get(index50);
 		result.angle95 = errorAngle.get(index95);
+		if( latency.size > 0 ) {
+			result.latencyMean = latencySum/latency.size;
+			result.latency50 = latency.get(latency.size/2);
+			result.latency99 = latency.get((int)(latency.size*0.99));
+		}
+		result.runtime = runtime;
 
 		return result;
 	}
@@ -240,6 +264,7 @@ public abstract class ScanMotionValidation extends ValidationBase {
 		errorAngle.reset();
 		totalDistance.reset();
 		totalRotate.reset();
+		latency.reset();
 
 		estimator.init(param);
 	}
@@ -268,6 +293,13 @@ public abstract class ScanMotionValidation extends ValidationBase {
 		public double location95;
 		public double angle50;
 		public double angle95;
+
+		// time to process a single scan in milliseconds
+		public double latencyMean;
+		public double latency50;
+		public double latency99;
+		// time to process the whole data set in seconds.  Includes reading the data.
+		public double runtime;
 	}
 
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2013-2014, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of Project BUBO.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package bubo.validation;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestRegressionTiming {
+
+	/**
+	 * The same data set is processed in two sections with different configurations.  Both should be read and
+	 * compared independently.
+	 */
+	@Test
+	public void sameDataSetTwoSections() throws IOException {
+		RegressionTiming baseline = new RegressionTiming();
+		baseline.read("ICP_Noise.txt", reader(file(1.0, 2.0)));
+
+		RegressionTiming current = new RegressionTiming();
+		current.read("ICP_Noise.txt", reader(file(1.0, 3.0)));
+
+		assertEquals(2 * 4, baseline.getValues().size());
+
+		// only the second section is slower
+		List<String> slowdowns = current.findSlowdowns(baseline, 0.2);
+		assertEquals(3, slowdowns.size());
+		for (String s : slowdowns) {
+			assertTrue(s.contains("LRF range = 0.02"));
+		}
+
+		assertEquals(0, current.findSlowdowns(current, 0.2).size());
+	}
+
+	/**
+	 * The same section is repeated without a configuration header
+	 */
+	@Test
+	public void repeatedWithoutHeader() throws IOException {
+		String text = section(1.0) + section(4.0);
+		RegressionTiming alg = new RegressionTiming();
+		alg.read("Perfect.txt", reader(text));
+
+		assertEquals(2 * 4, alg.getValues().size());
+	}
+
+	private static BufferedReader reader(String text) {
+		return new BufferedReader(new StringReader(text));
+	}
+
+	private static String file(double latencyA, double latencyB) {
+		return "=========================================\n" +
+				"LRF range = 0.01\n" +
+				"Odometry Travel = 0.0 TravelAngle 0.0 Angle 0.0\n" +
+				section(latencyA) +
+				"=========================================\n" +
+				"LRF range = 0.02\n" +
+				"Odometry Travel = 0.0 TravelAngle 0.0 Angle 0.0\n" +
+				section(latencyB);
+	}
+
+	private static String section(double latency) {
+		return "----------------------------------\n" +
+				"File: data/mapping2d/sim02/observations.txt\n" +
+				"score period = 1.0\n" +
+				"    **** METRICS ****\n" +
+				"failed     = false\n" +
+				"    **** TIMING ****\n" +
+				"latency mean = " + latency + "\n" +
+				"latency50    = " + latency + "\n" +
+				"latency99    = " + (2 * latency) + "\n" +
+				"runtime      = 10.0\n";
+	}
+}